@@ -46,6 +46,47 @@ class MatcherWithFallback extends MinusculeMatcher {
     return useMainRanges ? myMainMatcher.matchingDegree(name, valueStartCaseMatch, fragments) : myFallbackMatcher.matchingDegree(name, valueStartCaseMatch, fragments);
   }
 
+  @Override
+  public int matchingDegrees(@Nonnull String[] names, int from, int to, boolean valueStartCaseMatch, @Nonnull int[] degrees) {
+    int matched = myMainMatcher.matchingDegrees(names, from, to, valueStartCaseMatch, degrees);
+    if (myFallbackMatcher == null || matched == to - from) {
+      return matched;
+    }
+
+    // a fallback exists only for patterns with letters, so main matches are never empty and always win
+    int[] fallbackDegrees = new int[to - from];
+    if (myFallbackMatcher.matchingDegrees(names, from, to, valueStartCaseMatch, fallbackDegrees) == 0) {
+      return matched;
+    }
+    for (int i = 0; i < fallbackDegrees.length; i++) {
+      if (degrees[i] == Integer.MIN_VALUE && fallbackDegrees[i] != Integer.MIN_VALUE) {
+        degrees[i] = fallbackDegrees[i];
+        matched++;
+      }
+    }
+    return matched;
+  }
+
+  @Override
+  public int matches(@Nonnull String[] names, int from, int to, @Nonnull boolean[] result) {
+    int matched = myMainMatcher.matches(names, from, to, result);
+    if (myFallbackMatcher == null || matched == to - from) {
+      return matched;
+    }
+
+    boolean[] fallbackResult = new boolean[to - from];
+    if (myFallbackMatcher.matches(names, from, to, fallbackResult) == 0) {
+      return matched;
+    }
+    for (int i = 0; i < fallbackResult.length; i++) {
+      if (!result[i] && fallbackResult[i]) {
+        result[i] = true;
+        matched++;
+      }
+    }
+    return matched;
+  }
+
   @Override
   public String toString() {
     return "MatcherWithFallback{" + "myMainMatcher=" + myMainMatcher + ", myFallbackMatcher=" + myFallbackMatcher + '}';
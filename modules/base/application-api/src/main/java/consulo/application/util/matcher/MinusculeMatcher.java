@@ -45,6 +45,56 @@ abstract public class MinusculeMatcher implements Matcher {
     return matchingDegree(name, false);
   }
 
+  /**
+   * Computes {@link #matchingDegree(String, boolean)} for each of {@code names[from..to)} and stores it into {@code degrees[i - from]},
+   * {@link Integer#MIN_VALUE} is stored for names which don't match.
+   * <p>
+   * Intended for scoring large candidate lists against one pattern: implementations reuse their intermediate state for all names
+   * and don't create fragment lists, so {@link #matchingFragments} should be called lazily, only for names which are actually shown.
+   *
+   * @return the number of matching names
+   */
+  public int matchingDegrees(@Nonnull String[] names, int from, int to, boolean valueStartCaseMatch, @Nonnull int[] degrees) {
+    checkBatchBounds(names.length, from, to, degrees.length);
+    int matched = 0;
+    for (int i = from; i < to; i++) {
+      int degree = matchingDegree(names[i], valueStartCaseMatch);
+      degrees[i - from] = degree;
+      if (degree != Integer.MIN_VALUE) {
+        matched++;
+      }
+    }
+    return matched;
+  }
+
+  /**
+   * Stores {@link #matches(String)} for each of {@code names[from..to)} into {@code result[i - from]}.
+   *
+   * @return the number of matching names
+   * @see #matchingDegrees
+   */
+  public int matches(@Nonnull String[] names, int from, int to, @Nonnull boolean[] result) {
+    checkBatchBounds(names.length, from, to, result.length);
+    int matched = 0;
+    for (int i = from; i < to; i++) {
+      boolean matches = matches(names[i]);
+      result[i - from] = matches;
+      if (matches) {
+        matched++;
+      }
+    }
+    return matched;
+  }
+
+  static void checkBatchBounds(int namesLength, int from, int to, int resultLength) {
+    if (from < 0 || from > to || to > namesLength) {
+      throw new IndexOutOfBoundsException("from: " + from + ", to: " + to + ", names: " + namesLength);
+    }
+    if (resultLength < to - from) {
+      throw new IndexOutOfBoundsException("result length " + resultLength + " is less than " + (to - from));
+    }
+  }
+
   public boolean isStartMatch(@Nonnull String name) {
     FList<MatcherTextRange> fragments = matchingFragments(name);
     return fragments != null && isStartMatch(fragments);
@@ -37,6 +37,7 @@ class MinusculeMatcherImpl extends MinusculeMatcher {
   private final char[] toLowerCase;
   private final char[] myMeaningfulCharacters;
   private final int myMinNameLength;
+  private final char[] myPatternWithoutWildChar;
 
   /**
    * Constructs a matcher by a given pattern.
@@ -75,6 +76,7 @@ class MinusculeMatcherImpl extends MinusculeMatcher {
     myHasDots = hasDots(i);
     myMeaningfulCharacters = meaningful.toString().toCharArray();
     myMinNameLength = myMeaningfulCharacters.length / 2;
+    myPatternWithoutWildChar = filterWildcard(myPattern);
   }
 
   private static boolean isWordSeparator(char c) {
@@ -106,22 +108,65 @@ class MinusculeMatcherImpl extends MinusculeMatcher {
     return false;
   }
 
-  @Nonnull
-  private static FList<MatcherTextRange> prependRange(@Nonnull FList<MatcherTextRange> ranges, int from, int length) {
-    MatcherTextRange head = ranges.getHead();
-    if (head != null && head.getStartOffset() == from + length) {
-      return ranges.getTail().prepend(new MatcherTextRange(from, head.getEndOffset()));
+  @Override
+  public int matchingDegree(@Nonnull String name, boolean valueStartCaseMatch, @Nullable FList<? extends MatcherTextRange> fragments) {
+    if (fragments == null) return Integer.MIN_VALUE;
+    return matchingDegree(name, valueStartCaseMatch, Ranges.of(fragments));
+  }
+
+  @Override
+  public boolean matches(@Nonnull String name) {
+    return match(name, newRanges());
+  }
+
+  @Override
+  public int matchingDegree(@Nonnull String name, boolean valueStartCaseMatch) {
+    return matchAndGetDegree(name, valueStartCaseMatch, newRanges());
+  }
+
+  @Override
+  public int matchingDegrees(@Nonnull String[] names, int from, int to, boolean valueStartCaseMatch, @Nonnull int[] degrees) {
+    checkBatchBounds(names.length, from, to, degrees.length);
+    Ranges ranges = newRanges();
+    int matched = 0;
+    for (int i = from; i < to; i++) {
+      int degree = matchAndGetDegree(names[i], valueStartCaseMatch, ranges);
+      degrees[i - from] = degree;
+      if (degree != Integer.MIN_VALUE) {
+        matched++;
+      }
     }
-    return ranges.prepend(MatcherTextRange.from(from, length));
+    return matched;
   }
 
   @Override
-  public int matchingDegree(@Nonnull String name, boolean valueStartCaseMatch, @Nullable FList<? extends MatcherTextRange> fragments) {
-    if (fragments == null) return Integer.MIN_VALUE;
-    if (fragments.isEmpty()) return 0;
+  public int matches(@Nonnull String[] names, int from, int to, @Nonnull boolean[] result) {
+    checkBatchBounds(names.length, from, to, result.length);
+    Ranges ranges = newRanges();
+    int matched = 0;
+    for (int i = from; i < to; i++) {
+      boolean matches = match(names[i], ranges);
+      result[i - from] = matches;
+      if (matches) {
+        matched++;
+      }
+    }
+    return matched;
+  }
+
+  private int matchAndGetDegree(@Nonnull String name, boolean valueStartCaseMatch, @Nonnull Ranges ranges) {
+    return match(name, ranges) ? matchingDegree(name, valueStartCaseMatch, ranges) : Integer.MIN_VALUE;
+  }
 
-    final MatcherTextRange first = fragments.getHead();
-    boolean startMatch = first.getStartOffset() == 0;
+  /**
+   * @param fragments matched ranges, already filled by {@link #match} or copied from an {@link FList}
+   */
+  private int matchingDegree(@Nonnull String name, boolean valueStartCaseMatch, @Nonnull Ranges fragments) {
+    int size = fragments.size();
+    if (size == 0) return 0;
+
+    int firstStart = fragments.getStartOffset(0);
+    boolean startMatch = firstStart == 0;
     boolean valuedStartMatch = startMatch && valueStartCaseMatch;
 
     int matchingCase = 0;
@@ -130,9 +175,11 @@ class MinusculeMatcherImpl extends MinusculeMatcher {
     int skippedHumps = 0;
     int nextHumpStart = 0;
     boolean humpStartMatchedUpperCase = false;
-    for (MatcherTextRange range : fragments) {
-      for (int i = range.getStartOffset(); i < range.getEndOffset(); i++) {
-        boolean afterGap = i == range.getStartOffset() && first != range;
+    for (int r = 0; r < size; r++) {
+      int rangeStart = fragments.getStartOffset(r);
+      int rangeEnd = fragments.getEndOffset(r);
+      for (int i = rangeStart; i < rangeEnd; i++) {
+        boolean afterGap = i == rangeStart && r != 0;
         boolean isHumpStart = false;
         while (nextHumpStart <= i) {
           if (nextHumpStart == i) {
@@ -158,12 +205,11 @@ class MinusculeMatcherImpl extends MinusculeMatcher {
       }
     }
 
-    int startIndex = first.getStartOffset();
-    boolean afterSeparator = StringUtil.indexOfAny(name, myHardSeparators, 0, startIndex) >= 0;
-    boolean wordStart = startIndex == 0 || NameUtilCore.isWordStart(name, startIndex) && !NameUtilCore.isWordStart(name, startIndex - 1);
-    boolean finalMatch = fragments.get(fragments.size() - 1).getEndOffset() == name.length();
+    boolean afterSeparator = StringUtil.indexOfAny(name, myHardSeparators, 0, firstStart) >= 0;
+    boolean wordStart = firstStart == 0 || NameUtilCore.isWordStart(name, firstStart) && !NameUtilCore.isWordStart(name, firstStart - 1);
+    boolean finalMatch = fragments.getEndOffset(size - 1) == name.length();
 
-    return (wordStart ? 1000 : 0) + matchingCase + -fragments.size() + -skippedHumps * 10 + (afterSeparator ? 0 : 2) + (startMatch ? 1 : 0) + (finalMatch ? 1 : 0);
+    return (wordStart ? 1000 : 0) + matchingCase + -size + -skippedHumps * 10 + (afterSeparator ? 0 : 2) + (startMatch ? 1 : 0) + (finalMatch ? 1 : 0);
   }
 
   private int evaluateCaseMatching(boolean valuedStartMatch, int patternIndex, boolean humpStartMatchedUpperCase, int nameIndex, boolean afterGap, boolean isHumpStart, char nameChar) {
@@ -195,12 +241,28 @@ class MinusculeMatcherImpl extends MinusculeMatcher {
   @Override
   @Nullable
   public FList<MatcherTextRange> matchingFragments(@Nonnull String name) {
+    Ranges ranges = newRanges();
+    return match(name, ranges) ? ranges.toFList() : null;
+  }
+
+  @Nonnull
+  private Ranges newRanges() {
+    // every range consumes at least one pattern character, except the single trailing space one
+    return new Ranges(myPattern.length + 1);
+  }
+
+  /**
+   * Matches the name against the pattern, storing matched ranges into the given buffer.
+   * Nothing but the buffer is modified, so the same buffer can be reused for many names.
+   */
+  private boolean match(@Nonnull String name, @Nonnull Ranges ranges) {
+    ranges.clear();
     if (name.length() < myMinNameLength) {
-      return null;
+      return false;
     }
 
     if (myPattern.length > MAX_CAMEL_HUMP_MATCHING_LENGTH) {
-      return matchBySubstring(name);
+      return matchBySubstring(name, ranges);
     }
 
     int length = name.length();
@@ -216,30 +278,31 @@ class MinusculeMatcherImpl extends MinusculeMatcher {
       }
     }
     if (patternIndex < myMinNameLength * 2) {
-      return null;
+      return false;
     }
 
-    return matchWildcards(name, 0, 0, isAscii);
+    return matchWildcards(name, 0, 0, isAscii, ranges);
   }
 
-  @Nullable
-  private FList<MatcherTextRange> matchBySubstring(@Nonnull String name) {
+  private boolean matchBySubstring(@Nonnull String name, @Nonnull Ranges ranges) {
     boolean infix = isPatternChar(0, '*');
-    char[] patternWithoutWildChar = filterWildcard(myPattern);
+    char[] patternWithoutWildChar = myPatternWithoutWildChar;
     if (name.length() < patternWithoutWildChar.length) {
-      return null;
+      return false;
     }
     if (infix) {
       int index = StringUtil.indexOfIgnoreCase(name, new CharArrayCharSequence(patternWithoutWildChar, 0, patternWithoutWildChar.length), 0);
       if (index >= 0) {
-        return FList.<MatcherTextRange>emptyList().prepend(MatcherTextRange.from(index, patternWithoutWildChar.length - 1));
+        ranges.prepend(index, patternWithoutWildChar.length - 1);
+        return true;
       }
-      return null;
+      return false;
     }
     if (CharArrayUtil.regionMatches(patternWithoutWildChar, 0, patternWithoutWildChar.length, name)) {
-      return FList.<MatcherTextRange>emptyList().prepend(new MatcherTextRange(0, patternWithoutWildChar.length));
+      ranges.prepend(0, patternWithoutWildChar.length);
+      return true;
     }
-    return null;
+    return false;
   }
 
   private static char[] filterWildcard(char[] source) {
@@ -255,17 +318,19 @@ class MinusculeMatcherImpl extends MinusculeMatcher {
   /**
    * After a wildcard (* or space), search for the first non-wildcard pattern character in the name starting from nameIndex
    * and try to {@link #matchFragment} for it.
+   * <p>
+   * This and the following matching methods add ranges to the buffer only when they succeed,
+   * and a successful nested call always makes its caller succeed as well, so failed attempts leave no garbage in the buffer.
    */
-  @Nullable
-  private FList<MatcherTextRange> matchWildcards(@Nonnull String name, int patternIndex, int nameIndex, boolean isAsciiName) {
+  private boolean matchWildcards(@Nonnull String name, int patternIndex, int nameIndex, boolean isAsciiName, @Nonnull Ranges ranges) {
     if (nameIndex < 0) {
-      return null;
+      return false;
     }
     if (!isWildcard(patternIndex)) {
       if (patternIndex == myPattern.length) {
-        return FList.emptyList();
+        return true;
       }
-      return matchFragment(name, patternIndex, nameIndex, isAsciiName);
+      return matchFragment(name, patternIndex, nameIndex, isAsciiName, ranges);
     }
 
     do {
@@ -278,14 +343,15 @@ class MinusculeMatcherImpl extends MinusculeMatcher {
       if (isTrailingSpacePattern() && nameIndex != name.length() && (patternIndex < 2 || !isUpperCaseOrDigit(myPattern[patternIndex - 2]))) {
         int spaceIndex = name.indexOf(' ', nameIndex);
         if (spaceIndex >= 0) {
-          return FList.<MatcherTextRange>emptyList().prepend(MatcherTextRange.from(spaceIndex, 1));
+          ranges.prepend(spaceIndex, 1);
+          return true;
         }
-        return null;
+        return false;
       }
-      return FList.emptyList();
+      return true;
     }
 
-    return matchSkippingWords(name, patternIndex, findNextPatternCharOccurrence(name, nameIndex, patternIndex, isAsciiName), true, isAsciiName);
+    return matchSkippingWords(name, patternIndex, findNextPatternCharOccurrence(name, nameIndex, patternIndex, isAsciiName), true, isAsciiName, ranges);
   }
 
   private boolean isTrailingSpacePattern() {
@@ -300,8 +366,7 @@ class MinusculeMatcherImpl extends MinusculeMatcher {
    * Enumerates places in name that could be matched by the pattern at patternIndex position
    * and invokes {@link #matchFragment} at those candidate positions
    */
-  @Nullable
-  private FList<MatcherTextRange> matchSkippingWords(@Nonnull String name, final int patternIndex, int nameIndex, boolean allowSpecialChars, boolean isAsciiName) {
+  private boolean matchSkippingWords(@Nonnull String name, final int patternIndex, int nameIndex, boolean allowSpecialChars, boolean isAsciiName, @Nonnull Ranges ranges) {
     int maxFoundLength = 0;
     while (nameIndex >= 0) {
       int fragmentLength = seemsLikeFragmentStart(name, patternIndex, nameIndex) ? maxMatchingFragment(name, patternIndex, nameIndex) : 0;
@@ -313,15 +378,14 @@ class MinusculeMatcherImpl extends MinusculeMatcher {
         if (!isMiddleMatch(name, patternIndex, nameIndex)) {
           maxFoundLength = fragmentLength;
         }
-        FList<MatcherTextRange> ranges = matchInsideFragment(name, patternIndex, nameIndex, isAsciiName, fragmentLength);
-        if (ranges != null) {
-          return ranges;
+        if (matchInsideFragment(name, patternIndex, nameIndex, isAsciiName, fragmentLength, ranges)) {
+          return true;
         }
       }
       int next = findNextPatternCharOccurrence(name, nameIndex + 1, patternIndex, isAsciiName);
       nameIndex = allowSpecialChars ? next : checkForSpecialChars(name, nameIndex + 1, next, patternIndex);
     }
-    return null;
+    return false;
   }
 
   private int findNextPatternCharOccurrence(@Nonnull String name, int startAt, int patternIndex, boolean isAsciiName) {
@@ -356,10 +420,9 @@ class MinusculeMatcherImpl extends MinusculeMatcher {
     return patternChar == c || isIgnoreCase && (toLowerCase[patternIndex] == c || toUpperCase[patternIndex] == c);
   }
 
-  @Nullable
-  private FList<MatcherTextRange> matchFragment(@Nonnull String name, int patternIndex, int nameIndex, boolean isAsciiName) {
+  private boolean matchFragment(@Nonnull String name, int patternIndex, int nameIndex, boolean isAsciiName, @Nonnull Ranges ranges) {
     int fragmentLength = maxMatchingFragment(name, patternIndex, nameIndex);
-    return fragmentLength == 0 ? null : matchInsideFragment(name, patternIndex, nameIndex, isAsciiName, fragmentLength);
+    return fragmentLength != 0 && matchInsideFragment(name, patternIndex, nameIndex, isAsciiName, fragmentLength, ranges);
   }
 
   private int maxMatchingFragment(@Nonnull String name, int patternIndex, int nameIndex) {
@@ -387,27 +450,28 @@ class MinusculeMatcherImpl extends MinusculeMatcher {
   }
 
   // we've found the longest fragment matching pattern and name
-  @Nullable
-  private FList<MatcherTextRange> matchInsideFragment(@Nonnull String name, int patternIndex, int nameIndex, boolean isAsciiName, int fragmentLength) {
+  private boolean matchInsideFragment(@Nonnull String name, int patternIndex, int nameIndex, boolean isAsciiName, int fragmentLength, @Nonnull Ranges ranges) {
     // exact middle matches have to be at least of length 3, to prevent too many irrelevant matches
     int minFragment = isMiddleMatch(name, patternIndex, nameIndex) ? 3 : 1;
 
-    FList<MatcherTextRange> camelHumpRanges = improveCamelHumps(name, patternIndex, nameIndex, isAsciiName, fragmentLength, minFragment);
-    if (camelHumpRanges != null) {
-      return camelHumpRanges;
-    }
-
-    return findLongestMatchingPrefix(name, patternIndex, nameIndex, isAsciiName, fragmentLength, minFragment);
+    return improveCamelHumps(name, patternIndex, nameIndex, isAsciiName, fragmentLength, minFragment, ranges) ||
+           findLongestMatchingPrefix(name, patternIndex, nameIndex, isAsciiName, fragmentLength, minFragment, ranges);
   }
 
   private boolean isMiddleMatch(@Nonnull String name, int patternIndex, int nameIndex) {
     return isPatternChar(patternIndex - 1, '*') && !isWildcard(patternIndex + 1) && Character.isLetterOrDigit(name.charAt(nameIndex)) && !NameUtilCore.isWordStart(name, nameIndex);
   }
 
-  @Nullable
-  private FList<MatcherTextRange> findLongestMatchingPrefix(@Nonnull String name, int patternIndex, int nameIndex, boolean isAsciiName, int fragmentLength, int minFragment) {
+  private boolean findLongestMatchingPrefix(@Nonnull String name,
+                                            int patternIndex,
+                                            int nameIndex,
+                                            boolean isAsciiName,
+                                            int fragmentLength,
+                                            int minFragment,
+                                            @Nonnull Ranges ranges) {
     if (patternIndex + fragmentLength >= myPattern.length) {
-      return FList.<MatcherTextRange>emptyList().prepend(MatcherTextRange.from(nameIndex, fragmentLength));
+      ranges.prepend(nameIndex, fragmentLength);
+      return true;
     }
 
     // try to match the remainder of pattern with the remainder of name
@@ -415,55 +479,56 @@ class MinusculeMatcherImpl extends MinusculeMatcher {
     int i = fragmentLength;
     int minNext = Integer.MAX_VALUE;
     while (i >= minFragment || (i > 0 && isWildcard(patternIndex + i))) {
-      FList<MatcherTextRange> ranges;
+      boolean matched;
       if (isWildcard(patternIndex + i)) {
-        ranges = matchWildcards(name, patternIndex + i, nameIndex + i, isAsciiName);
+        matched = matchWildcards(name, patternIndex + i, nameIndex + i, isAsciiName, ranges);
       }
       else {
         int nextOccurrence = findNextPatternCharOccurrence(name, nameIndex + i + 1, patternIndex + i, isAsciiName);
         nextOccurrence = checkForSpecialChars(name, nameIndex + i, nextOccurrence, patternIndex + i);
         if (nextOccurrence >= 0 && nextOccurrence < minNext) {
-          ranges = matchSkippingWords(name, patternIndex + i, nextOccurrence, false, isAsciiName);
+          matched = matchSkippingWords(name, patternIndex + i, nextOccurrence, false, isAsciiName, ranges);
 
           // If on the next iteration we go one character back in the pattern and find an occurrence one character back in the name or further,
           // that'd mean we've already failed to match following pattern chars against this name fragment, no need to repeat that
           minNext = nextOccurrence - 1;
         }
         else {
-          ranges = null;
+          matched = false;
         }
       }
-      if (ranges != null) {
-        return prependRange(ranges, nameIndex, i);
+      if (matched) {
+        ranges.prepend(nameIndex, i);
+        return true;
       }
       i--;
     }
-    return null;
+    return false;
   }
 
   /**
    * When pattern is "CU" and the name is "CurrentUser", we already have a prefix "Cu" that matches,
    * but we try to find uppercase "U" later in name for better matching degree
    */
-  private FList<MatcherTextRange> improveCamelHumps(@Nonnull String name, int patternIndex, int nameIndex, boolean isAsciiName, int maxFragment, int minFragment) {
+  private boolean improveCamelHumps(@Nonnull String name, int patternIndex, int nameIndex, boolean isAsciiName, int maxFragment, int minFragment, @Nonnull Ranges ranges) {
     for (int i = minFragment; i < maxFragment; i++) {
       if (isUppercasePatternVsLowercaseNameChar(name, patternIndex + i, nameIndex + i)) {
-        FList<MatcherTextRange> ranges = findUppercaseMatchFurther(name, patternIndex + i, nameIndex + i, isAsciiName);
-        if (ranges != null) {
-          return prependRange(ranges, nameIndex, i);
+        if (findUppercaseMatchFurther(name, patternIndex + i, nameIndex + i, isAsciiName, ranges)) {
+          ranges.prepend(nameIndex, i);
+          return true;
         }
       }
     }
-    return null;
+    return false;
   }
 
   private boolean isUppercasePatternVsLowercaseNameChar(String name, int patternIndex, int nameIndex) {
     return isUpperCase[patternIndex] && myPattern[patternIndex] != name.charAt(nameIndex);
   }
 
-  private FList<MatcherTextRange> findUppercaseMatchFurther(String name, int patternIndex, int nameIndex, boolean isAsciiName) {
+  private boolean findUppercaseMatchFurther(String name, int patternIndex, int nameIndex, boolean isAsciiName, @Nonnull Ranges ranges) {
     int nextWordStart = indexOfWordStart(name, patternIndex, nameIndex);
-    return matchWildcards(name, patternIndex, nextWordStart, isAsciiName);
+    return matchWildcards(name, patternIndex, nextWordStart, isAsciiName, ranges);
   }
 
   private boolean isFirstCharMatching(@Nonnull String name, int nameIndex, int patternIndex) {
@@ -550,4 +615,70 @@ class MinusculeMatcherImpl extends MinusculeMatcher {
     return "MinusculeMatcherImpl{myPattern=" + new String(myPattern) + ", myOptions=" + myOptions + '}';
   }
 
+  /**
+   * Fixed-size buffer of matched ranges. Ranges are added from the end of the name to its start,
+   * the same order in which {@link FList#prepend} was used to build them.
+   */
+  private static final class Ranges {
+    private final int[] myStarts;
+    private final int[] myEnds;
+    private int mySize;
+
+    Ranges(int capacity) {
+      myStarts = new int[capacity];
+      myEnds = new int[capacity];
+    }
+
+    @Nonnull
+    static Ranges of(@Nonnull FList<? extends MatcherTextRange> fragments) {
+      int size = fragments.size();
+      Ranges ranges = new Ranges(size);
+      int index = size;
+      for (MatcherTextRange range : fragments) {
+        index--;
+        ranges.myStarts[index] = range.getStartOffset();
+        ranges.myEnds[index] = range.getEndOffset();
+      }
+      ranges.mySize = size;
+      return ranges;
+    }
+
+    void clear() {
+      mySize = 0;
+    }
+
+    void prepend(int from, int length) {
+      if (mySize > 0 && myStarts[mySize - 1] == from + length) {
+        myStarts[mySize - 1] = from;
+        return;
+      }
+      myStarts[mySize] = from;
+      myEnds[mySize] = from + length;
+      mySize++;
+    }
+
+    int size() {
+      return mySize;
+    }
+
+    /**
+     * @param index index of the range counting from the start of the name
+     */
+    int getStartOffset(int index) {
+      return myStarts[mySize - 1 - index];
+    }
+
+    int getEndOffset(int index) {
+      return myEnds[mySize - 1 - index];
+    }
+
+    @Nonnull
+    FList<MatcherTextRange> toFList() {
+      FList<MatcherTextRange> result = FList.emptyList();
+      for (int i = 0; i < mySize; i++) {
+        result = result.prepend(new MatcherTextRange(myStarts[i], myEnds[i]));
+      }
+      return result;
+    }
+  }
 }
@@ -2,6 +2,7 @@
 package consulo.application.impl.internal;
 
 import consulo.application.AccessToken;
+import consulo.application.impl.internal.performance.LockContentionProfiler;
 import consulo.application.impl.internal.progress.CoreProgressManager;
 import consulo.application.impl.internal.progress.ProgressIndicatorUtils;
 import consulo.application.progress.ProgressIndicator;
@@ -47,6 +48,8 @@ public final class ReadMostlyRWLock {
   // time stamp (nanoTime) of the last check for dead reader threads in writeUnlock().
   // (we have to reduce frequency of this "dead readers GC" activity because Thread.isAlive() turned out to be too expensive)
   private volatile long deadReadersGCStamp;
+  // time stamp (nanoTime) when the write lock was acquired, 0 if LockContentionProfiler is disabled. Accessed by the write thread only.
+  private long writeAcquiredStamp;
 
   public ReadMostlyRWLock(@Nullable Thread writeThread) {
   }
@@ -60,6 +63,7 @@ public final class ReadMostlyRWLock {
     private volatile boolean blocked;
       // this reader is blocked waiting for the writer thread to release write lock. Written by reader thread only, read by writer.
     private boolean impatientReads; // true if should throw PCE on contented read lock
+    private long readAcquiredStamp; // nanoTime when read lock was acquired, 0 if LockContentionProfiler is disabled. Accessed by reader thread only.
 
     Reader(@Nonnull Thread readerThread) {
       thread = readerThread;
@@ -96,6 +100,7 @@ public final class ReadMostlyRWLock {
     throwIfImpatient(status);
     if (status.readRequested) return null;
 
+    long start = LockContentionProfiler.isEnabled() ? System.nanoTime() : 0;
     if (!tryReadLock(status)) {
       ProgressIndicator progress = ProgressManager.getGlobalProgressIndicator();
       for (int iter = 0; ; iter++) {
@@ -109,9 +114,18 @@ public final class ReadMostlyRWLock {
         waitABit(status, iter);
       }
     }
+    if (start != 0) {
+      readAcquired(status, start);
+    }
     return status;
   }
 
+  private static void readAcquired(Reader status, long start) {
+    long now = System.nanoTime();
+    LockContentionProfiler.readAcquired(now - start);
+    status.readAcquiredStamp = now;
+  }
+
   // return tristate: null means lock already acquired, Reader with readRequested==true means lock was successfully acquired, Reader with readRequested==false means lock was not acquired
   public Reader startTryRead() {
     if (Thread.currentThread() == writeThread) return null;
@@ -119,12 +133,18 @@ public final class ReadMostlyRWLock {
     throwIfImpatient(status);
     if (status.readRequested) return null;
 
-    tryReadLock(status);
+    if (tryReadLock(status) && LockContentionProfiler.isEnabled()) {
+      readAcquired(status, System.nanoTime());
+    }
     return status;
   }
 
   public void endRead(Reader status) {
     checkReadThreadAccess();
+    if (status.readAcquiredStamp != 0) {
+      LockContentionProfiler.readReleased(System.nanoTime() - status.readAcquiredStamp);
+      status.readAcquiredStamp = 0;
+    }
     status.readRequested = false;
     if (writeRequested) {
       LockSupport.unpark(writeThread);  // parked by writeLock()
@@ -195,12 +215,16 @@ public final class ReadMostlyRWLock {
   public void writeIntentLock() {
     //checkWriteThreadAccess();
     writeIntendedThread = Thread.currentThread();
+    long start = LockContentionProfiler.isEnabled() ? System.nanoTime() : 0;
     for (int iter = 0; ; iter++) {
       if (writeIntent.compareAndSet(false, true)) {
         assert !writeRequested;
         assert !writeAcquired;
 
         writeThread = Thread.currentThread();
+        if (start != 0) {
+          LockContentionProfiler.writeIntentAcquired(System.nanoTime() - start);
+        }
         break;
       }
 
@@ -230,13 +254,23 @@ public final class ReadMostlyRWLock {
     assert !writeAcquired;
 
     writeRequested = true;
+    long start = LockContentionProfiler.isEnabled() ? System.nanoTime() : 0;
+    List<String> blockingSites = null;
     for (int iter = 0; ; iter++) {
       if (areAllReadersIdle()) {
         writeAcquired = true;
+        if (start != 0) {
+          long now = System.nanoTime();
+          LockContentionProfiler.writeAcquired(now - start, blockingSites);
+          writeAcquiredStamp = now;
+        }
         break;
       }
 
       if (iter > SPIN_TO_WAIT_FOR_LOCK) {
+        if (start != 0 && LockContentionProfiler.shouldSample(System.nanoTime() - start, blockingSites == null ? 0 : blockingSites.size())) {
+          blockingSites = sampleBlockingReaders(blockingSites);
+        }
         LockSupport.parkNanos(this, 1_000_000);  // unparked by readUnlock
       }
       else {
@@ -259,8 +293,30 @@ public final class ReadMostlyRWLock {
     };
   }
 
+  // every sample adds exactly one site, so the number of samples taken is known to the caller
+  private List<String> sampleBlockingReaders(@Nullable List<String> sites) {
+    if (sites == null) {
+      sites = new ArrayList<>();
+    }
+    String site = null;
+    for (Reader reader : readers) {
+      if (reader.readRequested) {
+        site = LockContentionProfiler.captureSite(reader.thread);
+        if (site != null) {
+          break;
+        }
+      }
+    }
+    sites.add(site != null ? site : "<unknown>");
+    return sites;
+  }
+
   public void writeUnlock() {
     checkWriteThreadAccess();
+    if (writeAcquiredStamp != 0) {
+      LockContentionProfiler.writeReleased(System.nanoTime() - writeAcquiredStamp);
+      writeAcquiredStamp = 0;
+    }
     writeAcquired = false;
     writeRequested = false;
     List<Reader> dead;
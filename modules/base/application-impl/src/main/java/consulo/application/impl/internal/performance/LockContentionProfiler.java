@@ -0,0 +1,274 @@
+/*
+ * Copyright 2013-2026 consulo.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package consulo.application.impl.internal.performance;
+
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Opt-in recorder of application read/write lock latencies.
+ * <p>
+ * Collects acquisition waits and hold durations of read, write-intent and write locks. While the writer waits for readers,
+ * stacks of the readers holding the lock are sampled, so the wait time can be attributed to the read action call sites.
+ * <p>
+ * Disabled by default, enabled by {@code -Dconsulo.lock.contention.profiler=true} or {@link #setEnabled}.
+ * When disabled, the lock pays only for a volatile read per operation.
+ */
+public final class LockContentionProfiler {
+  /**
+   * Writer wait after which stacks of blocking readers are captured first time
+   */
+  private static final long FIRST_SAMPLE_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+  /**
+   * Interval between captures during the same writer wait
+   */
+  private static final long SAMPLE_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+  private static final int MAX_SAMPLES_PER_WAIT = 5;
+  private static final int MAX_SITES = 1000;
+  private static final int SITE_DEPTH = 3;
+
+  private static volatile boolean ourEnabled = Boolean.getBoolean("consulo.lock.contention.profiler");
+  private static volatile long ourStartedMillis = System.currentTimeMillis();
+
+  private static final Stat ourReadWait = new Stat();
+  private static final Stat ourReadHold = new Stat();
+  private static final Stat ourWriteIntentWait = new Stat();
+  private static final Stat ourWriteWait = new Stat();
+  private static final Stat ourWriteHold = new Stat();
+  private static final Map<String, BlockingSite> ourBlockingSites = new ConcurrentHashMap<>();
+
+  private LockContentionProfiler() {
+  }
+
+  public static boolean isEnabled() {
+    return ourEnabled;
+  }
+
+  public static void setEnabled(boolean enabled) {
+    if (enabled && !ourEnabled) {
+      reset();
+    }
+    ourEnabled = enabled;
+  }
+
+  public static void reset() {
+    ourReadWait.reset();
+    ourReadHold.reset();
+    ourWriteIntentWait.reset();
+    ourWriteWait.reset();
+    ourWriteHold.reset();
+    ourBlockingSites.clear();
+    ourStartedMillis = System.currentTimeMillis();
+  }
+
+  public static void readAcquired(long waitNanos) {
+    ourReadWait.add(waitNanos);
+  }
+
+  public static void readReleased(long holdNanos) {
+    ourReadHold.add(holdNanos);
+  }
+
+  public static void writeIntentAcquired(long waitNanos) {
+    ourWriteIntentWait.add(waitNanos);
+  }
+
+  public static void writeReleased(long holdNanos) {
+    ourWriteHold.add(holdNanos);
+  }
+
+  /**
+   * @param waitNanos        how long the writer has been waiting
+   * @param samplesTaken     how many times readers were already sampled during this wait
+   * @return true if blocking readers should be sampled now
+   */
+  public static boolean shouldSample(long waitNanos, int samplesTaken) {
+    return samplesTaken < MAX_SAMPLES_PER_WAIT && waitNanos >= FIRST_SAMPLE_NANOS + samplesTaken * SAMPLE_INTERVAL_NANOS;
+  }
+
+  /**
+   * @return call site key of the read action the given reader thread is running, or null if it can't be determined
+   */
+  @Nullable
+  public static String captureSite(@Nonnull Thread reader) {
+    StackTraceElement[] stack = reader.getStackTrace();
+    StringBuilder site = new StringBuilder();
+    int depth = 0;
+    for (StackTraceElement element : stack) {
+      if (isInfrastructure(element.getClassName())) {
+        continue;
+      }
+      if (depth > 0) {
+        site.append(" <- ");
+      }
+      site.append(element.getClassName()).append('.').append(element.getMethodName());
+      if (element.getLineNumber() >= 0) {
+        site.append(':').append(element.getLineNumber());
+      }
+      if (++depth == SITE_DEPTH) {
+        break;
+      }
+    }
+    return depth == 0 ? null : site.toString();
+  }
+
+  private static boolean isInfrastructure(@Nonnull String className) {
+    return className.startsWith("java.") ||
+           className.startsWith("jdk.") ||
+           className.startsWith("sun.") ||
+           className.startsWith("consulo.application.impl.internal.") ||
+           className.startsWith("consulo.application.internal.") ||
+           className.startsWith("consulo.application.util.ReadActionProcessor") ||
+           className.startsWith("consulo.util.concurrent.");
+  }
+
+  /**
+   * @param sites call sites of readers sampled while the writer was waiting, the wait is split between them
+   */
+  public static void writeAcquired(long waitNanos, @Nullable List<String> sites) {
+    ourWriteWait.add(waitNanos);
+    if (sites == null || sites.isEmpty()) {
+      return;
+    }
+
+    long share = waitNanos / sites.size();
+    for (String site : sites) {
+      BlockingSite blockingSite = ourBlockingSites.get(site);
+      if (blockingSite == null) {
+        if (ourBlockingSites.size() >= MAX_SITES) {
+          continue;
+        }
+        blockingSite = ourBlockingSites.computeIfAbsent(site, BlockingSite::new);
+      }
+      blockingSite.myCount.increment();
+      blockingSite.myBlockedNanos.add(share);
+    }
+  }
+
+  /**
+   * @return blocking call sites, the worst first
+   */
+  @Nonnull
+  public static List<BlockingSite> getBlockingSites() {
+    List<BlockingSite> sites = new ArrayList<>(ourBlockingSites.values());
+    sites.sort((o1, o2) -> Long.compare(o2.getBlockedNanos(), o1.getBlockedNanos()));
+    return sites;
+  }
+
+  @Nonnull
+  public static String dump() {
+    return dump(site -> null, 50);
+  }
+
+  /**
+   * @param siteOwner returns a description of the site owner (e.g. a plugin) by the class name of the site top frame
+   */
+  @Nonnull
+  public static String dump(@Nonnull Function<String, String> siteOwner, int maxSites) {
+    StringBuilder builder = new StringBuilder();
+    builder.append("Lock contention since ").append(new Date(ourStartedMillis)).append(ourEnabled ? "" : " (profiler is disabled)").append('\n');
+    builder.append("  read wait:         ").append(ourReadWait).append('\n');
+    builder.append("  read hold:         ").append(ourReadHold).append('\n');
+    builder.append("  write intent wait: ").append(ourWriteIntentWait).append('\n');
+    builder.append("  write wait:        ").append(ourWriteWait).append('\n');
+    builder.append("  write hold:        ").append(ourWriteHold).append('\n');
+
+    List<BlockingSite> sites = getBlockingSites();
+    builder.append("Read actions blocking write lock (").append(sites.size()).append(" sites):\n");
+    for (int i = 0; i < Math.min(maxSites, sites.size()); i++) {
+      BlockingSite site = sites.get(i);
+      builder.append("  ").append(TimeUnit.NANOSECONDS.toMillis(site.getBlockedNanos())).append(" ms, ");
+      builder.append(site.getCount()).append(" samples");
+      String owner = siteOwner.apply(site.getTopClassName());
+      if (owner != null) {
+        builder.append(", ").append(owner);
+      }
+      builder.append(": ").append(site.getSite()).append('\n');
+    }
+    return builder.toString();
+  }
+
+  public static final class BlockingSite {
+    private final String mySite;
+    private final LongAdder myCount = new LongAdder();
+    private final LongAdder myBlockedNanos = new LongAdder();
+
+    private BlockingSite(@Nonnull String site) {
+      mySite = site;
+    }
+
+    @Nonnull
+    public String getSite() {
+      return mySite;
+    }
+
+    @Nonnull
+    public String getTopClassName() {
+      int end = mySite.indexOf(" <- ");
+      String frame = end < 0 ? mySite : mySite.substring(0, end);
+      int method = frame.lastIndexOf('.', frame.indexOf(':') < 0 ? frame.length() : frame.indexOf(':'));
+      return method < 0 ? frame : frame.substring(0, method);
+    }
+
+    public long getCount() {
+      return myCount.sum();
+    }
+
+    public long getBlockedNanos() {
+      return myBlockedNanos.sum();
+    }
+  }
+
+  private static final class Stat {
+    private final LongAdder myCount = new LongAdder();
+    private final LongAdder myTotalNanos = new LongAdder();
+    private final AtomicLong myMaxNanos = new AtomicLong();
+
+    void add(long nanos) {
+      myCount.increment();
+      myTotalNanos.add(nanos);
+      long max = myMaxNanos.get();
+      while (nanos > max && !myMaxNanos.compareAndSet(max, nanos)) {
+        max = myMaxNanos.get();
+      }
+    }
+
+    void reset() {
+      myCount.reset();
+      myTotalNanos.reset();
+      myMaxNanos.set(0);
+    }
+
+    @Override
+    public String toString() {
+      long count = myCount.sum();
+      long total = myTotalNanos.sum();
+      return count + " times, total " + TimeUnit.NANOSECONDS.toMillis(total) + " ms" +
+             ", avg " + (count == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(total / count)) + " us" +
+             ", max " + TimeUnit.NANOSECONDS.toMillis(myMaxNanos.get()) + " ms";
+    }
+  }
+}
@@ -263,6 +263,9 @@ public class PerformanceWatcher implements Disposable {
     ThreadDump threadDump = ThreadDumper.getThreadDumpInfo(ThreadDumper.getThreadInfos());
     try {
       FileUtil.writeToFile(file, threadDump.getRawDump());
+      if (LockContentionProfiler.isEnabled()) {
+        FileUtil.writeToFile(new File(dir, file.getName().replace("threadDump-", "lockContention-")), LockContentionProfiler.dump());
+      }
       StackTraceElement[] edtStack = threadDump.getEDTStackTrace();
       if (edtStack != null) {
         if (myStacktraceCommonPart == null) {
@@ -111,9 +111,45 @@ public abstract class CachedValueBase<T> implements CachaValueEx<T> {
     if (data.trackingInfo != null) {
       data.trackingInfo.onValueInvalidated();
     }
+    if (CachedValueStatistics.isEnabled() && !data.myInvalidationReported) {
+      data.myInvalidationReported = true;
+      reportInvalidation(data);
+    }
     return false;
   }
 
+  private void reportInvalidation(@Nonnull Data<T> data) {
+    for (int i = 0; i < data.myDependencies.length; i++) {
+      Object dependency = data.myDependencies[i];
+      if (isDependencyOutOfDate(dependency, data.myTimeStamps[i])) {
+        CachedValueStatistics.invalidated(getValueProvider(), describeDependency(dependency));
+        return;
+      }
+    }
+  }
+
+  @Nonnull
+  private static String describeDependency(@Nonnull Object dependency) {
+    if (dependency instanceof CachedValueBase) {
+      return "CachedValue{" + ((CachedValueBase<?>)dependency).getValueProvider().getClass().getName() + "}";
+    }
+    Object original = dependency instanceof Reference ? ((Reference<?>)dependency).get()
+                      : dependency instanceof SimpleReference ? ((SimpleReference<?>)dependency).get()
+                      : dependency;
+    return original == null ? "collected reference" : original.getClass().getName();
+  }
+
+  @Nonnull
+  private Data<T> computeDataWithStatistics(Supplier<? extends CachedValueProvider.Result<T>> doCompute) {
+    if (!CachedValueStatistics.isEnabled()) {
+      return computeData(doCompute);
+    }
+    long start = System.nanoTime();
+    Data<T> data = computeData(doCompute);
+    CachedValueStatistics.computed(getValueProvider(), System.nanoTime() - start, data.myValue);
+    return data;
+  }
+
   @Nullable
   private Data<T> getRawData() {
     return SoftReference.dereference(myData);
@@ -196,6 +232,7 @@ public abstract class CachedValueBase<T> implements CachaValueEx<T> {
     private final Object[] myDependencies;
     @Nonnull
     private final long[] myTimeStamps;
+    private volatile boolean myInvalidationReported;
     final
     @Nullable
     CachedValueProfiler.ValueTracker trackingInfo;
@@ -234,6 +271,9 @@ public abstract class CachedValueBase<T> implements CachaValueEx<T> {
   protected <P> T getValueWithLock(P param) {
     Data<T> data = getUpToDateOrNull();
     if (data != null) {
+      if (CachedValueStatistics.isEnabled()) {
+        CachedValueStatistics.hit(getValueProvider());
+      }
       if (myCachedValuesFactory.areRandomChecksEnabled()) {
         myCachedValuesFactory.applyForRandomCheck(data, getValueProvider(), () -> computeData(() -> doCompute(param)));
       }
@@ -242,7 +282,7 @@ public abstract class CachedValueBase<T> implements CachaValueEx<T> {
 
     RecursionGuard.StackStamp stamp = RecursionManager.markStack();
 
-    Supplier<Data<T>> calcData = () -> computeData(() -> doCompute(param));
+    Supplier<Data<T>> calcData = () -> computeDataWithStatistics(() -> doCompute(param));
     data = RecursionManager.doPreventingRecursion(this, true, calcData);
     if (data == null) {
       data = calcData.get();
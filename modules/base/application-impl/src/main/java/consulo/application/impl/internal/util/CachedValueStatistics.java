@@ -0,0 +1,213 @@
+/*
+ * Copyright 2013-2026 consulo.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package consulo.application.impl.internal.util;
+
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Aggregated statistics of {@link CachedValueBase} usage per value provider class:
+ * hits, recomputations and their inclusive time, dependencies which caused invalidations and estimated size of computed values.
+ * <p>
+ * Disabled by default, enabled by {@code -Dconsulo.cached.value.statistics=true} or {@link #setEnabled}.
+ */
+public final class CachedValueStatistics {
+  private static final int MAX_PROVIDERS = 10_000;
+
+  private static volatile boolean ourEnabled = Boolean.getBoolean("consulo.cached.value.statistics");
+
+  // keyed by class name, not to keep classes of unloaded plugins
+  private static final Map<String, ProviderStatistics> ourStatistics = new ConcurrentHashMap<>();
+
+  private CachedValueStatistics() {
+  }
+
+  public static boolean isEnabled() {
+    return ourEnabled;
+  }
+
+  public static void setEnabled(boolean enabled) {
+    ourEnabled = enabled;
+  }
+
+  public static void reset() {
+    ourStatistics.clear();
+  }
+
+  static void hit(@Nonnull Object provider) {
+    ProviderStatistics statistics = getOrCreate(provider);
+    if (statistics != null) {
+      statistics.myHits.increment();
+    }
+  }
+
+  static void computed(@Nonnull Object provider, long nanos, @Nullable Object value) {
+    ProviderStatistics statistics = getOrCreate(provider);
+    if (statistics != null) {
+      statistics.myMisses.increment();
+      statistics.myComputeNanos.add(nanos);
+      statistics.myValueSize.add(estimateSize(value));
+    }
+  }
+
+  static void invalidated(@Nonnull Object provider, @Nonnull String dependency) {
+    ProviderStatistics statistics = getOrCreate(provider);
+    if (statistics != null) {
+      statistics.myInvalidations.computeIfAbsent(dependency, d -> new LongAdder()).increment();
+    }
+  }
+
+  @Nullable
+  private static ProviderStatistics getOrCreate(@Nonnull Object provider) {
+    String name = provider.getClass().getName();
+    ProviderStatistics statistics = ourStatistics.get(name);
+    if (statistics == null && ourStatistics.size() < MAX_PROVIDERS) {
+      statistics = ourStatistics.computeIfAbsent(name, ProviderStatistics::new);
+    }
+    return statistics;
+  }
+
+  /**
+   * Number of elements for arrays, collections, maps and strings, 1 for other values, 0 for null.
+   * Computing real retained size would require walking the object graph, which is too expensive to do on each computation.
+   */
+  private static long estimateSize(@Nullable Object value) {
+    if (value == null) return 0;
+    if (value instanceof Collection) return ((Collection<?>)value).size();
+    if (value instanceof Map) return ((Map<?, ?>)value).size();
+    if (value instanceof CharSequence) return ((CharSequence)value).length();
+    if (value instanceof Object[]) return ((Object[])value).length;
+    return 1;
+  }
+
+  /**
+   * @return statistics of all providers, the most expensive first
+   */
+  @Nonnull
+  public static List<ProviderStatistics> getStatistics() {
+    List<ProviderStatistics> result = new ArrayList<>(ourStatistics.values());
+    result.sort((o1, o2) -> Long.compare(o2.getComputeNanos(), o1.getComputeNanos()));
+    return result;
+  }
+
+  @Nonnull
+  public static String dump(int maxProviders) {
+    List<ProviderStatistics> statistics = getStatistics();
+    StringBuilder builder = new StringBuilder();
+    builder.append("Cached value statistics, ").append(statistics.size()).append(" providers").append(ourEnabled ? "" : " (disabled)").append('\n');
+    for (int i = 0; i < Math.min(maxProviders, statistics.size()); i++) {
+      ProviderStatistics provider = statistics.get(i);
+      builder.append(provider.getProviderClassName()).append('\n');
+      builder.append("  hits: ").append(provider.getHits());
+      builder.append(", misses: ").append(provider.getMisses());
+      builder.append(String.format(Locale.US, ", hit ratio: %.2f", provider.getHitRatio()));
+      builder.append(", compute: ").append(TimeUnit.NANOSECONDS.toMillis(provider.getComputeNanos())).append(" ms");
+      builder.append(", avg value size: ").append(provider.getMisses() == 0 ? 0 : provider.getValueSize() / provider.getMisses()).append('\n');
+      for (Map.Entry<String, Long> entry : provider.getInvalidations().entrySet()) {
+        builder.append("  invalidated by ").append(entry.getKey()).append(": ").append(entry.getValue()).append('\n');
+      }
+    }
+    return builder.toString();
+  }
+
+  /**
+   * Writes one line per provider and invalidating dependency, suitable for spreadsheets.
+   */
+  public static void exportCsv(@Nonnull Writer writer) throws IOException {
+    writer.write("provider,hits,misses,compute_ms,value_size,dependency,invalidations\n");
+    for (ProviderStatistics provider : getStatistics()) {
+      String prefix = provider.getProviderClassName() + ',' +
+                      provider.getHits() + ',' +
+                      provider.getMisses() + ',' +
+                      TimeUnit.NANOSECONDS.toMillis(provider.getComputeNanos()) + ',' +
+                      provider.getValueSize() + ',';
+      Map<String, Long> invalidations = provider.getInvalidations();
+      if (invalidations.isEmpty()) {
+        writer.write(prefix + ",0\n");
+      }
+      for (Map.Entry<String, Long> entry : invalidations.entrySet()) {
+        writer.write(prefix + entry.getKey() + ',' + entry.getValue() + '\n');
+      }
+    }
+  }
+
+  public static final class ProviderStatistics {
+    private final String myProviderClassName;
+    private final LongAdder myHits = new LongAdder();
+    private final LongAdder myMisses = new LongAdder();
+    private final LongAdder myComputeNanos = new LongAdder();
+    private final LongAdder myValueSize = new LongAdder();
+    private final Map<String, LongAdder> myInvalidations = new ConcurrentHashMap<>();
+
+    private ProviderStatistics(@Nonnull String providerClassName) {
+      myProviderClassName = providerClassName;
+    }
+
+    @Nonnull
+    public String getProviderClassName() {
+      return myProviderClassName;
+    }
+
+    public long getHits() {
+      return myHits.sum();
+    }
+
+    public long getMisses() {
+      return myMisses.sum();
+    }
+
+    public double getHitRatio() {
+      long hits = getHits();
+      long total = hits + getMisses();
+      return total == 0 ? 0 : (double)hits / total;
+    }
+
+    /**
+     * @return total computation time, including computations of other cached values made inside
+     */
+    public long getComputeNanos() {
+      return myComputeNanos.sum();
+    }
+
+    /**
+     * @return sum of estimated sizes of all computed values
+     */
+    public long getValueSize() {
+      return myValueSize.sum();
+    }
+
+    /**
+     * @return invalidation counts by description of the dependency which was out of date, the most frequent first
+     */
+    @Nonnull
+    public Map<String, Long> getInvalidations() {
+      List<Map.Entry<String, LongAdder>> entries = new ArrayList<>(myInvalidations.entrySet());
+      entries.sort((o1, o2) -> Long.compare(o2.getValue().sum(), o1.getValue().sum()));
+      Map<String, Long> result = new LinkedHashMap<>();
+      for (Map.Entry<String, LongAdder> entry : entries) {
+        result.put(entry.getKey(), entry.getValue().sum());
+      }
+      return result;
+    }
+  }
+}
@@ -66,6 +66,9 @@ public final class CachedValuesManagerImpl extends CachedValuesManager {
     if (value instanceof CachedValueBase && ((CachedValueBase<?>)value).isFromMyProject(myProject)) {
       Supplier<T> data = value.getUpToDateOrNull();
       if (data != null) {
+        if (CachedValueStatistics.isEnabled()) {
+          CachedValueStatistics.hit(value.getValueProvider());
+        }
         return data.get();
       }
       try {
@@ -31,6 +31,14 @@ public interface ArchivePackageWriter<ArchiveObject> {
 
   void addDirectory(@Nonnull ArchiveObject archiveObject, @Nonnull String relativePath) throws IOException;
 
+  /**
+   * Adds directory entry with fixed modification time. Used for reproducible archives, writers which can't store time of directory entries
+   * may ignore {@code lastModified}
+   */
+  default void addDirectory(@Nonnull ArchiveObject archiveObject, @Nonnull String relativePath, long lastModified) throws IOException {
+    addDirectory(archiveObject, relativePath);
+  }
+
   void addFile(@Nonnull ArchiveObject archiveObject, @Nonnull InputStream stream, @Nonnull String relativePath, long fileLength, long lastModified)
           throws IOException;
 
@@ -39,7 +39,15 @@ public class ZipArchivePackagingElement extends ArchivePackagingElement {
 
     @Override
     public void addDirectory(@Nonnull ZipOutputStream zipOutputStream, @Nonnull String relativePath) throws IOException {
+      addDirectory(zipOutputStream, relativePath, -1);
+    }
+
+    @Override
+    public void addDirectory(@Nonnull ZipOutputStream zipOutputStream, @Nonnull String relativePath, long lastModified) throws IOException {
       ZipEntry e = new ZipEntry(relativePath);
+      if (lastModified != -1) {
+        e.setTime(lastModified);
+      }
       e.setMethod(ZipEntry.STORED);
       e.setSize(0);
       e.setCrc(0);
@@ -42,6 +42,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.function.Predicate;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
@@ -57,6 +58,13 @@ public class ArtifactCompilerUtil {
 
   @Nonnull
   public static Pair<InputStream, Long> getArchiveEntryInputStream(VirtualFile sourceFile, final CompileContext context) throws IOException {
+    return getArchiveEntryInputStream(sourceFile, error -> context.addMessage(CompilerMessageCategory.ERROR, error, null, -1, -1));
+  }
+
+  /**
+   * @param errorConsumer receives errors instead of a compile context, e.g. to report them later from another thread
+   */
+  public static Pair<InputStream, Long> getArchiveEntryInputStream(VirtualFile sourceFile, @Nonnull Consumer<String> errorConsumer) throws IOException {
     final String fullPath = sourceFile.getPath();
     final int jarEnd = fullPath.indexOf(ArchiveFileSystem.ARCHIVE_SEPARATOR);
     LOG.assertTrue(jarEnd != -1, fullPath);
@@ -65,7 +73,8 @@ public class ArtifactCompilerUtil {
     final ZipFile jarFile = new ZipFile(new File(FileUtil.toSystemDependentName(jarPath)));
     final ZipEntry entry = jarFile.getEntry(pathInJar);
     if (entry == null) {
-      context.addMessage(CompilerMessageCategory.ERROR, "Cannot extract '" + pathInJar + "' from '" + jarFile.getName() + "': entry not found", null, -1, -1);
+      errorConsumer.accept("Cannot extract '" + pathInJar + "' from '" + jarFile.getName() + "': entry not found");
+      jarFile.close();
       return Pair.empty();
     }
 
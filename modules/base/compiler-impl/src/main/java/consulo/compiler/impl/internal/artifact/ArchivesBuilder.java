@@ -16,11 +16,15 @@
 
 package consulo.compiler.impl.internal.artifact;
 
+import consulo.application.Application;
+import consulo.application.concurrent.ApplicationConcurrency;
+import consulo.application.util.registry.Registry;
 import consulo.compiler.CompileContext;
 import consulo.compiler.CompilerBundle;
 import consulo.compiler.CompilerMessageCategory;
 import consulo.compiler.artifact.element.*;
 import consulo.compiler.impl.internal.ArtifactCompilerUtil;
+import consulo.component.ProcessCanceledException;
 import consulo.component.util.graph.CachingSemiGraph;
 import consulo.component.util.graph.DFSTBuilder;
 import consulo.component.util.graph.GraphGenerator;
@@ -37,6 +41,12 @@ import jakarta.annotation.Nullable;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+import java.util.zip.ZipOutputStream;
 
 /**
  * @author nik
@@ -44,12 +54,35 @@ import java.util.*;
 public class ArchivesBuilder {
   public static final Logger LOGGER = Logger.getInstance(ArchivesBuilder.class);
 
+  private static final String PARALLEL_BUILD_KEY = "compiler.archives.parallel.build";
+  private static final String STORE_ONLY_KEY = "compiler.archives.store.only";
+  private static final String REPRODUCIBLE_KEY = "compiler.archives.reproducible";
+
+  /**
+   * 1980-01-01 00:00 local time, the minimal value which may be encoded as DOS time inside zip entries
+   */
+  private static final long REPRODUCIBLE_TIMESTAMP = new GregorianCalendar(1980, Calendar.JANUARY, 1).getTimeInMillis();
+
   private final Set<ArchivePackageInfo> myArchivesToBuild;
   private final FileFilter myFileFilter;
   private final CompileContext myContext;
+  private final boolean myStoreOnly;
+  private final boolean myReproducible;
   private Map<ArchivePackageInfo, File> myBuiltArchives;
 
   public ArchivesBuilder(@Nonnull Set<ArchivePackageInfo> archivesToBuild, @Nonnull FileFilter fileFilter, @Nonnull CompileContext context) {
+    this(archivesToBuild, fileFilter, context, Registry.is(STORE_ONLY_KEY), Registry.is(REPRODUCIBLE_KEY));
+  }
+
+  /**
+   * @param storeOnly    if true, entries are written without compression. Useful for fast local deployments
+   * @param reproducible if true, entries are written in stable order and without file timestamps, so equal inputs produce byte-identical archives
+   */
+  public ArchivesBuilder(@Nonnull Set<ArchivePackageInfo> archivesToBuild,
+                         @Nonnull FileFilter fileFilter,
+                         @Nonnull CompileContext context,
+                         boolean storeOnly,
+                         boolean reproducible) {
     DependentArchivesEvaluator evaluator = new DependentArchivesEvaluator();
     for (ArchivePackageInfo archivePackageInfo : archivesToBuild) {
       evaluator.addArchiveWithDependencies(archivePackageInfo);
@@ -57,6 +90,8 @@ public class ArchivesBuilder {
     myArchivesToBuild = evaluator.getArchivePackageInfos();
     myFileFilter = fileFilter;
     myContext = context;
+    myStoreOnly = storeOnly;
+    myReproducible = reproducible;
   }
 
   public boolean buildArchives(Set<String> writtenPaths) throws IOException {
@@ -67,11 +102,22 @@ public class ArchivesBuilder {
       return false;
     }
 
-    myBuiltArchives = new HashMap<>();
+    myBuiltArchives = new ConcurrentHashMap<>();
     try {
-      for (ArchivePackageInfo archivePackageInfo : sortedArchives) {
-        myContext.getProgressIndicator().checkCanceled();
-        buildArchive(archivePackageInfo);
+      if (sortedArchives.length > 1 && Registry.is(PARALLEL_BUILD_KEY)) {
+        buildArchivesInParallel(sortedArchives);
+      }
+      else {
+        for (ArchivePackageInfo archivePackageInfo : sortedArchives) {
+          myContext.getProgressIndicator().checkCanceled();
+          ArchiveBuild build = new ArchiveBuild(archivePackageInfo, false);
+          try {
+            buildArchive(build);
+          }
+          finally {
+            build.reportErrors();
+          }
+        }
       }
 
       myContext.getProgressIndicator().setText(CompilerBundle.message("packaging.compiler.message.copying.archives"));
@@ -85,6 +131,110 @@ public class ArchivesBuilder {
     return true;
   }
 
+  /**
+   * Archives are split into waves: each archive is placed into the wave after the last wave containing one of its nested archives.
+   * Archives of one wave don't depend on each other, so they are built simultaneously, while waves are processed one by one.
+   * <p/>
+   * Compile context and progress indicator are used from the calling thread only: pool threads collect errors into their {@link ArchiveBuild},
+   * they're reported after the wave is joined.
+   */
+  private void buildArchivesInParallel(@Nonnull ArchivePackageInfo[] sortedArchives) throws IOException {
+    List<List<ArchivePackageInfo>> waves = splitToWaves(sortedArchives);
+
+    int threads = Math.min(sortedArchives.length, Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+    ApplicationConcurrency concurrency = Application.get().getInstance(ApplicationConcurrency.class);
+    ExecutorService executor = concurrency.createBoundedApplicationPoolExecutor("ArchivesBuilder Pool", concurrency.getExecutorService(), threads);
+    try {
+      for (List<ArchivePackageInfo> wave : waves) {
+        myContext.getProgressIndicator().checkCanceled();
+
+        List<ArchiveBuild> builds = new ArrayList<>(wave.size());
+        List<Future<?>> futures = new ArrayList<>(wave.size());
+        for (ArchivePackageInfo archive : wave) {
+          if (isEmpty(archive)) {
+            reportEmptyArchive(archive);
+            continue;
+          }
+
+          ArchiveBuild build = new ArchiveBuild(archive, true);
+          builds.add(build);
+          futures.add(executor.submit(() -> {
+            myContext.getProgressIndicator().checkCanceled();
+            buildArchive(build);
+            return null;
+          }));
+        }
+
+        // wait for the whole wave even on failure, so temporary archives aren't deleted while they're still written
+        Throwable failure = null;
+        for (int i = 0; i < futures.size(); i++) {
+          myContext.getProgressIndicator().setText(CompilerBundle.message("packaging.compiler.message.building.0", builds.get(i).myArchive.getPresentableDestination()));
+          try {
+            futures.get(i).get();
+          }
+          catch (InterruptedException e) {
+            throw new ProcessCanceledException(e);
+          }
+          catch (ExecutionException e) {
+            if (failure == null) {
+              failure = e.getCause();
+            }
+          }
+        }
+
+        for (ArchiveBuild build : builds) {
+          build.reportErrors();
+        }
+
+        if (failure != null) {
+          rethrow(failure);
+        }
+      }
+    }
+    finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Nonnull
+  private static List<List<ArchivePackageInfo>> splitToWaves(@Nonnull ArchivePackageInfo[] sortedArchives) {
+    Map<ArchivePackageInfo, Integer> waveIndexes = new HashMap<>();
+    List<List<ArchivePackageInfo>> waves = new ArrayList<>();
+    for (ArchivePackageInfo archive : sortedArchives) {
+      int index = 0;
+      for (Pair<String, ArchivePackageInfo> nestedArchive : archive.getPackedArchives()) {
+        Integer nestedIndex = waveIndexes.get(nestedArchive.getSecond());
+        if (nestedIndex != null) {
+          index = Math.max(index, nestedIndex + 1);
+        }
+      }
+      waveIndexes.put(archive, index);
+
+      while (waves.size() <= index) {
+        waves.add(new ArrayList<>());
+      }
+      waves.get(index).add(archive);
+    }
+    return waves;
+  }
+
+  private static void rethrow(@Nonnull Throwable failure) throws IOException {
+    if (failure instanceof IOException) {
+      throw (IOException)failure;
+    }
+    if (failure instanceof RuntimeException) {
+      throw (RuntimeException)failure;
+    }
+    if (failure instanceof Error) {
+      throw (Error)failure;
+    }
+    throw new IOException(failure);
+  }
+
+  private static boolean isEmpty(@Nonnull ArchivePackageInfo archive) {
+    return archive.getPackedFiles().isEmpty() && archive.getPackedArchives().isEmpty();
+  }
+
   private void deleteTemporaryJars() {
     for (File file : myBuiltArchives.values()) {
       FileUtil.delete(file);
@@ -140,15 +290,20 @@ public class ArchivesBuilder {
     return myArchivesToBuild;
   }
 
+  private void reportEmptyArchive(@Nonnull ArchivePackageInfo archive) {
+    myContext.addMessage(CompilerMessageCategory.WARNING, "Archive '" + archive.getPresentableDestination() + "' has no files so it won't be created", null,
+                         -1, -1);
+  }
+
   @SuppressWarnings("unchecked")
-  private <T> void buildArchive(final ArchivePackageInfo archive) throws IOException {
-    if (archive.getPackedFiles().isEmpty() && archive.getPackedArchives().isEmpty()) {
-      myContext.addMessage(CompilerMessageCategory.WARNING, "Archive '" + archive.getPresentableDestination() + "' has no files so it won't be created", null,
-                           -1, -1);
+  private <T> void buildArchive(@Nonnull ArchiveBuild build) throws IOException {
+    ArchivePackageInfo archive = build.myArchive;
+    if (isEmpty(archive)) {
+      reportEmptyArchive(archive);
       return;
     }
 
-    myContext.getProgressIndicator().setText(CompilerBundle.message("packaging.compiler.message.building.0", archive.getPresentableDestination()));
+    build.setText(CompilerBundle.message("packaging.compiler.message.building.0", archive.getPresentableDestination()));
     File tempFile = File.createTempFile("artifactCompiler", "tmp");
 
     myBuiltArchives.put(archive, tempFile);
@@ -166,23 +321,37 @@ public class ArchivesBuilder {
       archiveFile = packageWriter.createArchiveObject(tempFile);
     }
 
+    if (myStoreOnly && archiveFile instanceof ZipOutputStream) {
+      // level 0 deflate blocks are written as is, without requiring crc & size of entries to be known before writing
+      ((ZipOutputStream)archiveFile).setLevel(Deflater.NO_COMPRESSION);
+    }
+
     try {
       final Set<String> writtenPaths = new HashSet<>();
-      for (Pair<String, VirtualFile> pair : archive.getPackedFiles()) {
+      List<Pair<String, VirtualFile>> packedFiles = archive.getPackedFiles();
+      List<Pair<String, ArchivePackageInfo>> packedArchives = archive.getPackedArchives();
+      if (myReproducible) {
+        packedFiles = new ArrayList<>(packedFiles);
+        packedFiles.sort(Comparator.comparing(Pair::getFirst));
+        packedArchives = new ArrayList<>(packedArchives);
+        packedArchives.sort(Comparator.comparing(Pair::getFirst));
+      }
+
+      for (Pair<String, VirtualFile> pair : packedFiles) {
         final VirtualFile sourceFile = pair.getSecond();
         if (sourceFile.isInLocalFileSystem()) {
           File file = VirtualFileUtil.virtualToIoFile(sourceFile);
-          addFileToArchive(archiveFile, packageWriter, file, pair.getFirst(), writtenPaths);
+          addFileToArchive(build, archiveFile, packageWriter, file, pair.getFirst(), writtenPaths);
         }
         else {
-          extractFileAndAddToArchive(archiveFile, packageWriter, sourceFile, pair.getFirst(), writtenPaths);
+          extractFileAndAddToArchive(build, archiveFile, packageWriter, sourceFile, pair.getFirst(), writtenPaths);
         }
       }
 
-      for (Pair<String, ArchivePackageInfo> nestedArchive : archive.getPackedArchives()) {
+      for (Pair<String, ArchivePackageInfo> nestedArchive : packedArchives) {
         File nestedArchiveFile = myBuiltArchives.get(nestedArchive.getSecond());
         if (nestedArchiveFile != null) {
-          addFileToArchive(archiveFile, packageWriter, nestedArchiveFile, nestedArchive.getFirst(), writtenPaths);
+          addFileToArchive(build, archiveFile, packageWriter, nestedArchiveFile, nestedArchive.getFirst(), writtenPaths);
         }
         else {
           LOGGER.debug("nested archive file " + nestedArchive.getFirst() + " for " + archive.getPresentableDestination() + " not found");
@@ -197,30 +366,33 @@ public class ArchivesBuilder {
     }
   }
 
-  private <T> void extractFileAndAddToArchive(@Nonnull T archiveObject,
+  private <T> void extractFileAndAddToArchive(@Nonnull ArchiveBuild build,
+                                              @Nonnull T archiveObject,
                                               @Nonnull ArchivePackageWriter<T> writer,
                                               VirtualFile sourceFile,
                                               String relativePath,
                                               Set<String> writtenPaths) throws IOException {
     relativePath = addParentDirectories(archiveObject, writer, writtenPaths, relativePath);
-    myContext.getProgressIndicator().setText2(relativePath);
+    build.setText2(relativePath);
     if (!writtenPaths.add(relativePath)) return;
 
-    Pair<InputStream, Long> streamLongPair = ArtifactCompilerUtil.getArchiveEntryInputStream(sourceFile, myContext);
+    Pair<InputStream, Long> streamLongPair = ArtifactCompilerUtil.getArchiveEntryInputStream(sourceFile, build.myErrors::add);
     final InputStream input = streamLongPair.getFirst();
     if (input == null) {
       return;
     }
 
     try {
-      writer.addFile(archiveObject, input, relativePath, streamLongPair.getSecond(), ArtifactCompilerUtil.getArchiveFile(sourceFile).lastModified());
+      long lastModified = myReproducible ? REPRODUCIBLE_TIMESTAMP : ArtifactCompilerUtil.getArchiveFile(sourceFile).lastModified();
+      writer.addFile(archiveObject, input, relativePath, streamLongPair.getSecond(), lastModified);
     }
     finally {
       input.close();
     }
   }
 
-  private <T> void addFileToArchive(@Nonnull T archiveObject,
+  private <T> void addFileToArchive(@Nonnull ArchiveBuild build,
+                                    @Nonnull T archiveObject,
                                     @Nonnull ArchivePackageWriter<T> writer,
                                     @Nonnull File file,
                                     @Nonnull String relativePath,
@@ -239,17 +411,17 @@ public class ArchivesBuilder {
 
     relativePath = addParentDirectories(archiveObject, writer, writtenPaths, relativePath);
 
-    myContext.getProgressIndicator().setText2(relativePath);
+    build.setText2(relativePath);
 
     try (FileInputStream fileOutputStream = new FileInputStream(file)) {
-      writer.addFile(archiveObject, fileOutputStream, relativePath, file.length(), file.lastModified());
+      writer.addFile(archiveObject, fileOutputStream, relativePath, file.length(), myReproducible ? REPRODUCIBLE_TIMESTAMP : file.lastModified());
     }
   }
 
-  private static <T> String addParentDirectories(@Nonnull T archiveObject,
-                                                 @Nonnull ArchivePackageWriter<T> writer,
-                                                 Set<String> writtenPaths,
-                                                 String relativePath) throws IOException {
+  private <T> String addParentDirectories(@Nonnull T archiveObject,
+                                          @Nonnull ArchivePackageWriter<T> writer,
+                                          Set<String> writtenPaths,
+                                          String relativePath) throws IOException {
     while (StringUtil.startsWithChar(relativePath, '/')) {
       relativePath = relativePath.substring(1);
     }
@@ -258,7 +430,12 @@ public class ArchivesBuilder {
       String prefix = relativePath.substring(0, i + 1);
       if (!writtenPaths.contains(prefix) && prefix.length() > 1) {
 
-        writer.addDirectory(archiveObject, prefix);
+        if (myReproducible) {
+          writer.addDirectory(archiveObject, prefix, REPRODUCIBLE_TIMESTAMP);
+        }
+        else {
+          writer.addDirectory(archiveObject, prefix);
+        }
 
         writtenPaths.add(prefix);
       }
@@ -267,6 +444,36 @@ public class ArchivesBuilder {
     return relativePath;
   }
 
+  /**
+   * Building of one archive. When it's built on a pool thread, errors are kept until {@link #reportErrors()} is called
+   * from the coordinating thread and the progress indicator text isn't changed.
+   */
+  private final class ArchiveBuild {
+    private final ArchivePackageInfo myArchive;
+    private final boolean myConcurrent;
+    private final List<String> myErrors = new ArrayList<>();
+
+    private ArchiveBuild(@Nonnull ArchivePackageInfo archive, boolean concurrent) {
+      myArchive = archive;
+      myConcurrent = concurrent;
+    }
+
+    private void setText(@Nonnull String text) {
+      if (!myConcurrent) myContext.getProgressIndicator().setText(text);
+    }
+
+    private void setText2(@Nonnull String text) {
+      if (!myConcurrent) myContext.getProgressIndicator().setText2(text);
+    }
+
+    private void reportErrors() {
+      for (String error : myErrors) {
+        myContext.addMessage(CompilerMessageCategory.ERROR, error, null, -1, -1);
+      }
+      myErrors.clear();
+    }
+  }
+
   private class ArchivesGraph implements GraphGenerator.SemiGraph<ArchivePackageInfo> {
     @Override
     public Collection<ArchivePackageInfo> getNodes() {
@@ -22,26 +22,34 @@ import consulo.index.io.PersistentEnumerator;
 import consulo.index.io.PersistentHashMap;
 import consulo.index.io.data.DataExternalizer;
 import consulo.logging.Logger;
+import consulo.util.collection.HashingStrategy;
+import consulo.util.collection.Maps;
+import consulo.util.collection.primitive.ints.IntSet;
+import consulo.util.collection.primitive.ints.IntSets;
 import consulo.util.io.FileUtil;
 import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
 
-import java.io.DataInput;
-import java.io.DataOutput;
-import java.io.File;
-import java.io.IOException;
+import java.io.*;
+import java.util.Map;
 
 /**
  * @author nik
  */
 public class GenericCompilerCache<Key, SourceState, OutputState> {
   private static final Logger LOG = Logger.getInstance(GenericCompilerCache.class);
+  private static final int SNAPSHOT_VERSION = 1;
   private PersistentHashMap<KeyAndTargetData<Key>, PersistentStateData<SourceState, OutputState>> myPersistentMap;
   private File myCacheFile;
+  private final File mySnapshotDir;
   private final GenericCompiler<Key, SourceState, OutputState> myCompiler;
+  // targets whose snapshots were deleted since the last write, guarded by this
+  private final IntSet myInvalidatedSnapshots = IntSets.newHashSet();
 
   public GenericCompilerCache(GenericCompiler<Key, SourceState, OutputState> compiler, final File compilerCacheDir) throws IOException {
     myCompiler = compiler;
     myCacheFile = new File(compilerCacheDir, "timestamps");
+    mySnapshotDir = new File(compilerCacheDir, "snapshots");
     createMap();
   }
 
@@ -52,6 +60,8 @@ public class GenericCompilerCache<Key, SourceState, OutputState> {
     }
     catch (PersistentEnumerator.CorruptedException e) {
       FileUtil.delete(myCacheFile);
+      // snapshots were written from the deleted states
+      FileUtil.delete(mySnapshotDir);
       throw e;
     }
   }
@@ -67,6 +77,10 @@ public class GenericCompilerCache<Key, SourceState, OutputState> {
     catch (IOException ignored) {
     }
     PersistentHashMap.deleteFilesStartingWith(myCacheFile);
+    FileUtil.delete(mySnapshotDir);
+    synchronized (this) {
+      myInvalidatedSnapshots.clear();
+    }
     createMap();
   }
 
@@ -80,6 +94,7 @@ public class GenericCompilerCache<Key, SourceState, OutputState> {
   }
 
   public void remove(int targetId, Key key) throws IOException {
+    invalidateSnapshot(targetId);
     myPersistentMap.remove(getKeyAndTargetData(key, targetId));
   }
 
@@ -92,7 +107,103 @@ public class GenericCompilerCache<Key, SourceState, OutputState> {
   }
 
   public void putState(int targetId, @Nonnull Key key, @Nonnull SourceState sourceState, @Nonnull OutputState outputState) throws IOException {
-    myPersistentMap.put(getKeyAndTargetData(key, targetId), new PersistentStateData<>(sourceState, outputState));
+    putState(targetId, key, new PersistentStateData<>(sourceState, outputState));
+  }
+
+  public void putState(int targetId, @Nonnull Key key, @Nonnull PersistentStateData<SourceState, OutputState> data) throws IOException {
+    invalidateSnapshot(targetId);
+    myPersistentMap.put(getKeyAndTargetData(key, targetId), data);
+  }
+
+  /**
+   * Reads states of all items of the target stored by {@link #writeSnapshot}, so up-to-date check doesn't need to look up
+   * items one by one. Any modification of the target's states deletes its snapshot, so a returned snapshot always matches the map.
+   *
+   * @return null if there is no valid snapshot for the target
+   */
+  @Nullable
+  public Map<Key, PersistentStateData<SourceState, OutputState>> readSnapshot(int targetId) {
+    File file = getSnapshotFile(targetId);
+    if (!file.isFile()) {
+      return null;
+    }
+
+    // not mapped: a mapping keeps the file open until it's collected, so the snapshot couldn't be deleted on Windows
+    try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+      if (input.readInt() != SNAPSHOT_VERSION || input.readInt() != myCompiler.getVersion()) {
+        return null;
+      }
+
+      KeyDescriptor<Key> keyDescriptor = myCompiler.getItemKeyDescriptor();
+      PersistentStateDataExternalizer externalizer = new PersistentStateDataExternalizer(myCompiler);
+      int size = input.readInt();
+      Map<Key, PersistentStateData<SourceState, OutputState>> result = newStateMap(size);
+      while (size-- > 0) {
+        Key key = keyDescriptor.read(input);
+        result.put(key, externalizer.read(input));
+      }
+      return result;
+    }
+    catch (IOException | RuntimeException e) {
+      LOG.info("Cannot read states snapshot " + file, e);
+      FileUtil.delete(file);
+      return null;
+    }
+  }
+
+  public void writeSnapshot(int targetId, @Nonnull Map<Key, PersistentStateData<SourceState, OutputState>> states) throws IOException {
+    File file = getSnapshotFile(targetId);
+    FileUtil.createParentDirs(file);
+
+    KeyDescriptor<Key> keyDescriptor = myCompiler.getItemKeyDescriptor();
+    PersistentStateDataExternalizer externalizer = new PersistentStateDataExternalizer(myCompiler);
+    try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+      output.writeInt(SNAPSHOT_VERSION);
+      output.writeInt(myCompiler.getVersion());
+      output.writeInt(states.size());
+      for (Map.Entry<Key, PersistentStateData<SourceState, OutputState>> entry : states.entrySet()) {
+        keyDescriptor.save(output, entry.getKey());
+        externalizer.save(output, entry.getValue());
+      }
+    }
+    catch (IOException e) {
+      FileUtil.delete(file);
+      throw e;
+    }
+
+    synchronized (this) {
+      myInvalidatedSnapshots.remove(targetId);
+    }
+  }
+
+  @Nonnull
+  public Map<Key, PersistentStateData<SourceState, OutputState>> newStateMap(int initialCapacity) {
+    KeyDescriptor<Key> keyDescriptor = myCompiler.getItemKeyDescriptor();
+    return Maps.newHashMap(Math.max(initialCapacity, 16), new HashingStrategy<Key>() {
+      @Override
+      public int hashCode(Key object) {
+        return keyDescriptor.hashCode(object);
+      }
+
+      @Override
+      public boolean equals(Key o1, Key o2) {
+        return keyDescriptor.equals(o1, o2);
+      }
+    });
+  }
+
+  private void invalidateSnapshot(int targetId) {
+    synchronized (this) {
+      if (!myInvalidatedSnapshots.add(targetId)) {
+        return;
+      }
+    }
+    FileUtil.delete(getSnapshotFile(targetId));
+  }
+
+  @Nonnull
+  private File getSnapshotFile(int targetId) {
+    return new File(mySnapshotDir, targetId + ".dat");
   }
 
 
@@ -110,7 +221,7 @@ public class GenericCompilerCache<Key, SourceState, OutputState> {
     public final SourceState mySourceState;
     public final OutputState myOutputState;
 
-    private PersistentStateData(@Nonnull SourceState sourceState, @Nonnull OutputState outputState) {
+    PersistentStateData(@Nonnull SourceState sourceState, @Nonnull OutputState outputState) {
       mySourceState = sourceState;
       myOutputState = outputState;
     }
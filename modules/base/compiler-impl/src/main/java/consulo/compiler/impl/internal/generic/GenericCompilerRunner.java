@@ -16,7 +16,9 @@
 package consulo.compiler.impl.internal.generic;
 
 import consulo.application.AccessRule;
+import consulo.application.Application;
 import consulo.application.ApplicationManager;
+import consulo.application.concurrent.ApplicationConcurrency;
 import consulo.application.util.function.CommonProcessors;
 import consulo.application.util.function.Processor;
 import consulo.compiler.*;
@@ -38,6 +40,9 @@ import jakarta.annotation.Nonnull;
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  * @author nik
@@ -45,12 +50,20 @@ import java.util.*;
 public class GenericCompilerRunner {
   private static final Logger LOG = Logger.getInstance(GenericCompilerRunner.class);
   private static final Logger FULL_LOG = Logger.getInstance("#com.intellij.full-generic-compiler-log");
+  // items are checked for being up-to-date in chunks of this size, chunks are checked simultaneously
+  private static final int CHECK_CHUNK_SIZE = 512;
   private CompileContext myContext;
   private final boolean myForceCompile;
   private final boolean myOnlyCheckStatus;
   private final GenericCompiler<?, ?, ?>[] myCompilers;
   private final Project myProject;
 
+  // per-phase timings of the current compiler, in milliseconds
+  private long myCollectTime;
+  private long myCheckTime;
+  private long myProcessTime;
+  private long myUpdateCachesTime;
+
   public GenericCompilerRunner(CompileContext context, boolean forceCompile, boolean onlyCheckStatus, final GenericCompiler[] compilers) {
     myContext = context;
     myForceCompile = forceCompile;
@@ -134,6 +147,7 @@ public class GenericCompilerRunner {
 
     final List<T> selectedTargets = AccessRule.read(instance::getSelectedTargets);
 
+    myCollectTime = myCheckTime = myProcessTime = myUpdateCachesTime = 0;
     boolean didSomething = false;
     for (T target : selectedTargets) {
       int id = data.getId(target.getId());
@@ -141,9 +155,24 @@ public class GenericCompilerRunner {
     }
 
     data.save();
+    reportTimings(compiler, selectedTargets.size(), didSomething);
     return didSomething;
   }
 
+  private void reportTimings(GenericCompiler<?, ?, ?> compiler, int targetsCount, boolean didSomething) {
+    long total = myCollectTime + myCheckTime + myProcessTime + myUpdateCachesTime;
+    String message = compiler.getDescription() + ": " + targetsCount + " target(s) in " + total + " ms (collecting items: " + myCollectTime +
+                     " ms, up-to-date check: " + myCheckTime +
+                     " ms, processing: " + myProcessTime +
+                     " ms, updating caches: " + myUpdateCachesTime + " ms)";
+    if (didSomething || total >= 1000) {
+      myContext.addMessage(CompilerMessageCategory.STATISTICS, message, null, -1, -1);
+    }
+    else if (LOG.isDebugEnabled()) {
+      LOG.debug(message);
+    }
+  }
+
   private void checkForErrorsOrCanceled() throws ExitException {
     if (myContext.getMessageCount(CompilerMessageCategory.ERROR) > 0) {
       throw new ExitException(ExitStatus.ERRORS);
@@ -166,51 +195,67 @@ public class GenericCompilerRunner {
     if (LOG.isDebugEnabled()) {
       LOG.debug("Processing target '" + target + "' (id=" + targetId + ") by " + compiler);
     }
+    long start = System.currentTimeMillis();
     final List<Item> items = instance.getItems(target);
+    myCollectTime += System.currentTimeMillis() - start;
     checkForErrorsOrCanceled();
 
-    final List<GenericCompilerProcessingItem<Item, SourceState, OutputState>> toProcess = new ArrayList<>();
-    final Set<Key> keySet = Sets.newHashSet(new SourceItemHashingStrategy<>(compiler));
-    final Ref<IOException> exception = Ref.create(null);
+    start = System.currentTimeMillis();
     DumbService.getInstance(myProject).waitForSmartMode();
-    final Map<Item, SourceState> sourceStates = new HashMap<>();
-    ApplicationManager.getApplication().runReadAction(new Runnable() {
-      @Override
-      public void run() {
-        try {
-          for (Item item : items) {
-            final Key key = item.getKey();
-            keySet.add(key);
-            if (item.isExcluded()) continue;
 
-            final GenericCompilerCache.PersistentStateData<SourceState, OutputState> data = cache.getState(targetId, key);
-            SourceState sourceState = data != null ? data.mySourceState : null;
-            final OutputState outputState = data != null ? data.myOutputState : null;
-            if (myForceCompile || sourceState == null || !item.isSourceUpToDate(sourceState) || outputState == null || !item.isOutputUpToDate(outputState)) {
-              sourceStates.put(item, item.computeSourceState());
-              toProcess.add(new GenericCompilerProcessingItem<>(item, sourceState, outputState));
-            }
-          }
-        }
-        catch (IOException e) {
-          exception.set(e);
-        }
+    // snapshot of all states of the target allows to skip per-item lookups in the persistent map and the scan of all its keys
+    final Map<Key, GenericCompilerCache.PersistentStateData<SourceState, OutputState>> snapshot = cache.readSnapshot(targetId);
+    final Map<Key, GenericCompilerCache.PersistentStateData<SourceState, OutputState>> states =
+      snapshot != null ? snapshot : cache.newStateMap(items.size());
+
+    final Set<Key> keySet = Sets.newHashSet(new SourceItemHashingStrategy<>(compiler));
+    for (Item item : items) {
+      keySet.add(item.getKey());
+    }
+
+    List<CheckResult<Item, Key, SourceState, OutputState>> results = checkItems(items, targetId, snapshot, cache);
+    final List<GenericCompilerProcessingItem<Item, SourceState, OutputState>> toProcess = new ArrayList<>();
+    final Map<Item, SourceState> sourceStates = new HashMap<>();
+    for (CheckResult<Item, Key, SourceState, OutputState> result : results) {
+      toProcess.addAll(result.myToProcess);
+      sourceStates.putAll(result.mySourceStates);
+      if (snapshot == null) {
+        states.putAll(result.myStates);
       }
-    });
-    if (!exception.isNull()) {
-      throw exception.get();
     }
 
     final List<Key> toRemove = new ArrayList<>();
-    cache.processSources(targetId, new Processor<Key>() {
-      @Override
-      public boolean process(Key key) {
+    if (snapshot != null) {
+      for (Key key : snapshot.keySet()) {
         if (!keySet.contains(key)) {
           toRemove.add(key);
         }
-        return true;
       }
-    });
+    }
+    else {
+      final List<Key> excluded = new ArrayList<>();
+      cache.processSources(targetId, new Processor<Key>() {
+        @Override
+        public boolean process(Key key) {
+          if (!keySet.contains(key)) {
+            toRemove.add(key);
+          }
+          else if (!states.containsKey(key)) {
+            excluded.add(key);
+          }
+          return true;
+        }
+      });
+
+      // states of excluded items stay in the map, so they must stay in the snapshot too
+      for (Key key : excluded) {
+        final GenericCompilerCache.PersistentStateData<SourceState, OutputState> data = cache.getState(targetId, key);
+        if (data != null) {
+          states.put(key, data);
+        }
+      }
+    }
+    myCheckTime += System.currentTimeMillis() - start;
 
     if (LOG.isDebugEnabled()) {
       LOG.debug(toProcess.size() + " items will be processed, " + toRemove.size() + " items will be removed");
@@ -223,6 +268,9 @@ public class GenericCompilerRunner {
     }
 
     if (toProcess.isEmpty() && toRemove.isEmpty()) {
+      if (snapshot == null && !myOnlyCheckStatus) {
+        cache.writeSnapshot(targetId, states);
+      }
       return false;
     }
 
@@ -232,13 +280,17 @@ public class GenericCompilerRunner {
 
     List<GenericCompilerCacheState<Key, SourceState, OutputState>> obsoleteItems = new ArrayList<>();
     for (Key key : toRemove) {
-      final GenericCompilerCache.PersistentStateData<SourceState, OutputState> data = cache.getState(targetId, key);
+      GenericCompilerCache.PersistentStateData<SourceState, OutputState> data = states.get(key);
+      if (data == null) {
+        data = cache.getState(targetId, key);
+      }
       obsoleteItems.add(new GenericCompilerCacheState<>(key, data.mySourceState, data.myOutputState));
     }
 
     final List<Item> processedItems = new ArrayList<>();
     final List<File> filesToRefresh = new ArrayList<>();
     final List<File> dirsToRefresh = new ArrayList<>();
+    start = System.currentTimeMillis();
     instance.processItems(target, toProcess, obsoleteItems, new GenericCompilerInstance.OutputConsumer<Item>() {
       @Override
       public void addFileToRefresh(@Nonnull File file) {
@@ -255,13 +307,16 @@ public class GenericCompilerRunner {
         processedItems.add(sourceItem);
       }
     });
+    myProcessTime += System.currentTimeMillis() - start;
     checkForErrorsOrCanceled();
 
+    start = System.currentTimeMillis();
     CompilerUtil.runInContext(myContext, CompilerBundle.message("progress.updating.caches"), new ThrowableRunnable<IOException>() {
       @Override
       public void run() throws IOException {
         for (Key key : toRemove) {
           cache.remove(targetId, key);
+          states.remove(key);
         }
         CompilerUtil.refreshIOFiles(filesToRefresh);
         CompilerUtil.refreshIODirectories(dirsToRefresh);
@@ -282,7 +337,10 @@ public class GenericCompilerRunner {
               if (sourceState == null) {
                 sourceState = item.computeSourceState();
               }
-              cache.putState(targetId, item.getKey(), sourceState, item.computeOutputState());
+              GenericCompilerCache.PersistentStateData<SourceState, OutputState> data =
+                new GenericCompilerCache.PersistentStateData<>(sourceState, item.computeOutputState());
+              cache.putState(targetId, item.getKey(), data);
+              states.put(item.getKey(), data);
             }
           });
         }
@@ -294,13 +352,115 @@ public class GenericCompilerRunner {
             throw new RuntimeException(throwable);
           }
         }
+
+        // items which weren't reported as processed keep their old states, and snapshot can't be reused for them
+        if (processedItems.size() == toProcess.size()) {
+          cache.writeSnapshot(targetId, states);
+        }
       }
     });
+    myUpdateCachesTime += System.currentTimeMillis() - start;
 
     return true;
 
   }
 
+  /**
+   * Items of one target are independent, so big targets are checked in chunks simultaneously. Results are returned in the order of items.
+   */
+  private <Item extends CompileItem<Key, SourceState, OutputState>, Key, SourceState, OutputState>
+  List<CheckResult<Item, Key, SourceState, OutputState>> checkItems(
+      final List<Item> items,
+      final int targetId,
+      final Map<Key, GenericCompilerCache.PersistentStateData<SourceState, OutputState>> snapshot,
+      final GenericCompilerCache<Key, SourceState, OutputState> cache) throws IOException {
+    int chunks = (items.size() + CHECK_CHUNK_SIZE - 1) / CHECK_CHUNK_SIZE;
+    if (chunks <= 1) {
+      return Collections.singletonList(checkChunk(items, targetId, snapshot, cache));
+    }
+
+    int threads = Math.min(chunks, Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+    ApplicationConcurrency concurrency = Application.get().getInstance(ApplicationConcurrency.class);
+    ExecutorService executor =
+      concurrency.createBoundedApplicationPoolExecutor("GenericCompilerRunner Pool", concurrency.getExecutorService(), threads);
+    try {
+      List<Future<CheckResult<Item, Key, SourceState, OutputState>>> futures = new ArrayList<>(chunks);
+      for (int i = 0; i < items.size(); i += CHECK_CHUNK_SIZE) {
+        final List<Item> chunk = items.subList(i, Math.min(items.size(), i + CHECK_CHUNK_SIZE));
+        futures.add(executor.submit(() -> checkChunk(chunk, targetId, snapshot, cache)));
+      }
+
+      List<CheckResult<Item, Key, SourceState, OutputState>> results = new ArrayList<>(chunks);
+      for (Future<CheckResult<Item, Key, SourceState, OutputState>> future : futures) {
+        try {
+          results.add(future.get());
+        }
+        catch (InterruptedException e) {
+          throw new ProcessCanceledException(e);
+        }
+        catch (ExecutionException e) {
+          Throwable cause = e.getCause();
+          if (cause instanceof IOException) {
+            throw (IOException)cause;
+          }
+          ExceptionUtil.rethrowUnchecked(cause);
+          throw new RuntimeException(cause);
+        }
+      }
+      return results;
+    }
+    finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private <Item extends CompileItem<Key, SourceState, OutputState>, Key, SourceState, OutputState>
+  CheckResult<Item, Key, SourceState, OutputState> checkChunk(
+      final List<Item> items,
+      final int targetId,
+      final Map<Key, GenericCompilerCache.PersistentStateData<SourceState, OutputState>> snapshot,
+      final GenericCompilerCache<Key, SourceState, OutputState> cache) throws IOException {
+    final CheckResult<Item, Key, SourceState, OutputState> result = new CheckResult<>();
+    final Ref<IOException> exception = Ref.create(null);
+    ApplicationManager.getApplication().runReadAction(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          for (Item item : items) {
+            myContext.getProgressIndicator().checkCanceled();
+            if (item.isExcluded()) continue;
+
+            final Key key = item.getKey();
+            final GenericCompilerCache.PersistentStateData<SourceState, OutputState> data;
+            if (snapshot != null) {
+              data = snapshot.get(key);
+            }
+            else {
+              data = cache.getState(targetId, key);
+              if (data != null) {
+                result.myStates.put(key, data);
+              }
+            }
+
+            SourceState sourceState = data != null ? data.mySourceState : null;
+            final OutputState outputState = data != null ? data.myOutputState : null;
+            if (myForceCompile || sourceState == null || !item.isSourceUpToDate(sourceState) || outputState == null || !item.isOutputUpToDate(outputState)) {
+              result.mySourceStates.put(item, item.computeSourceState());
+              result.myToProcess.add(new GenericCompilerProcessingItem<>(item, sourceState, outputState));
+            }
+          }
+        }
+        catch (IOException e) {
+          exception.set(e);
+        }
+      }
+    });
+    if (!exception.isNull()) {
+      throw exception.get();
+    }
+    return result;
+  }
+
   private static int getItemsCountToShowInLog(final int size) {
     if (size > 100 && !FULL_LOG.isDebugEnabled()) {
       return 100;
@@ -308,6 +468,13 @@ public class GenericCompilerRunner {
     return size;
   }
 
+  private static class CheckResult<Item extends CompileItem<Key, SourceState, OutputState>, Key, SourceState, OutputState> {
+    private final List<GenericCompilerProcessingItem<Item, SourceState, OutputState>> myToProcess = new ArrayList<>();
+    private final Map<Item, SourceState> mySourceStates = new HashMap<>();
+    // states read from the persistent map, filled only when there is no snapshot
+    private final Map<Key, GenericCompilerCache.PersistentStateData<SourceState, OutputState>> myStates = new HashMap<>();
+  }
+
   private class SourceItemHashingStrategy<S> implements HashingStrategy<S> {
     private KeyDescriptor<S> myKeyDescriptor;
 
@@ -16,6 +16,7 @@
 package consulo.execution.test.sm.runner;
 
 import consulo.application.Application;
+import consulo.application.util.registry.Registry;
 import consulo.disposer.Disposable;
 import consulo.execution.test.sm.SMTestRunnerConnectionUtil;
 import consulo.execution.test.sm.runner.event.*;
@@ -25,6 +26,7 @@ import consulo.util.collection.Lists;
 import consulo.util.dataholder.Key;
 
 import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
@@ -47,6 +49,9 @@ public abstract class GeneralTestEventsProcessor implements Disposable {
 
   protected boolean myTreeBuildBeforeStart = false;
 
+  @Nullable
+  private final TestEventsQueue myEventsQueue = Registry.is("tests.view.batch.events") ? new TestEventsQueue() : null;
+
   public GeneralTestEventsProcessor(Project project, @Nonnull String testFrameworkName, @Nonnull SMTestProxy.SMRootTestProxy testsRootProxy) {
     myProject = project;
     myEventPublisher = project.getMessageBus().syncPublisher(SMTRunnerEventsListener.class);
@@ -284,6 +289,9 @@ public abstract class GeneralTestEventsProcessor implements Disposable {
 
   @Override
   public void dispose() {
+    if (myEventsQueue != null && LOG.isDebugEnabled()) {
+      addToInvokeLater(() -> LOG.debug(getTFrameworkPrefix(myTestFrameworkName) + myEventsQueue));
+    }
   }
 
   protected void disconnectListeners() {
@@ -292,7 +300,12 @@ public abstract class GeneralTestEventsProcessor implements Disposable {
 
   @Deprecated(forRemoval = true)
   public void addToInvokeLater(final Runnable runnable) {
-    Application.get().invokeLater(runnable);
+    if (myEventsQueue != null) {
+      myEventsQueue.add(runnable);
+    }
+    else {
+      Application.get().invokeLater(runnable);
+    }
   }
 
   protected static <T> boolean isTreeComplete(Collection<T> runningTests, SMTestProxy.SMRootTestProxy rootNode) {
@@ -16,6 +16,7 @@
 package consulo.execution.test.sm.runner;
 
 import consulo.application.ApplicationManager;
+import consulo.application.util.registry.Registry;
 import consulo.disposer.Disposer;
 import consulo.execution.action.Location;
 import consulo.execution.test.*;
@@ -41,6 +42,7 @@ import consulo.virtualFileSystem.VirtualFileManager;
 
 import jakarta.annotation.Nonnull;
 import jakarta.annotation.Nullable;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -82,6 +84,8 @@ public class SMTestProxy extends AbstractTestProxy {
   private boolean myConfig = false;
   //false:: printables appear as soon as they are discovered in the output; true :: predefined test structure
   private boolean myTreeBuildBeforeStart = false;
+  // last stored output printable, following output of the same type is appended to it
+  private TestOutputStore.Output myLastOutput;
 
   public SMTestProxy(String testName, boolean isSuite, @Nullable String locationUrl) {
     this(testName, isSuite, locationUrl, false);
@@ -532,22 +536,26 @@ public class SMTestProxy extends AbstractTestProxy {
 
   protected void addAfterLastPassed(Printable printable) {
     if (myTreeBuildBeforeStart) {
-      int idx = 0;
-      synchronized (myNestedPrintables) {
-        for (Printable proxy : myNestedPrintables) {
-          if (proxy instanceof SMTestProxy && !((SMTestProxy)proxy).isFinal()) {
-            break;
-          }
-          idx++;
-        }
-      }
-      insert(printable, idx);
+      insert(printable, getAfterLastPassedIndex());
     }
     else {
       addLast(printable);
     }
   }
 
+  private int getAfterLastPassedIndex() {
+    int idx = 0;
+    synchronized (myNestedPrintables) {
+      for (Printable proxy : myNestedPrintables) {
+        if (proxy instanceof SMTestProxy && !((SMTestProxy)proxy).isFinal()) {
+          break;
+        }
+        idx++;
+      }
+    }
+    return idx;
+  }
+
   public void setTreeBuildBeforeStart() {
     myTreeBuildBeforeStart = true;
   }
@@ -614,6 +622,14 @@ public class SMTestProxy extends AbstractTestProxy {
   }
 
   public void addOutput(@Nonnull String output, @Nonnull Key outputType) {
+    SMRootTestProxy root = this instanceof SMRootTestProxy ? (SMRootTestProxy)this : getRoot();
+    TestOutputStore store = root != null ? root.getOutputStore() : null;
+    TestOutputStore.Output stored = store != null ? store.append(output, ConsoleViewContentType.getConsoleViewType(outputType)) : null;
+    if (stored != null) {
+      addStoredOutput(stored);
+      return;
+    }
+
     addAfterLastPassed(new Printable() {
       public void printOn(@Nonnull Printer printer) {
         printer.print(output, ConsoleViewContentType.getConsoleViewType(outputType));
@@ -621,6 +637,22 @@ public class SMTestProxy extends AbstractTestProxy {
     });
   }
 
+  private void addStoredOutput(@Nonnull TestOutputStore.Output output) {
+    if (myLastOutput != null) {
+      synchronized (myNestedPrintables) {
+        int idx = myTreeBuildBeforeStart ? getAfterLastPassedIndex() : myNestedPrintables.size();
+        // not flushed or followed by other printables since
+        if (idx > 0 && myNestedPrintables.get(idx - 1) == myLastOutput && myLastOutput.extend(output)) {
+          // already printed part of the output stays, the current printer needs just the new chunk
+          fireOnNewPrintable(output);
+          return;
+        }
+      }
+    }
+    myLastOutput = output;
+    addAfterLastPassed(output);
+  }
+
   public void addError(final String output, @Nullable final String stackTrace, boolean isCritical) {
     myHasCriticalErrors = isCritical;
     if (isCritical) {
@@ -886,6 +918,9 @@ public class SMTestProxy extends AbstractTestProxy {
     private String myRootLocationUrl;
     private ProcessHandler myHandler;
     private boolean myShouldPrintOwnContentOnly = false;
+    private TestOutputStore myOutputStore;
+    private boolean myOutputStoreFailed;
+    private boolean myDisposed;
 
     public SMRootTestProxy() {
       this(false);
@@ -895,6 +930,34 @@ public class SMTestProxy extends AbstractTestProxy {
       super("[root]", true, null, preservePresentableName);
     }
 
+    /**
+     * @return store of the output of the run tests, or null if output should be kept in memory
+     */
+    @Nullable
+    synchronized TestOutputStore getOutputStore() {
+      if (myOutputStore == null && !myOutputStoreFailed && !myDisposed && Registry.is("tests.view.output.on.disk")) {
+        try {
+          myOutputStore = TestOutputStore.create();
+        }
+        catch (IOException e) {
+          LOG.info("Test output will be kept in memory", e);
+          myOutputStoreFailed = true;
+        }
+      }
+      return myOutputStore;
+    }
+
+    @Override
+    public void dispose() {
+      super.dispose();
+      synchronized (this) {
+        myDisposed = true;
+        if (myOutputStore != null) {
+          myOutputStore.close();
+        }
+      }
+    }
+
     public void setTestsReporterAttached() {
       myTestsReporterAttached = true;
     }
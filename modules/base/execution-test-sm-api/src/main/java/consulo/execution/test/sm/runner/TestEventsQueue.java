@@ -0,0 +1,128 @@
+/*
+ * Copyright 2013-2026 consulo.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package consulo.execution.test.sm.runner;
+
+import consulo.application.Application;
+import consulo.application.util.concurrent.AppExecutorUtil;
+import consulo.logging.Logger;
+import jakarta.annotation.Nonnull;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Applies test events on EDT in chunks instead of one {@link Application#invokeLater} per event.
+ * <p/>
+ * Events are collected on the thread reading the test process output. A chunk is applied at most once per {@link #FRAME_MILLIS}
+ * and takes at most {@link #FRAME_BUDGET_MILLIS} of EDT time, the rest waits for the next frame, so a run of hundreds of thousands of tests
+ * leaves EDT responsive and the tree catches up at the rate UI can sustain. Events are applied in the order they were added.
+ */
+final class TestEventsQueue {
+  private static final Logger LOG = Logger.getInstance(TestEventsQueue.class);
+
+  private static final int FRAME_MILLIS = 50;
+  private static final int FRAME_BUDGET_MILLIS = 20;
+
+  private final Object myLock = new Object();
+  private final ArrayDeque<Runnable> myPending = new ArrayDeque<>();
+  private boolean myScheduled;
+  private long myLastFrameEndNanos;
+
+  // statistics, modified on EDT only
+  private long myAppliedEvents;
+  private long myApplyNanos;
+  private int myFrames;
+  private int myMaxBacklog;
+
+  void add(@Nonnull Runnable event) {
+    synchronized (myLock) {
+      myPending.add(event);
+      if (!myScheduled) {
+        myScheduled = true;
+        long sinceLastFrameMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - myLastFrameEndNanos);
+        scheduleFrame(FRAME_MILLIS - sinceLastFrameMillis);
+      }
+    }
+  }
+
+  private void scheduleFrame(long delayMillis) {
+    if (delayMillis <= 0) {
+      Application.get().invokeLater(this::applyFrame);
+    }
+    else {
+      AppExecutorUtil.getAppScheduledExecutorService()
+        .schedule(() -> Application.get().invokeLater(this::applyFrame), delayMillis, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  private void applyFrame() {
+    long start = System.nanoTime();
+    long deadline = start + TimeUnit.MILLISECONDS.toNanos(FRAME_BUDGET_MILLIS);
+    synchronized (myLock) {
+      myMaxBacklog = Math.max(myMaxBacklog, myPending.size());
+    }
+
+    try {
+      while (true) {
+        Runnable event;
+        synchronized (myLock) {
+          event = myPending.poll();
+          if (event == null) {
+            myScheduled = false;
+            return;
+          }
+        }
+        try {
+          event.run();
+        }
+        catch (Throwable e) {
+          // like a failed invokeLater runnable: report and go on with the next events
+          LOG.error(e);
+        }
+        myAppliedEvents++;
+
+        if (System.nanoTime() > deadline) {
+          synchronized (myLock) {
+            if (myPending.isEmpty()) {
+              myScheduled = false;
+            }
+            else {
+              scheduleFrame(FRAME_MILLIS - FRAME_BUDGET_MILLIS);
+            }
+          }
+          return;
+        }
+      }
+    }
+    finally {
+      long end = System.nanoTime();
+      myApplyNanos += end - start;
+      myFrames++;
+      synchronized (myLock) {
+        myLastFrameEndNanos = end;
+      }
+    }
+  }
+
+  /**
+   * Should be called on EDT.
+   */
+  @Override
+  public String toString() {
+    long eventsPerSecond = myApplyNanos == 0 ? 0 : myAppliedEvents * TimeUnit.SECONDS.toNanos(1) / myApplyNanos;
+    return myAppliedEvents + " events in " + myFrames + " frames, " + eventsPerSecond + " events/s of EDT time, max backlog " + myMaxBacklog;
+  }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2013-2026 consulo.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package consulo.execution.test.sm.runner;
+
+import consulo.execution.test.Printable;
+import consulo.execution.test.Printer;
+import consulo.execution.ui.console.ConsoleViewContentType;
+import consulo.logging.Logger;
+import consulo.util.io.FileUtil;
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Append-only file with the output of one test run. Proxies keep {@link Output} printables referencing byte ranges of the file instead
+ * of the text, the text is read back when the output is printed, e.g. when a test is selected. So memory used by the output of a run
+ * doesn't depend on its volume.
+ * <p/>
+ * Appends come from the events thread, reads from the printing thread, both are guarded by the store monitor.
+ */
+final class TestOutputStore {
+  private static final Logger LOG = Logger.getInstance(TestOutputStore.class);
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+  // merged output is printed in slices of at most this size, so printing a huge output doesn't read it into memory at once
+  private static final int PRINT_SLICE_SIZE = 64 * 1024;
+
+  private final File myFile;
+  private final FileChannel myChannel;
+  // appended bytes not written to the channel yet, they start at myChannelSize
+  private final ByteBuffer myBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+  private long myChannelSize;
+  private boolean myClosed;
+
+  private TestOutputStore(@Nonnull File file, @Nonnull FileChannel channel) {
+    myFile = file;
+    myChannel = channel;
+  }
+
+  @Nonnull
+  static TestOutputStore create() throws IOException {
+    File file = FileUtil.createTempFile("consulo_test_run_", ".out", true);
+    FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    return new TestOutputStore(file, channel);
+  }
+
+  /**
+   * @return printable of the text, or null if the store is closed or can't be written
+   */
+  @Nullable
+  synchronized Output append(@Nonnull String text, @Nonnull ConsoleViewContentType contentType) {
+    if (myClosed) {
+      return null;
+    }
+    byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+    long offset = myChannelSize + myBuffer.position();
+    try {
+      if (bytes.length > myBuffer.remaining()) {
+        flushBuffer();
+      }
+      if (bytes.length > myBuffer.remaining()) {
+        writeFully(ByteBuffer.wrap(bytes), myChannelSize);
+        myChannelSize += bytes.length;
+      }
+      else {
+        myBuffer.put(bytes);
+      }
+    }
+    catch (IOException e) {
+      LOG.info("Can't store test output in " + myFile, e);
+      close();
+      return null;
+    }
+    return new Output(this, offset, bytes.length, contentType);
+  }
+
+  @Nullable
+  private synchronized byte[] read(long offset, int length) {
+    if (myClosed) {
+      return null;
+    }
+    try {
+      if (offset + length > myChannelSize) {
+        flushBuffer();
+      }
+      ByteBuffer bytes = ByteBuffer.allocate(length);
+      while (bytes.hasRemaining()) {
+        if (myChannel.read(bytes, offset + bytes.position()) < 0) {
+          throw new IOException("Unexpected end of " + myFile);
+        }
+      }
+      return bytes.array();
+    }
+    catch (IOException e) {
+      LOG.info("Can't read test output from " + myFile, e);
+      return null;
+    }
+  }
+
+  private void flushBuffer() throws IOException {
+    myBuffer.flip();
+    int length = myBuffer.remaining();
+    writeFully(myBuffer, myChannelSize);
+    myBuffer.clear();
+    myChannelSize += length;
+  }
+
+  private void writeFully(@Nonnull ByteBuffer buffer, long position) throws IOException {
+    while (buffer.hasRemaining()) {
+      position += myChannel.write(buffer, position);
+    }
+  }
+
+  synchronized void close() {
+    if (myClosed) {
+      return;
+    }
+    myClosed = true;
+    try {
+      myChannel.close();
+    }
+    catch (IOException e) {
+      LOG.info(e);
+    }
+    FileUtil.delete(myFile);
+  }
+
+  /**
+   * Consecutive output of one type is kept as one printable: {@link #extend} it when the next chunk directly follows it in the store.
+   */
+  static final class Output implements Printable {
+    private final TestOutputStore myStore;
+    private final long myOffset;
+    private final ConsoleViewContentType myContentType;
+    private volatile int myLength;
+
+    private Output(@Nonnull TestOutputStore store, long offset, int length, @Nonnull ConsoleViewContentType contentType) {
+      myStore = store;
+      myOffset = offset;
+      myLength = length;
+      myContentType = contentType;
+    }
+
+    /**
+     * @return whether the chunk was added to this printable
+     */
+    boolean extend(@Nonnull Output chunk) {
+      if (chunk.myStore != myStore || chunk.myContentType != myContentType || chunk.myOffset != myOffset + myLength) {
+        return false;
+      }
+      long length = (long)myLength + chunk.myLength;
+      if (length > Integer.MAX_VALUE) {
+        return false;
+      }
+      myLength = (int)length;
+      return true;
+    }
+
+    @Override
+    public void printOn(Printer printer) {
+      long end = myOffset + myLength;
+      long offset = myOffset;
+      while (offset < end) {
+        byte[] bytes = myStore.read(offset, (int)Math.min(PRINT_SLICE_SIZE, end - offset));
+        if (bytes == null) {
+          return;
+        }
+        int length = offset + bytes.length < end ? completeCharsLength(bytes) : bytes.length;
+        printer.print(new String(bytes, 0, length, StandardCharsets.UTF_8), myContentType);
+        offset += length;
+      }
+    }
+
+    /**
+     * @return length of the slice without a trailing incomplete UTF-8 sequence, which is printed with the next slice
+     */
+    private static int completeCharsLength(@Nonnull byte[] bytes) {
+      int start = bytes.length - 1;
+      // skip continuation bytes 10xxxxxx back to the lead byte of the last sequence
+      while (start > 0 && bytes.length - start < 4 && (bytes[start] & 0xC0) == 0x80) {
+        start--;
+      }
+      int lead = bytes[start] & 0xFF;
+      int sequenceLength = lead >= 0xF0 ? 4 : lead >= 0xE0 ? 3 : lead >= 0xC0 ? 2 : 1;
+      // malformed bytes are printed as is
+      return start + sequenceLength <= bytes.length || start == 0 ? bytes.length : start;
+    }
+  }
+}
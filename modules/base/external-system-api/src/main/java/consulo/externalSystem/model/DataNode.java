@@ -49,8 +49,9 @@ public class DataNode<T> implements Serializable {
   private transient T myData;
   private byte[] myRawData;
 
+  // not serialized: a node is written with its subtree only, links of the children are restored by readObject()
   @Nullable
-  private final DataNode<?> myParent;
+  private transient DataNode<?> myParent;
 
   public DataNode(@Nonnull Key<T> key, @Nonnull T data, @Nullable DataNode<?> parent) {
     myKey = key;
@@ -58,6 +59,15 @@ public class DataNode<T> implements Serializable {
     myParent = parent;
   }
 
+  /**
+   * Creates a node which payload is deserialized lazily, see {@link #prepareData(ClassLoader...)}.
+   */
+  DataNode(@Nonnull Key<T> key, @Nonnull byte[] rawData, @Nullable DataNode<?> parent) {
+    myKey = key;
+    myRawData = rawData;
+    myParent = parent;
+  }
+
   @Nullable
   public DataNode<?> getParent() {
     return myParent;
@@ -95,6 +105,21 @@ public class DataNode<T> implements Serializable {
     return myData;
   }
 
+  /**
+   * @return data of the node or null if it's not deserialized yet, see {@link #prepareData(ClassLoader...)}
+   */
+  @Nullable
+  T getPreparedData() {
+    return myData;
+  }
+
+  /**
+   * @return serialized data, available until the node is {@link #prepareData(ClassLoader...) prepared}
+   */
+  byte[] getRawData() {
+    return myRawData;
+  }
+
   /**
    * This class is a generic holder for any kind of project data. That project data might originate from different locations, e.g.
    * core ide plugins, non-core ide plugins, third-party plugins etc. That means that when a service from a core plugin needs to
@@ -114,64 +139,14 @@ public class DataNode<T> implements Serializable {
     }
     ObjectInputStream oIn = null;
     try {
-      oIn = new ObjectInputStream(new ByteArrayInputStream(myRawData)) {
-        @Override
-        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
-          String name = desc.getName();
-          for (ClassLoader loader : loaders) {
-            try {
-              return Class.forName(name, false, loader);
-            }
-            catch (ClassNotFoundException e) {
-              // Ignore
-            }
-          }
-          return super.resolveClass(desc);
-        }
-
-        @Override
-        protected Class<?> resolveProxyClass(String[] interfaces) throws IOException, ClassNotFoundException {
-          for (ClassLoader loader : loaders) {
-            try {
-              return doResolveProxyClass(interfaces, loader);
-            }
-            catch (ClassNotFoundException e) {
-              // Ignore
-            }
-          }
-          return super.resolveProxyClass(interfaces);
-        }
-
-        private Class<?> doResolveProxyClass(@Nonnull String[] interfaces, @Nonnull ClassLoader loader) throws ClassNotFoundException {
-          ClassLoader nonPublicLoader = null;
-          boolean hasNonPublicInterface = false;
-
-          // define proxy in class loader of non-public interface(s), if any
-          Class[] classObjs = new Class[interfaces.length];
-          for (int i = 0; i < interfaces.length; i++) {
-            Class cl = Class.forName(interfaces[i], false, loader);
-            if ((cl.getModifiers() & Modifier.PUBLIC) == 0) {
-              if (hasNonPublicInterface) {
-                if (nonPublicLoader != cl.getClassLoader()) {
-                  throw new IllegalAccessError(
-                          "conflicting non-public interface class loaders");
-                }
-              } else {
-                nonPublicLoader = cl.getClassLoader();
-                hasNonPublicInterface = true;
-              }
-            }
-            classObjs[i] = cl;
-          }
-          try {
-            return Proxy.getProxyClass(hasNonPublicInterface ? nonPublicLoader : loader, classObjs);
-          }
-          catch (IllegalArgumentException e) {
-            throw new ClassNotFoundException(null, e);
-          }
-        }
-      };
-      myData = (T)oIn.readObject();
+      if (DataNodeCodec.isEncodedPayload(myRawData)) {
+        myData = (T)DataNodeCodec.decodePayload(myRawData, loaders);
+      }
+      else {
+        // written by older versions
+        oIn = createObjectInputStream(myRawData, loaders);
+        myData = (T)oIn.readObject();
+      }
       myRawData = null;
     }
     catch (IOException e) {
@@ -191,6 +166,70 @@ public class DataNode<T> implements Serializable {
     }
   }
 
+  /**
+   * @return stream resolving classes of the data with the given class loaders first
+   */
+  @Nonnull
+  static ObjectInputStream createObjectInputStream(@Nonnull byte[] data, @Nonnull final ClassLoader... loaders) throws IOException {
+    return new ObjectInputStream(new ByteArrayInputStream(data)) {
+      @Override
+      protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+        String name = desc.getName();
+        for (ClassLoader loader : loaders) {
+          try {
+            return Class.forName(name, false, loader);
+          }
+          catch (ClassNotFoundException e) {
+            // Ignore
+          }
+        }
+        return super.resolveClass(desc);
+      }
+
+      @Override
+      protected Class<?> resolveProxyClass(String[] interfaces) throws IOException, ClassNotFoundException {
+        for (ClassLoader loader : loaders) {
+          try {
+            return doResolveProxyClass(interfaces, loader);
+          }
+          catch (ClassNotFoundException e) {
+            // Ignore
+          }
+        }
+        return super.resolveProxyClass(interfaces);
+      }
+
+      private Class<?> doResolveProxyClass(@Nonnull String[] interfaces, @Nonnull ClassLoader loader) throws ClassNotFoundException {
+        ClassLoader nonPublicLoader = null;
+        boolean hasNonPublicInterface = false;
+
+        // define proxy in class loader of non-public interface(s), if any
+        Class[] classObjs = new Class[interfaces.length];
+        for (int i = 0; i < interfaces.length; i++) {
+          Class cl = Class.forName(interfaces[i], false, loader);
+          if ((cl.getModifiers() & Modifier.PUBLIC) == 0) {
+            if (hasNonPublicInterface) {
+              if (nonPublicLoader != cl.getClassLoader()) {
+                throw new IllegalAccessError(
+                        "conflicting non-public interface class loaders");
+              }
+            } else {
+              nonPublicLoader = cl.getClassLoader();
+              hasNonPublicInterface = true;
+            }
+          }
+          classObjs[i] = cl;
+        }
+        try {
+          return Proxy.getProxyClass(hasNonPublicInterface ? nonPublicLoader : loader, classObjs);
+        }
+        catch (IllegalArgumentException e) {
+          throw new ClassNotFoundException(null, e);
+        }
+      }
+    };
+  }
+
   /**
    * Allows to retrieve data stored for the given key at the current node or any of its parents.
    *
@@ -235,17 +274,23 @@ public class DataNode<T> implements Serializable {
     return myChildren;
   }
 
+  /**
+   * Writes the node with its subtree, the data is encoded by {@link DataNodeCodec#encodePayload(Object)}.
+   * Data of nodes serialized by older versions is read too, see {@link #prepareData(ClassLoader...)}.
+   */
   private void writeObject(ObjectOutputStream out) throws IOException {
-    ByteArrayOutputStream bOut = new ByteArrayOutputStream();
-    ObjectOutputStream oOut = new ObjectOutputStream(bOut);
-    try {
-      oOut.writeObject(myData);
-    }
-    finally {
-      oOut.close();
+    ObjectOutputStream.PutField fields = out.putFields();
+    fields.put("myChildren", myChildren);
+    fields.put("myKey", myKey);
+    fields.put("myRawData", myData != null ? DataNodeCodec.encodePayload(myData) : myRawData);
+    out.writeFields();
+  }
+
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    for (DataNode<?> child : myChildren) {
+      child.myParent = this;
     }
-    myRawData = bOut.toByteArray();
-    out.defaultWriteObject();
   }
 
   @Override
@@ -0,0 +1,603 @@
+/*
+ * Copyright 2013-2026 consulo.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package consulo.externalSystem.model;
+
+import consulo.externalSystem.model.project.*;
+import consulo.externalSystem.rt.model.ExternalSystemSourceType;
+import consulo.externalSystem.service.project.ProjectData;
+import consulo.module.content.layer.orderEntry.DependencyScope;
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Binary format of a {@link DataNode} tree, much more compact and faster than java serialization of the nodes.
+ * <p/>
+ * The tree is written depth-first, node by node. Strings, keys and payload objects are written once and referenced by index afterwards,
+ * so paths repeated across content roots and libraries and the module data shared by dependencies cost a few bytes each.
+ * Payloads of the {@code consulo.externalSystem.model.project} data classes are written field by field, payloads of other classes
+ * (e.g. contributed by plugins) are java serialized. The latter are deserialized lazily by {@link DataNode#prepareData(ClassLoader...)}
+ * when they are node data, so reading a tree doesn't need classes of its plugin payloads.
+ * <p/>
+ * Nodes are created while reading, the stream isn't buffered into an intermediate form.
+ */
+public final class DataNodeCodec {
+  private static final int MAGIC = 0x444E4331;
+  private static final int VERSION = 1;
+  // first byte of a single encoded payload, java serialization streams start with 0xAC
+  private static final byte PAYLOAD_VERSION = 1;
+
+  // payload tags
+  private static final int REF = 0;
+  private static final int SERIALIZED = 1;
+  private static final int PROJECT = 2;
+  private static final int MODULE = 3;
+  private static final int CONTENT_ROOT = 4;
+  private static final int LIBRARY = 5;
+  private static final int MODULE_DEPENDENCY = 6;
+  private static final int LIBRARY_DEPENDENCY = 7;
+
+  // string references, greater values are indices in the string table shifted by FIRST_STRING_INDEX
+  private static final int NULL_STRING = 0;
+  private static final int NEW_STRING = 1;
+  private static final int FIRST_STRING_INDEX = 2;
+
+  private DataNodeCodec() {
+  }
+
+  @Nonnull
+  public static byte[] encode(@Nonnull DataNode<?> root) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      write(root, out);
+    }
+    return bytes.toByteArray();
+  }
+
+  public static void write(@Nonnull DataNode<?> root, @Nonnull DataOutput out) throws IOException {
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+    new Writer(out).writeNode(root);
+  }
+
+  /**
+   * @param loaders class loaders which are able to build payloads of the tree, see {@link DataNode#prepareData(ClassLoader...)}
+   * @return root of the decoded tree
+   */
+  @Nonnull
+  public static DataNode<?> decode(@Nonnull byte[] data, @Nonnull ClassLoader... loaders) throws IOException {
+    return read(new DataInputStream(new ByteArrayInputStream(data)), loaders);
+  }
+
+  @Nonnull
+  public static DataNode<?> read(@Nonnull DataInput in, @Nonnull ClassLoader... loaders) throws IOException {
+    if (in.readInt() != MAGIC) {
+      throw new IOException("Not a data node stream");
+    }
+    int version = in.readInt();
+    if (version != VERSION) {
+      throw new IOException("Unsupported data node stream version " + version);
+    }
+    try {
+      return new Reader(in, loaders).readNode(null);
+    }
+    catch (RuntimeException e) {
+      // unknown enum constant or payload of unexpected type
+      throw new IOException("Corrupted data node stream", e);
+    }
+  }
+
+  /**
+   * Encodes one node payload, see {@link DataNode} serialization. The first byte is the format version: raw data written by
+   * older versions as plain java serialization is told apart by {@link #isEncodedPayload(byte[])}.
+   */
+  @Nonnull
+  static byte[] encodePayload(@Nonnull Object payload) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      out.writeByte(PAYLOAD_VERSION);
+      new Writer(out).writePayload(payload);
+    }
+    return bytes.toByteArray();
+  }
+
+  static boolean isEncodedPayload(@Nonnull byte[] data) {
+    return data.length > 0 && data[0] == PAYLOAD_VERSION;
+  }
+
+  @Nonnull
+  static Object decodePayload(@Nonnull byte[] data, @Nonnull ClassLoader... loaders) throws IOException {
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+    int version = in.readByte();
+    if (version != PAYLOAD_VERSION) {
+      throw new IOException("Unsupported data node payload version " + version);
+    }
+    try {
+      return new Reader(in, loaders).readPayload();
+    }
+    catch (RuntimeException e) {
+      throw new IOException("Corrupted data node payload", e);
+    }
+  }
+
+  private static final class Writer {
+    private final DataOutput myOut;
+    private final Map<String, Integer> myStrings = new HashMap<>();
+    private final Map<Key<?>, Integer> myKeys = new HashMap<>();
+    private final Map<Object, Integer> myObjects = new IdentityHashMap<>();
+
+    private Writer(@Nonnull DataOutput out) {
+      myOut = out;
+    }
+
+    private void writeNode(@Nonnull DataNode<?> node) throws IOException {
+      writeKey(node.getKey());
+      Object data = node.getPreparedData();
+      if (data == null) {
+        // not deserialized yet, keep it this way. Nothing can reference it, the index is taken to stay in sync with the reader
+        byte[] rawData = node.getRawData();
+        myObjects.put(rawData, myObjects.size());
+        writeVarInt(SERIALIZED);
+        writeBytes(rawData);
+      }
+      else {
+        writePayload(data);
+      }
+
+      Collection<DataNode<?>> children = node.getChildren();
+      writeVarInt(children.size());
+      for (DataNode<?> child : children) {
+        writeNode(child);
+      }
+    }
+
+    private void writeKey(@Nonnull Key<?> key) throws IOException {
+      Integer index = myKeys.get(key);
+      if (index != null) {
+        writeVarInt(index + 1);
+        return;
+      }
+      myKeys.put(key, myKeys.size());
+      writeVarInt(0);
+      writeString(key.getDataClass());
+      myOut.writeInt(key.getProcessingWeight());
+    }
+
+    private void writePayload(@Nonnull Object value) throws IOException {
+      Integer index = myObjects.get(value);
+      if (index != null) {
+        writeVarInt(REF);
+        writeVarInt(index);
+        return;
+      }
+      myObjects.put(value, myObjects.size());
+
+      // exact classes only: fields of subclasses would be lost
+      Class<?> aClass = value.getClass();
+      if (aClass == ProjectData.class) {
+        ProjectData project = (ProjectData)value;
+        writeVarInt(PROJECT);
+        writePayload(project.getOwner());
+        writeString(project.getExternalName());
+        writeString(project.getInternalName());
+        writeString(project.getIdeProjectFileDirectoryPath());
+        writeString(project.getLinkedExternalProjectPath());
+      }
+      else if (aClass == ModuleData.class) {
+        writeModule((ModuleData)value);
+      }
+      else if (aClass == ContentRootData.class) {
+        writeContentRoot((ContentRootData)value);
+      }
+      else if (aClass == LibraryData.class) {
+        writeLibrary((LibraryData)value);
+      }
+      else if (aClass == ModuleDependencyData.class) {
+        writeVarInt(MODULE_DEPENDENCY);
+        writeDependency((ModuleDependencyData)value);
+      }
+      else if (aClass == LibraryDependencyData.class) {
+        LibraryDependencyData dependency = (LibraryDependencyData)value;
+        writeVarInt(LIBRARY_DEPENDENCY);
+        writeDependency(dependency);
+        writeString(dependency.getLevel().name());
+      }
+      else {
+        writeVarInt(SERIALIZED);
+        writeBytes(serialize(value));
+      }
+    }
+
+    private void writeModule(@Nonnull ModuleData module) throws IOException {
+      writeVarInt(MODULE);
+      writePayload(module.getOwner());
+      writeString(module.getId());
+      writeString(module.getExternalName());
+      writeString(module.getInternalName());
+      writeString(module.getModuleDirPath());
+      writeString(module.getLinkedExternalProjectPath());
+      writeString(module.getGroup());
+      writeString(module.getVersion());
+      myOut.writeBoolean(module.isInheritProjectCompileOutputPath());
+
+      List<ExternalSystemSourceType> outputTypes = new ArrayList<>();
+      for (ExternalSystemSourceType type : ExternalSystemSourceType.values()) {
+        if (module.getCompileOutputPath(type) != null) {
+          outputTypes.add(type);
+        }
+      }
+      writeVarInt(outputTypes.size());
+      for (ExternalSystemSourceType type : outputTypes) {
+        writeString(type.name());
+        writeString(module.getCompileOutputPath(type));
+      }
+
+      List<File> artifacts = module.getArtifacts();
+      writeVarInt(artifacts.size());
+      for (File artifact : artifacts) {
+        writeString(artifact.getPath());
+      }
+    }
+
+    private void writeContentRoot(@Nonnull ContentRootData contentRoot) throws IOException {
+      writeVarInt(CONTENT_ROOT);
+      writePayload(contentRoot.getOwner());
+      writeString(contentRoot.getRootPath());
+
+      List<ExternalSystemSourceType> types = new ArrayList<>();
+      for (ExternalSystemSourceType type : ExternalSystemSourceType.values()) {
+        if (!contentRoot.getPaths(type).isEmpty()) {
+          types.add(type);
+        }
+      }
+      writeVarInt(types.size());
+      for (ExternalSystemSourceType type : types) {
+        Collection<ContentRootData.SourceRoot> roots = contentRoot.getPaths(type);
+        writeString(type.name());
+        writeVarInt(roots.size());
+        for (ContentRootData.SourceRoot root : roots) {
+          writeString(root.getPath());
+          writeString(root.getPackagePrefix());
+        }
+      }
+    }
+
+    private void writeLibrary(@Nonnull LibraryData library) throws IOException {
+      writeVarInt(LIBRARY);
+      writePayload(library.getOwner());
+      writeString(library.getExternalName());
+      writeString(library.getInternalName());
+      myOut.writeBoolean(library.isUnresolved());
+
+      List<LibraryPathType> types = new ArrayList<>();
+      for (LibraryPathType type : LibraryPathType.values()) {
+        if (!library.getPaths(type).isEmpty()) {
+          types.add(type);
+        }
+      }
+      writeVarInt(types.size());
+      for (LibraryPathType type : types) {
+        Set<String> paths = library.getPaths(type);
+        writeString(type.name());
+        writeVarInt(paths.size());
+        for (String path : paths) {
+          writeString(path);
+        }
+      }
+    }
+
+    private void writeDependency(@Nonnull AbstractDependencyData<?> dependency) throws IOException {
+      writePayload(dependency.getOwnerModule());
+      writePayload(dependency.getTarget());
+      writeString(dependency.getScope().name());
+      myOut.writeBoolean(dependency.isExported());
+    }
+
+    private void writeString(@Nullable String value) throws IOException {
+      if (value == null) {
+        writeVarInt(NULL_STRING);
+        return;
+      }
+      Integer index = myStrings.get(value);
+      if (index != null) {
+        writeVarInt(index + FIRST_STRING_INDEX);
+        return;
+      }
+      myStrings.put(value, myStrings.size());
+      writeVarInt(NEW_STRING);
+      writeBytes(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void writeBytes(@Nonnull byte[] bytes) throws IOException {
+      writeVarInt(bytes.length);
+      myOut.write(bytes);
+    }
+
+    private void writeVarInt(int value) throws IOException {
+      while ((value & ~0x7F) != 0) {
+        myOut.writeByte((value & 0x7F) | 0x80);
+        value >>>= 7;
+      }
+      myOut.writeByte(value);
+    }
+
+    @Nonnull
+    private static byte[] serialize(@Nonnull Object value) throws IOException {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+        out.writeObject(value);
+      }
+      return bytes.toByteArray();
+    }
+  }
+
+  private static final class Reader {
+    private final DataInput myIn;
+    private final ClassLoader[] myLoaders;
+    private final List<String> myStrings = new ArrayList<>();
+    private final List<Key<?>> myKeys = new ArrayList<>();
+    // decoded payloads and LazyPayload of the node data not deserialized yet
+    private final List<Object> myObjects = new ArrayList<>();
+
+    private Reader(@Nonnull DataInput in, @Nonnull ClassLoader[] loaders) {
+      myIn = in;
+      myLoaders = loaders;
+    }
+
+    @Nonnull
+    @SuppressWarnings("unchecked")
+    private DataNode<?> readNode(@Nullable DataNode<?> parent) throws IOException {
+      Key<Object> key = (Key<Object>)readKey();
+
+      DataNode<Object> node;
+      int tag = readVarInt();
+      if (tag == SERIALIZED) {
+        LazyPayload payload = new LazyPayload(readBytes());
+        myObjects.add(payload);
+        node = new DataNode<>(key, payload.myBytes, parent);
+        payload.myNode = node;
+      }
+      else {
+        node = new DataNode<>(key, readPayload(tag), parent);
+      }
+
+      int childCount = readVarInt();
+      for (int i = 0; i < childCount; i++) {
+        node.addChild(readNode(node));
+      }
+      return node;
+    }
+
+    @Nonnull
+    private Key<?> readKey() throws IOException {
+      int ref = readVarInt();
+      if (ref > 0) {
+        return myKeys.get(ref - 1);
+      }
+      Key<?> key = new Key<>(readNonNullString(), myIn.readInt());
+      myKeys.add(key);
+      return key;
+    }
+
+    @Nonnull
+    private Object readPayload() throws IOException {
+      return readPayload(readVarInt());
+    }
+
+    @Nonnull
+    private Object readPayload(int tag) throws IOException {
+      if (tag == REF) {
+        int index = readVarInt();
+        Object value = myObjects.get(index);
+        if (value instanceof LazyPayload) {
+          // shared with node data, deserialize it once for both
+          DataNode<?> node = ((LazyPayload)value).myNode;
+          node.prepareData(myLoaders);
+          value = node.getPreparedData();
+          myObjects.set(index, value);
+        }
+        if (value == null) {
+          throw new IOException("Reference to a payload being read: " + index);
+        }
+        return value;
+      }
+
+      // reserve the index in the order the writer assigned it, nested payloads are numbered after this one
+      int index = myObjects.size();
+      myObjects.add(null);
+      Object value;
+      switch (tag) {
+        case SERIALIZED:
+          value = deserialize(readBytes());
+          break;
+        case PROJECT:
+          value = readProject();
+          break;
+        case MODULE:
+          value = readModule();
+          break;
+        case CONTENT_ROOT:
+          value = readContentRoot();
+          break;
+        case LIBRARY:
+          value = readLibrary();
+          break;
+        case MODULE_DEPENDENCY:
+          value = readDependency(false);
+          break;
+        case LIBRARY_DEPENDENCY:
+          value = readDependency(true);
+          break;
+        default:
+          throw new IOException("Unknown payload tag " + tag);
+      }
+      myObjects.set(index, value);
+      return value;
+    }
+
+    @Nonnull
+    private ProjectData readProject() throws IOException {
+      ProjectSystemId owner = (ProjectSystemId)readPayload();
+      String externalName = readNonNullString();
+      String internalName = readNonNullString();
+      ProjectData project = new ProjectData(owner, externalName, readNonNullString(), readNonNullString());
+      project.setInternalName(internalName);
+      return project;
+    }
+
+    @Nonnull
+    private ModuleData readModule() throws IOException {
+      ProjectSystemId owner = (ProjectSystemId)readPayload();
+      String id = readNonNullString();
+      String externalName = readNonNullString();
+      String internalName = readNonNullString();
+      ModuleData module = new ModuleData(id, owner, externalName, readNonNullString(), readNonNullString());
+      module.setInternalName(internalName);
+      module.setGroup(readString());
+      module.setVersion(readString());
+      module.setInheritProjectCompileOutputPath(myIn.readBoolean());
+
+      int outputCount = readVarInt();
+      for (int i = 0; i < outputCount; i++) {
+        module.setCompileOutputPath(ExternalSystemSourceType.valueOf(readNonNullString()), readNonNullString());
+      }
+
+      int artifactCount = readVarInt();
+      if (artifactCount > 0) {
+        List<File> artifacts = new ArrayList<>(artifactCount);
+        for (int i = 0; i < artifactCount; i++) {
+          artifacts.add(new File(readNonNullString()));
+        }
+        module.setArtifacts(artifacts);
+      }
+      return module;
+    }
+
+    @Nonnull
+    private ContentRootData readContentRoot() throws IOException {
+      ProjectSystemId owner = (ProjectSystemId)readPayload();
+      ContentRootData contentRoot = new ContentRootData(owner, readNonNullString());
+      int typeCount = readVarInt();
+      for (int i = 0; i < typeCount; i++) {
+        ExternalSystemSourceType type = ExternalSystemSourceType.valueOf(readNonNullString());
+        int rootCount = readVarInt();
+        for (int j = 0; j < rootCount; j++) {
+          contentRoot.storePath(type, readNonNullString(), readString());
+        }
+      }
+      return contentRoot;
+    }
+
+    @Nonnull
+    private LibraryData readLibrary() throws IOException {
+      ProjectSystemId owner = (ProjectSystemId)readPayload();
+      String externalName = readNonNullString();
+      String internalName = readNonNullString();
+      LibraryData library = new LibraryData(owner, externalName, myIn.readBoolean());
+      library.setInternalName(internalName);
+      int typeCount = readVarInt();
+      for (int i = 0; i < typeCount; i++) {
+        LibraryPathType type = LibraryPathType.valueOf(readNonNullString());
+        int pathCount = readVarInt();
+        for (int j = 0; j < pathCount; j++) {
+          library.addPath(type, readNonNullString());
+        }
+      }
+      return library;
+    }
+
+    @Nonnull
+    private AbstractDependencyData<?> readDependency(boolean library) throws IOException {
+      ModuleData ownerModule = (ModuleData)readPayload();
+      Object target = readPayload();
+      DependencyScope scope = DependencyScope.valueOf(readNonNullString());
+      boolean exported = myIn.readBoolean();
+      AbstractDependencyData<?> dependency = library
+                                             ? new LibraryDependencyData(ownerModule, (LibraryData)target, LibraryLevel.valueOf(readNonNullString()))
+                                             : new ModuleDependencyData(ownerModule, (ModuleData)target);
+      dependency.setScope(scope);
+      dependency.setExported(exported);
+      return dependency;
+    }
+
+    @Nonnull
+    private Object deserialize(@Nonnull byte[] bytes) throws IOException {
+      try (ObjectInputStream in = DataNode.createObjectInputStream(bytes, myLoaders)) {
+        return in.readObject();
+      }
+      catch (ClassNotFoundException e) {
+        throw new IOException("Can't deserialize payload. Given class loaders: " + Arrays.toString(myLoaders), e);
+      }
+    }
+
+    @Nonnull
+    private String readNonNullString() throws IOException {
+      String value = readString();
+      if (value == null) {
+        throw new IOException("Unexpected null string");
+      }
+      return value;
+    }
+
+    @Nullable
+    private String readString() throws IOException {
+      int ref = readVarInt();
+      if (ref == NULL_STRING) {
+        return null;
+      }
+      if (ref != NEW_STRING) {
+        return myStrings.get(ref - FIRST_STRING_INDEX);
+      }
+      String value = new String(readBytes(), StandardCharsets.UTF_8);
+      myStrings.add(value);
+      return value;
+    }
+
+    @Nonnull
+    private byte[] readBytes() throws IOException {
+      byte[] bytes = new byte[readVarInt()];
+      myIn.readFully(bytes);
+      return bytes;
+    }
+
+    private int readVarInt() throws IOException {
+      int value = 0;
+      for (int shift = 0; shift < 32; shift += 7) {
+        byte b = myIn.readByte();
+        value |= (b & 0x7F) << shift;
+        if (b >= 0) {
+          return value;
+        }
+      }
+      throw new IOException("Malformed variable length int");
+    }
+  }
+
+  /**
+   * Java serialized node data, deserialized with the node on first access.
+   */
+  private static final class LazyPayload {
+    private final byte[] myBytes;
+    private DataNode<?> myNode;
+
+    private LazyPayload(@Nonnull byte[] bytes) {
+      myBytes = bytes;
+    }
+  }
+}
@@ -73,6 +73,11 @@ public class Key<T> implements Serializable, Comparable<Key<?>> {
     return myProcessingWeight;
   }
 
+  @Nonnull
+  String getDataClass() {
+    return myDataClass;
+  }
+
   @Override
   public int hashCode() {
     return myDataClass.hashCode();
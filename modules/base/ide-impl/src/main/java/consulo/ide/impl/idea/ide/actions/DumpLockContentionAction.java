@@ -0,0 +1,81 @@
+/*
+ * Copyright 2013-2026 consulo.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package consulo.ide.impl.idea.ide.actions;
+
+import consulo.annotation.component.ActionImpl;
+import consulo.annotation.component.ActionParentRef;
+import consulo.annotation.component.ActionRef;
+import consulo.application.Application;
+import consulo.application.dumb.DumbAware;
+import consulo.application.impl.internal.performance.LockContentionProfiler;
+import consulo.container.boot.ContainerPathManager;
+import consulo.container.plugin.PluginId;
+import consulo.ide.impl.idea.ide.plugins.PluginManagerCore;
+import consulo.localize.LocalizeValue;
+import consulo.logging.Logger;
+import consulo.ui.annotation.RequiredUIAccess;
+import consulo.ui.ex.action.AnAction;
+import consulo.ui.ex.action.AnActionEvent;
+import consulo.util.io.FileUtil;
+import jakarta.annotation.Nonnull;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * Starts {@link LockContentionProfiler} on the first invocation, and writes its report to the log directory on the next ones.
+ * Read action call sites are attributed to plugins which loaded their classes.
+ */
+@ActionImpl(id = "DumpLockContention", parents = @ActionParentRef(@ActionRef(id = "Internal")))
+public class DumpLockContentionAction extends AnAction implements DumbAware {
+  private static final Logger LOG = Logger.getInstance(DumpLockContentionAction.class);
+
+  @RequiredUIAccess
+  @Override
+  public void actionPerformed(@Nonnull AnActionEvent e) {
+    if (!LockContentionProfiler.isEnabled()) {
+      LockContentionProfiler.setEnabled(true);
+      LOG.info("Lock contention profiler started");
+      return;
+    }
+
+    String report = LockContentionProfiler.dump(className -> {
+      PluginId pluginId = PluginManagerCore.getPluginByClassName(className);
+      return pluginId == null ? null : "plugin " + pluginId.getIdString();
+    }, 100);
+    LOG.info(report);
+
+    File file = new File(ContainerPathManager.get().getLogPath(), "lockContention-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + ".txt");
+    try {
+      FileUtil.writeToFile(file, report);
+      if (ShowFilePathAction.isSupported()) {
+        ShowFilePathAction.openFile(file);
+      }
+    }
+    catch (IOException ex) {
+      LOG.warn(ex);
+    }
+  }
+
+  @RequiredUIAccess
+  @Override
+  public void update(@Nonnull AnActionEvent e) {
+    e.getPresentation().setEnabledAndVisible(Application.get().isInternal());
+    e.getPresentation().setTextValue(LocalizeValue.localizeTODO(LockContentionProfiler.isEnabled() ? "Dump Lock Contention" : "Start Lock Contention Profiler"));
+  }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2013-2026 consulo.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package consulo.ide.impl.idea.ide.actions;
+
+import consulo.annotation.component.ActionImpl;
+import consulo.annotation.component.ActionParentRef;
+import consulo.annotation.component.ActionRef;
+import consulo.application.Application;
+import consulo.application.dumb.DumbAware;
+import consulo.application.impl.internal.util.CachedValueStatistics;
+import consulo.container.boot.ContainerPathManager;
+import consulo.localize.LocalizeValue;
+import consulo.logging.Logger;
+import consulo.ui.annotation.RequiredUIAccess;
+import consulo.ui.ex.action.AnAction;
+import consulo.ui.ex.action.AnActionEvent;
+import jakarta.annotation.Nonnull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * Enables {@link CachedValueStatistics} collection, and exports collected statistics as CSV into the log directory afterwards.
+ */
+@ActionImpl(id = "ExportCachedValueStatistics", parents = @ActionParentRef(@ActionRef(id = "Internal")))
+public class ExportCachedValueStatisticsAction extends AnAction implements DumbAware {
+  private static final Logger LOG = Logger.getInstance(ExportCachedValueStatisticsAction.class);
+
+  @RequiredUIAccess
+  @Override
+  public void actionPerformed(@Nonnull AnActionEvent e) {
+    if (!CachedValueStatistics.isEnabled()) {
+      CachedValueStatistics.reset();
+      CachedValueStatistics.setEnabled(true);
+      return;
+    }
+
+    LOG.info(CachedValueStatistics.dump(30));
+
+    File file = new File(ContainerPathManager.get().getLogPath(), "cachedValues-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + ".csv");
+    try (Writer writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+      CachedValueStatistics.exportCsv(writer);
+    }
+    catch (IOException ex) {
+      LOG.warn(ex);
+      return;
+    }
+    if (ShowFilePathAction.isSupported()) {
+      ShowFilePathAction.openFile(file);
+    }
+  }
+
+  @RequiredUIAccess
+  @Override
+  public void update(@Nonnull AnActionEvent e) {
+    e.getPresentation().setEnabledAndVisible(Application.get().isInternal());
+    e.getPresentation().setTextValue(LocalizeValue.localizeTODO(CachedValueStatistics.isEnabled() ? "Export Cached Value Statistics" : "Collect Cached Value Statistics"));
+  }
+}
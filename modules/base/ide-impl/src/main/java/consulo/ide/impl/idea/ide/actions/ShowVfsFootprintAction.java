@@ -0,0 +1,58 @@
+/*
+ * Copyright 2013-2026 consulo.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package consulo.ide.impl.idea.ide.actions;
+
+import consulo.annotation.component.ActionImpl;
+import consulo.annotation.component.ActionParentRef;
+import consulo.annotation.component.ActionRef;
+import consulo.application.Application;
+import consulo.application.dumb.DumbAware;
+import consulo.ide.impl.idea.openapi.vfs.newvfs.persistent.PersistentFS;
+import consulo.ide.impl.idea.openapi.vfs.newvfs.persistent.PersistentFSImpl;
+import consulo.localize.LocalizeValue;
+import consulo.logging.Logger;
+import consulo.project.Project;
+import consulo.ui.annotation.RequiredUIAccess;
+import consulo.ui.ex.action.AnAction;
+import consulo.ui.ex.action.AnActionEvent;
+import consulo.ui.ex.awt.Messages;
+import jakarta.annotation.Nonnull;
+
+/**
+ * Reports memory used for files loaded into VFS.
+ */
+@ActionImpl(id = "ShowVfsFootprint", parents = @ActionParentRef(@ActionRef(id = "Internal")))
+public class ShowVfsFootprintAction extends AnAction implements DumbAware {
+  private static final Logger LOG = Logger.getInstance(ShowVfsFootprintAction.class);
+
+  public ShowVfsFootprintAction() {
+    super(LocalizeValue.localizeTODO("Show VFS Memory Footprint"));
+  }
+
+  @RequiredUIAccess
+  @Override
+  public void actionPerformed(@Nonnull AnActionEvent e) {
+    String report = ((PersistentFSImpl)PersistentFS.getInstance()).getVfsData().getFootprintReport();
+    LOG.info(report);
+    Messages.showInfoMessage(e.getData(Project.KEY), report, "VFS Memory Footprint");
+  }
+
+  @RequiredUIAccess
+  @Override
+  public void update(@Nonnull AnActionEvent e) {
+    e.getPresentation().setEnabledAndVisible(Application.get().isInternal());
+  }
+}
@@ -2,6 +2,7 @@ package consulo.ide.impl.idea.openapi.externalSystem.service.internal;
 
 import consulo.ide.ServiceManager;
 import consulo.externalSystem.model.DataNode;
+import consulo.externalSystem.model.DataNodeCodec;
 import consulo.externalSystem.model.ProjectSystemId;
 import consulo.externalSystem.service.project.ProjectData;
 import consulo.externalSystem.model.setting.ExternalSystemExecutionSettings;
@@ -45,12 +46,12 @@ public class ExternalSystemResolveProjectTask extends AbstractExternalSystemTask
     RemoteExternalSystemProjectResolver resolver = manager.getFacade(ideProject, myProjectPath, getExternalSystemId()).getResolver();
     ExternalSystemExecutionSettings settings = ExternalSystemApiUtil.getExecutionSettings(ideProject, myProjectPath, getExternalSystemId());
 
-    DataNode<ProjectData> project = resolver.resolveProjectInfo(getId(), myProjectPath, myIsPreviewMode, settings);
+    byte[] project = resolver.resolveProjectInfo(getId(), myProjectPath, myIsPreviewMode, settings);
 
     if (project == null) {
       return;
     }
-    myExternalProject.set(project);
+    myExternalProject.set((DataNode<ProjectData>)DataNodeCodec.decode(project));
   }
 
   protected boolean doCancel() throws Exception {
@@ -16,8 +16,8 @@
 package consulo.ide.impl.idea.openapi.externalSystem.service.remote;
 
 import consulo.externalSystem.model.DataNode;
+import consulo.externalSystem.model.DataNodeCodec;
 import consulo.externalSystem.rt.model.ExternalSystemException;
-import consulo.externalSystem.service.project.ProjectData;
 import consulo.externalSystem.model.setting.ExternalSystemExecutionSettings;
 import consulo.externalSystem.model.task.ExternalSystemTaskId;
 import consulo.externalSystem.model.task.ExternalSystemTaskNotificationListener;
@@ -41,7 +41,7 @@ public interface RemoteExternalSystemProjectResolver<S extends ExternalSystemExe
     = new RemoteExternalSystemProjectResolver<ExternalSystemExecutionSettings>() {
     @jakarta.annotation.Nullable
     @Override
-    public DataNode<ProjectData> resolveProjectInfo(@Nonnull ExternalSystemTaskId id,
+    public byte[] resolveProjectInfo(@Nonnull ExternalSystemTaskId id,
                                                     @Nonnull String projectPath,
                                                     boolean isPreviewMode,
                                                     @jakarta.annotation.Nullable ExternalSystemExecutionSettings settings)
@@ -76,8 +76,14 @@ public interface RemoteExternalSystemProjectResolver<S extends ExternalSystemExe
   };
 
 
+  /**
+   * Resolves the project in the external system process, the resulting tree crosses the process boundary in the compact
+   * {@link DataNodeCodec} format: strings and payloads shared by its nodes are written once for the whole tree.
+   *
+   * @return {@link DataNodeCodec#encode(DataNode) encoded} {@code DataNode<ProjectData>} tree, or null if the project can't be resolved
+   */
   @jakarta.annotation.Nullable
-  DataNode<ProjectData> resolveProjectInfo(@Nonnull ExternalSystemTaskId id,
+  byte[] resolveProjectInfo(@Nonnull ExternalSystemTaskId id,
                                            @Nonnull String projectPath,
                                            boolean isPreviewMode,
                                            @jakarta.annotation.Nullable S settings)
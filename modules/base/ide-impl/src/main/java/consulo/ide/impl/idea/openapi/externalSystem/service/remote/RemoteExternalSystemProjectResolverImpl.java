@@ -1,6 +1,7 @@
 package consulo.ide.impl.idea.openapi.externalSystem.service.remote;
 
 import consulo.externalSystem.model.DataNode;
+import consulo.externalSystem.model.DataNodeCodec;
 import consulo.externalSystem.rt.model.ExternalSystemException;
 import consulo.externalSystem.service.project.ProjectData;
 import consulo.externalSystem.model.setting.ExternalSystemExecutionSettings;
@@ -9,6 +10,8 @@ import consulo.externalSystem.service.project.ExternalSystemProjectResolver;
 import consulo.ide.impl.idea.util.Producer;
 import jakarta.annotation.Nonnull;
 
+import java.io.IOException;
+
 /**
  * Defines common interface for resolving gradle project, i.e. building object-level representation of <code>'build.gradle'</code>.
  * 
@@ -27,19 +30,28 @@ public class RemoteExternalSystemProjectResolverImpl<S extends ExternalSystemExe
 
   @jakarta.annotation.Nullable
   @Override
-  public DataNode<ProjectData> resolveProjectInfo(@Nonnull final ExternalSystemTaskId id,
-                                                  @Nonnull final String projectPath,
-                                                  final boolean isPreviewMode,
-                                                  ExternalSystemExecutionSettings settings)
+  public byte[] resolveProjectInfo(@Nonnull final ExternalSystemTaskId id,
+                                   @Nonnull final String projectPath,
+                                   final boolean isPreviewMode,
+                                   ExternalSystemExecutionSettings settings)
     throws ExternalSystemException, IllegalArgumentException, IllegalStateException
   {
-    return execute(id, new Producer<DataNode<ProjectData>>() {
+    DataNode<ProjectData> project = execute(id, new Producer<DataNode<ProjectData>>() {
       @jakarta.annotation.Nullable
       @Override
       public DataNode<ProjectData> produce() {
         return myDelegate.resolveProjectInfo(id, projectPath, isPreviewMode, getSettings(), getNotificationListener());
       }
     });
+    if (project == null) {
+      return null;
+    }
+    try {
+      return DataNodeCodec.encode(project);
+    }
+    catch (IOException e) {
+      throw new ExternalSystemException(e);
+    }
   }
 
   @Override
@@ -1,8 +1,6 @@
 package consulo.ide.impl.idea.openapi.externalSystem.service.remote.wrapper;
 
-import consulo.externalSystem.model.DataNode;
 import consulo.externalSystem.rt.model.ExternalSystemException;
-import consulo.externalSystem.service.project.ProjectData;
 import consulo.externalSystem.model.setting.ExternalSystemExecutionSettings;
 import consulo.externalSystem.model.task.ExternalSystemTaskId;
 import consulo.externalSystem.model.task.ExternalSystemTaskNotificationListener;
@@ -39,17 +37,17 @@ public class ExternalSystemProjectResolverWrapper<S extends ExternalSystemExecut
 
   @jakarta.annotation.Nullable
   @Override
-  public DataNode<ProjectData> resolveProjectInfo(@Nonnull ExternalSystemTaskId id,
-                                                    @Nonnull String projectPath,
-                                                    boolean isPreviewMode,
-                                                    @Nullable S settings)
+  public byte[] resolveProjectInfo(@Nonnull ExternalSystemTaskId id,
+                                   @Nonnull String projectPath,
+                                   boolean isPreviewMode,
+                                   @Nullable S settings)
     throws ExternalSystemException, IllegalArgumentException, IllegalStateException, RemoteException
   {
     myProgressManager.onQueued(id);
     try {
-      DataNode<ProjectData> projectDataNode = getDelegate().resolveProjectInfo(id, projectPath, isPreviewMode, settings);
+      byte[] project = getDelegate().resolveProjectInfo(id, projectPath, isPreviewMode, settings);
       myProgressManager.onSuccess(id);
-      return projectDataNode;
+      return project;
     }
     catch (ExternalSystemException e) {
       myProgressManager.onFailure(id, e);
@@ -44,6 +44,7 @@ import jakarta.inject.Singleton;
 import jakarta.annotation.Nonnull;
 import jakarta.annotation.Nullable;
 import java.util.List;
+import java.util.function.Predicate;
 
 @Singleton
 @ServiceImpl
@@ -55,6 +56,9 @@ public class DirectoryIndexImpl extends DirectoryIndex implements Disposable  {
 
   private volatile boolean myDisposed = false;
   private volatile RootIndex myRootIndex = null;
+  // index to update incrementally on the next access instead of building a new one
+  private volatile RootIndex myPreviousRootIndex = null;
+  private final Object myRootIndexLock = new Object();
 
   @Inject
   @RequiredReadAction
@@ -69,13 +73,22 @@ public class DirectoryIndexImpl extends DirectoryIndex implements Disposable  {
     myConnection.subscribe(FileTypeListener.class, new FileTypeListener() {
       @Override
       public void fileTypesChanged(@Nonnull FileTypeEvent event) {
-        myRootIndex = null;
+        resetRootIndex();
       }
     });
 
     myConnection.subscribe(ModuleRootListener.class, new ModuleRootListener() {
       @Override
       public void rootsChanged(ModuleRootEvent event) {
+        if (event.isCausedByFileTypesChange()) {
+          resetRootIndex();
+          return;
+        }
+
+        RootIndex rootIndex = myRootIndex;
+        if (rootIndex != null) {
+          myPreviousRootIndex = rootIndex;
+        }
         myRootIndex = null;
       }
     });
@@ -84,8 +97,12 @@ public class DirectoryIndexImpl extends DirectoryIndex implements Disposable  {
       @Override
       public void after(@Nonnull List<? extends VFileEvent> events) {
         RootIndex rootIndex = myRootIndex;
+        if (rootIndex == null) {
+          // infos of the index kept for reuse must not survive directory events either
+          rootIndex = myPreviousRootIndex;
+        }
         if (rootIndex != null && rootIndex.resetOnEvents(events)) {
-          myRootIndex = null;
+          resetRootIndex();
         }
       }
     });
@@ -98,6 +115,11 @@ public class DirectoryIndexImpl extends DirectoryIndex implements Disposable  {
     }, project);
   }
 
+  private void resetRootIndex() {
+    myPreviousRootIndex = null;
+    myRootIndex = null;
+  }
+
   private void dispatchPendingEvents() {
     myConnection.deliverImmediately();
   }
@@ -105,7 +127,7 @@ public class DirectoryIndexImpl extends DirectoryIndex implements Disposable  {
   @Override
   public void dispose() {
     myDisposed = true;
-    myRootIndex = null;
+    resetRootIndex();
   }
 
   @Override
@@ -117,10 +139,26 @@ public class DirectoryIndexImpl extends DirectoryIndex implements Disposable  {
   @Nonnull
   private RootIndex getRootIndex() {
     RootIndex rootIndex = myRootIndex;
-    if (rootIndex == null) {
-      myRootIndex = rootIndex = new RootIndex(myProject, createRootInfoCache());
+    if (rootIndex != null) {
+      return rootIndex;
+    }
+
+    synchronized (myRootIndexLock) {
+      rootIndex = myRootIndex;
+      if (rootIndex == null) {
+        RootIndex previous = myPreviousRootIndex;
+        // the previous index shares its info cache with the updated one, so it's consumed even if the update fails
+        myPreviousRootIndex = null;
+        if (previous != null) {
+          rootIndex = previous.update();
+        }
+        if (rootIndex == null) {
+          rootIndex = new RootIndex(myProject, createRootInfoCache());
+        }
+        myRootIndex = rootIndex;
+      }
+      return rootIndex;
     }
-    return rootIndex;
   }
 
   protected RootIndex.InfoCache createRootInfoCache() {
@@ -137,6 +175,12 @@ public class DirectoryIndexImpl extends DirectoryIndex implements Disposable  {
       public DirectoryInfo getCachedInfo(@Nonnull VirtualFile dir) {
         return myInfoCache.get(((NewVirtualFile)dir).getId());
       }
+
+      @Override
+      public boolean removeInfos(@Nonnull Predicate<? super DirectoryInfo> filter) {
+        myInfoCache.removeIf((id, info) -> filter.test(info));
+        return true;
+      }
     };
   }
 
@@ -51,6 +51,7 @@ import consulo.content.base.SourcesOrderRootType;
 import jakarta.annotation.Nonnull;
 import jakarta.annotation.Nullable;
 import java.util.*;
+import java.util.function.Predicate;
 
 public class RootIndex {
   public static final Logger LOGGER = Logger.getInstance(RootIndex.class);
@@ -66,6 +67,13 @@ public class RootIndex {
     DirectoryInfo getCachedInfo(@Nonnull VirtualFile dir);
 
     void cacheInfo(@Nonnull VirtualFile dir, @Nonnull DirectoryInfo info);
+
+    /**
+     * @return false if the cache can't drop entries, then the index is rebuilt from scratch on every roots change
+     */
+    default boolean removeInfos(@Nonnull Predicate<? super DirectoryInfo> filter) {
+      return false;
+    }
   }
 
   private final Set<VirtualFile> myProjectExcludedRoots = ContainerUtil.newHashSet();
@@ -81,24 +89,142 @@ public class RootIndex {
   private final InfoCache myInfoCache;
   @Nonnull
   private final Project myProject;
+  @Nonnull
+  private final RootInfo myRootInfo;
+  @Nonnull
+  private final Set<VirtualFile> myAllRoots;
+  private final Map<VirtualFile, DirectoryInfo> myRootDirectoryInfos = ContainerUtil.newHashMap();
+  private final Map<VirtualFile, String> myRootPackagePrefixes = ContainerUtil.newHashMap();
   private volatile Map<VirtualFile, OrderEntry[]> myOrderEntries;
+  private volatile OrderEntryRoots myOrderEntryRoots;
+  // order entries of the index this one was updated from, reused for roots the update didn't touch
+  private volatile PreviousOrderEntries myPreviousOrderEntries;
 
   // made public for Upsource
   public RootIndex(@Nonnull Project project, @Nonnull InfoCache cache) {
     myProject = project;
     myInfoCache = cache;
+    myRootInfo = buildRootInfo(project);
+    myAllRoots = myRootInfo.getAllRoots();
+
+    for (VirtualFile root : myAllRoots) {
+      indexRoot(root);
+    }
+    fillPackagePrefixRoots();
+  }
+
+  private RootIndex(@Nonnull RootIndex previous, @Nonnull RootInfo info, @Nonnull Set<VirtualFile> allRoots, @Nonnull Set<VirtualFile> affectedRoots) {
+    myProject = previous.myProject;
+    myInfoCache = previous.myInfoCache;
+    myRootInfo = info;
+    myAllRoots = allRoots;
 
-    final RootInfo info = buildRootInfo(project);
-    Set<VirtualFile> allRoots = info.getAllRoots();
     for (VirtualFile root : allRoots) {
-      List<VirtualFile> hierarchy = getHierarchy(root, allRoots, info);
-      Pair<DirectoryInfo, String> pair = hierarchy != null ? calcDirectoryInfo(root, hierarchy, info) : new Pair<>(NonProjectDirectoryInfo.IGNORED, null);
-      cacheInfos(root, root, pair.first);
-      myPackagePrefixRoots.putValue(pair.second, root);
-      if (info.shouldMarkAsProjectExcluded(root, hierarchy)) {
-        myProjectExcludedRoots.add(root);
+      DirectoryInfo directoryInfo = previous.myRootDirectoryInfos.get(root);
+      if (directoryInfo == null || affectedRoots.contains(root)) {
+        indexRoot(root);
+      }
+      else {
+        // the cached info might have been dropped together with infos of the changed roots below
+        myInfoCache.cacheInfo(root, directoryInfo);
+        myRootDirectoryInfos.put(root, directoryInfo);
+        myRootPackagePrefixes.put(root, previous.myRootPackagePrefixes.get(root));
+        if (previous.myProjectExcludedRoots.contains(root)) {
+          myProjectExcludedRoots.add(root);
+        }
       }
     }
+    fillPackagePrefixRoots();
+
+    Map<VirtualFile, OrderEntry[]> orderEntries = previous.myOrderEntries;
+    PreviousOrderEntries previousOrderEntries = previous.myPreviousOrderEntries;
+    if (orderEntries != null) {
+      myPreviousOrderEntries = new PreviousOrderEntries(orderEntries, previous.myOrderEntryRoots, affectedRoots);
+    }
+    else if (previousOrderEntries != null) {
+      // order entries weren't requested since the last update, diff against the last computed ones
+      Set<VirtualFile> allAffectedRoots = ContainerUtil.newHashSet(previousOrderEntries.affectedRoots);
+      allAffectedRoots.addAll(affectedRoots);
+      myPreviousOrderEntries = new PreviousOrderEntries(previousOrderEntries.orderEntries, previousOrderEntries.roots, allAffectedRoots);
+    }
+  }
+
+  /**
+   * Builds the index for the current project roots, recalculating only roots whose hierarchy of roots changed since this index was built.
+   * The info cache is shared with the new index, so this index must not be used afterwards.
+   *
+   * @return null if most of the roots changed and a full rebuild is cheaper
+   */
+  @Nullable
+  RootIndex update() {
+    RootInfo info = buildRootInfo(myProject);
+    Set<VirtualFile> allRoots = info.getAllRoots();
+
+    Set<VirtualFile> changedRoots = ContainerUtil.newHashSet();
+    for (VirtualFile root : ContainerUtil.union(myAllRoots, allRoots)) {
+      if (!myRootInfo.isSameRoot(info, root)) {
+        changedRoots.add(root);
+      }
+    }
+
+    Set<VirtualFile> affectedRoots = collectRootsUnder(allRoots, changedRoots);
+    if (affectedRoots.size() * 2 > allRoots.size()) {
+      return null;
+    }
+
+    // infos of directories under changed roots point to an ancestor root or to a non-project info, drop both
+    Set<VirtualFile> staleRoots = ContainerUtil.newHashSet(affectedRoots);
+    staleRoots.addAll(collectRootsUnder(myAllRoots, changedRoots));
+    for (VirtualFile root : changedRoots) {
+      for (VirtualFile parent = root.getParent(); parent != null; parent = parent.getParent()) {
+        staleRoots.add(parent);
+      }
+    }
+    if (!changedRoots.isEmpty() && !myInfoCache.removeInfos(dirInfo -> !(dirInfo instanceof DirectoryInfoImpl) || staleRoots.contains(((DirectoryInfoImpl)dirInfo).getRoot()))) {
+      return null;
+    }
+
+    return new RootIndex(this, info, allRoots, affectedRoots);
+  }
+
+  @Nonnull
+  private static Set<VirtualFile> collectRootsUnder(@Nonnull Set<VirtualFile> roots, @Nonnull Set<VirtualFile> ancestors) {
+    if (ancestors.isEmpty()) {
+      return Collections.emptySet();
+    }
+    Set<VirtualFile> result = ContainerUtil.newHashSet();
+    for (VirtualFile root : roots) {
+      if (hasAncestorIn(root, ancestors)) {
+        result.add(root);
+      }
+    }
+    return result;
+  }
+
+  private static boolean hasAncestorIn(@Nonnull VirtualFile file, @Nonnull Set<VirtualFile> ancestors) {
+    for (VirtualFile dir = file; dir != null; dir = dir.getParent()) {
+      if (ancestors.contains(dir)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void indexRoot(@Nonnull VirtualFile root) {
+    List<VirtualFile> hierarchy = getHierarchy(root, myAllRoots, myRootInfo);
+    Pair<DirectoryInfo, String> pair = hierarchy != null ? calcDirectoryInfo(root, hierarchy, myRootInfo) : new Pair<>(NonProjectDirectoryInfo.IGNORED, null);
+    cacheInfos(root, root, pair.first);
+    myRootDirectoryInfos.put(root, pair.first);
+    myRootPackagePrefixes.put(root, pair.second);
+    if (myRootInfo.shouldMarkAsProjectExcluded(root, hierarchy)) {
+      myProjectExcludedRoots.add(root);
+    }
+  }
+
+  private void fillPackagePrefixRoots() {
+    for (VirtualFile root : myAllRoots) {
+      myPackagePrefixRoots.putValue(myRootPackagePrefixes.get(root), root);
+    }
   }
 
   public void onLowMemory() {
@@ -106,7 +232,7 @@ public class RootIndex {
   }
 
   @Nonnull
-  private RootInfo buildRootInfo(@Nonnull Project project) {
+  private static RootInfo buildRootInfo(@Nonnull Project project) {
     final RootInfo info = new RootInfo();
     for (final Module module : ModuleManager.getInstance(project).getModules()) {
       final ModuleRootManager moduleRootManager = ModuleRootManager.getInstance(module);
@@ -190,9 +316,30 @@ public class RootIndex {
     Map<VirtualFile, OrderEntry[]> result = myOrderEntries;
     if (result != null) return result;
 
-    MultiMap<VirtualFile, OrderEntry> libClassRootEntries = MultiMap.createSmart();
-    MultiMap<VirtualFile, OrderEntry> libSourceRootEntries = MultiMap.createSmart();
-    MultiMap<VirtualFile, OrderEntry> depEntries = MultiMap.createSmart();
+    OrderEntryRoots entryRoots = collectOrderEntryRoots();
+    PreviousOrderEntries previous = myPreviousOrderEntries;
+    Set<VirtualFile> changedRoots = previous == null ? null : previous.roots.collectChangedRoots(entryRoots, myRootInfo);
+
+    result = ContainerUtil.newHashMap();
+    for (VirtualFile file : myAllRoots) {
+      if (previous != null && previous.orderEntries.containsKey(file) && !previous.affectedRoots.contains(file) && !hasAncestorIn(file, changedRoots)) {
+        result.put(file, previous.orderEntries.get(file));
+        continue;
+      }
+      List<VirtualFile> hierarchy = getHierarchy(file, myAllRoots, myRootInfo);
+      result.put(file, hierarchy == null ? OrderEntry.EMPTY_ARRAY : calcOrderEntries(myRootInfo, entryRoots, hierarchy));
+    }
+    myOrderEntryRoots = entryRoots;
+    myOrderEntries = result;
+    myPreviousOrderEntries = null;
+    return result;
+  }
+
+  @Nonnull
+  private OrderEntryRoots collectOrderEntryRoots() {
+    OrderEntryRoots entryRoots = new OrderEntryRoots();
+    // many modules depend on the same module, collect its exported roots once
+    Map<Module, VirtualFile[]> importedClassRoots = ContainerUtil.newHashMap();
 
     for (final Module module : ModuleManager.getInstance(myProject).getModules()) {
       final ModuleRootManager moduleRootManager = ModuleRootManager.getInstance(module);
@@ -200,35 +347,33 @@ public class RootIndex {
         if (orderEntry instanceof ModuleOrderEntry) {
           final Module depModule = ((ModuleOrderEntry)orderEntry).getModule();
           if (depModule != null) {
-            VirtualFile[] importedClassRoots = OrderEnumerator.orderEntries(depModule).exportedOnly().recursively().classes().usingCache().getRoots();
-            for (VirtualFile importedClassRoot : importedClassRoots) {
-              depEntries.putValue(importedClassRoot, orderEntry);
+            VirtualFile[] roots = importedClassRoots.computeIfAbsent(depModule, m -> OrderEnumerator.orderEntries(m).exportedOnly().recursively().classes().usingCache().getRoots());
+            for (VirtualFile importedClassRoot : roots) {
+              entryRoots.depEntries.putValue(importedClassRoot, orderEntry);
             }
           }
           for (VirtualFile sourceRoot : orderEntry.getFiles(SourcesOrderRootType.getInstance())) {
-            depEntries.putValue(sourceRoot, orderEntry);
+            entryRoots.depEntries.putValue(sourceRoot, orderEntry);
           }
         }
         else if (orderEntry instanceof OrderEntryWithTracking) {
           for (final VirtualFile sourceRoot : orderEntry.getFiles(SourcesOrderRootType.getInstance())) {
-            libSourceRootEntries.putValue(sourceRoot, orderEntry);
+            entryRoots.libSourceRootEntries.putValue(sourceRoot, orderEntry);
           }
           for (final VirtualFile classRoot : orderEntry.getFiles(BinariesOrderRootType.getInstance())) {
-            libClassRootEntries.putValue(classRoot, orderEntry);
+            entryRoots.libClassRootEntries.putValue(classRoot, orderEntry);
           }
         }
+        else if (orderEntry instanceof ModuleSourceOrderEntry) {
+          entryRoots.moduleSourceEntries.putIfAbsent(module, orderEntry);
+        }
       }
     }
+    return entryRoots;
+  }
 
-    RootInfo rootInfo = buildRootInfo(myProject);
-    result = ContainerUtil.newHashMap();
-    Set<VirtualFile> allRoots = rootInfo.getAllRoots();
-    for (VirtualFile file : allRoots) {
-      List<VirtualFile> hierarchy = getHierarchy(file, allRoots, rootInfo);
-      result.put(file, hierarchy == null ? OrderEntry.EMPTY_ARRAY : calcOrderEntries(rootInfo, depEntries, libClassRootEntries, libSourceRootEntries, hierarchy));
-    }
-    myOrderEntries = result;
-    return result;
+  private static OrderEntry[] calcOrderEntries(@Nonnull RootInfo info, @Nonnull OrderEntryRoots entryRoots, @Nonnull List<VirtualFile> hierarchy) {
+    return calcOrderEntries(info, entryRoots.depEntries, entryRoots.libClassRootEntries, entryRoots.libSourceRootEntries, hierarchy);
   }
 
   private static OrderEntry[] calcOrderEntries(@Nonnull RootInfo info,
@@ -470,6 +615,24 @@ public class RootIndex {
       return result;
     }
 
+    /**
+     * @return true if the root plays the same role in both infos
+     */
+    private boolean isSameRoot(@Nonnull RootInfo other, @Nonnull VirtualFile root) {
+      return classAndSourceRoots.contains(root) == other.classAndSourceRoots.contains(root) &&
+             libraryOrSdkSources.contains(root) == other.libraryOrSdkSources.contains(root) &&
+             libraryOrSdkClasses.contains(root) == other.libraryOrSdkClasses.contains(root) &&
+             contentRootOf.get(root) == other.contentRootOf.get(root) &&
+             contentFolders.get(root) == other.contentFolders.get(root) &&
+             excludedFromProject.contains(root) == other.excludedFromProject.contains(root) &&
+             excludedFromModule.get(root) == other.excludedFromModule.get(root) &&
+             Objects.equals(packagePrefix.get(root), other.packagePrefix.get(root)) &&
+             sameValues(sourceRootOf.get(root), other.sourceRootOf.get(root)) &&
+             sameValues(excludedFromLibraries.get(root), other.excludedFromLibraries.get(root)) &&
+             sameValues(classOfLibraries.get(root), other.classOfLibraries.get(root)) &&
+             sameValues(sourceOfLibraries.get(root), other.sourceOfLibraries.get(root));
+    }
+
     private boolean shouldMarkAsProjectExcluded(@Nonnull VirtualFile root, @Nullable List<VirtualFile> hierarchy) {
       if (hierarchy == null) return false;
       if (!excludedFromProject.contains(root) && !excludedFromModule.containsKey(root)) return false;
@@ -579,6 +742,67 @@ public class RootIndex {
     }
   }
 
+  private static boolean sameValues(@Nonnull Collection<?> values1, @Nonnull Collection<?> values2) {
+    return values1.size() == values2.size() && ContainerUtil.newHashSet(values1).equals(ContainerUtil.newHashSet(values2));
+  }
+
+  private static class OrderEntryRoots {
+    final MultiMap<VirtualFile, OrderEntry> libClassRootEntries = MultiMap.createSmart();
+    final MultiMap<VirtualFile, OrderEntry> libSourceRootEntries = MultiMap.createSmart();
+    final MultiMap<VirtualFile, OrderEntry> depEntries = MultiMap.createSmart();
+    final Map<Module, OrderEntry> moduleSourceEntries = ContainerUtil.newHashMap();
+
+    /**
+     * @return roots whose order entries may differ from ones calculated with these entries
+     */
+    @Nonnull
+    Set<VirtualFile> collectChangedRoots(@Nonnull OrderEntryRoots other, @Nonnull RootInfo info) {
+      Set<VirtualFile> result = ContainerUtil.newHashSet();
+      collectChangedKeys(libClassRootEntries, other.libClassRootEntries, result);
+      collectChangedKeys(libSourceRootEntries, other.libSourceRootEntries, result);
+      collectChangedKeys(depEntries, other.depEntries, result);
+
+      Set<Module> changedModules = ContainerUtil.newHashSet();
+      for (Module module : ContainerUtil.union(moduleSourceEntries.keySet(), other.moduleSourceEntries.keySet())) {
+        if (moduleSourceEntries.get(module) != other.moduleSourceEntries.get(module)) {
+          changedModules.add(module);
+        }
+      }
+      if (!changedModules.isEmpty()) {
+        for (Map.Entry<VirtualFile, Module> entry : info.contentRootOf.entrySet()) {
+          if (changedModules.contains(entry.getValue())) {
+            result.add(entry.getKey());
+          }
+        }
+      }
+      return result;
+    }
+
+    private static void collectChangedKeys(@Nonnull MultiMap<VirtualFile, OrderEntry> map1, @Nonnull MultiMap<VirtualFile, OrderEntry> map2, @Nonnull Set<VirtualFile> result) {
+      for (VirtualFile root : ContainerUtil.union(map1.keySet(), map2.keySet())) {
+        // order matters here, entries of one module are not sorted
+        if (!new ArrayList<>(map1.get(root)).equals(new ArrayList<>(map2.get(root)))) {
+          result.add(root);
+        }
+      }
+    }
+  }
+
+  private static class PreviousOrderEntries {
+    @Nonnull
+    final Map<VirtualFile, OrderEntry[]> orderEntries;
+    @Nonnull
+    final OrderEntryRoots roots;
+    @Nonnull
+    final Set<VirtualFile> affectedRoots;
+
+    PreviousOrderEntries(@Nonnull Map<VirtualFile, OrderEntry[]> orderEntries, @Nonnull OrderEntryRoots roots, @Nonnull Set<VirtualFile> affectedRoots) {
+      this.orderEntries = orderEntries;
+      this.roots = roots;
+      this.affectedRoots = affectedRoots;
+    }
+  }
+
   @Nonnull
   private Pair<DirectoryInfo, String> calcDirectoryInfo(@Nonnull final VirtualFile root, @Nonnull final List<VirtualFile> hierarchy, @Nonnull RootInfo info) {
     VirtualFile moduleContentRoot = info.findModuleRootInfo(hierarchy);
@@ -47,6 +47,11 @@ import static consulo.ide.impl.idea.openapi.localVcs.UpToDateLineNumberProvider.
 public abstract class LineStatusTrackerBase {
   protected static final Logger LOG = Logger.getInstance(LineStatusTrackerBase.class);
 
+  // dirty region covering more lines than this part of both documents is recalculated by full rediff
+  private static final double FULL_REDIFF_RATIO = 0.5;
+  // regions smaller than this are always recalculated incrementally
+  private static final int MIN_FULL_REDIFF_LINES = 1000;
+
   // all variables should be modified in EDT and under LOCK
   // read access allowed from EDT or while holding LOCK
   private final Object LOCK = new Object();
@@ -155,6 +160,7 @@ public abstract class LineStatusTrackerBase {
     synchronized (LOCK) {
       destroyRanges();
       try {
+        LineStatusTrackerStatistics.fullUpdate(getLineCount(myDocument) + getLineCount(myVcsDocument));
         myRanges = RangesBuilder.createRanges(myDocument, myVcsDocument, isDetectWhitespaceChangedLines());
         for (final Range range : myRanges) {
           createHighlighter(range);
@@ -509,6 +515,15 @@ public abstract class LineStatusTrackerBase {
       int vcsLine1 = getVcsLine1(lastRangeBefore, beforeChangedLine1);
       int vcsLine2 = getVcsLine2(firstRangeAfter, beforeChangedLine2, beforeTotalLines, vcsTotalLines);
 
+      int changedLines = (afterChangedLine2 - afterChangedLine1) + (vcsLine2 - vcsLine1);
+      int totalLines = beforeTotalLines + linesShift + vcsTotalLines;
+      if (changedLines > MIN_FULL_REDIFF_LINES && changedLines > totalLines * FULL_REDIFF_RATIO) {
+        // region covers most of the file, bookkeeping of untouched ranges doesn't pay off
+        reinstallRanges();
+        return;
+      }
+      LineStatusTrackerStatistics.incrementalUpdate(changedLines, totalLines);
+
       List<Range> newChangedRanges = getNewChangedRanges(afterChangedLine1, afterChangedLine2, vcsLine1, vcsLine2);
 
       shiftRanges(rangesAfter, linesShift);
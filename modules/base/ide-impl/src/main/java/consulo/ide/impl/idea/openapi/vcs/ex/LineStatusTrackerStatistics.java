@@ -0,0 +1,81 @@
+/*
+ * Copyright 2013-2026 consulo.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package consulo.ide.impl.idea.openapi.vcs.ex;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Application-wide counters of {@link LineStatusTrackerBase} rediff work.
+ * <p>
+ * Every incremental update diffs only lines of the dirty region, while a full update diffs whole current and vcs documents.
+ * The difference between them is accounted as saved lines.
+ */
+public final class LineStatusTrackerStatistics {
+  private static final AtomicLong ourIncrementalUpdates = new AtomicLong();
+  private static final AtomicLong ourFullUpdates = new AtomicLong();
+  private static final AtomicLong ourDiffedLines = new AtomicLong();
+  private static final AtomicLong ourSavedLines = new AtomicLong();
+
+  private LineStatusTrackerStatistics() {
+  }
+
+  static void incrementalUpdate(int diffedLines, int totalLines) {
+    ourIncrementalUpdates.incrementAndGet();
+    ourDiffedLines.addAndGet(diffedLines);
+    ourSavedLines.addAndGet(Math.max(0, totalLines - diffedLines));
+  }
+
+  static void fullUpdate(int totalLines) {
+    ourFullUpdates.incrementAndGet();
+    ourDiffedLines.addAndGet(totalLines);
+  }
+
+  public static long getIncrementalUpdates() {
+    return ourIncrementalUpdates.get();
+  }
+
+  public static long getFullUpdates() {
+    return ourFullUpdates.get();
+  }
+
+  /**
+   * @return lines passed to diff by both incremental and full updates
+   */
+  public static long getDiffedLines() {
+    return ourDiffedLines.get();
+  }
+
+  /**
+   * @return lines which were not diffed thanks to incremental updates
+   */
+  public static long getSavedLines() {
+    return ourSavedLines.get();
+  }
+
+  public static void reset() {
+    ourIncrementalUpdates.set(0);
+    ourFullUpdates.set(0);
+    ourDiffedLines.set(0);
+    ourSavedLines.set(0);
+  }
+
+  public static String asString() {
+    return "incremental updates: " + getIncrementalUpdates() +
+           ", full updates: " + getFullUpdates() +
+           ", diffed lines: " + getDiffedLines() +
+           ", saved lines: " + getSavedLines();
+  }
+}
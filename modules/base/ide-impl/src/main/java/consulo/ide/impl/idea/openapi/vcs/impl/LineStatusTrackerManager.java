@@ -40,6 +40,7 @@ import consulo.fileEditor.FileEditorManager;
 import consulo.ide.impl.idea.openapi.util.text.StringUtil;
 import consulo.versionControlSystem.VcsApplicationSettings;
 import consulo.ide.impl.idea.openapi.vcs.ex.LineStatusTracker;
+import consulo.ide.impl.idea.openapi.vcs.ex.LineStatusTrackerStatistics;
 import consulo.versionControlSystem.history.VcsRevisionNumber;
 import java.util.function.Consumer;
 import consulo.ide.impl.idea.util.concurrency.QueueProcessorRemovePartner;
@@ -124,6 +125,9 @@ public class LineStatusTrackerManager implements LineStatusTrackerManagerI {
           myLineStatusTrackers.clear();
           myPartner.clear();
         }
+        if (LOG.isDebugEnabled()) {
+          LOG.debug("Trackers released, rediff statistics: " + LineStatusTrackerStatistics.asString());
+        }
       }
     };
     Disposer.register(myProject, myDisposable);
@@ -274,6 +278,9 @@ public class LineStatusTrackerManager implements LineStatusTrackerManagerI {
       final TrackerData data = myLineStatusTrackers.remove(document);
       if (data != null) {
         data.tracker.release();
+        if (LOG.isDebugEnabled()) {
+          log("Tracker released, rediff statistics: " + LineStatusTrackerStatistics.asString(), data.tracker.getVirtualFile());
+        }
       }
     }
   }
@@ -74,8 +74,9 @@ public class FileWatcher {
   FileWatcher(@Nonnull ManagingFS managingFS) {
     myManagingFS = managingFS;
     myNotificationSink = new MyFileWatcherNotificationSink();
-    myWatchers =
-      new PluggableFileWatcher[]{new NativeFileWatcherImpl()}; //FIXME [VISTALL] this is dirty hack, due we don't allow change file watcher
+    //FIXME [VISTALL] this is dirty hack, due we don't allow change file watcher
+    PluggableFileWatcher watcher = InotifyFileWatcherImpl.isAvailable() ? new InotifyFileWatcherImpl() : new NativeFileWatcherImpl();
+    myWatchers = new PluggableFileWatcher[]{watcher};
 
     myFileWatcherExecutor.execute(() -> {
       try {
@@ -216,6 +217,21 @@ public class FileWatcher {
       notifyOnEvent(OTHER);
     }
 
+    @Override
+    public void notifyManualWatchRootsAdded(@Nonnull Collection<String> roots) {
+      if (roots.isEmpty()) return;
+      List<Collection<String>> manualWatchRoots = myManualWatchRoots;
+      synchronized (manualWatchRoots) {
+        // reports are intersected, so the roots are added to all of them
+        for (int i = 0; i < manualWatchRoots.size(); i++) {
+          Set<String> updated = new HashSet<>(manualWatchRoots.get(i));
+          updated.addAll(roots);
+          manualWatchRoots.set(i, updated);
+        }
+      }
+      notifyOnEvent(OTHER);
+    }
+
     @Override
     public void notifyMapping(@Nonnull Collection<? extends Pair<String, String>> mapping) {
       if (!mapping.isEmpty()) {
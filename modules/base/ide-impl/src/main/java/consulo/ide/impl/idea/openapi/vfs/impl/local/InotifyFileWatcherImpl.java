@@ -0,0 +1,595 @@
+/*
+ * Copyright 2013-2026 consulo.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package consulo.ide.impl.idea.openapi.vfs.impl.local;
+
+import consulo.application.Application;
+import consulo.application.ApplicationBundle;
+import consulo.application.ApplicationManager;
+import consulo.application.util.SystemInfo;
+import consulo.application.util.concurrent.AppExecutorUtil;
+import consulo.logging.Logger;
+import consulo.util.io.CharsetToolkit;
+import consulo.util.jna.JnaLoader;
+import consulo.util.jna.LinuxInotify;
+import consulo.virtualFileSystem.ManagingFS;
+import consulo.virtualFileSystem.impl.internal.local.FileWatcherNotificationSink;
+import consulo.virtualFileSystem.impl.internal.local.PluggableFileWatcher;
+import jakarta.annotation.Nonnull;
+import org.jetbrains.annotations.TestOnly;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static consulo.util.jna.LinuxInotify.*;
+
+/**
+ * In-process Linux file watcher built on inotify, used instead of the external fsnotifier process.
+ * <p>
+ * Recursive roots are registered by walking directory trees in parallel. Events are read by a single thread,
+ * coalesced during a short batch window and only then passed to the notification sink.
+ * When the kernel event queue overflows, all watch roots are rescanned.
+ */
+public class InotifyFileWatcherImpl extends PluggableFileWatcher {
+  private static final Logger LOG = Logger.getInstance(InotifyFileWatcherImpl.class);
+
+  private static final String PROPERTY_INOTIFY_DISABLED = "consulo.filewatcher.inotify.disabled";
+
+  private static final int WATCH_MASK =
+    IN_MODIFY | IN_ATTRIB | IN_CLOSE_WRITE | IN_MOVED_FROM | IN_MOVED_TO | IN_CREATE | IN_DELETE | IN_DELETE_SELF | IN_MOVE_SELF |
+    IN_UNMOUNT | IN_DONT_FOLLOW | IN_EXCL_UNLINK;
+  private static final int CREATE_OR_DELETE_MASK = IN_CREATE | IN_DELETE | IN_MOVED_FROM | IN_MOVED_TO;
+  private static final int CHANGE_MASK = IN_MODIFY | IN_ATTRIB | IN_CLOSE_WRITE;
+
+  private static final int POLL_TIMEOUT_MS = 500;
+  private static final int BATCH_WINDOW_MS = 50;
+  private static final int MAX_BATCH_EVENTS = 16384;
+  private static final int EBADF = 9;
+
+  private static final class WatchedPath {
+    private final String myPath;
+    private final boolean myRecursive;
+    private final boolean myRoot;
+
+    private WatchedPath(String path, boolean recursive, boolean root) {
+      myPath = path;
+      myRecursive = recursive;
+      myRoot = root;
+    }
+
+    private WatchedPath merge(WatchedPath other) {
+      return new WatchedPath(myPath, myRecursive || other.myRecursive, myRoot || other.myRoot);
+    }
+  }
+
+  private FileWatcherNotificationSink myNotificationSink;
+
+  private volatile LinuxInotify myInotify;
+  private volatile Thread myReaderThread;
+  private volatile ExecutorService myRegistrationExecutor;
+  private volatile boolean myIsShuttingDown;
+  private final AtomicInteger mySettingRoots = new AtomicInteger(0);
+  private final AtomicBoolean myLimitReached = new AtomicBoolean(false);
+  // the descriptor number may be reused by another file once closed, so watches are added and removed under the read lock only
+  private final ReadWriteLock myCloseLock = new ReentrantReadWriteLock();
+
+  private final Map<Integer, WatchedPath> myWatches = new ConcurrentHashMap<>();
+  private final Map<String, Integer> myWatchesByPath = new ConcurrentHashMap<>();
+  private volatile List<String> myRecursiveWatchRoots = Collections.emptyList();
+  private volatile List<String> myFlatWatchRoots = Collections.emptyList();
+
+  // directories registered after they were created, to be rescanned by the reader thread
+  private final Queue<String> myRegisteredDirectories = new ConcurrentLinkedQueue<>();
+
+  public static boolean isAvailable() {
+    return SystemInfo.isLinux && !Boolean.getBoolean(PROPERTY_INOTIFY_DISABLED) && JnaLoader.isLoaded();
+  }
+
+  @Override
+  public void initialize(@Nonnull ManagingFS managingFS, @Nonnull FileWatcherNotificationSink notificationSink) {
+    myNotificationSink = notificationSink;
+
+    if (isDisabled()) {
+      LOG.info("Native file watcher is disabled");
+      return;
+    }
+
+    try {
+      start();
+      LOG.info("Inotify file watcher is operational.");
+    }
+    catch (IOException | RuntimeException | LinkageError e) {
+      LOG.warn(e);
+      myNotificationSink.notifyUserOnFailure(ApplicationBundle.message("watcher.failed.to.start"));
+    }
+  }
+
+  protected boolean isDisabled() {
+    if (Boolean.getBoolean(NativeFileWatcherImpl.PROPERTY_WATCHER_DISABLED)) return true;
+    Application app = ApplicationManager.getApplication();
+    return app.isCommandLine() || app.isUnitTestMode();
+  }
+
+  @Override
+  public void dispose() {
+    myIsShuttingDown = true;
+    stop();
+  }
+
+  @Override
+  public boolean isOperational() {
+    return myInotify != null && myReaderThread != null;
+  }
+
+  @Override
+  public boolean isSettingRoots() {
+    return isOperational() && mySettingRoots.get() > 0;
+  }
+
+  @Override
+  public void setWatchRoots(@Nonnull List<String> recursive, @Nonnull List<String> flat) {
+    LinuxInotify inotify = myInotify;
+    if (inotify == null) return;
+
+    if (ApplicationManager.getApplication().isDisposeInProgress()) {
+      recursive = flat = Collections.emptyList();
+    }
+
+    if (myRecursiveWatchRoots.equals(recursive) && myFlatWatchRoots.equals(flat)) {
+      return;
+    }
+
+    mySettingRoots.incrementAndGet();
+    try {
+      long start = System.currentTimeMillis();
+      Set<String> oldRecursive = new HashSet<>(myRecursiveWatchRoots);
+      Set<String> newRecursive = new HashSet<>(recursive);
+      Set<String> newFlat = new HashSet<>(flat);
+      myRecursiveWatchRoots = recursive;
+      myFlatWatchRoots = flat;
+
+      removeUncoveredWatches(inotify, newRecursive, newFlat);
+
+      Queue<String> unwatchable = new ConcurrentLinkedQueue<>();
+      for (String root : flat) {
+        if (!myWatchesByPath.containsKey(root) && !isUnder(root, newRecursive)) {
+          int wd = addWatch(inotify, root, false, true);
+          if (wd < 0) {
+            unwatchable.add(root);
+          }
+        }
+      }
+
+      List<String> addedRecursive = new ArrayList<>();
+      for (String root : recursive) {
+        if (!oldRecursive.contains(root)) {
+          addedRecursive.add(root);
+        }
+      }
+      if (!addedRecursive.isEmpty()) {
+        CountDownLatch done = new CountDownLatch(1);
+        registerRecursively(inotify, addedRecursive, true, unwatchable, done::countDown);
+        try {
+          done.await();
+        }
+        catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+
+      LOG.info("Inotify watch roots set in " + (System.currentTimeMillis() - start) + " ms, " + myWatches.size() + " watches");
+      myNotificationSink.notifyManualWatchRoots(unwatchable);
+    }
+    finally {
+      mySettingRoots.decrementAndGet();
+    }
+  }
+
+  /* internal stuff */
+
+  private void start() throws IOException {
+    if (myIsShuttingDown) {
+      return;
+    }
+
+    LinuxInotify inotify = LinuxInotify.create(CharsetToolkit.getPlatformCharset());
+    myInotify = inotify;
+    int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    myRegistrationExecutor = AppExecutorUtil.createBoundedApplicationPoolExecutor("Inotify Registration Pool", threads);
+
+    Thread thread = new Thread(() -> readEvents(inotify), "Inotify File Watcher");
+    thread.setDaemon(true);
+    myReaderThread = thread;
+    thread.start();
+  }
+
+  private void stop() {
+    LinuxInotify inotify = myInotify;
+    if (inotify == null) {
+      return;
+    }
+
+    myInotify = null;
+    ExecutorService executor = myRegistrationExecutor;
+    if (executor != null) {
+      // queued registrations see the watcher stopped and only report their completion, so nobody waits for them forever
+      for (Runnable registration : executor.shutdownNow()) {
+        registration.run();
+      }
+      myRegistrationExecutor = null;
+    }
+    Thread thread = myReaderThread;
+    myReaderThread = null;
+    if (thread != null) {
+      try {
+        // the reader notices the shutdown after the current poll timeout at most
+        thread.join(POLL_TIMEOUT_MS * 2);
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    // registrations which are running now finish adding their watches first
+    myCloseLock.writeLock().lock();
+    try {
+      inotify.close();
+    }
+    finally {
+      myCloseLock.writeLock().unlock();
+    }
+
+    myWatches.clear();
+    myWatchesByPath.clear();
+    myRecursiveWatchRoots = Collections.emptyList();
+    myFlatWatchRoots = Collections.emptyList();
+    myRegisteredDirectories.clear();
+  }
+
+  /**
+   * @return watch descriptor, or negated errno
+   */
+  private int addWatch(@Nonnull LinuxInotify inotify, @Nonnull String path, boolean recursive, boolean root) {
+    int wd;
+    myCloseLock.readLock().lock();
+    try {
+      if (inotify.isClosed()) return -EBADF;
+      wd = inotify.addWatch(path, WATCH_MASK);
+    }
+    finally {
+      myCloseLock.readLock().unlock();
+    }
+    if (wd < 0) {
+      if (wd == -ENOSPC && myLimitReached.compareAndSet(false, true)) {
+        LOG.warn("Inotify watch limit reached at " + path + ", " + myWatches.size() + " watches");
+        myNotificationSink.notifyUserOnFailure(ApplicationBundle.message("watcher.inotify.limit"));
+      }
+      return wd;
+    }
+
+    WatchedPath watch = new WatchedPath(path, recursive, root);
+    myWatches.merge(wd, watch, (oldWatch, newWatch) -> oldWatch.myPath.equals(newWatch.myPath) ? oldWatch.merge(newWatch) : newWatch);
+    myWatchesByPath.put(path, wd);
+    return wd;
+  }
+
+  private void removeUncoveredWatches(@Nonnull LinuxInotify inotify, @Nonnull Set<String> recursiveRoots, @Nonnull Set<String> flatRoots) {
+    for (Map.Entry<Integer, WatchedPath> entry : myWatches.entrySet()) {
+      WatchedPath watch = entry.getValue();
+      boolean recursive = isUnder(watch.myPath, recursiveRoots);
+      boolean flat = flatRoots.contains(watch.myPath);
+      if (!recursive && !flat) {
+        int wd = entry.getKey();
+        myWatches.remove(wd, watch);
+        myWatchesByPath.remove(watch.myPath, wd);
+        removeWatch(inotify, wd);
+      }
+      else {
+        boolean root = flat || recursiveRoots.contains(watch.myPath);
+        if (watch.myRecursive != recursive || watch.myRoot != root) {
+          myWatches.replace(entry.getKey(), watch, new WatchedPath(watch.myPath, recursive, root));
+        }
+      }
+    }
+  }
+
+  private void removeWatch(@Nonnull LinuxInotify inotify, int wd) {
+    myCloseLock.readLock().lock();
+    try {
+      if (!inotify.isClosed()) {
+        inotify.removeWatch(wd);
+      }
+    }
+    finally {
+      myCloseLock.readLock().unlock();
+    }
+  }
+
+  private static boolean isUnder(@Nonnull String path, @Nonnull Set<String> roots) {
+    if (roots.isEmpty()) return false;
+    String current = path;
+    while (true) {
+      if (roots.contains(current)) return true;
+      int slash = current.lastIndexOf('/');
+      if (slash < 0) return false;
+      if (slash == 0) return current.length() > 1 && roots.contains("/");
+      current = current.substring(0, slash);
+    }
+  }
+
+  @Nonnull
+  private static String childPath(@Nonnull String parent, @Nonnull String name) {
+    return parent.endsWith("/") ? parent + name : parent + '/' + name;
+  }
+
+  /**
+   * Registers watches for given directories and all their subdirectories, walking the trees in parallel.
+   * Doesn't block, {@code onComplete} is called once the whole registration is finished.
+   */
+  private void registerRecursively(@Nonnull LinuxInotify inotify,
+                                   @Nonnull Collection<String> directories,
+                                   boolean roots,
+                                   @Nonnull Collection<String> unwatchable,
+                                   @Nonnull Runnable onComplete) {
+    ExecutorService executor = myRegistrationExecutor;
+    if (executor == null) {
+      onComplete.run();
+      return;
+    }
+
+    // one extra task is held by the submitting thread, so completion can't be reported before all directories are submitted
+    AtomicInteger pending = new AtomicInteger(1);
+    for (String directory : directories) {
+      submitRegistration(inotify, executor, directory, roots, unwatchable, pending, onComplete);
+    }
+    taskFinished(pending, onComplete);
+  }
+
+  private static void taskFinished(@Nonnull AtomicInteger pending, @Nonnull Runnable onComplete) {
+    if (pending.decrementAndGet() == 0) {
+      onComplete.run();
+    }
+  }
+
+  private void submitRegistration(@Nonnull LinuxInotify inotify,
+                                  @Nonnull ExecutorService executor,
+                                  @Nonnull String directory,
+                                  boolean root,
+                                  @Nonnull Collection<String> unwatchable,
+                                  @Nonnull AtomicInteger pending,
+                                  @Nonnull Runnable onComplete) {
+    pending.incrementAndGet();
+    try {
+      executor.execute(() -> {
+        try {
+          registerDirectory(inotify, executor, directory, root, unwatchable, pending, onComplete);
+        }
+        catch (RuntimeException e) {
+          LOG.warn("Cannot register " + directory, e);
+        }
+        finally {
+          taskFinished(pending, onComplete);
+        }
+      });
+    }
+    catch (RejectedExecutionException e) {
+      // the watcher is being disposed
+      taskFinished(pending, onComplete);
+    }
+  }
+
+  private void registerDirectory(@Nonnull LinuxInotify inotify,
+                                 @Nonnull ExecutorService executor,
+                                 @Nonnull String directory,
+                                 boolean root,
+                                 @Nonnull Collection<String> unwatchable,
+                                 @Nonnull AtomicInteger pending,
+                                 @Nonnull Runnable onComplete) {
+    if (myIsShuttingDown || myInotify != inotify) {
+      return;
+    }
+
+    int wd = addWatch(inotify, directory, true, root);
+    if (wd < 0) {
+      // vanished or inaccessible subdirectories are of no interest, but roots and everything beyond the limit are
+      if (root || wd == -ENOSPC) {
+        unwatchable.add(directory);
+      }
+      return;
+    }
+
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(Path.of(directory))) {
+      for (Path child : stream) {
+        BasicFileAttributes attributes;
+        try {
+          attributes = Files.readAttributes(child, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        }
+        catch (IOException e) {
+          continue;
+        }
+        if (attributes.isDirectory()) {
+          submitRegistration(inotify, executor, child.toString(), false, unwatchable, pending, onComplete);
+        }
+      }
+    }
+    catch (IOException | DirectoryIteratorException | InvalidPathException ignore) {
+      // not a directory or not accessible anymore, the watch itself is enough
+    }
+  }
+
+  private void registerCreatedDirectory(@Nonnull LinuxInotify inotify, @Nonnull String directory) {
+    Queue<String> unwatchable = new ConcurrentLinkedQueue<>();
+    registerRecursively(inotify, Collections.singletonList(directory), false, unwatchable, () -> {
+      if (!unwatchable.isEmpty()) {
+        myNotificationSink.notifyManualWatchRootsAdded(unwatchable);
+      }
+      // changes made before the watches were in place are caught by rescanning the directory once more
+      myRegisteredDirectories.add(directory);
+    });
+  }
+
+  private void readEvents(@Nonnull LinuxInotify inotify) {
+    EventBatch batch = new EventBatch();
+    try {
+      while (!myIsShuttingDown && myInotify == inotify) {
+        String registered;
+        while ((registered = myRegisteredDirectories.poll()) != null) {
+          myNotificationSink.notifyDirtyPathRecursive(registered);
+        }
+
+        if (!inotify.poll(POLL_TIMEOUT_MS)) {
+          continue;
+        }
+
+        long batchEnd = System.currentTimeMillis() + BATCH_WINDOW_MS;
+        int events = 0;
+        while (true) {
+          events += inotify.readEvents(batch);
+          long remaining = batchEnd - System.currentTimeMillis();
+          if (events >= MAX_BATCH_EVENTS || remaining <= 0 || !inotify.poll((int)remaining)) {
+            break;
+          }
+        }
+        flush(inotify, batch);
+      }
+    }
+    catch (IOException | RuntimeException e) {
+      if (!myIsShuttingDown && myInotify == inotify) {
+        LOG.warn("Inotify reader failed", e);
+        myReaderThread = null;
+        myNotificationSink.notifyUserOnFailure(ApplicationBundle.message("watcher.gave.up"));
+      }
+    }
+  }
+
+  private void flush(@Nonnull LinuxInotify inotify, @Nonnull EventBatch batch) {
+    if (batch.myOverflow) {
+      rescanWatchRoots();
+    }
+
+    for (String path : batch.myCreatedOrDeleted) {
+      myNotificationSink.notifyPathCreatedOrDeleted(path);
+    }
+    for (String path : batch.myDirtyRecursive) {
+      myNotificationSink.notifyDirtyPathRecursive(path);
+    }
+    for (String path : batch.myDirty) {
+      if (!batch.myCreatedOrDeleted.contains(path)) {
+        myNotificationSink.notifyDirtyPath(path);
+      }
+    }
+    for (String directory : batch.myCreatedDirectories) {
+      registerCreatedDirectory(inotify, directory);
+    }
+
+    batch.clear();
+  }
+
+  /**
+   * Events were dropped by the kernel and they could be about any watched path, so all watch roots are rescanned.
+   */
+  private void rescanWatchRoots() {
+    LOG.info("Inotify event queue overflow, rescanning watch roots");
+    for (String root : myRecursiveWatchRoots) {
+      myNotificationSink.notifyDirtyPathRecursive(root);
+    }
+    for (String root : myFlatWatchRoots) {
+      myNotificationSink.notifyDirtyDirectory(root);
+    }
+  }
+
+  private class EventBatch implements LinuxInotify.EventConsumer {
+    private final Set<String> myCreatedOrDeleted = new LinkedHashSet<>();
+    private final Set<String> myDirty = new LinkedHashSet<>();
+    private final Set<String> myDirtyRecursive = new LinkedHashSet<>();
+    private final Set<String> myCreatedDirectories = new LinkedHashSet<>();
+    private boolean myOverflow;
+
+    @Override
+    public void consume(int wd, int mask, int cookie, String name) {
+      if ((mask & IN_Q_OVERFLOW) != 0) {
+        myOverflow = true;
+        return;
+      }
+
+      WatchedPath watch = myWatches.get(wd);
+      if (watch == null) {
+        return;
+      }
+
+      if ((mask & IN_IGNORED) != 0) {
+        // the watch was removed explicitly or because the directory is gone
+        myWatches.remove(wd, watch);
+        myWatchesByPath.remove(watch.myPath, wd);
+        return;
+      }
+
+      String path = name.isEmpty() ? watch.myPath : childPath(watch.myPath, name);
+
+      if ((mask & CREATE_OR_DELETE_MASK) != 0) {
+        myCreatedOrDeleted.add(path);
+        if ((mask & IN_ISDIR) != 0 && (mask & (IN_CREATE | IN_MOVED_TO)) != 0 && watch.myRecursive) {
+          myCreatedDirectories.add(path);
+        }
+      }
+      else if ((mask & (IN_DELETE_SELF | IN_MOVE_SELF)) != 0) {
+        // non-root directories are reported by their parents
+        if (watch.myRoot) {
+          myCreatedOrDeleted.add(watch.myPath);
+        }
+      }
+      else if ((mask & IN_UNMOUNT) != 0) {
+        myDirtyRecursive.add(watch.myPath);
+      }
+      else if ((mask & CHANGE_MASK) != 0) {
+        myDirty.add(path);
+      }
+    }
+
+    private void clear() {
+      myCreatedOrDeleted.clear();
+      myDirty.clear();
+      myDirtyRecursive.clear();
+      myCreatedDirectories.clear();
+      myOverflow = false;
+    }
+  }
+
+  @Override
+  @TestOnly
+  public void startup() throws IOException {
+    Application app = ApplicationManager.getApplication();
+    assert app != null && app.isUnitTestMode() : app;
+
+    myIsShuttingDown = false;
+    start();
+  }
+
+  @Override
+  @TestOnly
+  public void shutdown() throws InterruptedException {
+    Application app = ApplicationManager.getApplication();
+    assert app != null && app.isUnitTestMode() : app;
+
+    myIsShuttingDown = true;
+    stop();
+  }
+}
@@ -43,7 +43,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 public class NativeFileWatcherImpl extends PluggableFileWatcher {
   private static final Logger LOG = Logger.getInstance(NativeFileWatcherImpl.class);
 
-  private static final String PROPERTY_WATCHER_DISABLED = "consulo.filewatcher.disabled";
+  static final String PROPERTY_WATCHER_DISABLED = "consulo.filewatcher.disabled";
   private static final String PROPERTY_WATCHER_EXECUTABLE_PATH = "consulo.filewatcher.executable.path";
   private static final Path PLATFORM_NOT_SUPPORTED = Path.of("(platform not supported)");
   private static final String ROOTS_COMMAND = "ROOTS";
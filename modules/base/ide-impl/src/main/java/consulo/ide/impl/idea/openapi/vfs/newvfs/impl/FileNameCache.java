@@ -18,8 +18,8 @@ package consulo.ide.impl.idea.openapi.vfs.newvfs.impl;
 import consulo.application.util.SystemInfo;
 import consulo.ide.impl.idea.openapi.util.text.StringUtil;
 import consulo.ide.impl.idea.openapi.vfs.newvfs.persistent.FSRecords;
-import consulo.ide.impl.idea.util.IntSLRUCache;
 import consulo.ide.impl.idea.util.containers.IntObjectLRUMap;
+import consulo.util.collection.ConcurrentIntLFUCache;
 import consulo.util.lang.ByteArrayCharSequence;
 import jakarta.annotation.Nonnull;
 
@@ -32,23 +32,14 @@ import java.util.concurrent.atomic.AtomicInteger;
  */
 public class FileNameCache {
 
-  @SuppressWarnings("unchecked")
-  private static final IntSLRUCache<CharSequence>[] ourNameCache = new IntSLRUCache[16];
-
-  static {
-    final int protectedSize = 40000 / ourNameCache.length;
-    final int probationalSize = 20000 / ourNameCache.length;
-    for (int i = 0; i < ourNameCache.length; ++i) {
-      ourNameCache[i] = new IntSLRUCache<>(protectedSize, probationalSize);
-    }
-  }
+  private static final ConcurrentIntLFUCache<IntObjectLRUMap.MapEntry<CharSequence>> ourNameCache = new ConcurrentIntLFUCache<>(60000);
 
   private static final String FS_SEPARATORS = "/" + (File.separatorChar == '/' ? "" : File.separatorChar);
 
   public static int storeName(@Nonnull String name) {
     assertShortFileName(name);
     final int idx = FSRecords.getNameId(name);
-    cacheData(name, idx, calcStripeIdFromNameId(idx));
+    cacheData(name, idx);
     return idx;
   }
 
@@ -65,29 +56,13 @@ public class FileNameCache {
   }
 
   @Nonnull
-  private static IntObjectLRUMap.MapEntry<CharSequence> cacheData(String name, int id, int stripe) {
+  private static IntObjectLRUMap.MapEntry<CharSequence> cacheData(String name, int id) {
     if (name == null) {
       FSRecords.handleError(new RuntimeException("VFS name enumerator corrupted"));
     }
 
     CharSequence rawName = ByteArrayCharSequence.convertToBytesIfPossible(name);
-    IntSLRUCache<CharSequence> cache = ourNameCache[stripe];
-    //noinspection SynchronizationOnLocalVariableOrMethodParameter
-    synchronized (cache) {
-      return cache.cacheEntry(id, rawName);
-    }
-  }
-
-  private static int calcStripeIdFromNameId(int id) {
-    int h = id;
-    h -= h << 6;
-    h ^= h >> 17;
-    h -= h << 9;
-    h ^= h << 4;
-    h -= h << 3;
-    h ^= h << 10;
-    h ^= h >> 15;
-    return h % ourNameCache.length;
+    return ourNameCache.cacheIfAbsent(id, new IntObjectLRUMap.MapEntry<>(id, rawName));
   }
 
   private static final boolean ourTrackStats = false;
@@ -129,14 +104,9 @@ public class FileNameCache {
       ourMisses.incrementAndGet();
     }
 
-    final int stripe = calcStripeIdFromNameId(nameId);
-    IntSLRUCache<CharSequence> cache = ourNameCache[stripe];
-    //noinspection SynchronizationOnLocalVariableOrMethodParameter
-    synchronized (cache) {
-      entry = cache.getCachedEntry(nameId);
-    }
+    entry = ourNameCache.get(nameId);
     if (entry == null) {
-      entry = cacheData(computeName.compute(nameId), nameId, stripe);
+      entry = cacheData(computeName.compute(nameId), nameId);
     }
     ourArrayCache[l1] = entry;
     return entry.value;
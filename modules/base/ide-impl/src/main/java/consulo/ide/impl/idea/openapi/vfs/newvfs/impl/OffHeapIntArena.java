@@ -0,0 +1,88 @@
+/*
+ * Copyright 2013-2026 consulo.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package consulo.ide.impl.idea.openapi.vfs.newvfs.impl;
+
+import jakarta.annotation.Nonnull;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Hands out fixed size int blocks carved from large direct buffers. Blocks are never freed, like {@link VfsData} segments they back.
+ * <p>
+ * One direct buffer per block would cost a cleaner and a buffer object on heap each, so blocks share chunks.
+ */
+final class OffHeapIntArena {
+  private static final VarHandle INT_HANDLE = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+
+  private static final int CHUNK_SIZE = 1 << 20;
+
+  private final int myBlockBytes;
+  private ByteBuffer myChunk;
+  private int myChunkOffset;
+  private long myAllocatedBytes;
+
+  OffHeapIntArena(int blockInts) {
+    myBlockBytes = blockInts * Integer.BYTES;
+    if (myBlockBytes > CHUNK_SIZE) {
+      throw new IllegalArgumentException("Block is larger than chunk: " + myBlockBytes);
+    }
+  }
+
+  @Nonnull
+  synchronized Block allocate() {
+    if (myChunk == null || myChunkOffset + myBlockBytes > CHUNK_SIZE) {
+      // atomic access requires aligned addresses, direct buffers are aligned to 8 bytes at least
+      myChunk = ByteBuffer.allocateDirect(CHUNK_SIZE).order(ByteOrder.nativeOrder());
+      myChunkOffset = 0;
+      myAllocatedBytes += CHUNK_SIZE;
+    }
+    Block block = new Block(myChunk, myChunkOffset);
+    myChunkOffset += myBlockBytes;
+    return block;
+  }
+
+  synchronized long getAllocatedBytes() {
+    return myAllocatedBytes;
+  }
+
+  /**
+   * Int array view of a part of a chunk. Freshly allocated direct memory is zeroed, like new int arrays.
+   */
+  static final class Block {
+    private final ByteBuffer myBuffer;
+    private final int myBase;
+
+    private Block(@Nonnull ByteBuffer buffer, int base) {
+      myBuffer = buffer;
+      myBase = base;
+    }
+
+    int get(int index) {
+      return (int)INT_HANDLE.getVolatile(myBuffer, myBase + index * Integer.BYTES);
+    }
+
+    void set(int index, int value) {
+      INT_HANDLE.setVolatile(myBuffer, myBase + index * Integer.BYTES, value);
+    }
+
+    boolean compareAndSet(int index, int expected, int value) {
+      return INT_HANDLE.compareAndSet(myBuffer, myBase + index * Integer.BYTES, expected, value);
+    }
+  }
+}
@@ -29,7 +29,6 @@ import org.jetbrains.annotations.Contract;
 import jakarta.annotation.Nonnull;
 import jakarta.annotation.Nullable;
 import java.util.*;
-import java.util.concurrent.atomic.AtomicIntegerArray;
 import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import static consulo.ide.impl.idea.openapi.vfs.newvfs.impl.VirtualFileSystemEntry.ALL_FLAGS_MASK;
@@ -61,6 +60,8 @@ import static consulo.util.lang.ObjectUtil.assertNotNull;
  * <p>
  * 5. The file with removed data is marked as "dead" (see {@link #myDeadMarker}, any access to it will throw {@link InvalidVirtualFileAccessException}
  * Dead ids won't be reused in the same session of the IDE.
+ * <p>
+ * Name ids and flags of a segment live off-heap in {@link #myIntArena}, only user data and directory data stay on heap.
  *
  * @author peter
  */
@@ -73,6 +74,8 @@ public class VfsData {
   private final Object myDeadMarker = ObjectUtil.sentinel("dead file");
 
   private final ConcurrentIntObjectMap<Segment> mySegments = ContainerUtil.createConcurrentIntObjectMap();
+  // <nameId, flags> pairs of all segments
+  private final OffHeapIntArena myIntArena = new OffHeapIntArena(SEGMENT_SIZE * 2);
   private final ConcurrentBitSet myInvalidatedIds = new ConcurrentBitSet();
   private IntSet myDyingIds = IntSets.newHashSet();
 
@@ -147,7 +150,52 @@ public class VfsData {
     int key = id >>> SEGMENT_BITS;
     Segment segment = mySegments.get(key);
     if (segment != null || !create) return segment;
-    return mySegments.cacheOrGet(key, new Segment(this));
+    // off-heap blocks are never freed, so don't allocate one for a segment losing the race
+    synchronized (mySegments) {
+      segment = mySegments.get(key);
+      if (segment == null) {
+        segment = new Segment(this, myIntArena.allocate());
+        mySegments.put(key, segment);
+      }
+      return segment;
+    }
+  }
+
+  /**
+   * @return memory used by segments of loaded files, heap size is estimated assuming compressed oops
+   */
+  @Nonnull
+  public String getFootprintReport() {
+    int segments = 0;
+    int loadedFiles = 0;
+    int directories = 0;
+    for (Segment segment : mySegments.values()) {
+      segments++;
+      for (int i = 0; i < SEGMENT_SIZE; i++) {
+        Object o = segment.myObjectArray.get(i);
+        if (o != null && o != myDeadMarker) {
+          loadedFiles++;
+          if (o instanceof DirectoryData) {
+            directories++;
+          }
+        }
+      }
+    }
+
+    // Segment object, AtomicReferenceArray with its Object[], off-heap block view
+    long segmentHeapBytes = 16 + 16 + 16 + SEGMENT_SIZE * 4L + 24;
+    // AtomicIntegerArray with its int[], which kept name ids and flags on heap before
+    long intArrayHeapBytes = 16 + 16 + SEGMENT_SIZE * 2L * 4;
+    long heapBytes = segments * segmentHeapBytes;
+    long offHeapBytes = myIntArena.getAllocatedBytes();
+    StringBuilder builder = new StringBuilder();
+    builder.append("VFS data: ").append(loadedFiles).append(" loaded files (").append(directories).append(" directories) in ").append(segments).append(" segments\n");
+    builder.append("  heap: ").append(heapBytes / 1024).append(" KB, off-heap: ").append(offHeapBytes / 1024).append(" KB\n");
+    builder.append("  heap with on-heap name ids and flags: ").append((heapBytes + segments * intArrayHeapBytes) / 1024).append(" KB\n");
+    if (loadedFiles > 0) {
+      builder.append("  heap per loaded file: ").append(heapBytes / loadedFiles).append(" bytes, was ").append((heapBytes + segments * intArrayHeapBytes) / loadedFiles).append(" bytes");
+    }
+    return builder.toString();
   }
 
   public boolean hasLoadedFile(int id) {
@@ -216,13 +264,14 @@ public class VfsData {
     private final AtomicReferenceArray<Object> myObjectArray = new AtomicReferenceArray<>(SEGMENT_SIZE);
 
     // <nameId, flags> pairs, "flags" part containing flags per se and modification stamp
-    private final AtomicIntegerArray myIntArray = new AtomicIntegerArray(SEGMENT_SIZE * 2);
+    private final OffHeapIntArena.Block myIntArray;
 
     @Nonnull
     final VfsData vfsData;
 
-    Segment(@Nonnull VfsData vfsData) {
+    Segment(@Nonnull VfsData vfsData, @Nonnull OffHeapIntArena.Block intArray) {
       this.vfsData = vfsData;
+      myIntArray = intArray;
     }
 
     int getNameId(int fileId) {
@@ -27,6 +27,10 @@ import consulo.logging.Logger;
 import consulo.util.collection.primitive.ints.ConcurrentIntObjectMap;
 import consulo.util.collection.primitive.ints.IntList;
 import consulo.util.collection.primitive.ints.IntLists;
+import consulo.util.collection.primitive.ints.IntMaps;
+import consulo.util.collection.primitive.ints.IntObjectMap;
+import consulo.util.collection.primitive.ints.IntSet;
+import consulo.util.collection.primitive.ints.IntSets;
 import consulo.util.io.BufferExposingByteArrayOutputStream;
 import consulo.util.io.ByteArraySequence;
 import consulo.util.io.FileAttributes;
@@ -64,6 +68,8 @@ public class FSRecords {
   private static final boolean useCompressionUtil = SystemProperties.getBooleanProperty("idea.use.lightweight.compression.for.vfs", false);
   private static final boolean useSmallAttrTable = SystemProperties.getBooleanProperty("idea.use.small.attr.table.for.vfs", true);
   private static final boolean ourStoreRootsSeparately = SystemProperties.getBooleanProperty("idea.store.roots.separately", false);
+  private static final boolean ourWarmStartSnapshot = SystemProperties.getBooleanProperty("idea.vfs.warm.start.snapshot", true);
+  static final int MAX_WARM_SNAPSHOT_RECORDS = 200_000;
 
   //TODO[anyone] when bumping the version, please delete `ourSymlinkTargetAttr_old` and use it's value for `ourSymlinkTargetAttr`
   private static final int VERSION = 54 +
@@ -118,6 +124,10 @@ public class FSRecords {
 
   private static volatile int ourLocalModificationCount;
   private static volatile boolean ourIsDisposed;
+  /**
+   * modified under {@link #w}, read under {@link #r}
+   */
+  private static volatile VfsWarmSnapshot ourWarmSnapshot;
 
   private static final int FREE_RECORD_FLAG = 0x100;
   private static final int ALL_VALID_FLAGS = PersistentFS.ALL_VALID_FLAGS | FREE_RECORD_FLAG;
@@ -187,6 +197,7 @@ public class FSRecords {
         if (!ourInitialized) {
           init();
           setupFlushing();
+          loadWarmSnapshot();
           ourInitialized = true;
         }
       });
@@ -598,6 +609,7 @@ public class FSRecords {
       else {
         if (lazyVfsDataCleaning) deleteContentAndAttributes(free);
         DbConnection.cleanRecord(free);
+        invalidateWarmRecord(free);
         return free;
       }
     });
@@ -880,18 +892,25 @@ public class FSRecords {
 
   @Nonnull
   static int[] list(int id) {
-    return readAndHandleErrors(() -> {
-      try (final DataInputStream input = readAttribute(id, ourChildrenAttr)) {
-        if (input == null) return ArrayUtilRt.EMPTY_INT_ARRAY;
-        final int count = DataInputOutputUtil.readINT(input);
-        final int[] result = ArrayUtil.newIntArray(count);
-        int prevId = id;
-        for (int i = 0; i < count; i++) {
-          prevId = result[i] = DataInputOutputUtil.readINT(input) + prevId;
-        }
-        return result;
+    return readAndHandleErrors(() -> doList(id));
+  }
+
+  @Nonnull
+  private static int[] doList(int id) throws IOException {
+    VfsWarmSnapshot snapshot = ourWarmSnapshot;
+    int[] cached = snapshot == null ? null : snapshot.getChildren(id);
+    if (cached != null) return cached.clone();
+
+    try (final DataInputStream input = readAttribute(id, ourChildrenAttr)) {
+      if (input == null) return ArrayUtilRt.EMPTY_INT_ARRAY;
+      final int count = DataInputOutputUtil.readINT(input);
+      final int[] result = ArrayUtil.newIntArray(count);
+      int prevId = id;
+      for (int i = 0; i < count; i++) {
+        prevId = result[i] = DataInputOutputUtil.readINT(input) + prevId;
       }
-    });
+      return result;
+    }
   }
 
   static boolean mayHaveChildren(int id) {
@@ -929,6 +948,17 @@ public class FSRecords {
   public static NameId[] listAll(int parentId) {
     assert parentId > 0 : parentId;
     return readAndHandleErrors(() -> {
+      VfsWarmSnapshot snapshot = ourWarmSnapshot;
+      int[] cached = snapshot == null ? null : snapshot.getChildren(parentId);
+      if (cached != null) {
+        NameId[] result = cached.length == 0 ? NameId.EMPTY_ARRAY : new NameId[cached.length];
+        for (int i = 0; i < cached.length; i++) {
+          int nameId = doGetNameId(cached[i]);
+          result[i] = new NameId(cached[i], nameId, FileNameCache.getVFileName(nameId, FSRecords::doGetNameByNameId));
+        }
+        return result;
+      }
+
       try (final DataInputStream input = readAttribute(parentId, ourChildrenAttr)) {
         if (input == null) return NameId.EMPTY_ARRAY;
 
@@ -1000,6 +1030,8 @@ public class FSRecords {
     Arrays.sort(childIds);
     writeAndHandleErrors(() -> {
       DbConnection.markDirty();
+      VfsWarmSnapshot snapshot = ourWarmSnapshot;
+      if (snapshot != null) snapshot.invalidateChildren(id);
       try (DataOutputStream record = writeAttribute(id, ourChildrenAttr)) {
         DataInputOutputUtil.writeINT(record, childIds.length);
 
@@ -1043,6 +1075,7 @@ public class FSRecords {
   }
 
   private static void incModCount(int id) {
+    invalidateWarmRecord(id);
     incLocalModCount();
     final int count = doGetModCount() + 1;
     getRecords().putInt(HEADER_GLOBAL_MOD_COUNT_OFFSET, count);
@@ -1158,7 +1191,9 @@ public class FSRecords {
   }
 
   private static int doGetNameId(int id) {
-    return getRecordInt(id, NAME_OFFSET);
+    VfsWarmSnapshot snapshot = ourWarmSnapshot;
+    int index = snapshot == null ? -1 : snapshot.indexOf(id);
+    return index >= 0 ? snapshot.getNameId(index) : getRecordInt(id, NAME_OFFSET);
   }
 
   public static int getNameId(@Nonnull String name) {
@@ -1176,7 +1211,7 @@ public class FSRecords {
 
   @Nonnull
   private static CharSequence doGetNameSequence(int id) throws IOException {
-    final int nameId = getRecordInt(id, NAME_OFFSET);
+    final int nameId = doGetNameId(id);
     return nameId == 0 ? "" : FileNameCache.getVFileName(nameId, FSRecords::doGetNameByNameId);
   }
 
@@ -1185,7 +1220,10 @@ public class FSRecords {
   }
 
   private static String doGetNameByNameId(int nameId) throws IOException {
-    return nameId == 0 ? "" : getNames().valueOf(nameId);
+    if (nameId == 0) return "";
+    VfsWarmSnapshot snapshot = ourWarmSnapshot;
+    String name = snapshot == null ? null : snapshot.getName(nameId);
+    return name != null ? name : getNames().valueOf(nameId);
   }
 
   static void setName(int id, @Nonnull String name) {
@@ -1201,7 +1239,9 @@ public class FSRecords {
   }
 
   private static int doGetFlags(int id) {
-    return getRecordInt(id, FLAGS_OFFSET);
+    VfsWarmSnapshot snapshot = ourWarmSnapshot;
+    int index = snapshot == null ? -1 : snapshot.indexOf(id);
+    return index >= 0 ? snapshot.getFlags(index) : getRecordInt(id, FLAGS_OFFSET);
   }
 
   static void setFlags(int id, int flags, final boolean markAsChange) {
@@ -1209,12 +1249,19 @@ public class FSRecords {
       if (markAsChange) {
         incModCount(id);
       }
+      else {
+        invalidateWarmRecord(id);
+      }
       putRecordInt(id, FLAGS_OFFSET, flags);
     });
   }
 
   static long getLength(int id) {
-    return readAndHandleErrors(() -> getRecords().getLong(getOffset(id, LENGTH_OFFSET)));
+    return readAndHandleErrors(() -> {
+      VfsWarmSnapshot snapshot = ourWarmSnapshot;
+      int index = snapshot == null ? -1 : snapshot.indexOf(id);
+      return index >= 0 ? snapshot.getLength(index) : getRecords().getLong(getOffset(id, LENGTH_OFFSET));
+    });
   }
 
   static void setLength(int id, long len) {
@@ -1229,7 +1276,11 @@ public class FSRecords {
   }
 
   static long getTimestamp(int id) {
-    return readAndHandleErrors(() -> getRecords().getLong(getOffset(id, TIMESTAMP_OFFSET)));
+    return readAndHandleErrors(() -> {
+      VfsWarmSnapshot snapshot = ourWarmSnapshot;
+      int index = snapshot == null ? -1 : snapshot.indexOf(id);
+      return index >= 0 ? snapshot.getTimestamp(index) : getRecords().getLong(getOffset(id, TIMESTAMP_OFFSET));
+    });
   }
 
   static void setTimestamp(int id, long value) {
@@ -1771,9 +1822,14 @@ public class FSRecords {
     }
   }
 
-  static void dispose() {
+  /**
+   * @param warmDirIds directories to keep in the warm start snapshot, most important first
+   */
+  static void dispose(@Nonnull int[] warmDirIds) {
     writeAndHandleErrors(() -> {
       try {
+        // under the write lock nothing can change the storage between the snapshot and closing
+        saveWarmSnapshot(warmDirIds);
         DbConnection.doForce();
         DbConnection.closeFiles();
       }
@@ -1783,6 +1839,87 @@ public class FSRecords {
     });
   }
 
+  private static void invalidateWarmRecord(int id) {
+    VfsWarmSnapshot snapshot = ourWarmSnapshot;
+    if (snapshot != null) snapshot.invalidate(id);
+  }
+
+  static void dropWarmSnapshot() {
+    ourWarmSnapshot = null;
+  }
+
+  @Nonnull
+  private static File getWarmSnapshotFile() {
+    return new File(basePath(), VfsWarmSnapshot.FILE_NAME);
+  }
+
+  private static void loadWarmSnapshot() {
+    File file = getWarmSnapshotFile();
+    if (!ourWarmStartSnapshot) {
+      FileUtil.delete(file);
+      return;
+    }
+    try {
+      long t = System.currentTimeMillis();
+      ourWarmSnapshot = VfsWarmSnapshot.load(file, DbConnection.getTimestamp(), doGetModCount(), length() / RECORD_SIZE);
+      if (ourWarmSnapshot != null) {
+        LOG.info("VFS warm start snapshot: " + ourWarmSnapshot.size() + " records loaded in " + (System.currentTimeMillis() - t) + " ms");
+      }
+    }
+    catch (IOException e) {
+      LOG.info("VFS warm start snapshot ignored: " + e.getMessage());
+    }
+  }
+
+  private static void saveWarmSnapshot(@Nonnull int[] dirIds) {
+    ourWarmSnapshot = null;
+    if (!ourWarmStartSnapshot || DbConnection.myCorrupted || DbConnection.myRecords == null) return;
+
+    try {
+      int maxId = length() / RECORD_SIZE;
+      IntObjectMap<int[]> children = IntMaps.newIntObjectHashMap();
+      IntSet recordIds = IntSets.newHashSet();
+      for (int dirId : dirIds) {
+        if (recordIds.size() >= MAX_WARM_SNAPSHOT_RECORDS) break;
+        if (dirId <= 0 || dirId >= maxId || children.containsKey(dirId)) continue;
+        if (consulo.util.lang.BitUtil.isSet(getRecordInt(dirId, FLAGS_OFFSET), FREE_RECORD_FLAG)) continue;
+
+        int[] childIds = doList(dirId);
+        children.put(dirId, childIds);
+        recordIds.add(dirId);
+        for (int childId : childIds) {
+          recordIds.add(childId);
+        }
+      }
+
+      int[] ids = recordIds.toArray();
+      Arrays.sort(ids);
+      int[] nameIds = new int[ids.length];
+      int[] flags = new int[ids.length];
+      long[] timestamps = new long[ids.length];
+      long[] lengths = new long[ids.length];
+      IntObjectMap<String> names = IntMaps.newIntObjectHashMap(ids.length);
+      ResizeableMappedFile records = getRecords();
+      for (int i = 0; i < ids.length; i++) {
+        int id = ids[i];
+        nameIds[i] = getRecordInt(id, NAME_OFFSET);
+        flags[i] = getRecordInt(id, FLAGS_OFFSET);
+        timestamps[i] = records.getLong(getOffset(id, TIMESTAMP_OFFSET));
+        lengths[i] = records.getLong(getOffset(id, LENGTH_OFFSET));
+        if (nameIds[i] != 0 && !names.containsKey(nameIds[i])) {
+          names.put(nameIds[i], FileNameCache.getVFileName(nameIds[i], FSRecords::doGetNameByNameId).toString());
+        }
+      }
+
+      VfsWarmSnapshot snapshot = new VfsWarmSnapshot(ids, nameIds, flags, timestamps, lengths, children, names);
+      snapshot.save(getWarmSnapshotFile(), DbConnection.getTimestamp(), doGetModCount());
+    }
+    catch (IOException | RuntimeException e) {
+      LOG.info("Cannot save VFS warm start snapshot", e);
+      FileUtil.delete(getWarmSnapshotFile());
+    }
+  }
+
   public static void invalidateCaches() {
     DbConnection.createBrokenMarkerFile(null);
   }
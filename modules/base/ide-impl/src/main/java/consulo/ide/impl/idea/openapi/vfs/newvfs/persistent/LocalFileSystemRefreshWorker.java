@@ -1,6 +1,7 @@
 // Copyright 2000-2019 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
 package consulo.ide.impl.idea.openapi.vfs.newvfs.persistent;
 
+import consulo.application.Application;
 import consulo.application.ApplicationManager;
 import consulo.application.ReadAction;
 import consulo.util.lang.Pair;
@@ -72,22 +73,36 @@ class LocalFileSystemRefreshWorker {
       fs = fs;
     }
 
-    RefreshContext context = createRefreshContext(fs, PersistentFS.getInstance(), FilePathHashingStrategy.create(fs.isCaseSensitive()));
-    context.submitRefreshRequest(() -> processFile(root, context));
+    RefreshContext context = createRefreshContext(fs, PersistentFS.getInstance(), FilePathHashingStrategy.create(fs.isCaseSensitive()), rootAttributes.isDirectory());
+    EventNode rootNode = new EventNode();
+    context.submitRefreshRequest(() -> processFile(root, context, rootNode));
     context.waitForRefreshToFinish();
+    rootNode.collectEvents(myHelper);
   }
 
   @Nonnull
-  private RefreshContext createRefreshContext(@Nonnull NewVirtualFileSystem fs, @Nonnull PersistentFS persistentFS, @Nonnull HashingStrategy<String> strategy) {
+  private RefreshContext createRefreshContext(@Nonnull NewVirtualFileSystem fs, @Nonnull PersistentFS persistentFS, @Nonnull HashingStrategy<String> strategy, boolean isDirectory) {
     int parallelism = Registry.intValue("vfs.use.nio-based.local.refresh.worker.parallelism", Runtime.getRuntime().availableProcessors() - 1);
 
-    if (myIsRecursive && parallelism > 0 && !ApplicationManager.getApplication().isDispatchThread()) {
+    if (isDirectory && parallelism > 0 && canWaitForReadActions()) {
       return new ConcurrentRefreshContext(fs, persistentFS, strategy, parallelism);
     }
     return new SequentialRefreshContext(fs, persistentFS, strategy);
   }
 
-  private void processFile(@Nonnull NewVirtualFile file, @Nonnull RefreshContext refreshContext) {
+  /**
+   * Pool threads take read actions while the caller waits for them. On EDT only a write action blocks them. Elsewhere a held read action
+   * could wait behind a pending write, so only recursive refreshes, which always used the pool, keep going parallel under it.
+   */
+  private boolean canWaitForReadActions() {
+    Application application = ApplicationManager.getApplication();
+    if (application.isDispatchThread()) {
+      return !application.isWriteAccessAllowed();
+    }
+    return myIsRecursive || !application.isReadAccessAllowed();
+  }
+
+  private void processFile(@Nonnull NewVirtualFile file, @Nonnull RefreshContext refreshContext, @Nonnull EventNode node) {
     if (!VfsEventGenerationHelper.checkDirty(file) || isCancelled(file, refreshContext)) {
       return;
     }
@@ -95,14 +110,14 @@ class LocalFileSystemRefreshWorker {
     if (file.isDirectory()) {
       boolean fullSync = ((VirtualDirectoryImpl)file).allChildrenLoaded();
       if (fullSync) {
-        fullDirRefresh((VirtualDirectoryImpl)file, refreshContext);
+        fullDirRefresh((VirtualDirectoryImpl)file, refreshContext, node);
       }
       else {
-        partialDirRefresh((VirtualDirectoryImpl)file, refreshContext);
+        partialDirRefresh((VirtualDirectoryImpl)file, refreshContext, node);
       }
     }
     else {
-      refreshFile(file, refreshContext);
+      refreshFile(file, refreshContext, node);
     }
 
     if (isCancelled(file, refreshContext)) {
@@ -130,6 +145,21 @@ class LocalFileSystemRefreshWorker {
 
     abstract void doWaitForRefreshToFinish();
 
+    boolean isConcurrent() {
+      return false;
+    }
+
+    /**
+     * Reads attributes of the given children of {@code dir}, following links only if {@code followLinks} is set.
+     * Missing or unreadable children get {@code null}.
+     */
+    @Nonnull
+    Stat[] stat(@Nonnull List<Path> paths, @Nonnull VirtualFile dir, boolean fixCase, boolean followLinks) {
+      Stat[] result = new Stat[paths.size()];
+      statRange(paths, dir, fixCase, followLinks, result, 0, paths.size());
+      return result;
+    }
+
     final void waitForRefreshToFinish() {
       doWaitForRefreshToFinish();
 
@@ -139,19 +169,84 @@ class LocalFileSystemRefreshWorker {
     }
   }
 
-  private void refreshFile(@Nonnull NewVirtualFile file, @Nonnull RefreshContext refreshContext) {
-    RefreshingFileVisitor refreshingFileVisitor = new RefreshingFileVisitor(file, refreshContext, null, Collections.singletonList(file));
-    refreshingFileVisitor.visit(file);
-    addAllEventsFrom(refreshingFileVisitor);
+  static final class Stat {
+    final Path path;
+    final BasicFileAttributes attributes;
+
+    Stat(@Nonnull Path path, @Nonnull BasicFileAttributes attributes) {
+      this.path = path;
+      this.attributes = attributes;
+    }
   }
 
-  private void addAllEventsFrom(@Nonnull RefreshingFileVisitor refreshingFileVisitor) {
-    synchronized (myHelper) {
+  private static void statRange(@Nonnull List<Path> paths,
+                                @Nonnull VirtualFile dir,
+                                boolean fixCase,
+                                boolean followLinks,
+                                @Nonnull Stat[] result,
+                                int from,
+                                int to) {
+    for (int i = from; i < to; i++) {
+      try {
+        Path path = fixCase ? fixCaseIfNeeded(paths.get(i), dir) : paths.get(i);
+        result[i] = new Stat(path, readAttributes(path, followLinks));
+      }
+      catch (IOException ignore) {
+      }
+    }
+  }
+
+  @Nonnull
+  private static BasicFileAttributes readAttributes(@Nonnull Path path, boolean followLinks) throws IOException {
+    if (followLinks) {
+      try {
+        return Files.readAttributes(path, BasicFileAttributes.class);
+      }
+      catch (IOException ignore) {
+        // a broken link, reported with its own attributes the same way FileTreeWalker does
+      }
+    }
+    return Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+  }
+
+  /**
+   * Events of one refreshed file or directory, with the nodes of subdirectories in the order they were found.
+   * Workers finish in any order, so events are merged by walking the tree breadth first, the same order the sequential refresh produces.
+   */
+  private static final class EventNode {
+    private final VfsEventGenerationHelper myHelper = new VfsEventGenerationHelper();
+    private final ConcurrentLinkedQueue<EventNode> myChildren = new ConcurrentLinkedQueue<>();
+
+    @Nonnull
+    EventNode addChild() {
+      EventNode child = new EventNode();
+      myChildren.add(child);
+      return child;
+    }
+
+    void addAllEventsFrom(@Nonnull RefreshingFileVisitor refreshingFileVisitor) {
+      // a node is filled by the single task refreshing its file
       myHelper.addAllEventsFrom(refreshingFileVisitor.getHelper());
     }
+
+    void collectEvents(@Nonnull VfsEventGenerationHelper target) {
+      ArrayDeque<EventNode> queue = new ArrayDeque<>();
+      queue.add(this);
+      EventNode node;
+      while ((node = queue.poll()) != null) {
+        target.addAllEventsFrom(node.myHelper);
+        queue.addAll(node.myChildren);
+      }
+    }
+  }
+
+  private void refreshFile(@Nonnull NewVirtualFile file, @Nonnull RefreshContext refreshContext, @Nonnull EventNode node) {
+    RefreshingFileVisitor refreshingFileVisitor = new RefreshingFileVisitor(file, refreshContext, node, null, Collections.singletonList(file));
+    refreshingFileVisitor.visit(file);
+    node.addAllEventsFrom(refreshingFileVisitor);
   }
 
-  private void fullDirRefresh(@Nonnull VirtualDirectoryImpl dir, @Nonnull RefreshContext refreshContext) {
+  private void fullDirRefresh(@Nonnull VirtualDirectoryImpl dir, @Nonnull RefreshContext refreshContext, @Nonnull EventNode node) {
     while (true) {
       // obtaining directory snapshot
       Pair<String[], VirtualFile[]> result = getDirectorySnapshot(refreshContext.persistence, dir);
@@ -159,10 +254,10 @@ class LocalFileSystemRefreshWorker {
       String[] persistedNames = result.getFirst();
       VirtualFile[] children = result.getSecond();
 
-      RefreshingFileVisitor refreshingFileVisitor = new RefreshingFileVisitor(dir, refreshContext, null, Arrays.asList(children));
+      RefreshingFileVisitor refreshingFileVisitor = new RefreshingFileVisitor(dir, refreshContext, node, null, Arrays.asList(children));
       refreshingFileVisitor.visit(dir);
       if (myCancelled) {
-        addAllEventsFrom(refreshingFileVisitor);
+        node.addAllEventsFrom(refreshingFileVisitor);
         break;
       }
 
@@ -176,7 +271,7 @@ class LocalFileSystemRefreshWorker {
           return false;
         }
 
-        addAllEventsFrom(refreshingFileVisitor);
+        node.addAllEventsFrom(refreshingFileVisitor);
         return true;
       });
       if (hasEvents) {
@@ -189,7 +284,7 @@ class LocalFileSystemRefreshWorker {
     return ReadAction.compute(() -> ApplicationManager.getApplication().isDisposed() ? null : pair(persistence.list(dir), dir.getChildren()));
   }
 
-  private void partialDirRefresh(@Nonnull VirtualDirectoryImpl dir, @Nonnull RefreshContext refreshContext) {
+  private void partialDirRefresh(@Nonnull VirtualDirectoryImpl dir, @Nonnull RefreshContext refreshContext, @Nonnull EventNode node) {
     while (true) {
       // obtaining directory snapshot
       Pair<List<VirtualFile>, List<String>> result = ReadAction.compute(() -> pair(dir.getCachedChildren(), dir.getSuspiciousNames()));
@@ -198,10 +293,10 @@ class LocalFileSystemRefreshWorker {
       List<String> wanted = result.getSecond();
 
       if (cached.isEmpty() && wanted.isEmpty()) return;
-      RefreshingFileVisitor refreshingFileVisitor = new RefreshingFileVisitor(dir, refreshContext, wanted, cached);
+      RefreshingFileVisitor refreshingFileVisitor = new RefreshingFileVisitor(dir, refreshContext, node, wanted, cached);
       refreshingFileVisitor.visit(dir);
       if (myCancelled) {
-        addAllEventsFrom(refreshingFileVisitor);
+        node.addAllEventsFrom(refreshingFileVisitor);
         break;
       }
 
@@ -212,7 +307,7 @@ class LocalFileSystemRefreshWorker {
           return false;
         }
 
-        addAllEventsFrom(refreshingFileVisitor);
+        node.addAllEventsFrom(refreshingFileVisitor);
 
         return true;
       });
@@ -270,13 +365,64 @@ class LocalFileSystemRefreshWorker {
   }
 
   private static class ConcurrentRefreshContext extends RefreshContext {
+    // smaller batches don't pay for the hand-off to the pool
+    private static final int STAT_BATCH_SIZE = 64;
+
     private final ExecutorService service;
+    // stat tasks never wait for anything, so directory tasks may block on them without starving their own pool
+    private final ExecutorService statService;
     private final AtomicInteger tasksScheduled = new AtomicInteger();
     private final CountDownLatch refreshFinishedLatch = new CountDownLatch(1);
 
     ConcurrentRefreshContext(@Nonnull NewVirtualFileSystem fs, @Nonnull PersistentFS persistentFS, @Nonnull HashingStrategy<String> strategy, int parallelism) {
       super(fs, persistentFS, strategy);
       service = AppExecutorUtil.createBoundedApplicationPoolExecutor("Refresh Worker", parallelism);
+      statService = AppExecutorUtil.createBoundedApplicationPoolExecutor("Refresh Worker Stat", parallelism);
+    }
+
+    @Override
+    boolean isConcurrent() {
+      return true;
+    }
+
+    @Nonnull
+    @Override
+    Stat[] stat(@Nonnull List<Path> paths, @Nonnull VirtualFile dir, boolean fixCase, boolean followLinks) {
+      int size = paths.size();
+      if (size < STAT_BATCH_SIZE * 2) {
+        return super.stat(paths, dir, fixCase, followLinks);
+      }
+
+      Stat[] result = new Stat[size];
+      List<Future<?>> batches = new ArrayList<>();
+      for (int from = STAT_BATCH_SIZE; from < size; from += STAT_BATCH_SIZE) {
+        int start = from, end = Math.min(from + STAT_BATCH_SIZE, size);
+        batches.add(statService.submit(() -> statRange(paths, dir, fixCase, followLinks, result, start, end)));
+      }
+      // the first batch runs in place, the caller would wait anyway
+      statRange(paths, dir, fixCase, followLinks, result, 0, Math.min(STAT_BATCH_SIZE, size));
+
+      boolean interrupted = false;
+      for (Future<?> batch : batches) {
+        while (true) {
+          try {
+            batch.get();
+            break;
+          }
+          catch (InterruptedException e) {
+            // a missing result would be reported as a deletion, so the batch must complete
+            interrupted = true;
+          }
+          catch (ExecutionException e) {
+            LOG.error(e.getCause());
+            break;
+          }
+        }
+      }
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+      return result;
     }
 
     @Override
@@ -303,6 +449,9 @@ class LocalFileSystemRefreshWorker {
       }
       catch (InterruptedException ignore) {
       }
+      finally {
+        statService.shutdown();
+      }
     }
   }
 
@@ -313,19 +462,23 @@ class LocalFileSystemRefreshWorker {
 
     private final NewVirtualFile myFileOrDir;
     private final RefreshContext myRefreshContext;
+    private final EventNode myNode;
 
     /**
      * @param fileOrDir
      * @param refreshContext
+     * @param node               receives subdirectories scheduled for a recursive refresh
      * @param childrenToRefresh  null means all
      * @param existingPersistentChildren
      */
     RefreshingFileVisitor(@Nonnull NewVirtualFile fileOrDir,
                           @Nonnull RefreshContext refreshContext,
+                          @Nonnull EventNode node,
                           @Nullable Collection<String> childrenToRefresh,
                           @Nonnull Collection<? extends VirtualFile> existingPersistentChildren) {
       myFileOrDir = fileOrDir;
       myRefreshContext = refreshContext;
+      myNode = node;
       myPersistentChildren = Maps.newHashMap(existingPersistentChildren.size(), refreshContext.strategy);
       myChildrenWeAreInterested = childrenToRefresh == null ? null : Sets.newHashSet(childrenToRefresh, refreshContext.strategy);
 
@@ -440,7 +593,8 @@ class LocalFileSystemRefreshWorker {
         child.markClean();
       }
       else if (myIsRecursive) {
-        myRefreshContext.submitRefreshRequest(() -> processFile(child, myRefreshContext));
+        EventNode childNode = myNode.addChild();
+        myRefreshContext.submitRefreshRequest(() -> processFile(child, myRefreshContext, childNode));
       }
       return FileVisitResult.CONTINUE;
     }
@@ -454,22 +608,30 @@ class LocalFileSystemRefreshWorker {
         Path path = Paths.get(fileOrDir.getPath());
         if (fileOrDir.isDirectory()) {
           if (myChildrenWeAreInterested == null) {
-            // Files.walkFileTree is more efficient than File.openDirectoryStream / readAttributes because former provides access to cached
-            // file attributes of visited children, see usages of BasicFileAttributesHolder in FileTreeWalker.getAttributes
-            EnumSet<FileVisitOption> options = fileOrDir.is(VFileProperty.SYMLINK) ? EnumSet.of(FileVisitOption.FOLLOW_LINKS) : EnumSet.noneOf(FileVisitOption.class);
-            Files.walkFileTree(path, options, 1, this);
+            if (myRefreshContext.isConcurrent() && !SystemInfo.isWindows) {
+              // a directory listing carries no attributes here, so reading them in batches beats the one by one walk below
+              List<Path> children = new ArrayList<>();
+              try (DirectoryStream<Path> stream = Files.newDirectoryStream(path)) {
+                for (Path child : stream) {
+                  children.add(child);
+                }
+              }
+              // children of a symlinked directory are seen through the link, as the walk below does with FOLLOW_LINKS
+              visitAll(children, fileOrDir, false, fileOrDir.is(VFileProperty.SYMLINK));
+            }
+            else {
+              // Files.walkFileTree is more efficient than File.openDirectoryStream / readAttributes because former provides access to cached
+              // file attributes of visited children, see usages of BasicFileAttributesHolder in FileTreeWalker.getAttributes
+              EnumSet<FileVisitOption> options = fileOrDir.is(VFileProperty.SYMLINK) ? EnumSet.of(FileVisitOption.FOLLOW_LINKS) : EnumSet.noneOf(FileVisitOption.class);
+              Files.walkFileTree(path, options, 1, this);
+            }
           }
           else {
+            List<Path> children = new ArrayList<>(myChildrenWeAreInterested.size());
             for (String child : myChildrenWeAreInterested) {
-              try {
-                Path subPath = fixCaseIfNeeded(path.resolve(child), fileOrDir);
-                BasicFileAttributes attrs = Files.readAttributes(subPath, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
-                FileVisitResult result = visitFile(subPath, attrs);
-                if (result == FileVisitResult.TERMINATE) break;
-              }
-              catch (IOException ignore) {
-              }
+              children.add(path.resolve(child));
             }
+            visitAll(children, fileOrDir, true, false);
           }
         }
         else {
@@ -485,6 +647,14 @@ class LocalFileSystemRefreshWorker {
       }
     }
 
+    private void visitAll(@Nonnull List<Path> children, @Nonnull VirtualFile dir, boolean fixCase, boolean followLinks) throws IOException {
+      for (Stat stat : myRefreshContext.stat(children, dir, fixCase, followLinks)) {
+        if (stat != null && visitFile(stat.path, stat.attributes) == FileVisitResult.TERMINATE) {
+          break;
+        }
+      }
+    }
+
     @Nonnull
     VfsEventGenerationHelper getHelper() {
       if (!myPersistentChildren.isEmpty()) {
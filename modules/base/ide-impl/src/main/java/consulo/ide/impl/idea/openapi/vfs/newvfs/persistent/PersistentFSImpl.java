@@ -73,9 +73,15 @@ public final class PersistentFSImpl extends PersistentFS implements Disposable {
   private BulkFileListener myPublisher;
   private final VfsData myVfsData = new VfsData();
 
+  @Nonnull
+  public VfsData getVfsData() {
+    return myVfsData;
+  }
+
   public PersistentFSImpl() {
     ShutDownTracker.getInstance().registerShutdownTask(this::performShutdown);
     LowMemoryWatcher.register(this::clearIdCache, this);
+    LowMemoryWatcher.register(FSRecords::dropWarmSnapshot, this);
 
     AsyncEventSupport.startListening();
 
@@ -103,11 +109,37 @@ public final class PersistentFSImpl extends PersistentFS implements Disposable {
   private void performShutdown() {
     if (myShutDown.compareAndSet(false, true)) {
       LOG.info("VFS dispose started");
-      FSRecords.dispose();
+      FSRecords.dispose(collectWarmSnapshotDirs());
       LOG.info("VFS dispose completed");
     }
   }
 
+  /**
+   * Directories with children loaded into memory, breadth first from the roots, so the top of the tree wins when the snapshot is full.
+   */
+  @Nonnull
+  private int[] collectWarmSnapshotDirs() {
+    IntList result = IntLists.newArrayList();
+    Deque<VirtualDirectoryImpl> queue = new ArrayDeque<>();
+    for (VirtualFileSystemEntry root : myRoots.values()) {
+      if (root instanceof VirtualDirectoryImpl) {
+        queue.add((VirtualDirectoryImpl)root);
+      }
+    }
+    VirtualDirectoryImpl dir;
+    while ((dir = queue.poll()) != null && result.size() < FSRecords.MAX_WARM_SNAPSHOT_RECORDS) {
+      List<VirtualFile> children = dir.getCachedChildren();
+      if (children.isEmpty()) continue;
+      result.add(dir.getId());
+      for (VirtualFile child : children) {
+        if (child instanceof VirtualDirectoryImpl) {
+          queue.add((VirtualDirectoryImpl)child);
+        }
+      }
+    }
+    return result.toArray();
+  }
+
   @Override
   public boolean areChildrenLoaded(@Nonnull VirtualFile dir) {
     return areChildrenLoaded(getFileId(dir));
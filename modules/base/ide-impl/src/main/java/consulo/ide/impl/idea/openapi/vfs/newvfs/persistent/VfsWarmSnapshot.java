@@ -0,0 +1,228 @@
+/*
+ * Copyright 2013-2026 consulo.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package consulo.ide.impl.idea.openapi.vfs.newvfs.persistent;
+
+import consulo.logging.Logger;
+import consulo.util.collection.primitive.ints.IntMaps;
+import consulo.util.collection.primitive.ints.IntObjectMap;
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Copy of the {@link FSRecords} data of the directories loaded at shutdown: children lists, names, flags, timestamps and lengths.
+ * Loading it with one sequential read at startup replaces thousands of random reads of the first project scan.
+ * <p>
+ * The snapshot is only valid for the storage state it was written from, so it carries the creation timestamp and the global mod count of
+ * the records, is deleted once loaded, and every record modified afterwards is dropped from it. All access is guarded by the
+ * {@link FSRecords} lock.
+ */
+final class VfsWarmSnapshot {
+  private static final Logger LOG = Logger.getInstance(VfsWarmSnapshot.class);
+
+  static final String FILE_NAME = "warmStart.dat";
+
+  private static final int MAGIC = 0x56575331;
+  private static final int VERSION = 1;
+
+  // sorted by id
+  private final int[] myIds;
+  private final int[] myNameIds;
+  private final int[] myFlags;
+  private final long[] myTimestamps;
+  private final long[] myLengths;
+  private final IntObjectMap<int[]> myChildren;
+  private final IntObjectMap<String> myNames;
+  private final BitSet myInvalid = new BitSet();
+
+  VfsWarmSnapshot(@Nonnull int[] ids,
+                  @Nonnull int[] nameIds,
+                  @Nonnull int[] flags,
+                  @Nonnull long[] timestamps,
+                  @Nonnull long[] lengths,
+                  @Nonnull IntObjectMap<int[]> children,
+                  @Nonnull IntObjectMap<String> names) {
+    myIds = ids;
+    myNameIds = nameIds;
+    myFlags = flags;
+    myTimestamps = timestamps;
+    myLengths = lengths;
+    myChildren = children;
+    myNames = names;
+  }
+
+  /**
+   * @return position of the record in the snapshot, or -1 if the record isn't there or was modified since loading
+   */
+  int indexOf(int id) {
+    int index = Arrays.binarySearch(myIds, id);
+    return index < 0 || myInvalid.get(index) ? -1 : index;
+  }
+
+  int getNameId(int index) {
+    return myNameIds[index];
+  }
+
+  int getFlags(int index) {
+    return myFlags[index];
+  }
+
+  long getTimestamp(int index) {
+    return myTimestamps[index];
+  }
+
+  long getLength(int index) {
+    return myLengths[index];
+  }
+
+  @Nullable
+  int[] getChildren(int id) {
+    return myChildren.get(id);
+  }
+
+  @Nullable
+  String getName(int nameId) {
+    return myNames.get(nameId);
+  }
+
+  void invalidate(int id) {
+    int index = Arrays.binarySearch(myIds, id);
+    if (index >= 0) {
+      myInvalid.set(index);
+    }
+  }
+
+  void invalidateChildren(int id) {
+    myChildren.remove(id);
+  }
+
+  int size() {
+    return myIds.length;
+  }
+
+  void save(@Nonnull File file, long creationTimestamp, int modCount) throws IOException {
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 64 * 1024))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeLong(creationTimestamp);
+      out.writeInt(modCount);
+
+      out.writeInt(myIds.length);
+      for (int i = 0; i < myIds.length; i++) {
+        out.writeInt(myIds[i]);
+        out.writeInt(myNameIds[i]);
+        out.writeInt(myFlags[i]);
+        out.writeLong(myTimestamps[i]);
+        out.writeLong(myLengths[i]);
+      }
+
+      out.writeInt(myChildren.size());
+      for (IntObjectMap.IntObjectEntry<int[]> entry : myChildren.entrySet()) {
+        int[] children = entry.getValue();
+        out.writeInt(entry.getKey());
+        out.writeInt(children.length);
+        for (int child : children) {
+          out.writeInt(child);
+        }
+      }
+
+      out.writeInt(myNames.size());
+      for (IntObjectMap.IntObjectEntry<String> entry : myNames.entrySet()) {
+        byte[] bytes = entry.getValue().getBytes(StandardCharsets.UTF_8);
+        out.writeInt(entry.getKey());
+        out.writeInt(bytes.length);
+        out.write(bytes);
+      }
+    }
+  }
+
+  /**
+   * Reads and deletes the snapshot file.
+   *
+   * @return null if there's no snapshot or it was written for other storage state
+   */
+  @Nullable
+  static VfsWarmSnapshot load(@Nonnull File file, long creationTimestamp, int modCount, int maxId) throws IOException {
+    if (!file.exists()) {
+      return null;
+    }
+
+    try {
+      // read to the heap: a mapped file can't be deleted on Windows until the buffer is collected
+      ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+      try {
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION || buffer.getLong() != creationTimestamp || buffer.getInt() != modCount) {
+          return null;
+        }
+
+        int recordCount = buffer.getInt();
+        int[] ids = new int[recordCount];
+        int[] nameIds = new int[recordCount];
+        int[] flags = new int[recordCount];
+        long[] timestamps = new long[recordCount];
+        long[] lengths = new long[recordCount];
+        for (int i = 0; i < recordCount; i++) {
+          ids[i] = buffer.getInt();
+          nameIds[i] = buffer.getInt();
+          flags[i] = buffer.getInt();
+          timestamps[i] = buffer.getLong();
+          lengths[i] = buffer.getLong();
+          if (ids[i] <= 0 || ids[i] >= maxId || (i > 0 && ids[i] <= ids[i - 1])) {
+            throw new IOException("Invalid record id " + ids[i]);
+          }
+        }
+
+        int dirCount = buffer.getInt();
+        IntObjectMap<int[]> children = IntMaps.newIntObjectHashMap(dirCount);
+        for (int i = 0; i < dirCount; i++) {
+          int id = buffer.getInt();
+          int[] childIds = new int[buffer.getInt()];
+          for (int j = 0; j < childIds.length; j++) {
+            childIds[j] = buffer.getInt();
+          }
+          children.put(id, childIds);
+        }
+
+        int nameCount = buffer.getInt();
+        IntObjectMap<String> names = IntMaps.newIntObjectHashMap(nameCount);
+        for (int i = 0; i < nameCount; i++) {
+          int nameId = buffer.getInt();
+          byte[] bytes = new byte[buffer.getInt()];
+          buffer.get(bytes);
+          names.put(nameId, new String(bytes, StandardCharsets.UTF_8));
+        }
+
+        return new VfsWarmSnapshot(ids, nameIds, flags, timestamps, lengths, children, names);
+      }
+      catch (RuntimeException e) {
+        // BufferUnderflowException, NegativeArraySizeException on a truncated file
+        throw new IOException("Corrupted snapshot " + file, e);
+      }
+    }
+    finally {
+      // a snapshot is valid for one start only, storage changes from now on
+      if (!file.delete() && file.exists()) {
+        LOG.warn("Can't delete snapshot " + file);
+      }
+    }
+  }
+}
@@ -9,6 +9,7 @@ import consulo.ide.impl.idea.openapi.vfs.newvfs.persistent.FSRecords;
 import consulo.language.psi.stub.StubIndexKey;
 import consulo.util.collection.SmartList;
 import consulo.util.lang.SystemProperties;
+import consulo.ide.impl.idea.util.containers.ConcurrentBitSet;
 import consulo.ide.impl.idea.util.containers.ContainerUtil;
 import consulo.index.io.ID;
 import consulo.index.io.data.DataInputOutputUtil;
@@ -25,6 +26,7 @@ import java.util.List;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -43,10 +45,15 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
 public class IndexingStamp {
   private static final long INDEX_DATA_OUTDATED_STAMP = -2L;
 
-  private static final int VERSION = 15 + (SharedIndicesData.ourFileSharedIndicesEnabled ? 15 : 0) + (SharedIndicesData.DO_CHECKS ? 15 : 0);
+  private static final int VERSION = 15 + (SharedIndicesData.ourFileSharedIndicesEnabled ? 15 : 0);
   private static final ConcurrentMap<ID<?, ?>, IndexVersion> ourIndexIdToCreationStamp = ContainerUtil.newConcurrentMap();
   private static final long ourVfsCreationStamp = FSRecords.getCreationTimestamp();
 
+  // per index unique id: files whose stamp is known to equal the index creation stamp, so the check is lock-free for them.
+  // Bits are set under the file read lock after comparing stamps and cleared under the file write lock on any stamp update,
+  // a new index version gets a new set
+  private static final AtomicReferenceArray<ConcurrentBitSet> ourCurrentFiles = new AtomicReferenceArray<>(ID.MAX_NUMBER_OF_INDICES + 1);
+
   static final int INVALID_FILE_ID = 0;
 
   private IndexingStamp() {
@@ -136,7 +143,10 @@ public class IndexingStamp {
       assert os != null;
 
       newIndexVersion.write(os);
+      // before: files current for the old version aren't current anymore, after: drop bits set against the old version meanwhile
+      resetCurrentFiles(indexId);
       ourIndexIdToCreationStamp.put(indexId, newIndexVersion);
+      resetCurrentFiles(indexId);
     }
   }
 
@@ -185,8 +195,26 @@ public class IndexingStamp {
   }
 
   public static boolean isFileIndexedStateCurrent(int fileId, ID<?, ?> indexName) {
+    // taken before the creation stamp is read, see rewriteVersion()
+    ConcurrentBitSet currentFiles = getCurrentFiles(indexName);
+    if (fileId > 0 && currentFiles.get(fileId)) {
+      return true;
+    }
+
     try {
-      return getIndexStamp(fileId, indexName) == getIndexCreationStamp(indexName);
+      Lock readLock = getStripedLock(fileId).readLock();
+      readLock.lock();
+      try {
+        Timestamps stamp = createOrGetTimeStamp(fileId);
+        boolean current = (stamp != null ? stamp.get(indexName) : 0) == getIndexCreationStamp(indexName);
+        if (current && fileId > 0) {
+          currentFiles.set(fileId);
+        }
+        return current;
+      }
+      finally {
+        readLock.unlock();
+      }
     }
     catch (RuntimeException e) {
       final Throwable cause = e.getCause();
@@ -198,6 +226,21 @@ public class IndexingStamp {
     return false;
   }
 
+  @Nonnull
+  private static ConcurrentBitSet getCurrentFiles(@Nonnull ID<?, ?> indexId) {
+    int index = indexId.getUniqueId();
+    ConcurrentBitSet files = ourCurrentFiles.get(index);
+    if (files == null) {
+      ourCurrentFiles.compareAndSet(index, null, new ConcurrentBitSet());
+      files = ourCurrentFiles.get(index);
+    }
+    return files;
+  }
+
+  private static void resetCurrentFiles(@Nonnull ID<?, ?> indexId) {
+    ourCurrentFiles.set(indexId.getUniqueId(), new ConcurrentBitSet());
+  }
+
   public static void setFileIndexedStateCurrent(int fileId, ID<?, ?> id) {
     update(fileId, id, getIndexCreationStamp(id));
   }
@@ -372,6 +415,8 @@ public class IndexingStamp {
     try {
       Timestamps stamp = createOrGetTimeStamp(fileId);
       if (stamp != null) stamp.set(indexName, indexCreationStamp);
+      // the next check compares stamps again
+      getCurrentFiles(indexName).clear(fileId);
     }
     finally {
       writeLock.unlock();
@@ -0,0 +1,363 @@
+/*
+ * Copyright 2013-2026 consulo.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package consulo.ide.impl.idea.util.indexing;
+
+import consulo.application.progress.ProgressIndicator;
+import consulo.application.progress.ProgressIndicatorProvider;
+import consulo.application.progress.ProgressManager;
+import consulo.content.scope.SearchScope;
+import consulo.index.io.IntIdsIterator;
+import consulo.index.io.SortedFileIdSetIterator;
+import consulo.index.io.StorageException;
+import consulo.index.io.ValueContainer;
+import consulo.index.io.internal.ValueContainerImpl;
+import consulo.language.psi.stub.IdFilter;
+import consulo.util.collection.HashingStrategy;
+import consulo.util.collection.Sets;
+import consulo.util.lang.ref.Ref;
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Predicate;
+
+/**
+ * Index storage split into shards by file id: ids are grouped into ranges of {@link #RANGE_SIZE} and ranges are distributed over shards
+ * round-robin. A key is read from all shards in parallel as fork-join tasks under the progress indicator of the caller and the ascending
+ * ids of the shards are merged lazily, so a lookup of a key present in a huge number of files is decoded by several cores.
+ * <p/>
+ * Reads and updates are guarded by the lock of the index using the storage, like for a single storage.
+ */
+public final class ShardedIndexStorage<Key, Value> implements VfsAwareIndexStorage<Key, Value> {
+  private static final int RANGE_SIZE = 4096;
+
+  private final List<VfsAwareIndexStorage<Key, Value>> myShards;
+  private final HashingStrategy<Key> myKeyHashingStrategy;
+
+  public ShardedIndexStorage(@Nonnull List<VfsAwareIndexStorage<Key, Value>> shards, @Nonnull HashingStrategy<Key> keyHashingStrategy) {
+    assert shards.size() > 1;
+    myShards = new ArrayList<>(shards);
+    myKeyHashingStrategy = keyHashingStrategy;
+  }
+
+  @Nonnull
+  private VfsAwareIndexStorage<Key, Value> getShard(int inputId) {
+    return myShards.get((inputId / RANGE_SIZE) % myShards.size());
+  }
+
+  @Override
+  public void addValue(Key key, int inputId, Value value) throws StorageException {
+    getShard(inputId).addValue(key, inputId, value);
+  }
+
+  @Override
+  public void removeAllValues(@Nonnull Key key, int inputId) throws StorageException {
+    getShard(inputId).removeAllValues(key, inputId);
+  }
+
+  @Nonnull
+  @Override
+  public ValueContainer<Value> read(Key key) throws StorageException {
+    ProgressIndicator indicator = ProgressIndicatorProvider.getGlobalProgressIndicator();
+    List<ShardRead<Key, Value>> reads = new ArrayList<>(myShards.size());
+    for (VfsAwareIndexStorage<Key, Value> shard : myShards) {
+      reads.add(new ShardRead<>(shard, key, indicator));
+    }
+    // the calling thread reads one of the shards itself and helps with the rest instead of blocking a pool worker
+    ForkJoinTask.invokeAll(reads);
+
+    List<ValueContainer<Value>> containers = new ArrayList<>(reads.size());
+    for (ShardRead<Key, Value> read : reads) {
+      if (read.myException != null) throw read.myException;
+      if (read.getRawResult().size() > 0) containers.add(read.getRawResult());
+    }
+    if (containers.isEmpty()) return new ValueContainerImpl<>();
+    if (containers.size() == 1) return containers.get(0);
+    return new MergedContainer<>(containers);
+  }
+
+  private static class ShardRead<Key, Value> extends RecursiveTask<ValueContainer<Value>> {
+    private final VfsAwareIndexStorage<Key, Value> myShard;
+    private final Key myKey;
+    @Nullable
+    private final ProgressIndicator myIndicator;
+    private StorageException myException;
+
+    private ShardRead(@Nonnull VfsAwareIndexStorage<Key, Value> shard, Key key, @Nullable ProgressIndicator indicator) {
+      myShard = shard;
+      myKey = key;
+      myIndicator = indicator;
+    }
+
+    @Override
+    protected ValueContainer<Value> compute() {
+      Ref<ValueContainer<Value>> result = Ref.create();
+      ProgressManager.getInstance().executeProcessUnderProgress(() -> {
+        try {
+          result.set(myShard.read(myKey));
+        }
+        catch (StorageException e) {
+          myException = e;
+        }
+      }, myIndicator);
+      return result.get();
+    }
+  }
+
+  /**
+   * Values present in several shards are reported once, their ids are merged from the ascending ids of the shards without copying.
+   */
+  private static class MergedContainer<Value> extends ValueContainer<Value> {
+    private final Map<Value, List<ValueIds>> myValues = new LinkedHashMap<>();
+
+    private MergedContainer(@Nonnull List<ValueContainer<Value>> containers) {
+      for (ValueContainer<Value> container : containers) {
+        for (ValueIterator<Value> iterator = container.getValueIterator(); iterator.hasNext(); ) {
+          Value value = iterator.next();
+          ValueIds ids = new ValueIds(iterator.getInputIdsIterator(), iterator.getValueAssociationPredicate());
+          myValues.computeIfAbsent(value, v -> new ArrayList<>(containers.size())).add(ids);
+        }
+      }
+    }
+
+    @Override
+    public int size() {
+      return myValues.size();
+    }
+
+    @Nonnull
+    @Override
+    public ValueIterator<Value> getValueIterator() {
+      Iterator<Map.Entry<Value, List<ValueIds>>> entries = myValues.entrySet().iterator();
+      return new ValueIterator<Value>() {
+        private List<ValueIds> myCurrent;
+
+        @Override
+        public boolean hasNext() {
+          return entries.hasNext();
+        }
+
+        @Override
+        public Value next() {
+          Map.Entry<Value, List<ValueIds>> entry = entries.next();
+          myCurrent = entry.getValue();
+          return entry.getKey();
+        }
+
+        @Nonnull
+        @Override
+        public IntIterator getInputIdsIterator() {
+          if (myCurrent.size() == 1) return myCurrent.get(0).iterator();
+          return new MergingIntIterator(myCurrent);
+        }
+
+        @Nullable
+        @Override
+        public IntPredicate getValueAssociationPredicate() {
+          List<ValueIds> current = myCurrent;
+          for (ValueIds ids : current) {
+            if (ids.myPredicate == null) return null;
+          }
+          return id -> {
+            for (ValueIds ids : current) {
+              if (ids.myPredicate.contains(id)) return true;
+            }
+            return false;
+          };
+        }
+      };
+    }
+  }
+
+  private static class ValueIds {
+    private final IntIdsIterator myIds;
+    @Nullable
+    private final ValueContainer.IntPredicate myPredicate;
+
+    private ValueIds(@Nonnull ValueContainer.IntIterator ids, @Nullable ValueContainer.IntPredicate predicate) {
+      myIds = ascending(ids);
+      myPredicate = predicate;
+    }
+
+    @Nonnull
+    private IntIdsIterator iterator() {
+      return myIds.createCopyInInitialState();
+    }
+
+    @Nonnull
+    private static IntIdsIterator ascending(@Nonnull ValueContainer.IntIterator ids) {
+      if (ids instanceof IntIdsIterator) {
+        IntIdsIterator idsIterator = (IntIdsIterator)ids;
+        return idsIterator.hasAscendingOrder() ? idsIterator : SortedFileIdSetIterator.getTransientIterator(idsIterator);
+      }
+      int[] array = new int[ids.size()];
+      int size = 0;
+      while (ids.hasNext()) {
+        array[size++] = ids.next();
+      }
+      Arrays.sort(array, 0, size);
+      return new ArrayIterator(array, size, 0);
+    }
+  }
+
+  private static class ArrayIterator implements IntIdsIterator {
+    private final int[] myIds;
+    private final int mySize;
+    private int myCursor;
+
+    private ArrayIterator(@Nonnull int[] ids, int size, int cursor) {
+      myIds = ids;
+      mySize = size;
+      myCursor = cursor;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return myCursor < mySize;
+    }
+
+    @Override
+    public int next() {
+      return myIds[myCursor++];
+    }
+
+    @Override
+    public int size() {
+      return mySize;
+    }
+
+    @Override
+    public boolean hasAscendingOrder() {
+      return true;
+    }
+
+    @Override
+    public IntIdsIterator createCopyInInitialState() {
+      return new ArrayIterator(myIds, mySize, 0);
+    }
+  }
+
+  /**
+   * Merges ascending ids of a value from several shards, the shard count is small so the heads are scanned linearly.
+   */
+  private static class MergingIntIterator implements ValueContainer.IntIterator {
+    private final IntIdsIterator[] myIterators;
+    private final int[] myHeads;
+    private final int mySize;
+
+    private MergingIntIterator(@Nonnull List<ValueIds> ids) {
+      myIterators = new IntIdsIterator[ids.size()];
+      myHeads = new int[ids.size()];
+      int size = 0;
+      for (int i = 0; i < myIterators.length; i++) {
+        IntIdsIterator iterator = ids.get(i).iterator();
+        myIterators[i] = iterator;
+        size += iterator.size();
+        advance(i);
+      }
+      mySize = size;
+    }
+
+    private void advance(int index) {
+      IntIdsIterator iterator = myIterators[index];
+      if (iterator != null && iterator.hasNext()) {
+        myHeads[index] = iterator.next();
+      }
+      else {
+        myIterators[index] = null;
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      for (IntIdsIterator iterator : myIterators) {
+        if (iterator != null) return true;
+      }
+      return false;
+    }
+
+    @Override
+    public int next() {
+      int min = -1;
+      for (int i = 0; i < myIterators.length; i++) {
+        if (myIterators[i] != null && (min < 0 || myHeads[i] < myHeads[min])) min = i;
+      }
+      if (min < 0) throw new NoSuchElementException();
+      int id = myHeads[min];
+      advance(min);
+      return id;
+    }
+
+    @Override
+    public int size() {
+      return mySize;
+    }
+  }
+
+  /**
+   * Keys present in several shards are passed to the processor once.
+   */
+  @Override
+  public boolean processKeys(@Nonnull Predicate<? super Key> processor, SearchScope scope, @Nullable IdFilter idFilter) throws StorageException {
+    Set<Key> processed = Sets.newHashSet(myKeyHashingStrategy);
+    for (VfsAwareIndexStorage<Key, Value> shard : myShards) {
+      boolean completed = shard.processKeys(key -> !processed.add(key) || processor.test(key), scope, idFilter);
+      if (!completed) return false;
+    }
+    return true;
+  }
+
+  @Override
+  public void clear() throws StorageException {
+    for (VfsAwareIndexStorage<Key, Value> shard : myShards) {
+      shard.clear();
+    }
+  }
+
+  @Override
+  public void clearCaches() {
+    for (VfsAwareIndexStorage<Key, Value> shard : myShards) {
+      shard.clearCaches();
+    }
+  }
+
+  @Override
+  public void flush() throws IOException {
+    for (VfsAwareIndexStorage<Key, Value> shard : myShards) {
+      shard.flush();
+    }
+  }
+
+  /**
+   * Closes all shards, the first failure is rethrown after that.
+   */
+  @Override
+  public void close() throws StorageException {
+    StorageException exception = null;
+    for (VfsAwareIndexStorage<Key, Value> shard : myShards) {
+      try {
+        shard.close();
+      }
+      catch (StorageException e) {
+        if (exception == null) exception = e;
+      }
+    }
+    if (exception != null) throw exception;
+  }
+}
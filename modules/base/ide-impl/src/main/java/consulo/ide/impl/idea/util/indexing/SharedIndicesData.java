@@ -19,7 +19,6 @@ import consulo.index.io.PersistentHashMap;
 import consulo.language.psi.stub.FileBasedIndexExtension;
 import consulo.index.io.IndexExtension;
 import consulo.util.io.FileAccessorCache;
-import consulo.util.lang.ref.Ref;
 import consulo.util.lang.ShutDownTracker;
 import consulo.util.io.BufferExposingByteArrayOutputStream;
 import consulo.util.lang.SystemProperties;
@@ -32,20 +31,43 @@ import consulo.container.boot.ContainerPathManager;
 import consulo.logging.Logger;
 import consulo.index.io.data.DataInputOutputUtil;
 import consulo.index.io.data.IOUtil;
-import gnu.trove.*;
+import consulo.application.util.concurrent.AppExecutorUtil;
+import consulo.util.collection.primitive.ints.ConcurrentIntObjectMap;
+import consulo.util.collection.primitive.ints.IntMaps;
+import consulo.util.collection.primitive.ints.IntObjectMap;
 
 import jakarta.annotation.Nonnull;
 import jakarta.annotation.Nullable;
 import java.io.*;
 import java.util.Arrays;
-
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Index inputs stored by file id and by content hash id, shared by all projects: a file with the same content as an already indexed
+ * one, e.g. in another checkout of the same repository, gets its index data from here instead of being indexed again.
+ * <p/>
+ * Data recalled by content hash is verified in background for a sample of hits, see {@link #verifyInBackground}.
+ */
 public class SharedIndicesData {
-  private static final TIntIntHashMap ourRegisteredIndices = new TIntIntHashMap();
+  // index unique id -> CONTENTLESS or CONTENTFUL, 0 for not registered
+  private static final AtomicIntegerArray ourRegisteredIndices = new AtomicIntegerArray(ID.MAX_NUMBER_OF_INDICES + 1);
   private static IndexedStateMap ourSharedFileInputs;
   private static IndexedStateMap ourSharedFileContentIndependentInputs;
   private static IndexedStateMap ourSharedContentInputs;
   static final boolean ourFileSharedIndicesEnabled = SystemProperties.getBooleanProperty("idea.shared.input.index.enabled", false);
-  static final boolean DO_CHECKS = ourFileSharedIndicesEnabled && SystemProperties.getBooleanProperty("idea.shared.input.index.checked", false);
+  // every n-th hit by content hash is verified, 0 disables verification
+  private static final int ourVerificationRate = SystemProperties.getIntProperty("idea.shared.input.index.verification.rate", 64);
+  private static final int MAX_PENDING_VERIFICATIONS = 16;
+
+  private static final AtomicLong ourContentHits = new AtomicLong();
+  private static final AtomicLong ourContentMisses = new AtomicLong();
+  private static final AtomicLong ourHashIndexHits = new AtomicLong();
+  private static final AtomicLong ourVerifications = new AtomicLong();
+  private static final AtomicLong ourVerificationFailures = new AtomicLong();
+  private static final AtomicInteger ourPendingVerifications = new AtomicInteger();
 
   private static final Logger LOG = Logger.getInstance(SharedIndicesData.class);
 
@@ -59,6 +81,7 @@ public class SharedIndicesData {
         ShutDownTracker.getInstance().registerShutdownTask(new Runnable() {
           @Override
           public void run() {
+            LOG.info("Shared indices: " + getStatistics());
             close(ourSharedFileInputs);
             close(ourSharedFileContentIndependentInputs);
             close(ourSharedContentInputs);
@@ -126,11 +149,69 @@ public class SharedIndicesData {
   public static <Key, Value, Input> void registerIndex(ID<Key, Value> indexId, IndexExtension<Key, Value, Input> extension) {
     if (extension instanceof FileBasedIndexExtension) {
       boolean dependsOnFileContent = ((FileBasedIndexExtension)extension).dependsOnFileContent();
-      ourRegisteredIndices.put(indexId.getUniqueId(), dependsOnFileContent ? CONTENTFUL : CONTENTLESS);
+      ourRegisteredIndices.set(indexId.getUniqueId(), dependsOnFileContent ? CONTENTFUL : CONTENTLESS);
     }
   }
 
+  /**
+   * Counts a lookup of index data by content hash: a hit means the file was not indexed, its data came from the content with the same hash.
+   */
+  static void countContentHashLookup(boolean hit) {
+    (hit ? ourContentHits : ourContentMisses).incrementAndGet();
+  }
+
+  /**
+   * Counts a file which got its data from {@link consulo.ide.impl.idea.util.indexing.hash.FileContentHashIndex} instead of being indexed.
+   */
+  public static void countHashIndexHit() {
+    ourHashIndexHits.incrementAndGet();
+  }
+
+  /**
+   * Runs the verification of data recalled by content hash for every {@code idea.shared.input.index.verification.rate}-th hit
+   * on a background thread. Verifications are dropped rather than queued when the previous ones didn't finish yet,
+   * so indexing never waits for them.
+   */
+  static void verifyInBackground(@Nonnull Runnable verification) {
+    if (ourVerificationRate <= 0 || ourContentHits.get() % ourVerificationRate != 0) return;
+    if (ourPendingVerifications.incrementAndGet() > MAX_PENDING_VERIFICATIONS) {
+      ourPendingVerifications.decrementAndGet();
+      return;
+    }
+    VerificationExecutorHolder.ourExecutor.execute(() -> {
+      try {
+        verification.run();
+        ourVerifications.incrementAndGet();
+      }
+      catch (Throwable e) {
+        LOG.info(e);
+      }
+      finally {
+        ourPendingVerifications.decrementAndGet();
+      }
+    });
+  }
+
+  static void countVerificationFailure() {
+    ourVerificationFailures.incrementAndGet();
+  }
+
+  @Nonnull
+  public static String getStatistics() {
+    long hits = ourContentHits.get();
+    long lookups = hits + ourContentMisses.get();
+    return "content hash hits " + hits + " of " + lookups + " lookups" +
+           (lookups == 0 ? "" : " (" + hits * 100 / lookups + "%)") +
+           ", hash index hits " + ourHashIndexHits.get() +
+           ", verified " + ourVerifications.get() + ", verification failures " + ourVerificationFailures.get();
+  }
+
+  private static class VerificationExecutorHolder {
+    private static final ExecutorService ourExecutor = AppExecutorUtil.createBoundedApplicationPoolExecutor("Shared Indices Verification", 1);
+  }
+
   public static void flushData() {
+    if (LOG.isDebugEnabled()) LOG.debug("Shared indices: " + getStatistics());
     if (!ourFileSharedIndicesEnabled) return;
     ourSharedFileInputs.force();
     ourSharedContentInputs.force();
@@ -149,22 +230,26 @@ public class SharedIndicesData {
     private final int fileOrContentId;
     private final PersistentHashMap<Integer, byte[]> storage;
 
-    private byte[] values;
-    private TIntLongHashMap indexId2Offset;
-    private TIntObjectHashMap<byte[]> indexId2NewState;
-    private boolean compactNecessary;
+    // read without the lock: new state is put before the stored one is removed, so a reader looking up the stored state and then the new
+    // one finds at least one of them, the new state wins if both are found
+    private final byte[] values;
+    // index unique id -> offset << 32 | size of the chunk in values
+    private final ConcurrentIntObjectMap<Long> indexId2Offset = IntMaps.newConcurrentIntObjectHashMap();
+    private final ConcurrentIntObjectMap<byte[]> indexId2NewState = IntMaps.newConcurrentIntObjectHashMap();
+    private final boolean compactNecessary;
 
     IndexedState(int fileOrContentId, PersistentHashMap<Integer, byte[]> storage) throws IOException {
       this.fileOrContentId = fileOrContentId;
       this.storage = storage;
       byte[] bytes = storage.get(fileOrContentId);
+      values = bytes;
       if (bytes == null) {
+        this.compactNecessary = false;
         return;
       }
 
       DataInputStream stream = new DataInputStream(new UnsyncByteArrayInputStream(bytes));
       boolean compactNecessary = false;
-      TIntLongHashMap stateMap = null;
 
       while(stream.available() > 0) {
         int chunkSize = DataInputOutputUtil.readINT(stream);
@@ -177,10 +262,8 @@ public class SharedIndicesData {
              chunkIndexTimeStamp == IndexingStamp.getIndexCreationStamp(chunkIndexID))
                 ) {
           if (chunkSize != 0) {
-            if (stateMap == null) stateMap = new TIntLongHashMap();
-            stateMap.put(chunkIndexId, (((long)currentOffset) << 32) | chunkSize);
-          } else if (stateMap != null) {
-            stateMap.remove(chunkIndexId);
+            indexId2Offset.put(chunkIndexId, (((long)currentOffset) << 32) | chunkSize);
+          } else if (indexId2Offset.remove(chunkIndexId) != null) {
             compactNecessary = true;
           }
         } else {
@@ -189,9 +272,7 @@ public class SharedIndicesData {
 
         stream.skipBytes(chunkSize);
       }
-      values = bytes;
       this.compactNecessary = compactNecessary;
-      indexId2Offset = stateMap;
     }
 
     synchronized void flush() throws IOException {
@@ -201,51 +282,29 @@ public class SharedIndicesData {
         //noinspection IOResourceOpenedButNotSafelyClosed
         DataOutput compactedOutput = new DataOutputStream(compactedOutputStream);
 
-        Ref<IOException> ioExceptionRef = new Ref<>();
+        for (IntObjectMap.IntObjectEntry<byte[]> entry : indexId2NewState.entrySet()) {
+          int indexUniqueId = entry.getKey();
+          byte[] indexValue = entry.getValue();
+          long indexCreationStamp = IndexingStamp.getIndexCreationStamp(ID.findById(indexUniqueId));
 
-        boolean result = indexId2NewState == null || indexId2NewState.forEachEntry(new TIntObjectProcedure<byte[]>() {
-          @Override
-          public boolean execute(int indexUniqueId, byte[] indexValue) {
-            try {
-              long indexCreationStamp = IndexingStamp.getIndexCreationStamp(ID.findById(indexUniqueId));
+          writeIndexValue(indexUniqueId, indexCreationStamp, indexValue, 0, indexValue.length, compactedOutput);
+        }
 
-              writeIndexValue(indexUniqueId, indexCreationStamp, indexValue, 0, indexValue.length, compactedOutput);
+        for (IntObjectMap.IntObjectEntry<Long> entry : indexId2Offset.entrySet()) {
+          int chunkIndexId = entry.getKey();
+          long chunkOffsetAndSize = entry.getValue();
+          int chunkOffset = (int)(chunkOffsetAndSize >> 32);
+          int chunkSize = (int)chunkOffsetAndSize;
 
-              return true;
-            }
-            catch (IOException ex) {
-              ioExceptionRef.set(ex);
-              return false;
-            }
-          }
-        });
-        if (!result) throw ioExceptionRef.get();
-
-        result = indexId2Offset == null || indexId2Offset.forEachEntry(new TIntLongProcedure() {
-          @Override
-          public boolean execute(int chunkIndexId, long chunkOffsetAndSize) {
-            try {
-              int chunkOffset = (int)(chunkOffsetAndSize >> 32);
-              int chunkSize = (int)chunkOffsetAndSize;
-
-              writeIndexValue(
-                      chunkIndexId,
-                      IndexingStamp.getIndexCreationStamp(ID.findById(chunkIndexId)),
-                      values,
-                      chunkOffset,
-                      chunkSize,
-                      compactedOutput
-              );
-
-              return true;
-            }
-            catch (IOException e) {
-              ioExceptionRef.set(e);
-              return false;
-            }
-          }
-        });
-        if (!result) throw ioExceptionRef.get();
+          writeIndexValue(
+                  chunkIndexId,
+                  IndexingStamp.getIndexCreationStamp(ID.findById(chunkIndexId)),
+                  values,
+                  chunkOffset,
+                  chunkSize,
+                  compactedOutput
+          );
+        }
         if (compactedOutputStream.size() > 0) storage.put(fileOrContentId, compactedOutputStream.toByteArray());
         else storage.remove(fileOrContentId);
       }
@@ -255,38 +314,33 @@ public class SharedIndicesData {
     synchronized void appendIndexedState(ID<?, ?> indexId, long timestamp, byte[] buffer, int size) {
       int indexUniqueId = indexId.getUniqueId();
 
-      if (indexId2Offset != null) indexId2Offset.remove(indexUniqueId);
       if (buffer == null) {
-        if (indexId2NewState != null) indexId2NewState.remove(indexUniqueId);
+        indexId2NewState.remove(indexUniqueId);
       } else {
-        if (indexId2NewState == null) indexId2NewState = new TIntObjectHashMap<>();
         indexId2NewState.put(indexUniqueId, Arrays.copyOf(buffer, size));
       }
+      indexId2Offset.remove(indexUniqueId);
     }
 
-    synchronized @Nullable DataInputStream readIndexedState(ID<?, ?> indexId) {
+    @Nullable
+    DataInputStream readIndexedState(ID<?, ?> indexId) {
       int indexUniqueId = indexId.getUniqueId();
       int offset = 0;
-      int length = 0;
-      byte[] bytes = null;
+      int length;
+      // the stored state is looked up first: once it's removed the new state is already visible
+      Long offsetAndSize = indexId2Offset.get(indexUniqueId);
+      byte[] bytes = indexId2NewState.get(indexUniqueId);
 
-      if (indexId2NewState != null) { // newdata
-        bytes = indexId2NewState.get(indexUniqueId);
-        offset = 0;
-        length = bytes != null ? bytes.length : 0;
+      if (bytes != null) { // newdata
+        length = bytes.length;
       }
-
-      if (bytes == null) {
-        if (values == null || // empty
-            indexId2Offset == null ||
-            !indexId2Offset.contains(indexUniqueId) // no previous data
-                ) {
+      else {
+        if (values == null || offsetAndSize == null) { // no previous data
           return null;
         }
         bytes = values;
-        long offsetAndSize = indexId2Offset.get(indexUniqueId);
         offset = (int)(offsetAndSize >> 32);
-        length = (int)offsetAndSize;
+        length = (int)(long)offsetAndSize;
       }
 
       return new DataInputStream(new UnsyncByteArrayInputStream(bytes, offset, offset + length));
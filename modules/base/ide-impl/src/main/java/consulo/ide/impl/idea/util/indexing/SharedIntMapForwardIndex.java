@@ -3,8 +3,6 @@ package consulo.ide.impl.idea.util.indexing;
 
 import consulo.index.io.*;
 import consulo.logging.Logger;
-import consulo.ide.impl.idea.openapi.util.Comparing;
-import consulo.ide.impl.idea.openapi.vfs.newvfs.persistent.PersistentFS;
 import consulo.ide.impl.idea.util.indexing.impl.forward.IntForwardIndex;
 import consulo.index.io.data.IOUtil;
 
@@ -26,7 +24,7 @@ public class SharedIntMapForwardIndex implements IntForwardIndex {
     myIndexId = (ID<?, ?>)extension.getName();
     myVerificationIndexStorageFile = verificationIndexStorageFile;
     myVerificationIndexHasChunks = verificationIndexHasChunks;
-    if (verificationIndexStorageFile != null && (!SharedIndicesData.ourFileSharedIndicesEnabled || SharedIndicesData.DO_CHECKS)) {
+    if (verificationIndexStorageFile != null && !SharedIndicesData.ourFileSharedIndicesEnabled) {
       createMap();
     }
   }
@@ -59,18 +57,6 @@ public class SharedIntMapForwardIndex implements IntForwardIndex {
       return myPersistentMap.get(key);
     }
     Integer data = SharedIndicesData.recallFileData(key, myIndexId, EnumeratorIntegerDescriptor.INSTANCE);
-    if (myPersistentMap != null) {
-      Integer verificationValue = myPersistentMap.get(key);
-      if (!Comparing.equal(verificationValue, data)) {
-        if (verificationValue != null) {
-          SharedIndicesData.associateFileData(key, myIndexId, verificationValue, EnumeratorIntegerDescriptor.INSTANCE);
-          if (data != null) {
-            LOG.error("Unexpected indexing diff with hash id " + myIndexId + ", file:" + IndexInfrastructure.findFileById(PersistentFS.getInstance(), key) + "," + verificationValue + "," + data);
-          }
-        }
-        data = verificationValue;
-      }
-    }
     return data == null ? 0 : data.intValue();
   }
 
@@ -91,6 +77,8 @@ public class SharedIntMapForwardIndex implements IntForwardIndex {
 
   @Override
   public void clear() throws IOException {
+    // shared data is stamped with the index creation stamp, it's invalidated with the index version
+    if (myPersistentMap == null) return;
     File baseFile = myPersistentMap.getBaseFile();
     try {
       myPersistentMap.close();
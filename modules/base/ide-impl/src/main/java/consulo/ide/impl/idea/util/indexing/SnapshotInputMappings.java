@@ -11,6 +11,7 @@ import consulo.ide.impl.idea.util.indexing.impl.forward.AbstractForwardIndexAcce
 import consulo.ide.impl.idea.util.indexing.impl.forward.PersistentMapBasedForwardIndex;
 import consulo.index.io.ByteSequenceDataExternalizer;
 import consulo.index.io.PersistentHashMap;
+import consulo.application.ReadAction;
 import consulo.document.Document;
 import consulo.document.FileDocumentManager;
 import consulo.index.io.DataIndexer;
@@ -90,6 +91,11 @@ class SnapshotInputMappings<Key, Value, Input> implements UpdatableSnapshotInput
     int hashId = getHashId(content);
 
     Map<Key, Value> data = doReadData(hashId);
+    SharedIndicesData.countContentHashLookup(data != null);
+    if (data != null && SharedIndicesData.ourFileSharedIndicesEnabled && !myIsPsiBackedIndex) {
+      Map<Key, Value> sharedData = data;
+      SharedIndicesData.verifyInBackground(() -> verifySharedData(content, hashId, sharedData));
+    }
     if (data != null && DebugAssertions.EXTRA_SANITY_CHECKS) {
       Map<Key, Value> contentData = myIndexer.map(content);
       boolean sameValueForSavedIndexedResultAndCurrentOne = contentData.equals(data);
@@ -102,6 +108,24 @@ class SnapshotInputMappings<Key, Value, Input> implements UpdatableSnapshotInput
     return data == null ? null : new HashedInputData<>(data, hashId);
   }
 
+  /**
+   * Data shared by content hash could have been written by another installation or an older indexer: index the content again
+   * and replace the shared data if it differs.
+   */
+  private void verifySharedData(@Nonnull Input content, int hashId, @Nonnull Map<Key, Value> sharedData) {
+    Map<Key, Value> contentData = ReadAction.compute(() -> myIndexer.map(content));
+    if (contentData.equals(sharedData)) return;
+
+    SharedIndicesData.countVerificationFailure();
+    LOG.warn("Unexpected difference of shared data of " + getContentDebugData(content) + " by index " + myIndexId + "\n" + buildDiff(sharedData, contentData));
+    try {
+      saveContents(hashId, serializeData(contentData));
+    }
+    catch (IOException e) {
+      LOG.info(e);
+    }
+  }
+
   @Nullable
   private Map<Key, Value> doReadData(int hashId) throws IOException {
     ByteArraySequence byteSequence = readContents(hashId);
@@ -220,7 +244,7 @@ class SnapshotInputMappings<Key, Value, Input> implements UpdatableSnapshotInput
   }
 
   private PersistentMapBasedForwardIndex createContentsIndex() throws IOException {
-    if (SharedIndicesData.ourFileSharedIndicesEnabled && !SharedIndicesData.DO_CHECKS) return null;
+    if (SharedIndicesData.ourFileSharedIndicesEnabled) return null;
     final File saved = new File(IndexInfrastructure.getPersistentIndexRootDir(myIndexId), "values");
     try {
       return new PersistentMapBasedForwardIndex(saved);
@@ -256,24 +280,7 @@ class SnapshotInputMappings<Key, Value, Input> implements UpdatableSnapshotInput
 
   private ByteArraySequence readContents(Integer hashId) throws IOException {
     if (SharedIndicesData.ourFileSharedIndicesEnabled) {
-      if (SharedIndicesData.DO_CHECKS) {
-        synchronized (myContents) {
-          ByteArraySequence contentBytes = SharedIndicesData.recallContentData(hashId, myIndexId, ByteSequenceDataExternalizer.INSTANCE);
-          ByteArraySequence contentBytesFromContents = myContents.get(hashId);
-
-          if (contentBytes == null && contentBytesFromContents != null || !Comparing.equal(contentBytesFromContents, contentBytes)) {
-            SharedIndicesData.associateContentData(hashId, myIndexId, contentBytesFromContents, ByteSequenceDataExternalizer.INSTANCE);
-            if (contentBytes != null) {
-              LOG.error("Unexpected indexing diff with hash id " + myIndexId + "," + hashId);
-            }
-            contentBytes = contentBytesFromContents;
-          }
-          return contentBytes;
-        }
-      }
-      else {
-        return SharedIndicesData.recallContentData(hashId, myIndexId, ByteSequenceDataExternalizer.INSTANCE);
-      }
+      return SharedIndicesData.recallContentData(hashId, myIndexId, ByteSequenceDataExternalizer.INSTANCE);
     }
 
     return myContents.get(hashId);
@@ -382,15 +389,7 @@ class SnapshotInputMappings<Key, Value, Input> implements UpdatableSnapshotInput
       byteSequence = compress(byteSequence);
     }
     if (SharedIndicesData.ourFileSharedIndicesEnabled) {
-      if (SharedIndicesData.DO_CHECKS) {
-        synchronized (myContents) {
-          myContents.put(id, byteSequence);
-          SharedIndicesData.associateContentData(id, myIndexId, byteSequence, ByteSequenceDataExternalizer.INSTANCE);
-        }
-      }
-      else {
-        SharedIndicesData.associateContentData(id, myIndexId, byteSequence, ByteSequenceDataExternalizer.INSTANCE);
-      }
+      SharedIndicesData.associateContentData(id, myIndexId, byteSequence, ByteSequenceDataExternalizer.INSTANCE);
     }
     else {
       myContents.put(id, byteSequence);
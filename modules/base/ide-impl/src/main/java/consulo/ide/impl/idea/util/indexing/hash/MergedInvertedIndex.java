@@ -4,6 +4,7 @@ package consulo.ide.impl.idea.util.indexing.hash;
 import consulo.application.util.function.Computable;
 import consulo.content.scope.SearchScope;
 import consulo.ide.impl.idea.util.indexing.FileBasedIndexImpl;
+import consulo.ide.impl.idea.util.indexing.SharedIndicesData;
 import consulo.index.io.StorageException;
 import consulo.ide.impl.idea.util.indexing.UpdatableIndex;
 import consulo.index.io.ValueContainer;
@@ -62,7 +63,10 @@ public class MergedInvertedIndex<Key, Value> implements UpdatableIndex<Key, Valu
     if (content != null) {
       //TODO if content == null
       Computable<Boolean> update = myHashIndex.update(inputId, content);
-      if (!((FileContentHashIndex.HashIndexUpdateComputable)update).isEmptyInput()) return update;
+      if (!((FileContentHashIndex.HashIndexUpdateComputable)update).isEmptyInput()) {
+        SharedIndicesData.countHashIndexHit();
+        return update;
+      }
     }
     return myBaseIndex.update(inputId, content);
   }
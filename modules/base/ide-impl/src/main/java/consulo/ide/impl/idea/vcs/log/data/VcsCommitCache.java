@@ -15,7 +15,7 @@
  */
 package consulo.ide.impl.idea.vcs.log.data;
 
-import consulo.util.collection.SLRUMap;
+import consulo.util.collection.ConcurrentLFUCache;
 import consulo.versionControlSystem.log.VcsShortCommitDetails;
 import jakarta.annotation.Nonnull;
 import jakarta.annotation.Nullable;
@@ -31,7 +31,7 @@ import java.awt.*;
  */
 class VcsCommitCache<CommitId, T extends VcsShortCommitDetails> {
 
-  private final SLRUMap<CommitId, T> myCache = new SLRUMap<>(5000, 5000);
+  private final ConcurrentLFUCache<CommitId, T> myCache = new ConcurrentLFUCache<>(10000);
 
   public void put(@Nonnull CommitId hash, @Nonnull T commit) {
     assert EventQueue.isDispatchThread();
@@ -40,7 +40,7 @@ class VcsCommitCache<CommitId, T extends VcsShortCommitDetails> {
 
   public boolean isKeyCached(@Nonnull CommitId hash) {
     assert EventQueue.isDispatchThread();
-    return myCache.get(hash) != null;
+    return myCache.containsKey(hash);
   }
 
   @Nullable
@@ -23,6 +23,7 @@ import consulo.util.io.BufferExposingByteArrayOutputStream;
 import consulo.ide.impl.idea.openapi.util.io.FileUtil;
 import consulo.ide.impl.idea.openapi.util.text.StringUtil;
 import consulo.index.io.data.DataInputOutputUtil;
+import consulo.util.lang.SystemProperties;
 import consulo.util.lang.lazy.LazyValue;
 import consulo.virtualFileSystem.VirtualFile;
 import consulo.virtualFileSystem.ManagingFS;
@@ -66,6 +67,8 @@ import java.util.function.Supplier;
 public final class StubIndexImpl extends StubIndex implements PersistentStateComponent<StubIndexState> {
   private static final AtomicReference<Boolean> ourForcedClean = new AtomicReference<>(null);
   private static final Logger LOG = Logger.getInstance(StubIndexImpl.class);
+  // number of file id sharded storages of every stub index, see ShardedIndexStorage
+  private static final int ourShardCount = Math.max(1, SystemProperties.getIntProperty("idea.stub.index.shards", 1));
 
   private static class AsyncState {
     private final Map<StubIndexKey<?, ?>, UpdatableIndex<?, Void, FileContent>> myIndices = new HashMap<>();
@@ -171,7 +174,8 @@ public final class StubIndexImpl extends StubIndex implements PersistentStateCom
                                           @Nonnull AsyncState state,
                                           @Nonnull IndicesRegistrationResult registrationResultSink) throws IOException {
     final StubIndexKey<K, ?> indexKey = extension.getKey();
-    final int version = extension.getVersion();
+    // storage layout depends on the shard count, so it's a part of the version
+    final int version = ourShardCount == 1 ? extension.getVersion() : extension.getVersion() + (ourShardCount << 24);
     FileBasedIndexExtension<K, Void> wrappedExtension = wrapStubIndexExtension(extension);
     synchronized (state) {
       state.myIndexIdToVersionMap.put(indexKey, version);
@@ -203,11 +207,23 @@ public final class StubIndexImpl extends StubIndex implements PersistentStateCom
     UpdatableIndex<Integer, SerializedStubTree, FileContent> stubUpdatingIndex = getStubUpdatingIndex();
     ReadWriteLock lock = stubUpdatingIndex.getLock();
 
+    HashingStrategy<K> keyHashingStrategy = new HashingStrategy<K>() {
+      private final KeyDescriptor<K> descriptor = extension.getKeyDescriptor();
+
+      @Override
+      public int hashCode(K object) {
+        return descriptor.hashCode(object);
+      }
+
+      @Override
+      public boolean equals(K o1, K o2) {
+        return descriptor.equals(o1, o2);
+      }
+    };
+
     for (int attempt = 0; attempt < 2; attempt++) {
       try {
-        final VfsAwareMapIndexStorage<K, Void> storage =
-                new VfsAwareMapIndexStorage<>(IndexInfrastructure.getStorageFile(indexKey), wrappedExtension.getKeyDescriptor(), wrappedExtension.getValueExternalizer(),
-                                              wrappedExtension.getCacheSize(), wrappedExtension.keyIsUniqueForIndexedFile(), wrappedExtension.traceKeyHashToVirtualFileMapping());
+        final VfsAwareIndexStorage<K, Void> storage = createStorage(indexKey, wrappedExtension, keyHashingStrategy);
         final MemoryIndexStorage<K, Void> memStorage = new MemoryIndexStorage<>(storage, indexKey);
         UpdatableIndex<K, Void, FileContent> index = new VfsAwareMapReduceIndex<>(wrappedExtension, memStorage, null, null, null, lock);
 
@@ -221,20 +237,6 @@ public final class StubIndexImpl extends StubIndex implements PersistentStateCom
           }
         }
 
-        HashingStrategy<K> keyHashingStrategy = new HashingStrategy<K>() {
-          private final KeyDescriptor<K> descriptor = extension.getKeyDescriptor();
-
-          @Override
-          public int hashCode(K object) {
-            return descriptor.hashCode(object);
-          }
-
-          @Override
-          public boolean equals(K o1, K o2) {
-            return descriptor.equals(o1, o2);
-          }
-        };
-
         synchronized (state) {
           state.myIndices.put(indexKey, index);
           state.myKeyHashingStrategies.put(indexKey, keyHashingStrategy);
@@ -258,6 +260,41 @@ public final class StubIndexImpl extends StubIndex implements PersistentStateCom
     return (HashingStrategy<K>)getAsyncState().myKeyHashingStrategies.get(stubIndexKey);
   }
 
+  @Nonnull
+  private static <K> VfsAwareIndexStorage<K, Void> createStorage(@Nonnull StubIndexKey<K, ?> indexKey,
+                                                                 @Nonnull FileBasedIndexExtension<K, Void> extension,
+                                                                 @Nonnull HashingStrategy<K> keyHashingStrategy) throws IOException {
+    File storageFile = IndexInfrastructure.getStorageFile(indexKey);
+    if (ourShardCount == 1) {
+      return createMapStorage(storageFile, extension);
+    }
+
+    List<VfsAwareIndexStorage<K, Void>> shards = new ArrayList<>(ourShardCount);
+    try {
+      for (int i = 0; i < ourShardCount; i++) {
+        shards.add(createMapStorage(new File(storageFile.getPath() + "_shard" + i), extension));
+      }
+    }
+    catch (IOException | RuntimeException e) {
+      for (VfsAwareIndexStorage<K, Void> shard : shards) {
+        try {
+          shard.close();
+        }
+        catch (StorageException | RuntimeException closeException) {
+          LOG.info(closeException);
+        }
+      }
+      throw e;
+    }
+    return new ShardedIndexStorage<>(shards, keyHashingStrategy);
+  }
+
+  @Nonnull
+  private static <K> VfsAwareMapIndexStorage<K, Void> createMapStorage(@Nonnull File storageFile, @Nonnull FileBasedIndexExtension<K, Void> extension) throws IOException {
+    return new VfsAwareMapIndexStorage<>(storageFile, extension.getKeyDescriptor(), extension.getValueExternalizer(),
+                                         extension.getCacheSize(), extension.keyIsUniqueForIndexedFile(), extension.traceKeyHashToVirtualFileMapping());
+  }
+
   private static <K> void onExceptionInstantiatingIndex(@Nonnull StubIndexKey<K, ?> indexKey, int version, @Nonnull File indexRootDir, @Nonnull Exception e) throws IOException {
     LOG.info(e);
     FileUtil.deleteWithRenaming(indexRootDir);
@@ -97,7 +97,7 @@ public class ChangeTrackingValueContainer<Value> extends CompactableUpdatableVal
 
   // need 'synchronized' to ensure atomic initialization of merged data
   // because several threads that acquired read lock may simultaneously execute the method
-  private ValueContainerImpl<Value> getMergedData() {
+  ValueContainerImpl<Value> getMergedData() {
     ValueContainerImpl<Value> merged = myMerged;
     if (merged != null) {
       return merged;
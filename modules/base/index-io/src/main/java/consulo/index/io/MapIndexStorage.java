@@ -18,7 +18,6 @@ package consulo.index.io;
 import consulo.index.io.data.DataExternalizer;
 import consulo.index.io.data.IOUtil;
 import consulo.index.io.internal.ValueContainerImpl;
-import consulo.util.collection.SLRUCache;
 import consulo.util.lang.LoggerAssert;
 import org.jetbrains.annotations.TestOnly;
 import org.slf4j.Logger;
@@ -28,7 +27,7 @@ import jakarta.annotation.Nonnull;
 import jakarta.annotation.Nullable;
 import java.io.File;
 import java.io.IOException;
-import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.IntUnaryOperator;
@@ -37,12 +36,15 @@ import java.util.function.Predicate;
 public abstract class MapIndexStorage<Key, Value> implements IndexStorage<Key, Value> {
   private static final Logger LOG = LoggerFactory.getLogger(MapIndexStorage.class);
   protected PersistentMap<Key, UpdatableValueContainer<Value>> myMap;
-  protected SLRUCache<Key, ChangeTrackingValueContainer<Value>> myCache;
+  protected StripedSLRUCache<Key, ChangeTrackingValueContainer<Value>> myCache;
   protected final File myBaseStorageFile;
   protected final KeyDescriptor<Key> myKeyDescriptor;
   private final int myCacheSize;
 
+  // guards operations on the whole storage, access to particular keys is guarded by the cache stripes
   protected final Lock l = new ReentrantLock();
+  private final AtomicLong myCacheMissCount = new AtomicLong();
+  private final AtomicLong myCacheMissTimeNanos = new AtomicLong();
   private final DataExternalizer<Value> myDataExternalizer;
   private final boolean myKeyIsUniqueForIndexedFile;
   private final boolean myReadOnly;
@@ -103,20 +105,22 @@ public abstract class MapIndexStorage<Key, Value> implements IndexStorage<Key, V
         PersistentHashMapValueStorage.CreationTimeOptions.HAS_NO_CHUNKS.set(Boolean.FALSE);
       }
     }
-    myCache = new SLRUCache<Key, ChangeTrackingValueContainer<Value>>(myCacheSize, (int)(Math.ceil(myCacheSize * 0.25)) /* 25% from the main cache size*/, myKeyDescriptor) {
+    myCache = new StripedSLRUCache<Key, ChangeTrackingValueContainer<Value>>(myCacheSize, (int)(Math.ceil(myCacheSize * 0.25)) /* 25% from the main cache size*/, myKeyDescriptor) {
       @Override
       @Nonnull
-      public ChangeTrackingValueContainer<Value> createValue(final Key key) {
+      protected ChangeTrackingValueContainer<Value> createValue(final Key key) {
         return new ChangeTrackingValueContainer<>(new ChangeTrackingValueContainer.Initializer<Value>() {
+          // loads of different keys don't wait for each other, the map itself is locked only while it is accessed
           @Nonnull
           @Override
           public Object getLock() {
-            return map.getDataAccessLock();
+            return this;
           }
 
           @Nonnull
           @Override
           public ValueContainer<Value> compute() {
+            long started = System.nanoTime();
             ValueContainer<Value> value;
             try {
               value = map.get(key);
@@ -127,6 +131,12 @@ public abstract class MapIndexStorage<Key, Value> implements IndexStorage<Key, V
             catch (IOException e) {
               throw new RuntimeException(e);
             }
+            long elapsed = System.nanoTime() - started;
+            myCacheMissCount.incrementAndGet();
+            myCacheMissTimeNanos.addAndGet(elapsed);
+            if (IOStatistics.DEBUG && elapsed / 1000000 > IOStatistics.MIN_IO_TIME_TO_REPORT) {
+              IOStatistics.dump("Loaded value of " + key + " from " + myBaseStorageFile + " for " + elapsed / 1000000);
+            }
             return value;
           }
         });
@@ -136,6 +146,10 @@ public abstract class MapIndexStorage<Key, Value> implements IndexStorage<Key, V
       protected void onDropFromCache(final Key key, @Nonnull final ChangeTrackingValueContainer<Value> valueContainer) {
         if (!myReadOnly && valueContainer.isDirty()) {
           try {
+            if (valueContainer.needsCompacting()) {
+              // saving would load merged data under the map lock, while loading takes the container lock first and then the map lock
+              valueContainer.getMergedData();
+            }
             map.put(key, valueContainer);
           }
           catch (IOException e) {
@@ -206,16 +220,26 @@ public abstract class MapIndexStorage<Key, Value> implements IndexStorage<Key, V
   @Override
   @Nonnull
   public ChangeTrackingValueContainer<Value> read(final Key key) throws StorageException {
-    l.lock();
     try {
       return myCache.get(key);
     }
     catch (RuntimeException e) {
       return unwrapCauseAndRethrow(e);
     }
-    finally {
-      l.unlock();
-    }
+  }
+
+  /**
+   * Number of values loaded from the map because they weren't cached.
+   */
+  public long getCacheMissCount() {
+    return myCacheMissCount.get();
+  }
+
+  /**
+   * Total time spent loading values missing in cache, see {@link #getCacheMissCount()}.
+   */
+  public long getCacheMissTimeNanos() {
+    return myCacheMissTimeNanos.get();
   }
 
   @Override
@@ -230,14 +254,7 @@ public abstract class MapIndexStorage<Key, Value> implements IndexStorage<Key, V
         return;
       }
 
-      ChangeTrackingValueContainer<Value> cached;
-      try {
-        l.lock();
-        cached = myCache.getIfCached(key);
-      }
-      finally {
-        l.unlock();
-      }
+      ChangeTrackingValueContainer<Value> cached = myCache.getIfCached(key);
 
       if (cached != null) {
         cached.addValue(inputId, value);
@@ -269,9 +286,7 @@ public abstract class MapIndexStorage<Key, Value> implements IndexStorage<Key, V
   public void clearCaches() {
     l.lock();
     try {
-      for (Map.Entry<Key, ChangeTrackingValueContainer<Value>> entry : myCache.entrySet()) {
-        entry.getValue().dropMergedData();
-      }
+      myCache.forEachValue(ChangeTrackingValueContainer::dropMergedData);
     }
     finally {
       l.unlock();
@@ -8,6 +8,10 @@ import consulo.index.io.internal.LowMemoryWatcherInternal;
 import consulo.util.collection.ArrayUtil;
 import consulo.util.collection.LimitedPool;
 import consulo.util.collection.SLRUCache;
+import consulo.util.collection.primitive.ints.IntList;
+import consulo.util.collection.primitive.ints.IntLists;
+import consulo.util.collection.primitive.ints.IntMaps;
+import consulo.util.collection.primitive.ints.IntObjectMap;
 import consulo.util.io.BufferExposingByteArrayOutputStream;
 import consulo.util.io.FilePermissionCopier;
 import consulo.util.io.FileUtil;
@@ -25,7 +29,16 @@ import jakarta.annotation.Nullable;
 import java.io.*;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.Predicate;
 
 /**
@@ -51,6 +64,11 @@ public class PersistentHashMap<Key, Value> extends PersistentEnumeratorDelegate<
   private static final Logger LOG = LoggerFactory.getLogger(PersistentHashMap.class);
   private static final boolean myDoTrace = SystemProperties.getBooleanProperty("idea.trace.persistent.map", false);
   private static final int DEAD_KEY_NUMBER_MASK = 0xFFFFFFFF;
+  private static final boolean ourOnlineCompaction = SystemProperties.getBooleanProperty("idea.persistent.hash.map.online.compaction", true);
+  // lets startup finish before compaction competes with it for the disk
+  private static final int ONLINE_COMPACTION_DELAY_SECONDS = 10;
+  private static final ScheduledExecutorService ourCompactionExecutor = createCompactionExecutor();
+  private static final boolean ourConcurrentReads = SystemProperties.getBooleanProperty("idea.persistent.hash.map.concurrent.reads", true);
 
   private final File myStorageFile;
   private final boolean myIsReadOnly;
@@ -84,7 +102,11 @@ public class PersistentHashMap<Key, Value> extends PersistentEnumeratorDelegate<
   private int myLargeIndexWatermarkId;  // starting with this id we store offset in adjacent file in long format
   private boolean myIntAddressForNewRecord;
   private static final boolean doHardConsistencyChecks = false;
-  private volatile boolean myBusyReading;
+  private final AtomicInteger myReadersCount = new AtomicInteger();
+  // values are read outside of myEnumerator lock under the read lock, disposing or replacing myValueStorage takes the write lock
+  private final ReadWriteLock myValueStorageLock = new ReentrantReadWriteLock();
+  // accessed under myEnumerator lock
+  private OnlineCompaction myOnlineCompaction;
 
   private static class AppendStream extends DataOutputStream {
     private AppendStream() {
@@ -202,7 +224,12 @@ public class PersistentHashMap<Key, Value> extends PersistentEnumeratorDelegate<
       myCanReEnumerate = myEnumerator.canReEnumerate();
 
       if (makesSenseToCompact()) {
-        compact();
+        if (ourOnlineCompaction) {
+          scheduleOnlineCompaction();
+        }
+        else {
+          compact();
+        }
       }
     }
     catch (IOException e) {
@@ -362,6 +389,7 @@ public class PersistentHashMap<Key, Value> extends PersistentEnumeratorDelegate<
     try {
       myEnumerator.markDirty(true);
       myAppendCache.remove(key);
+      remapIfPending(key);
 
       long oldValueOffset;
       if (myDirectlyStoreLongFileOffsetMode) {
@@ -371,6 +399,7 @@ public class PersistentHashMap<Key, Value> extends PersistentEnumeratorDelegate<
         }
         oldValueOffset = ((PersistentBTreeEnumerator<Key>)myEnumerator).getNonNegativeValue(key);
         ((PersistentBTreeEnumerator<Key>)myEnumerator).putNonNegativeValue(key, newValueOffset);
+        trackUpdate(key, -1);
       }
       else {
         final int id = enumerate(key);
@@ -380,7 +409,7 @@ public class PersistentHashMap<Key, Value> extends PersistentEnumeratorDelegate<
         }
 
         oldValueOffset = readValueId(id);
-        updateValueId(id, newValueOffset, oldValueOffset, key, 0);
+        trackUpdate(key, id, updateValueId(id, newValueOffset, oldValueOffset, key, 0));
       }
 
       if (oldValueOffset != NULL_ADDR) {
@@ -431,6 +460,7 @@ public class PersistentHashMap<Key, Value> extends PersistentEnumeratorDelegate<
   protected void appendDataWithoutCache(Key key, @Nonnull final BufferExposingByteArrayOutputStream bytes) {
     myEnumerator.lockStorage();
     try {
+      remapIfPending(key);
       long previousRecord;
       final int id;
       if (myDirectlyStoreLongFileOffsetMode) {
@@ -446,9 +476,10 @@ public class PersistentHashMap<Key, Value> extends PersistentEnumeratorDelegate<
 
       if (myDirectlyStoreLongFileOffsetMode) {
         ((PersistentBTreeEnumerator<Key>)myEnumerator).putNonNegativeValue(key, headerRecord);
+        trackUpdate(key, -1);
       }
       else {
-        updateValueId(id, headerRecord, previousRecord, key, 0);
+        trackUpdate(key, id, updateValueId(id, headerRecord, previousRecord, key, 0));
       }
 
       if (previousRecord == NULL_ADDR) {
@@ -537,23 +568,101 @@ public class PersistentHashMap<Key, Value> extends PersistentEnumeratorDelegate<
 
   @Override
   public final Value get(Key key) throws IOException {
+    myReadersCount.incrementAndGet();
+    try {
+      if (ourConcurrentReads) {
+        return doGetConcurrently(key);
+      }
+      synchronized (myEnumerator) {
+        return doGet(key);
+      }
+    }
+    catch (IOException ex) {
+      myEnumerator.markCorrupted();
+      throw ex;
+    }
+    finally {
+      myReadersCount.decrementAndGet();
+    }
+  }
+
+  public boolean isBusyReading() {
+    return myReadersCount.get() > 0;
+  }
+
+  /**
+   * Same as {@link #doGet(Object)}, but only the value address lookup holds myEnumerator lock: reading and deserializing the value,
+   * the expensive part, runs concurrently with other readers and writers. Values are never overwritten in place, so an address
+   * stays readable until the value storage is compacted or closed, which waits for such reads.
+   */
+  @Nullable
+  private Value doGetConcurrently(Key key) throws IOException {
+    final PersistentHashMapValueStorage storage;
+    final long valueOffset;
+    final long flushedSize;
+    final Lock readLock = myValueStorageLock.readLock();
     synchronized (myEnumerator) {
-      myBusyReading = true;
-      try {
+      if (myIntMapping || !myValueStorage.canReadConcurrently()) {
         return doGet(key);
       }
-      catch (IOException ex) {
-        myEnumerator.markCorrupted();
-        throw ex;
+
+      myEnumerator.lockStorage();
+      try {
+        myAppendCache.remove(key);
+        remapIfPending(key);
+        valueOffset = readValueOffset(key);
+        if (valueOffset == NULL_ADDR) {
+          return null;
+        }
       }
       finally {
-        myBusyReading = false;
+        myEnumerator.unlockStorage();
       }
+
+      storage = myValueStorage;
+      flushedSize = storage.flushForConcurrentRead();
+      readLock.lock();
+    }
+
+    final PersistentHashMapValueStorage.ReadResult readResult;
+    try {
+      readResult = storage.readBytesConcurrently(valueOffset, flushedSize);
     }
+    finally {
+      readLock.unlock();
+    }
+
+    final Value valueRead = readValue(readResult);
+
+    if (readResult.chunksCount > 1) {
+      synchronized (myEnumerator) {
+        myEnumerator.lockStorage();
+        try {
+          // skip if the value was changed or the storage was compacted meanwhile
+          if (storage == myValueStorage && readValueOffset(key) == valueOffset) {
+            compactValueChunks(key, myDirectlyStoreLongFileOffsetMode ? -1 : tryEnumerate(key), valueOffset, readResult, valueRead);
+          }
+        }
+        finally {
+          myEnumerator.unlockStorage();
+        }
+      }
+    }
+    return valueRead;
   }
 
-  public boolean isBusyReading() {
-    return myBusyReading;
+  private long readValueOffset(Key key) throws IOException {
+    if (myDirectlyStoreLongFileOffsetMode) {
+      return ((PersistentBTreeEnumerator<Key>)myEnumerator).getNonNegativeValue(key);
+    }
+    final int id = tryEnumerate(key);
+    return id == PersistentEnumeratorBase.NULL_ID ? NULL_ADDR : readValueId(id);
+  }
+
+  private Value readValue(@Nonnull PersistentHashMapValueStorage.ReadResult readResult) throws IOException {
+    try (DataInputStream input = new DataInputStream(new UnsyncByteArrayInputStream(readResult.buffer))) {
+      return myValueExternalizer.read(input);
+    }
   }
 
   @Nullable
@@ -563,6 +672,7 @@ public class PersistentHashMap<Key, Value> extends PersistentEnumeratorDelegate<
     final int id;
     try {
       myAppendCache.remove(key);
+      remapIfPending(key);
 
       if (myDirectlyStoreLongFileOffsetMode) {
         valueOffset = ((PersistentBTreeEnumerator<Key>)myEnumerator).getNonNegativeValue(key);
@@ -593,12 +703,13 @@ public class PersistentHashMap<Key, Value> extends PersistentEnumeratorDelegate<
     }
 
     final PersistentHashMapValueStorage.ReadResult readResult = myValueStorage.readBytes(valueOffset);
+    final Value valueRead = readValue(readResult);
+    compactValueChunks(key, id, valueOffset, readResult, valueRead);
+    return valueRead;
+  }
 
-    final Value valueRead;
-    try (DataInputStream input = new DataInputStream(new UnsyncByteArrayInputStream(readResult.buffer))) {
-      valueRead = myValueExternalizer.read(input);
-    }
-
+  private void compactValueChunks(Key key, int id, long valueOffset, @Nonnull PersistentHashMapValueStorage.ReadResult readResult, Value valueRead)
+          throws IOException {
     if (myValueStorage.performChunksCompaction(readResult.chunksCount, readResult.buffer.length)) {
       long newValueOffset = myValueStorage.compactChunks(new ValueDataAppender() {
         @Override
@@ -613,9 +724,10 @@ public class PersistentHashMap<Key, Value> extends PersistentEnumeratorDelegate<
 
         if (myDirectlyStoreLongFileOffsetMode) {
           ((PersistentBTreeEnumerator<Key>)myEnumerator).putNonNegativeValue(key, newValueOffset);
+          trackUpdate(key, -1);
         }
         else {
-          updateValueId(id, newValueOffset, valueOffset, key, 0);
+          trackUpdate(key, id, updateValueId(id, newValueOffset, valueOffset, key, 0));
         }
         myLiveAndGarbageKeysCounter++;
         myReadCompactionGarbageSize += readResult.buffer.length;
@@ -624,7 +736,6 @@ public class PersistentHashMap<Key, Value> extends PersistentEnumeratorDelegate<
         myEnumerator.unlockStorage();
       }
     }
-    return valueRead;
   }
 
   public final boolean containsMapping(Key key) throws IOException {
@@ -666,12 +777,14 @@ public class PersistentHashMap<Key, Value> extends PersistentEnumeratorDelegate<
     try {
 
       myAppendCache.remove(key);
+      remapIfPending(key);
       final long record;
       if (myDirectlyStoreLongFileOffsetMode) {
         assert !myIntMapping; // removal isn't supported
         record = ((PersistentBTreeEnumerator<Key>)myEnumerator).getNonNegativeValue(key);
         if (record != NULL_ADDR) {
           ((PersistentBTreeEnumerator<Key>)myEnumerator).putNonNegativeValue(key, NULL_ADDR);
+          trackUpdate(key, -1);
         }
       }
       else {
@@ -683,7 +796,7 @@ public class PersistentHashMap<Key, Value> extends PersistentEnumeratorDelegate<
         myEnumerator.markDirty(true);
 
         record = readValueId(id);
-        updateValueId(id, NULL_ADDR, record, key, 0);
+        trackUpdate(key, id, updateValueId(id, NULL_ADDR, record, key, 0));
       }
       if (record != NULL_ADDR) {
         myLiveAndGarbageKeysCounter++;
@@ -711,7 +824,10 @@ public class PersistentHashMap<Key, Value> extends PersistentEnumeratorDelegate<
         clearAppenderCaches();
       }
       finally {
-        super.force();
+        // records not remapped yet point into the replaced value storage, the enumerator stays dirty until the online compaction remaps them
+        if (myOnlineCompaction == null || !myOnlineCompaction.isRemapping()) {
+          super.force();
+        }
       }
     }
     finally {
@@ -733,6 +849,9 @@ public class PersistentHashMap<Key, Value> extends PersistentEnumeratorDelegate<
   }
 
   private void doClose() throws IOException {
+    if (myOnlineCompaction != null) {
+      myOnlineCompaction.abort();
+    }
     myEnumerator.lockStorage();
     try {
       try {
@@ -748,12 +867,14 @@ public class PersistentHashMap<Key, Value> extends PersistentEnumeratorDelegate<
       }
       finally {
         final PersistentHashMapValueStorage valueStorage = myValueStorage;
+        myValueStorageLock.writeLock().lock();
         try {
           if (valueStorage != null) {
             valueStorage.dispose();
           }
         }
         finally {
+          myValueStorageLock.writeLock().unlock();
           super.close();
         }
       }
@@ -781,6 +902,9 @@ public class PersistentHashMap<Key, Value> extends PersistentEnumeratorDelegate<
   public void compact() throws IOException {
     if (myIsReadOnly) throw new UnsupportedOperationException();
     synchronized (myEnumerator) {
+      if (myOnlineCompaction != null) {
+        myOnlineCompaction.abort();
+      }
       force();
       LOG.info("Compacting " + myEnumerator.myFile.getPath());
       LOG.info("Live keys:" + (int)(myLiveAndGarbageKeysCounter / LIVE_KEY_MASK) +
@@ -827,6 +951,29 @@ public class PersistentHashMap<Key, Value> extends PersistentEnumeratorDelegate<
         newStorage.dispose();
       }
 
+      final long newSize = newStorage.getSize();
+      replaceValueStorage(oldFiles, newPath, options);
+      LOG.info("Compacted " + myEnumerator.myFile.getPath() + ":" + sizeBefore + " bytes into " + newSize + " bytes in " + (System.currentTimeMillis() - now) + "ms.");
+      myEnumerator.putMetaData(myLiveAndGarbageKeysCounter);
+      myEnumerator.putMetaData2(myLargeIndexWatermarkId);
+      if (myDoTrace) {
+        if (!myEnumerator.isDirty()) {
+          LOG.error("assertion failed", new AssertionError());
+        }
+      }
+    }
+  }
+
+  /**
+   * Disposes current value storage, deletes its files and renames files of already disposed storage at {@code newPath} into their place.
+   */
+  private void replaceValueStorage(@Nullable File[] oldFiles, @Nonnull String newPath, @Nonnull PersistentHashMapValueStorage.CreationTimeOptions options) throws IOException {
+    final File oldDataFile = getDataFile(myEnumerator.myFile);
+    final String oldDataFileBaseName = oldDataFile.getName();
+
+    // concurrent reads of the old storage finish first
+    myValueStorageLock.writeLock().lock();
+    try {
       myValueStorage.dispose();
 
       if (oldFiles != null) {
@@ -835,8 +982,6 @@ public class PersistentHashMap<Key, Value> extends PersistentEnumeratorDelegate<
         }
       }
 
-      final long newSize = newStorage.getSize();
-
       File newDataFile = new File(newPath);
       final String newBaseName = newDataFile.getName();
       final File[] newFiles = getFilesInDirectoryWithNameStartingWith(newDataFile, newBaseName);
@@ -852,13 +997,391 @@ public class PersistentHashMap<Key, Value> extends PersistentEnumeratorDelegate<
       }
 
       myValueStorage = PersistentHashMapValueStorage.create(oldDataFile.getPath(), options);
-      LOG.info("Compacted " + myEnumerator.myFile.getPath() + ":" + sizeBefore + " bytes into " + newSize + " bytes in " + (System.currentTimeMillis() - now) + "ms.");
+    }
+    finally {
+      myValueStorageLock.writeLock().unlock();
+    }
+  }
+
+  private static ScheduledExecutorService createCompactionExecutor() {
+    ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+      Thread thread = new Thread(runnable, "PersistentHashMap Compaction");
+      thread.setDaemon(true);
+      thread.setPriority(Thread.MIN_PRIORITY);
+      return thread;
+    });
+    executor.setKeepAliveTime(1, TimeUnit.MINUTES);
+    executor.allowCoreThreadTimeOut(true);
+    executor.setRemoveOnCancelPolicy(true);
+    return executor;
+  }
+
+  private void scheduleOnlineCompaction() {
+    synchronized (myEnumerator) {
+      if (myOnlineCompaction != null) return;
+      OnlineCompaction compaction = new OnlineCompaction();
+      myOnlineCompaction = compaction;
+      compaction.myFuture = ourCompactionExecutor.schedule(compaction, ONLINE_COMPACTION_DELAY_SECONDS, TimeUnit.SECONDS);
+    }
+  }
+
+  private void trackUpdate(@Nonnull Key key, int keyId) {
+    if (myOnlineCompaction != null) {
+      myOnlineCompaction.keyUpdated(key, keyId);
+    }
+  }
+
+  /**
+   * Should be called under map lock before the value address of the key is read or changed.
+   */
+  private void remapIfPending(@Nonnull Key key) throws IOException {
+    if (myOnlineCompaction != null) {
+      myOnlineCompaction.remapIfPending(key);
+    }
+  }
+
+  private void trackUpdate(@Nonnull Key key, int keyId, int newKeyId) {
+    if (myOnlineCompaction != null) {
+      myOnlineCompaction.keyUpdated(key, keyId);
+      if (newKeyId != keyId) {
+        // re-enumerated, the record at the old id is stale now
+        myOnlineCompaction.keyUpdated(key, newKeyId);
+      }
+    }
+  }
+
+  /**
+   * Copies live values into a new value storage in short steps, each holding the map lock, so the map stays readable and writable
+   * in between. Updates are tracked from the moment the records are listed: keys updated meanwhile are copied once more, from their
+   * current values, right before the storages are switched. After the switch the mapping is updated in steps too, a key accessed
+   * before its step is remapped first, see {@link #remapIfPending(Object)}.
+   */
+  private final class OnlineCompaction implements Runnable {
+    private static final int STEP_MILLIS = 20;
+
+    private final String myNewPath = getDataFile(myEnumerator.myFile).getPath() + ".compacting";
+    private ScheduledFuture<?> myFuture;
+    private PersistentHashMapValueStorage myNewStorage;
+    // record ids and enumerator keys listed at start, their value addresses are read in steps
+    private IntList myRecordIds;
+    private IntList myRecordKeys;
+    private int myCollected;
+    // null until the records are listed, updates are tracked from then on
+    private List<CompactionRecordInfo> myInfos;
+    // compaction identity of updated keys to the key
+    private final IntObjectMap<Key> myUpdatedKeys = IntMaps.newIntObjectHashMap();
+    private int myCopied;
+    private int myReportedPercent;
+    // compaction identity to the copied record still mapped into the replaced storage, null until the storages are switched
+    private IntObjectMap<CompactionRecordInfo> myPendingRemaps;
+    private int myRemapped;
+    private int myUpdatedCount;
+    private long mySizeBefore;
+    private long myNewSize;
+    private long myStarted;
+
+    @Override
+    public void run() {
+      try {
+        if (!start()) return;
+        while (collectStep()) {
+          // other users of the map get the lock between steps
+        }
+        if (!sortInfos()) return;
+        while (copyStep()) {
+        }
+        if (!switchStorages()) return;
+        while (remapStep()) {
+        }
+      }
+      catch (Throwable e) {
+        LOG.warn("Online compaction of " + myEnumerator.myFile.getPath() + " failed", e);
+        synchronized (myEnumerator) {
+          if (myOnlineCompaction == this) {
+            abort();
+          }
+        }
+      }
+    }
+
+    private int identity(@Nonnull CompactionRecordInfo info) {
+      return myDirectlyStoreLongFileOffsetMode ? info.key : info.address;
+    }
+
+    void keyUpdated(@Nonnull Key key, int keyId) {
+      if (myInfos == null) return;
+      myUpdatedKeys.put(myDirectlyStoreLongFileOffsetMode ? ((InlineKeyDescriptor<Key>)myKeyDescriptor).toInt(key) : keyId, key);
+    }
+
+    boolean isRemapping() {
+      return myPendingRemaps != null;
+    }
+
+    private boolean start() throws IOException {
+      synchronized (myEnumerator) {
+        if (myOnlineCompaction != this || isClosed() || isCorrupted()) return false;
+
+        // pending appends go to the current storage and are collected below
+        doForce();
+        myStarted = System.currentTimeMillis();
+        LOG.info("Compacting online " + myEnumerator.myFile.getPath() + ", live keys:" + (int)(myLiveAndGarbageKeysCounter / LIVE_KEY_MASK) +
+                 ", dead keys:" + (int)(myLiveAndGarbageKeysCounter & DEAD_KEY_NUMBER_MASK) + ", read compaction size:" + myReadCompactionGarbageSize);
+
+        // only ids are listed here, value addresses are read in steps: keys updated meanwhile are skipped by then
+        int expected = (int)(myLiveAndGarbageKeysCounter / LIVE_KEY_MASK);
+        IntList recordIds = IntLists.newArrayList(Math.max(expected, 16));
+        IntList recordKeys = IntLists.newArrayList(Math.max(expected, 16));
+        traverseAllRecords(new PersistentEnumerator.RecordsProcessor() {
+          @Override
+          public boolean process(final int keyId) {
+            recordIds.add(keyId);
+            recordKeys.add(getCurrentKey());
+            return true;
+          }
+        });
+
+        deleteFilesStartingWith(new File(myNewPath));
+        myNewStorage = PersistentHashMapValueStorage.create(myNewPath, myValueStorage.getOptions());
+        myRecordIds = recordIds;
+        myRecordKeys = recordKeys;
+        myInfos = new ArrayList<>(recordIds.size());
+        return true;
+      }
+    }
+
+    private boolean collectStep() {
+      synchronized (myEnumerator) {
+        if (myOnlineCompaction != this) return false;
+
+        long deadline = System.currentTimeMillis() + STEP_MILLIS;
+        while (myCollected < myRecordIds.size() && System.currentTimeMillis() < deadline) {
+          int keyId = myRecordIds.get(myCollected);
+          int key = myRecordKeys.get(myCollected++);
+          if (myUpdatedKeys.containsKey(myDirectlyStoreLongFileOffsetMode ? key : keyId)) continue;
+
+          long record = readValueId(keyId);
+          if (record != NULL_ADDR) {
+            myInfos.add(new CompactionRecordInfo(key, record, keyId));
+          }
+        }
+        return myCollected < myRecordIds.size();
+      }
+    }
+
+    private boolean sortInfos() {
+      List<CompactionRecordInfo> infos;
+      synchronized (myEnumerator) {
+        if (myOnlineCompaction != this) return false;
+        myRecordIds = null;
+        myRecordKeys = null;
+        infos = myInfos;
+      }
+      // reading in file order, only this thread uses the infos until they're copied
+      infos.sort(Comparator.comparingLong(info -> info.valueAddress));
+      return true;
+    }
+
+    private boolean copyStep() throws IOException {
+      synchronized (myEnumerator) {
+        if (myOnlineCompaction != this) return false;
+
+        long deadline = System.currentTimeMillis() + STEP_MILLIS;
+        while (myCopied < myInfos.size() && System.currentTimeMillis() < deadline) {
+          CompactionRecordInfo info = myInfos.get(myCopied++);
+          if (!myUpdatedKeys.containsKey(identity(info))) {
+            info.newValueAddress = copyValue(info.valueAddress);
+          }
+        }
+
+        int percent = (int)(100L * myCopied / Math.max(1, myInfos.size()));
+        if (percent >= myReportedPercent + 25 && myCopied < myInfos.size()) {
+          myReportedPercent = percent;
+          LOG.info("Compacting online " + myEnumerator.myFile.getPath() + ": " + percent + "% of " + myInfos.size() + " values copied");
+        }
+        return myCopied < myInfos.size();
+      }
+    }
+
+    private long copyValue(long valueAddress) throws IOException {
+      PersistentHashMapValueStorage.ReadResult readResult = myValueStorage.readBytes(valueAddress);
+      return myNewStorage.appendBytes(readResult.buffer, 0, readResult.buffer.length, 0);
+    }
+
+    /**
+     * Copies values updated meanwhile, remaps them and replaces the value storage. Other records keep addresses of the replaced storage
+     * until {@link #remapStep()} or an access to the key remaps them, the enumerator stays dirty until then.
+     */
+    private boolean switchStorages() throws IOException {
+      synchronized (myEnumerator) {
+        if (myOnlineCompaction != this) return false;
+
+        // flushed appends are tracked as updates
+        doForce();
+        mySizeBefore = myValueStorage.getSize();
+
+        List<CompactionRecordInfo> updated = new ArrayList<>(myUpdatedKeys.size());
+        List<Key> updatedKeys = new ArrayList<>(myUpdatedKeys.size());
+        for (IntObjectMap.IntObjectEntry<Key> entry : myUpdatedKeys.entrySet()) {
+          int identity = entry.getKey();
+          long valueAddress = myDirectlyStoreLongFileOffsetMode
+                              ? ((PersistentBTreeEnumerator<Key>)myEnumerator).getNonNegativeValue(entry.getValue())
+                              : readValueId(identity);
+          if (valueAddress != NULL_ADDR) {
+            CompactionRecordInfo info = new CompactionRecordInfo(myDirectlyStoreLongFileOffsetMode ? identity : 0, valueAddress, identity);
+            info.newValueAddress = copyValue(valueAddress);
+            updated.add(info);
+            updatedKeys.add(entry.getValue());
+          }
+        }
+        myUpdatedCount = updated.size();
+
+        myNewStorage.dispose();
+        myNewSize = myNewStorage.getSize();
+
+        IntObjectMap<CompactionRecordInfo> pending = IntMaps.newIntObjectHashMap(myInfos.size());
+        for (CompactionRecordInfo info : myInfos) {
+          if (!myUpdatedKeys.containsKey(identity(info))) {
+            pending.put(identity(info), info);
+          }
+        }
+
+        // from here on the mapping points into the new storage, there's no way back
+        myEnumerator.markDirty(true);
+        myEnumerator.lockStorage();
+        try {
+          myPendingRemaps = pending;
+          myLiveAndGarbageKeysCounter = 0;
+          myReadCompactionGarbageSize = 0;
+          for (int i = 0; i < updated.size(); i++) {
+            CompactionRecordInfo info = updated.get(i);
+            updateValueId(info.address, info.newValueAddress, info.valueAddress, updatedKeys.get(i), info.key);
+            myLiveAndGarbageKeysCounter += LIVE_KEY_MASK;
+          }
+
+          File oldDataFile = getDataFile(myEnumerator.myFile);
+          String oldBaseName = oldDataFile.getName();
+          String newBaseName = new File(myNewPath).getName();
+          File parentFile = oldDataFile.getParentFile();
+          // new storage files share the prefix of old ones
+          File[] oldFiles = parentFile != null
+                            ? parentFile.listFiles(f -> f.getName().startsWith(oldBaseName) && !f.getName().startsWith(newBaseName))
+                            : null;
+          replaceValueStorage(oldFiles, myNewPath, myNewStorage.getOptions());
+        }
+        catch (IOException | RuntimeException e) {
+          remapFailed();
+          throw e;
+        }
+        finally {
+          myEnumerator.unlockStorage();
+        }
+        return true;
+      }
+    }
+
+    private boolean remapStep() throws IOException {
+      synchronized (myEnumerator) {
+        if (myOnlineCompaction != this) return false;
+
+        long deadline = System.currentTimeMillis() + STEP_MILLIS;
+        remap(deadline);
+        if (myRemapped < myInfos.size()) return true;
+
+        finish();
+        return false;
+      }
+    }
+
+    /**
+     * Should be called under map lock.
+     */
+    private void remap(long deadline) throws IOException {
+      myEnumerator.lockStorage();
+      try {
+        while (myRemapped < myInfos.size() && System.currentTimeMillis() < deadline) {
+          CompactionRecordInfo info = myInfos.get(myRemapped++);
+          if (myPendingRemaps.remove(identity(info)) != null) {
+            remap(info, null);
+          }
+        }
+      }
+      catch (IOException | RuntimeException e) {
+        remapFailed();
+        throw e;
+      }
+      finally {
+        myEnumerator.unlockStorage();
+      }
+    }
+
+    private void remap(@Nonnull CompactionRecordInfo info, @Nullable Key key) throws IOException {
+      updateValueId(info.address, info.newValueAddress, info.valueAddress, key, info.key);
+      myLiveAndGarbageKeysCounter += LIVE_KEY_MASK;
+    }
+
+    /**
+     * Should be called under map lock before the value address of the key is read or changed.
+     */
+    void remapIfPending(@Nonnull Key key) throws IOException {
+      if (myPendingRemaps == null) return;
+
+      int identity;
+      if (myDirectlyStoreLongFileOffsetMode) {
+        identity = ((InlineKeyDescriptor<Key>)myKeyDescriptor).toInt(key);
+      }
+      else {
+        identity = tryEnumerate(key);
+        if (identity == PersistentEnumeratorBase.NULL_ID) return;
+      }
+      CompactionRecordInfo info = myPendingRemaps.remove(identity);
+      if (info != null) {
+        try {
+          remap(info, key);
+        }
+        catch (IOException | RuntimeException e) {
+          remapFailed();
+          throw e;
+        }
+      }
+    }
+
+    private void remapFailed() {
+      myPendingRemaps = null;
+      myOnlineCompaction = null;
+      markCorrupted();
+    }
+
+    private void finish() {
+      myPendingRemaps = null;
+      myOnlineCompaction = null;
       myEnumerator.putMetaData(myLiveAndGarbageKeysCounter);
       myEnumerator.putMetaData2(myLargeIndexWatermarkId);
-      if (myDoTrace) {
-        if (!myEnumerator.isDirty()) {
-          LOG.error("assertion failed", new AssertionError());
+      LOG.info("Compacted online " + myEnumerator.myFile.getPath() + ": " + mySizeBefore + " bytes into " + myNewSize + " bytes, reclaimed " +
+               (mySizeBefore - myNewSize) + " bytes, " + (int)(myLiveAndGarbageKeysCounter / LIVE_KEY_MASK) + " values (" + myUpdatedCount +
+               " updated meanwhile) in " + (System.currentTimeMillis() - myStarted) + "ms.");
+    }
+
+    /**
+     * Should be called under map lock. Once the storages are switched the remaining records are remapped instead.
+     */
+    void abort() {
+      if (myPendingRemaps != null) {
+        try {
+          remap(Long.MAX_VALUE);
+          finish();
         }
+        catch (IOException e) {
+          LOG.warn("Online compaction of " + myEnumerator.myFile.getPath() + " failed", e);
+        }
+        return;
+      }
+      myOnlineCompaction = null;
+      if (myFuture != null) {
+        myFuture.cancel(false);
+      }
+      if (myNewStorage != null) {
+        myNewStorage.dispose();
+        deleteFilesStartingWith(new File(myNewPath));
       }
     }
   }
@@ -18,7 +18,11 @@ import org.slf4j.LoggerFactory;
 import jakarta.annotation.Nonnull;
 import jakarta.annotation.Nullable;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.util.Comparator;
 import java.util.List;
 import java.util.PriorityQueue;
@@ -138,6 +142,20 @@ public class PersistentHashMapValueStorage {
     }
   };
 
+  // positional reads don't move a shared file pointer, so one channel serves all concurrent readers of a file
+  private static final FileAccessorCache<String, FileChannel> ourConcurrentReadersCache = new FileAccessorCache<String, FileChannel>(CACHE_PROTECTED_QUEUE_SIZE, CACHE_PROBATIONAL_QUEUE_SIZE) {
+    @Nonnull
+    @Override
+    protected FileChannel createAccessor(String path) throws IOException {
+      return FileChannel.open(new File(path).toPath(), StandardOpenOption.READ);
+    }
+
+    @Override
+    protected void disposeAccessor(@Nonnull FileChannel fileAccessor) throws IOException {
+      fileAccessor.close();
+    }
+  };
+
   private final CompressedAppendableFile myCompressedAppendableFile;
 
   public static final boolean COMPRESSION_ENABLED = SystemProperties.getBooleanProperty("idea.compression.enabled", true);
@@ -479,6 +497,131 @@ public class PersistentHashMapValueStorage {
     }
   }
 
+  /**
+   * Whether values can be read with {@link #readBytesConcurrently(long, long)}. Compressed storage decompresses through shared state.
+   */
+  boolean canReadConcurrently() {
+    return myCompressedAppendableFile == null && !myCompactionMode;
+  }
+
+  /**
+   * Makes appended data visible to {@link #readBytesConcurrently(long, long)}. Should be called under the same lock as appends.
+   *
+   * @return size of the flushed data, appends made after the call aren't visible to readers yet
+   */
+  long flushForConcurrentRead() {
+    forceAppender(myPath);
+    return mySize;
+  }
+
+  /**
+   * Same as {@link #readBytes(long)} but safe to call from several threads at once and concurrently with appends:
+   * reads go through positional reads of a separate channel and no state of the storage is changed.
+   * Data at the address must be {@link #flushForConcurrentRead() flushed} and the storage must not be disposed meanwhile.
+   *
+   * @param flushedSize size returned by {@link #flushForConcurrentRead()}, nothing is read past it
+   */
+  ReadResult readBytesConcurrently(long tailChunkAddress, long flushedSize) throws IOException {
+    checkCancellation();
+
+    FileAccessorCache.Handle<FileChannel> channelHandle = ourConcurrentReadersCache.get(myPath);
+    try {
+      FileChannel channel = channelHandle.get();
+      return readChunksConcurrently(tailChunkAddress, flushedSize, (addr, dst, off, len) -> readFully(channel, addr, dst, off, len));
+    }
+    catch (ClosedChannelException e) {
+      // the shared channel is closed for all readers once any of them is interrupted, the data is fine, so the channel is reopened
+      // by the next reader and this one reads through its own file which isn't closed by interrupts
+      ourConcurrentReadersCache.remove(myPath);
+    }
+    finally {
+      channelHandle.release();
+    }
+
+    try (RandomAccessFile file = new RandomAccessFile(myFile, "r")) {
+      return readChunksConcurrently(tailChunkAddress, flushedSize, (addr, dst, off, len) -> {
+        file.seek(addr);
+        try {
+          file.readFully(dst, off, len);
+        }
+        catch (EOFException e) {
+          throw new PersistentEnumeratorBase.CorruptedException(myFile);
+        }
+      });
+    }
+  }
+
+  @FunctionalInterface
+  private interface PositionalReader {
+    void read(long addr, @Nonnull byte[] dst, int off, int len) throws IOException;
+  }
+
+  @Nonnull
+  private ReadResult readChunksConcurrently(long tailChunkAddress, long flushedSize, @Nonnull PositionalReader reader) throws IOException {
+    try {
+      long size = flushedSize;
+      byte[] buffer = new byte[ourBufferLength];
+      UnsyncByteArrayInputStream bufferStream = new UnsyncByteArrayInputStream(buffer);
+      DataInputStream bufferDataStream = new DataInputStream(bufferStream);
+
+      int chunkCount = 0;
+      byte[] result = null;
+      long chunk = tailChunkAddress;
+      while (chunk != 0) {
+        if (chunk < 0 || chunk > size) throw new PersistentEnumeratorBase.CorruptedException(myFile);
+
+        int len = (int)Math.min(ourBufferLength, size - chunk);
+        reader.read(chunk, buffer, 0, len);
+        bufferStream.init(buffer, 0, len);
+
+        final int chunkSize = DataInputOutputUtil.readINT(bufferDataStream);
+        if (chunkSize < 0) {
+          throw new IOException("Value storage corrupted: negative chunk size: " + chunkSize);
+        }
+        final long prevChunkAddress = readPrevChunkAddress(chunk, bufferDataStream);
+        final int headerOffset = len - bufferStream.available();
+
+        byte[] b = new byte[(result != null ? result.length : 0) + chunkSize];
+        if (result != null) System.arraycopy(result, 0, b, b.length - result.length, result.length);
+        result = b;
+
+        checkPreconditions(result, chunkSize, 0);
+        if (chunkSize < ourBufferLength - headerOffset) {
+          System.arraycopy(buffer, headerOffset, result, 0, chunkSize);
+        }
+        else {
+          reader.read(chunk + headerOffset, result, 0, chunkSize);
+        }
+
+        if (prevChunkAddress >= chunk) throw new PersistentEnumeratorBase.CorruptedException(myFile);
+
+        chunk = prevChunkAddress;
+        chunkCount++;
+
+        if (prevChunkAddress != 0) {
+          checkCancellation();
+          assert !myOptions.myHasNoChunks;
+        }
+        if (result.length > size) {
+          throw new PersistentEnumeratorBase.CorruptedException(myFile);
+        }
+      }
+      return new ReadResult(result, chunkCount);
+    }
+    catch (OutOfMemoryError error) {
+      throw new PersistentEnumeratorBase.CorruptedException(myFile);
+    }
+  }
+
+  private void readFully(@Nonnull FileChannel channel, long addr, @Nonnull byte[] dst, int off, int len) throws IOException {
+    ByteBuffer buffer = ByteBuffer.wrap(dst, off, len);
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, addr + buffer.position() - off) < 0) {
+        throw new PersistentEnumeratorBase.CorruptedException(myFile);
+      }
+    }
+  }
+
   private long myChunksRemovalTime;
   private long myChunksReadingTime;
   private int myChunks;
@@ -637,8 +780,12 @@ public class PersistentHashMapValueStorage {
   }
 
   private long readPrevChunkAddress(long chunk) throws IOException {
+    return readPrevChunkAddress(chunk, myBufferDataStreamWrapper);
+  }
+
+  private long readPrevChunkAddress(long chunk, @Nonnull DataInput input) throws IOException {
     if (myOptions.myHasNoChunks) return 0;
-    final long prevOffsetDiff = DataInputOutputUtil.readLONG(myBufferDataStreamWrapper);
+    final long prevOffsetDiff = DataInputOutputUtil.readLONG(input);
     if (prevOffsetDiff >= chunk) {
       throw new IOException("readPrevChunkAddress:" + chunk + "," + prevOffsetDiff + "," + mySize + "," + myFile);
     }
@@ -693,6 +840,7 @@ public class PersistentHashMapValueStorage {
       if (mySize < 0) assert false; // volatile read
       ourReadersCache.remove(myPath);
       ourAppendersCache.remove(myPath);
+      ourConcurrentReadersCache.remove(myPath);
 
       ourRandomAccessFileCache.remove(myPath);
 
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2013-2026 consulo.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package consulo.index.io;
+
+import consulo.util.collection.HashingStrategy;
+import consulo.util.collection.SLRUCache;
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * {@link SLRUCache} split by key hash into stripes with a lock each, so that access to unrelated keys doesn't wait on one lock.
+ * Every stripe evicts on its own: {@link #onDropFromCache} is called holding the lock of the stripe the value is dropped from.
+ */
+public abstract class StripedSLRUCache<K, V> {
+  private static final int MAX_STRIPES = 16;
+  // smaller stripes would evict noticeably earlier than one cache of the same total size
+  private static final int MIN_STRIPE_SIZE = 64;
+
+  private final HashingStrategy<K> myHashingStrategy;
+  private final Stripe[] myStripes;
+
+  @SuppressWarnings("unchecked")
+  protected StripedSLRUCache(int protectedQueueSize, int probationalQueueSize, @Nonnull HashingStrategy<K> hashingStrategy) {
+    myHashingStrategy = hashingStrategy;
+    int stripeCount = Integer.highestOneBit(Math.max(1, Math.min(MAX_STRIPES, protectedQueueSize / MIN_STRIPE_SIZE)));
+    myStripes = new StripedSLRUCache.Stripe[stripeCount];
+    for (int i = 0; i < stripeCount; i++) {
+      myStripes[i] = new Stripe((protectedQueueSize + stripeCount - 1) / stripeCount, Math.max(1, (probationalQueueSize + stripeCount - 1) / stripeCount));
+    }
+  }
+
+  /**
+   * Called with the stripe lock held, should be cheap: values loading something should do it lazily.
+   */
+  @Nonnull
+  protected abstract V createValue(K key);
+
+  protected void onDropFromCache(K key, @Nonnull V value) {
+  }
+
+  @Nonnull
+  private Stripe stripeFor(K key) {
+    int hash = myHashingStrategy.hashCode(key);
+    return myStripes[(hash ^ (hash >>> 16)) & (myStripes.length - 1)];
+  }
+
+  @Nonnull
+  public V get(K key) {
+    Stripe stripe = stripeFor(key);
+    stripe.myLock.lock();
+    try {
+      return stripe.get(key);
+    }
+    finally {
+      stripe.myLock.unlock();
+    }
+  }
+
+  @Nullable
+  public V getIfCached(K key) {
+    Stripe stripe = stripeFor(key);
+    stripe.myLock.lock();
+    try {
+      return stripe.getIfCached(key);
+    }
+    finally {
+      stripe.myLock.unlock();
+    }
+  }
+
+  /**
+   * Drops all values, calling {@link #onDropFromCache} for each. Stripes are cleared one by one, so values added concurrently to already
+   * cleared stripes stay cached.
+   */
+  public void clear() {
+    for (Stripe stripe : myStripes) {
+      stripe.myLock.lock();
+      try {
+        stripe.clear();
+      }
+      finally {
+        stripe.myLock.unlock();
+      }
+    }
+  }
+
+  public void forEachValue(@Nonnull Consumer<? super V> consumer) {
+    for (Stripe stripe : myStripes) {
+      stripe.myLock.lock();
+      try {
+        for (Map.Entry<K, V> entry : stripe.entrySet()) {
+          consumer.accept(entry.getValue());
+        }
+      }
+      finally {
+        stripe.myLock.unlock();
+      }
+    }
+  }
+
+  private final class Stripe extends SLRUCache<K, V> {
+    private final Lock myLock = new ReentrantLock();
+
+    private Stripe(int protectedQueueSize, int probationalQueueSize) {
+      super(protectedQueueSize, probationalQueueSize, myHashingStrategy);
+    }
+
+    @Nonnull
+    @Override
+    public V createValue(K key) {
+      return StripedSLRUCache.this.createValue(key);
+    }
+
+    @Override
+    protected void onDropFromCache(K key, @Nonnull V value) {
+      StripedSLRUCache.this.onDropFromCache(key, value);
+    }
+  }
+}
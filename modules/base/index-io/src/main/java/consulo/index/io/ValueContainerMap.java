@@ -40,11 +40,6 @@ class ValueContainerMap<Key, Value> extends PersistentHashMap<Key, UpdatableValu
     myKeyIsUniqueForIndexedFile = keyIsUniqueForIndexedFile;
   }
 
-  @Nonnull
-  Object getDataAccessLock() {
-    return myEnumerator;
-  }
-
   @Override
   protected void doPut(Key key, UpdatableValueContainer<Value> container) throws IOException {
     synchronized (myEnumerator) {
@@ -17,65 +17,24 @@ package consulo.language.psi.stub;
 
 import consulo.application.util.LowMemoryWatcher;
 import consulo.disposer.Disposable;
-import consulo.util.collection.SLRUCache;
+import consulo.util.collection.ConcurrentLFUCache;
 
 import jakarta.annotation.Nonnull;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 
 class RecentStringInterner {
-  private final int myStripeMask;
-  private final SLRUCache<String, String>[] myInterns;
-  private final Lock[] myStripeLocks;
+  // same as the former striped SLRU caches: 8192 protected and 8192 probational entries
+  private final ConcurrentLFUCache<String, String> myInterns = new ConcurrentLFUCache<>(16384);
 
   RecentStringInterner(@Nonnull Disposable parentDisposable) {
-    final int stripes = 16;
-    //noinspection unchecked
-    myInterns = new SLRUCache[stripes];
-    myStripeLocks = new Lock[myInterns.length];
-    int capacity = 8192;
-    for (int i = 0; i < myInterns.length; ++i) {
-      myInterns[i] = new SLRUCache<>(capacity / stripes, capacity / stripes) {
-        @Nonnull
-        @Override
-        public String createValue(String key) {
-          return key;
-        }
-
-        @Override
-        protected void putToProtectedQueue(String key, @Nonnull String value) {
-          super.putToProtectedQueue(value, value);
-        }
-      };
-      myStripeLocks[i] = new ReentrantLock();
-    }
-
-    assert Integer.highestOneBit(stripes) == stripes;
-    myStripeMask = stripes - 1;
     LowMemoryWatcher.register(this::clear, parentDisposable);
   }
 
   public String get(String s) {
     if (s == null) return null;
-    final int stripe = Math.abs(s.hashCode()) & myStripeMask;
-    try {
-      myStripeLocks[stripe].lock();
-      return myInterns[stripe].get(s);
-    }
-    finally {
-      myStripeLocks[stripe].unlock();
-    }
+    return myInterns.cacheIfAbsent(s, s);
   }
 
   public void clear() {
-    for (int i = 0; i < myInterns.length; ++i) {
-      try {
-        myStripeLocks[i].lock();
-        myInterns[i].clear();
-      }
-      finally {
-        myStripeLocks[i].unlock();
-      }
-    }
+    myInterns.clear();
   }
 }
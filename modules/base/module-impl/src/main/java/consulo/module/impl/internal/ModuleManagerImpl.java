@@ -19,18 +19,21 @@ package consulo.module.impl.internal;
 import consulo.annotation.access.RequiredReadAction;
 import consulo.annotation.access.RequiredWriteAction;
 import consulo.application.AccessRule;
+import consulo.application.Application;
 import consulo.application.ApplicationManager;
 import consulo.application.TransactionGuard;
 import consulo.application.WriteAction;
+import consulo.application.concurrent.ApplicationConcurrency;
 import consulo.application.progress.ProgressIndicator;
 import consulo.application.progress.ProgressIndicatorProvider;
+import consulo.application.util.registry.Registry;
 import consulo.component.ProcessCanceledException;
 import consulo.component.macro.PathMacroManager;
 import consulo.component.messagebus.MessageBus;
 import consulo.component.persist.PersistentStateComponentWithModificationTracker;
-import consulo.component.store.impl.internal.StateStorageException;
 import consulo.component.util.ModificationTracker;
 import consulo.component.util.graph.*;
+import consulo.container.util.StatCollector;
 import consulo.disposer.Disposable;
 import consulo.disposer.Disposer;
 import consulo.logging.Logger;
@@ -56,7 +59,6 @@ import consulo.util.io.FileUtil;
 import consulo.util.lang.Comparing;
 import consulo.util.lang.ExceptionUtil;
 import consulo.util.lang.StringUtil;
-import consulo.util.lang.ref.Ref;
 import consulo.virtualFileSystem.StandardFileSystems;
 import consulo.virtualFileSystem.VirtualFile;
 import consulo.virtualFileSystem.VirtualFileManager;
@@ -66,6 +68,11 @@ import org.jetbrains.annotations.NonNls;
 import jakarta.annotation.Nonnull;
 import jakarta.annotation.Nullable;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 /**
  * @author max
@@ -144,6 +151,8 @@ public abstract class ModuleManagerImpl extends ModuleManager implements Persist
     }
   }
 
+  private static final String PARALLEL_LOADING_KEY = "module.parallel.loading";
+
   public static final Key<String> DISPOSED_MODULE_NAME = Key.create("DisposedNeverAddedModuleName");
   protected final Project myProject;
   protected final MessageBus myMessageBus;
@@ -287,8 +296,6 @@ public abstract class ModuleManagerImpl extends ModuleManager implements Persist
     if (myModuleLoadItems.isEmpty()) {
       return;
     }
-    ModuleGroupInterner groupInterner = new ModuleGroupInterner();
-
     ProgressIndicator targetIndicator = null;
     if (indicator == null) {
       final ProgressIndicator progressIndicator = myProject.isDefault() ? null : ProgressIndicatorProvider.getGlobalProgressIndicator();
@@ -311,45 +318,234 @@ public abstract class ModuleManagerImpl extends ModuleManager implements Persist
     myFailedModulePaths.clear();
     myFailedModulePaths.addAll(myModuleLoadItems);
 
+    StatCollector stat = new StatCollector();
+    List<ModuleLoadTask> tasks = new ArrayList<>(myModuleLoadItems.size());
+    ProgressIndicator loadingIndicator = targetIndicator;
+    stat.markWith("prepare modules", () -> prepareLoadTasks(moduleModel, firstLoad, loadingIndicator, tasks));
+    stat.markWith("load module states", () -> runLoadTasks(tasks, loadingIndicator, indicator));
+
     List<ModuleLoadingErrorDescription> errors = new ArrayList<>();
+    stat.markWith("publish modules", () -> publishModules(moduleModel, tasks, errors));
+    stat.dump("Loading " + tasks.size() + " modules", LOG::info);
+
+    fireErrors(errors);
+  }
+
+  /**
+   * Creates modules in the order of load items, without loading their state. Module dirs are refreshed in a single EDT call.
+   */
+  private void prepareLoadTasks(@Nonnull ModuleModelImpl moduleModel, boolean firstLoad, @Nullable ProgressIndicator indicator, @Nonnull List<ModuleLoadTask> tasks) {
+    List<String> dirUrls = new ArrayList<>();
+    for (ModuleLoadItem item : myModuleLoadItems) {
+      ContainerUtil.addIfNotNull(dirUrls, item.getDirUrl());
+    }
+    Map<String, VirtualFile> moduleDirs = new HashMap<>();
+    if (!dirUrls.isEmpty()) {
+      ApplicationManager.getApplication().invokeAndWait(() -> {
+        VirtualFileManager virtualFileManager = VirtualFileManager.getInstance();
+        for (String dirUrl : dirUrls) {
+          moduleDirs.put(dirUrl, virtualFileManager.refreshAndFindFileByUrl(dirUrl));
+        }
+      });
+    }
+
+    Set<String> moduleNames = new HashSet<>();
+    for (Module module : moduleModel.myModules) {
+      moduleNames.add(module.getName());
+    }
+    Map<String, ModuleEx> createdModules = new HashMap<>();
+    Set<ModuleEx> loadedModules = new HashSet<>();
+
+    for (ModuleLoadItem item : myModuleLoadItems) {
+      if (indicator != null) {
+        indicator.checkCanceled();
+      }
+
+      ModuleLoadTask task = new ModuleLoadTask(item);
+      tasks.add(task);
+
+      String moduleName = item.getName();
+      if (firstLoad && moduleNames.contains(moduleName)) {
+        task.myError = new ModuleWithNameAlreadyExistsException(ProjectBundle.message("module.already.exists.error", moduleName), moduleName);
+        continue;
+      }
+
+      ModuleEx module = null;
+      String moduleDirUrl = null;
+      String dirUrl = item.getDirUrl();
+      if (dirUrl != null) {
+        VirtualFile moduleDir = moduleDirs.get(dirUrl);
+        if (moduleDir == null || !moduleDir.exists() || !moduleDir.isDirectory()) {
+          task.myError = new ModuleDirIsNotExistsException(ProjectBundle.message("module.dir.does.not.exist.error", FileUtil.toSystemDependentName(VirtualFileManager.extractPath(dirUrl))));
+          continue;
+        }
+
+        moduleDirUrl = moduleDir.getUrl();
+        module = createdModules.get(moduleDirUrl);
+        if (module == null) {
+          module = moduleModel.getModuleByDirUrl(moduleDirUrl);
+        }
+      }
 
-    int count = 1;
-    for (ModuleLoadItem moduleLoadItem : myModuleLoadItems) {
-      if (targetIndicator != null) {
-        targetIndicator.checkCanceled();
+      if (module == null) {
+        try {
+          module = createModule(moduleName, dirUrl, indicator);
+        }
+        catch (ProcessCanceledException e) {
+          throw e;
+        }
+        catch (Exception e) {
+          // reported for this module only, as when modules were created and loaded one by one
+          task.myError = e;
+          continue;
+        }
+        task.myCreated = true;
+        moduleNames.add(moduleName);
+        if (moduleDirUrl != null) {
+          createdModules.put(moduleDirUrl, module);
+        }
       }
 
+      task.myModule = module;
+      // several items of the same module are loaded one after another, as before
+      task.mySequential = !loadedModules.add(module);
+    }
+  }
+
+  private void runLoadTasks(@Nonnull List<ModuleLoadTask> tasks, @Nullable ProgressIndicator indicator, @Nullable ProgressIndicator fractionIndicator) {
+    List<ModuleLoadTask> parallelTasks = new ArrayList<>(tasks.size());
+    List<ModuleLoadTask> sequentialTasks = new ArrayList<>();
+    for (ModuleLoadTask task : tasks) {
+      if (task.myModule != null) {
+        (task.mySequential ? sequentialTasks : parallelTasks).add(task);
+      }
+    }
+
+    AtomicInteger loaded = new AtomicInteger();
+    int total = parallelTasks.size() + sequentialTasks.size();
+    Consumer<ModuleLoadTask> loader = task -> {
       if (indicator != null) {
-        indicator.setFraction(count / (float)myModuleLoadItems.size());
+        indicator.checkCanceled();
       }
+      loadModuleState(task, indicator);
+      if (fractionIndicator != null) {
+        fractionIndicator.setFraction(loaded.incrementAndGet() / (float)total);
+      }
+    };
 
+    if (parallelTasks.size() > 1 && canLoadInParallel()) {
+      int threads = Math.min(parallelTasks.size(), Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+      ApplicationConcurrency concurrency = Application.get().getInstance(ApplicationConcurrency.class);
+      ExecutorService executor = concurrency.createBoundedApplicationPoolExecutor("Module Loading Pool", concurrency.getExecutorService(), threads);
       try {
-        final Module module = moduleModel.loadModuleInternal(moduleLoadItem, firstLoad, targetIndicator);
-        final String[] groups = moduleLoadItem.getGroups();
-        if (groups != null) {
-          groupInterner.setModuleGroupPath(moduleModel, module, groups); //model should be updated too
+        List<Future<?>> futures = new ArrayList<>(parallelTasks.size());
+        for (ModuleLoadTask task : parallelTasks) {
+          futures.add(executor.submit(() -> loader.accept(task)));
+        }
+
+        for (Future<?> future : futures) {
+          try {
+            future.get();
+          }
+          catch (InterruptedException e) {
+            throw new ProcessCanceledException(e);
+          }
+          catch (ExecutionException e) {
+            ExceptionUtil.rethrowUnchecked(e.getCause());
+            throw new RuntimeException(e.getCause());
+          }
         }
+      }
+      finally {
+        executor.shutdownNow();
+      }
+    }
+    else {
+      parallelTasks.forEach(loader);
+    }
+
+    sequentialTasks.forEach(loader);
+  }
+
+  /**
+   * Module states are loaded under read actions on pooled threads, so waiting for them while holding a read or write action could deadlock.
+   */
+  private static boolean canLoadInParallel() {
+    return Registry.is(PARALLEL_LOADING_KEY) && !ApplicationManager.getApplication().isReadAccessAllowed();
+  }
+
+  private void loadModuleState(@Nonnull ModuleLoadTask task, @Nullable ProgressIndicator indicator) {
+    ModuleEx module = task.myModule;
+    ModuleLoadItem item = task.myItem;
+    if (indicator != null) {
+      indicator.setText2(item.getName());
+    }
 
-        myFailedModulePaths.remove(moduleLoadItem);
+    try {
+      if (task.myCreated) {
+        module.initNotLazyServices();
       }
-      catch (ProcessCanceledException e) {
-        throw e;
+
+      collapseOrExpandMacros(module, item.getElement(), false);
+
+      final ModuleRootManagerImpl moduleRootManager = (ModuleRootManagerImpl)ModuleRootManager.getInstance(module);
+      AccessRule.read(() -> moduleRootManager.loadState(item.getElement(), indicator));
+    }
+    catch (ProcessCanceledException e) {
+      throw e;
+    }
+    catch (Exception e) {
+      task.myError = e;
+    }
+  }
+
+  /**
+   * Adds created modules to the model at once and in the order of load items, so listeners are notified in a stable order.
+   */
+  private void publishModules(@Nonnull ModuleModelImpl moduleModel, @Nonnull List<ModuleLoadTask> tasks, @Nonnull List<ModuleLoadingErrorDescription> errors) {
+    List<Module> createdModules = new ArrayList<>();
+    for (ModuleLoadTask task : tasks) {
+      if (task.myCreated) {
+        createdModules.add(task.myModule);
       }
-      catch (ModuleWithNameAlreadyExistsException | ModuleDirIsNotExistsException e) {
-        LOG.warn(e);
+    }
+    moduleModel.addModules(createdModules);
+
+    ModuleGroupInterner groupInterner = new ModuleGroupInterner();
+    for (ModuleLoadTask task : tasks) {
+      ModuleLoadItem item = task.myItem;
+      Exception error = task.myError;
+      if (error == null) {
+        final String[] groups = item.getGroups();
+        if (groups != null) {
+          groupInterner.setModuleGroupPath(moduleModel, task.myModule, groups); //model should be updated too
+        }
 
-        errors.add(ModuleLoadingErrorDescription.create(e.getMessage(), moduleLoadItem, this));
+        myFailedModulePaths.remove(item);
       }
-      catch (Exception e) {
-        LOG.warn(e);
+      else if (error instanceof ModuleWithNameAlreadyExistsException || error instanceof ModuleDirIsNotExistsException) {
+        LOG.warn(error);
 
-        errors.add(ModuleLoadingErrorDescription.create(ProjectBundle.message("module.cannot.load.error", moduleLoadItem.getName(), ExceptionUtil.getThrowableText(e)), moduleLoadItem, this));
+        errors.add(ModuleLoadingErrorDescription.create(error.getMessage(), item, this));
       }
-      finally {
-        count++;
+      else {
+        LOG.warn(error);
+
+        errors.add(ModuleLoadingErrorDescription.create(ProjectBundle.message("module.cannot.load.error", item.getName(), ExceptionUtil.getThrowableText(error)), item, this));
       }
     }
-    fireErrors(errors);
+  }
+
+  private static class ModuleLoadTask {
+    private final ModuleLoadItem myItem;
+    private ModuleEx myModule;
+    private boolean myCreated;
+    private boolean mySequential;
+    private volatile Exception myError;
+
+    private ModuleLoadTask(@Nonnull ModuleLoadItem item) {
+      myItem = item;
+    }
   }
 
   protected void fireModuleAdded(Module module) {
@@ -589,19 +785,6 @@ public abstract class ModuleManagerImpl extends ModuleManager implements Persist
   @Nonnull
   protected abstract ModuleEx createModule(@Nonnull String name, @Nullable String dirUrl, ProgressIndicator progressIndicator);
 
-  @Nonnull
-  protected ModuleEx createAndLoadModule(@Nonnull final ModuleLoadItem moduleLoadItem, @Nonnull ModuleModelImpl moduleModel, @Nullable final ProgressIndicator progressIndicator) {
-    final ModuleEx module = createModule(moduleLoadItem.getName(), moduleLoadItem.getDirUrl(), progressIndicator);
-    moduleModel.initModule(module);
-
-    collapseOrExpandMacros(module, moduleLoadItem.getElement(), false);
-
-    final ModuleRootManagerImpl moduleRootManager = (ModuleRootManagerImpl)ModuleRootManager.getInstance(module);
-    AccessRule.read(() -> moduleRootManager.loadState(moduleLoadItem.getElement(), progressIndicator));
-
-    return module;
-  }
-
   public class ModuleModelImpl implements ModifiableModuleModel {
     public Set<Module> myModules = new LinkedHashSet<>();
     private Module[] myModulesCache;
@@ -729,50 +912,6 @@ public abstract class ModuleManagerImpl extends ModuleManager implements Persist
       return toRemove;
     }
 
-    @Nonnull
-    private Module loadModuleInternal(@Nonnull ModuleLoadItem item, boolean firstLoad, @Nullable ProgressIndicator progressIndicator)
-            throws ModuleWithNameAlreadyExistsException, ModuleDirIsNotExistsException, StateStorageException {
-
-      final String moduleName = item.getName();
-      if (progressIndicator != null) {
-        progressIndicator.setText2(moduleName);
-      }
-
-      if (firstLoad) {
-        for (Module module : myModules) {
-          if (module.getName().equals(moduleName)) {
-            throw new ModuleWithNameAlreadyExistsException(ProjectBundle.message("module.already.exists.error", moduleName), moduleName);
-          }
-        }
-      }
-
-      ModuleEx oldModule = null;
-
-      String dirUrl = item.getDirUrl();
-      if (dirUrl != null) {
-        Ref<VirtualFile> ref = Ref.create();
-        ApplicationManager.getApplication().invokeAndWait(() -> ref.set(VirtualFileManager.getInstance().refreshAndFindFileByUrl(dirUrl)));
-        VirtualFile moduleDir = ref.get();
-
-        if (moduleDir == null || !moduleDir.exists() || !moduleDir.isDirectory()) {
-          throw new ModuleDirIsNotExistsException(ProjectBundle.message("module.dir.does.not.exist.error", FileUtil.toSystemDependentName(VirtualFileManager.extractPath(dirUrl))));
-        }
-
-        oldModule = getModuleByDirUrl(moduleDir.getUrl());
-      }
-
-      if (oldModule == null) {
-        oldModule = createAndLoadModule(item, this, progressIndicator);
-      }
-      else {
-        collapseOrExpandMacros(oldModule, item.getElement(), false);
-
-        final ModuleRootManagerImpl moduleRootManager = (ModuleRootManagerImpl)ModuleRootManager.getInstance(oldModule);
-        ApplicationManager.getApplication().runReadAction(() -> moduleRootManager.loadState(item.getElement(), progressIndicator));
-      }
-      return oldModule;
-    }
-
     private void initModule(ModuleEx module) {
       myModulesCache = null;
       myModules.add(module);
@@ -780,6 +919,11 @@ public abstract class ModuleManagerImpl extends ModuleManager implements Persist
       module.initNotLazyServices();
     }
 
+    private void addModules(@Nonnull Collection<Module> modules) {
+      myModules.addAll(modules);
+      myModulesCache = null;
+    }
+
     @Override
     public void disposeModule(@Nonnull Module module) {
       assertWritable();
@@ -35,6 +35,11 @@ import static java.util.Collections.singletonList;
  */
 public final class AsyncTreeModel extends AbstractTreeModel implements Identifiable, Searchable, Navigatable, TreeVisitor.Acceptor {
   private static final Logger LOG = Logger.getInstance(AsyncTreeModel.class);
+  /**
+   * Children of a node which is loaded for the first time are inserted by chunks of this size,
+   * every chunk in a separate event, so expanding a node with huge amount of children doesn't block the EDT.
+   */
+  private static final int INSERT_CHUNK_SIZE = 1000;
   private final Command.Processor processor;
   private final Tree tree = new Tree();
   private final TreeModel model;
@@ -649,6 +654,16 @@ public final class AsyncTreeModel extends AbstractTreeModel implements Identifia
       });
       newChildren = list;
 
+      if (newChildren.size() > INSERT_CHUNK_SIZE && isFirstLoading(oldChildren)) {
+        if (!oldChildren.isEmpty()) {
+          oldChildren.forEach(child -> child.removeMapping(node, tree));
+          node.setChildren(emptyList());
+          treeNodesRemoved(node, removed);
+        }
+        insertChunk(newChildren, 0, reload);
+        return;
+      }
+
       if (oldChildren.isEmpty()) {
         newChildren.forEach(child -> child.insertMapping(node));
         node.setChildren(newChildren);
@@ -692,14 +707,57 @@ public final class AsyncTreeModel extends AbstractTreeModel implements Identifia
       if (removed.isEmpty() && inserted.isEmpty()) treeNodesChanged(node, null);
       LOG.debug("children changed: ", node.object);
 
-      if (!reload.isEmpty()) {
-        for (Node child : newChildren) {
-          if (reload.contains(child.object)) {
-            processor.process(new CmdGetChildren("Update children recursively", child, true));
-          }
+      reloadChildren(newChildren, reload);
+      node.queue.done(this, node);
+    }
+
+    private boolean isFirstLoading(@Nonnull List<Node> oldChildren) {
+      return oldChildren.isEmpty() || oldChildren.size() == 1 && oldChildren.get(0) == node.loading;
+    }
+
+    private void insertChunk(@Nonnull List<Node> children, int from, @Nonnull Set<Object> reload) {
+      boolean removed = node != tree.map.get(node.object);
+      if (isObsolete() || removed) {
+        // a newer command calculates its changes against the already inserted part of children
+        for (int i = from; i < children.size(); i++) {
+          Node child = children.get(i);
+          if (child.paths.isEmpty() && tree.map.get(child.object) == child) tree.map.remove(child.object);
+        }
+        if (removed && !isObsolete()) {
+          // nobody else completes promises waiting for the removed node, the same as in setNode
+          node.queue.close();
+        }
+        LOG.debug("cancelled chunked insertion: ", this);
+        return;
+      }
+
+      int to = Math.min(children.size(), from + INSERT_CHUNK_SIZE);
+      LinkedHashMap<Object, Integer> inserted = new LinkedHashMap<>();
+      for (int i = from; i < to; i++) {
+        Node child = children.get(i);
+        child.insertMapping(node);
+        inserted.put(child.object, i);
+      }
+      node.setChildren(children.subList(0, to));
+      treeNodesInserted(node, inserted);
+
+      if (to < children.size()) {
+        processor.foreground.invokeLater(() -> insertChunk(children, to, reload));
+      }
+      else {
+        LOG.debug("children inserted by chunks: ", node.object);
+        reloadChildren(children, reload);
+        node.queue.done(this, node);
+      }
+    }
+
+    private void reloadChildren(@Nonnull List<Node> children, @Nonnull Set<Object> reload) {
+      if (reload.isEmpty()) return;
+      for (Node child : children) {
+        if (reload.contains(child.object)) {
+          processor.process(new CmdGetChildren("Update children recursively", child, true));
         }
       }
-      node.queue.done(this, node);
     }
   }
 
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2013-2026 consulo.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package consulo.util.collection.openAddressing.impl;
+
+/**
+ * Sizing and hash mixing shared by the linear probing tables.
+ * <p>
+ * Tables have a power of two capacity, and removal shifts the following entries of the cluster back instead of leaving tombstones.
+ * So a table always has a free slot, and entries never move across a free slot;
+ * iteration starting right after a free slot can remove entries and re-check the current slot without missing or repeating entries.
+ */
+final class HashCommon {
+  static final float LOAD_FACTOR = 0.75f;
+  static final int DEFAULT_EXPECTED_SIZE = 16;
+  private static final int MAX_CAPACITY = 1 << 30;
+
+  private HashCommon() {
+  }
+
+  static int mix(int x) {
+    int h = x * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+  static int mix(long x) {
+    long h = x * 0x9E3779B97F4A7C15L;
+    h ^= h >>> 32;
+    return (int)(h ^ (h >>> 16));
+  }
+
+  /**
+   * @return power of two capacity, which holds the expected number of entries without a rehash
+   */
+  static int arraySize(int expected, float loadFactor) {
+    long size = Math.max(2, nextPowerOfTwo((long)Math.ceil(Math.max(expected, 1) / loadFactor)));
+    if (size > MAX_CAPACITY) {
+      throw new IllegalArgumentException("Too large (" + expected + " expected elements with load factor " + loadFactor + ")");
+    }
+    return (int)size;
+  }
+
+  /**
+   * @return number of entries at which the table of the given capacity is grown, always leaving at least one free slot
+   */
+  static int maxFill(int capacity, float loadFactor) {
+    return Math.min((int)Math.ceil(capacity * loadFactor), capacity - 1);
+  }
+
+  /**
+   * @return true if the entry at {@code pos} with home {@code slot} may be moved back into the freed {@code last} slot,
+   * i.e. its home slot is not cyclically within (last, pos]
+   */
+  static boolean canShiftBack(int last, int pos, int slot) {
+    return last <= pos ? last >= slot || slot > pos : last >= slot && slot > pos;
+  }
+
+  private static long nextPowerOfTwo(long x) {
+    return x <= 1 ? 1 : Long.highestOneBit(x - 1) << 1;
+  }
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright 2013-2026 consulo.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package consulo.util.collection.openAddressing.impl;
+
+import consulo.util.collection.primitive.ints.BiIntConsumer;
+import consulo.util.collection.primitive.ints.BiIntPredicate;
+import consulo.util.collection.primitive.ints.IntIntMap;
+import jakarta.annotation.Nonnull;
+
+import java.util.Arrays;
+
+/**
+ * Linear probing int to int map. Key 0 marks free slots, so the entry with key 0 is kept in the extra last slot.
+ * Missing keys are mapped to 0.
+ */
+public final class IntIntHashMap implements IntIntMap {
+  private int[] myKeys;
+  private int[] myValues;
+  private int myMask;
+  private int myMaxFill;
+  private boolean myContainsZeroKey;
+  private int mySize;
+
+  public IntIntHashMap() {
+    this(HashCommon.DEFAULT_EXPECTED_SIZE);
+  }
+
+  public IntIntHashMap(int expectedSize) {
+    allocate(HashCommon.arraySize(expectedSize, HashCommon.LOAD_FACTOR));
+  }
+
+  private void allocate(int capacity) {
+    myKeys = new int[capacity + 1];
+    myValues = new int[capacity + 1];
+    myMask = capacity - 1;
+    myMaxFill = HashCommon.maxFill(capacity, HashCommon.LOAD_FACTOR);
+  }
+
+  private int find(int key) {
+    if (key == 0) {
+      return myContainsZeroKey ? myMask + 1 : -1;
+    }
+    int[] keys = myKeys;
+    int pos = HashCommon.mix(key) & myMask;
+    int current;
+    while ((current = keys[pos]) != 0) {
+      if (current == key) {
+        return pos;
+      }
+      pos = (pos + 1) & myMask;
+    }
+    return -1;
+  }
+
+  @Override
+  public void putInt(int key, int value) {
+    if (key == 0) {
+      if (!myContainsZeroKey) {
+        myContainsZeroKey = true;
+        mySize++;
+      }
+      myValues[myMask + 1] = value;
+      return;
+    }
+
+    int[] keys = myKeys;
+    int pos = HashCommon.mix(key) & myMask;
+    int current;
+    while ((current = keys[pos]) != 0) {
+      if (current == key) {
+        myValues[pos] = value;
+        return;
+      }
+      pos = (pos + 1) & myMask;
+    }
+    keys[pos] = key;
+    myValues[pos] = value;
+    if (++mySize >= myMaxFill) {
+      rehash(HashCommon.arraySize(mySize + 1, HashCommon.LOAD_FACTOR));
+    }
+  }
+
+  @Override
+  public int getInt(int key) {
+    int pos = find(key);
+    return pos < 0 ? 0 : myValues[pos];
+  }
+
+  @Override
+  public boolean containsKey(int key) {
+    return find(key) >= 0;
+  }
+
+  @Override
+  public int remove(int key) {
+    int pos = find(key);
+    if (pos < 0) {
+      return 0;
+    }
+    int value = myValues[pos];
+    removeAt(pos);
+    return value;
+  }
+
+  private void removeAt(int pos) {
+    mySize--;
+    if (pos == myMask + 1) {
+      myContainsZeroKey = false;
+      myValues[pos] = 0;
+    }
+    else {
+      shiftKeys(pos);
+    }
+  }
+
+  private void shiftKeys(int pos) {
+    int[] keys = myKeys;
+    int[] values = myValues;
+    int last;
+    int current;
+    while (true) {
+      pos = ((last = pos) + 1) & myMask;
+      while (true) {
+        if ((current = keys[pos]) == 0) {
+          keys[last] = 0;
+          return;
+        }
+        int slot = HashCommon.mix(current) & myMask;
+        if (HashCommon.canShiftBack(last, pos, slot)) {
+          break;
+        }
+        pos = (pos + 1) & myMask;
+      }
+      keys[last] = current;
+      values[last] = values[pos];
+    }
+  }
+
+  @Override
+  public void clear() {
+    if (mySize == 0) {
+      return;
+    }
+    Arrays.fill(myKeys, 0);
+    myContainsZeroKey = false;
+    mySize = 0;
+  }
+
+  @Override
+  public int size() {
+    return mySize;
+  }
+
+  @Override
+  public void forEach(@Nonnull BiIntConsumer consumer) {
+    int[] keys = myKeys;
+    int[] values = myValues;
+    if (myContainsZeroKey) {
+      consumer.accept(0, values[myMask + 1]);
+    }
+    for (int i = 0; i <= myMask; i++) {
+      if (keys[i] != 0) {
+        consumer.accept(keys[i], values[i]);
+      }
+    }
+  }
+
+  @Override
+  public boolean removeIf(@Nonnull BiIntPredicate filter) {
+    boolean removed = false;
+    if (myContainsZeroKey && filter.test(0, myValues[myMask + 1])) {
+      removeAt(myMask + 1);
+      removed = true;
+    }
+
+    int[] keys = myKeys;
+    int start = 0;
+    while (keys[start] != 0) {
+      start++;
+    }
+    for (int pos = (start + 1) & myMask; pos != start; ) {
+      int key = keys[pos];
+      if (key != 0 && filter.test(key, myValues[pos])) {
+        // an entry shifted back into this slot is checked on the next iteration
+        removeAt(pos);
+        removed = true;
+      }
+      else {
+        pos = (pos + 1) & myMask;
+      }
+    }
+    return removed;
+  }
+
+  @Override
+  public int[] keys() {
+    int[] result = new int[mySize];
+    int index = 0;
+    if (myContainsZeroKey) {
+      result[index++] = 0;
+    }
+    int[] keys = myKeys;
+    for (int i = 0; i <= myMask; i++) {
+      if (keys[i] != 0) {
+        result[index++] = keys[i];
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public void trimToSize() {
+    int capacity = HashCommon.arraySize(mySize, HashCommon.LOAD_FACTOR);
+    if (capacity < myMask + 1) {
+      rehash(capacity);
+    }
+  }
+
+  private void rehash(int capacity) {
+    int[] oldKeys = myKeys;
+    int[] oldValues = myValues;
+    int oldCapacity = myMask + 1;
+    allocate(capacity);
+
+    int[] keys = myKeys;
+    int[] values = myValues;
+    for (int i = 0; i < oldCapacity; i++) {
+      int key = oldKeys[i];
+      if (key != 0) {
+        int pos = HashCommon.mix(key) & myMask;
+        while (keys[pos] != 0) {
+          pos = (pos + 1) & myMask;
+        }
+        keys[pos] = key;
+        values[pos] = oldValues[i];
+      }
+    }
+    values[myMask + 1] = oldValues[oldCapacity];
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder("{");
+    forEach((key, value) -> {
+      if (builder.length() > 1) {
+        builder.append(", ");
+      }
+      builder.append(key).append('=').append(value);
+    });
+    return builder.append('}').toString();
+  }
+}
@@ -0,0 +1,488 @@
+/*
+ * Copyright 2013-2026 consulo.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package consulo.util.collection.openAddressing.impl;
+
+import consulo.util.collection.primitive.ints.AbstractIntSet;
+import consulo.util.collection.primitive.ints.IntObjConsumer;
+import consulo.util.collection.primitive.ints.IntObjPredicate;
+import consulo.util.collection.primitive.ints.IntObjectMap;
+import consulo.util.collection.primitive.ints.IntSet;
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+
+import java.util.*;
+
+/**
+ * Linear probing int to object map. Key 0 marks free slots, so the entry with key 0 is kept in the extra last slot.
+ * Null values are allowed.
+ */
+public final class IntObjectHashMap<V> implements IntObjectMap<V> {
+  private int[] myKeys;
+  private Object[] myValues;
+  private int myMask;
+  private int myMaxFill;
+  private boolean myContainsZeroKey;
+  private int mySize;
+
+  private IntSet myKeySet;
+  private Collection<V> myValueCollection;
+  private Set<IntObjectEntry<V>> myEntrySet;
+
+  public IntObjectHashMap() {
+    this(HashCommon.DEFAULT_EXPECTED_SIZE);
+  }
+
+  public IntObjectHashMap(int expectedSize) {
+    allocate(HashCommon.arraySize(expectedSize, HashCommon.LOAD_FACTOR));
+  }
+
+  private void allocate(int capacity) {
+    myKeys = new int[capacity + 1];
+    myValues = new Object[capacity + 1];
+    myMask = capacity - 1;
+    myMaxFill = HashCommon.maxFill(capacity, HashCommon.LOAD_FACTOR);
+  }
+
+  private int find(int key) {
+    if (key == 0) {
+      return myContainsZeroKey ? myMask + 1 : -1;
+    }
+    int[] keys = myKeys;
+    int pos = HashCommon.mix(key) & myMask;
+    int current;
+    while ((current = keys[pos]) != 0) {
+      if (current == key) {
+        return pos;
+      }
+      pos = (pos + 1) & myMask;
+    }
+    return -1;
+  }
+
+  @SuppressWarnings("unchecked")
+  private V valueAt(int pos) {
+    return (V)myValues[pos];
+  }
+
+  @Nullable
+  @Override
+  public V put(int key, V value) {
+    if (key == 0) {
+      V old = valueAt(myMask + 1);
+      if (!myContainsZeroKey) {
+        myContainsZeroKey = true;
+        mySize++;
+      }
+      myValues[myMask + 1] = value;
+      return old;
+    }
+
+    int[] keys = myKeys;
+    int pos = HashCommon.mix(key) & myMask;
+    int current;
+    while ((current = keys[pos]) != 0) {
+      if (current == key) {
+        V old = valueAt(pos);
+        myValues[pos] = value;
+        return old;
+      }
+      pos = (pos + 1) & myMask;
+    }
+    keys[pos] = key;
+    myValues[pos] = value;
+    if (++mySize >= myMaxFill) {
+      rehash(HashCommon.arraySize(mySize + 1, HashCommon.LOAD_FACTOR));
+    }
+    return null;
+  }
+
+  @Nullable
+  @Override
+  public V get(int key) {
+    int pos = find(key);
+    return pos < 0 ? null : valueAt(pos);
+  }
+
+  @Override
+  public boolean containsKey(int key) {
+    return find(key) >= 0;
+  }
+
+  @Override
+  public boolean containsValue(V value) {
+    if (myContainsZeroKey && Objects.equals(myValues[myMask + 1], value)) {
+      return true;
+    }
+    for (int i = 0; i <= myMask; i++) {
+      if (myKeys[i] != 0 && Objects.equals(myValues[i], value)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public V remove(int key) {
+    int pos = find(key);
+    if (pos < 0) {
+      return null;
+    }
+    V value = valueAt(pos);
+    removeAt(pos);
+    return value;
+  }
+
+  private void removeAt(int pos) {
+    mySize--;
+    if (pos == myMask + 1) {
+      myContainsZeroKey = false;
+      myValues[pos] = null;
+      return;
+    }
+
+    int[] keys = myKeys;
+    Object[] values = myValues;
+    int last;
+    int current;
+    while (true) {
+      pos = ((last = pos) + 1) & myMask;
+      while (true) {
+        if ((current = keys[pos]) == 0) {
+          keys[last] = 0;
+          values[last] = null;
+          return;
+        }
+        if (HashCommon.canShiftBack(last, pos, HashCommon.mix(current) & myMask)) {
+          break;
+        }
+        pos = (pos + 1) & myMask;
+      }
+      keys[last] = current;
+      values[last] = values[pos];
+    }
+  }
+
+  private int findFreeSlot() {
+    int start = 0;
+    while (myKeys[start] != 0) {
+      start++;
+    }
+    return start;
+  }
+
+  @Override
+  public int size() {
+    return mySize;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return mySize == 0;
+  }
+
+  @Override
+  public void clear() {
+    if (mySize == 0) {
+      return;
+    }
+    Arrays.fill(myKeys, 0);
+    Arrays.fill(myValues, null);
+    myContainsZeroKey = false;
+    mySize = 0;
+  }
+
+  @Override
+  public void forEach(IntObjConsumer<? super V> action) {
+    if (myContainsZeroKey) {
+      action.accept(0, valueAt(myMask + 1));
+    }
+    int[] keys = myKeys;
+    for (int i = 0; i <= myMask; i++) {
+      if (keys[i] != 0) {
+        action.accept(keys[i], valueAt(i));
+      }
+    }
+  }
+
+  @Override
+  public boolean removeIf(@Nonnull IntObjPredicate<? super V> filter) {
+    boolean removed = false;
+    if (myContainsZeroKey && filter.test(0, valueAt(myMask + 1))) {
+      removeAt(myMask + 1);
+      removed = true;
+    }
+
+    int[] keys = myKeys;
+    int start = findFreeSlot();
+    for (int pos = (start + 1) & myMask; pos != start; ) {
+      int key = keys[pos];
+      if (key != 0 && filter.test(key, valueAt(pos))) {
+        removeAt(pos);
+        removed = true;
+      }
+      else {
+        pos = (pos + 1) & myMask;
+      }
+    }
+    return removed;
+  }
+
+  @Nonnull
+  @Override
+  public int[] keys() {
+    int[] result = new int[mySize];
+    int index = 0;
+    if (myContainsZeroKey) {
+      result[index++] = 0;
+    }
+    int[] keys = myKeys;
+    for (int i = 0; i <= myMask; i++) {
+      if (keys[i] != 0) {
+        result[index++] = keys[i];
+      }
+    }
+    return result;
+  }
+
+  private void rehash(int capacity) {
+    int[] oldKeys = myKeys;
+    Object[] oldValues = myValues;
+    int oldCapacity = myMask + 1;
+    allocate(capacity);
+
+    int[] keys = myKeys;
+    Object[] values = myValues;
+    for (int i = 0; i < oldCapacity; i++) {
+      int key = oldKeys[i];
+      if (key != 0) {
+        int pos = HashCommon.mix(key) & myMask;
+        while (keys[pos] != 0) {
+          pos = (pos + 1) & myMask;
+        }
+        keys[pos] = key;
+        values[pos] = oldValues[i];
+      }
+    }
+    values[myMask + 1] = oldValues[oldCapacity];
+  }
+
+  @Nonnull
+  @Override
+  public IntSet keySet() {
+    if (myKeySet == null) {
+      myKeySet = new AbstractIntSet() {
+        @Nonnull
+        @Override
+        public PrimitiveIterator.OfInt iterator() {
+          SlotIterator iterator = new SlotIterator();
+          return new PrimitiveIterator.OfInt() {
+            @Override
+            public boolean hasNext() {
+              return iterator.hasNext();
+            }
+
+            @Override
+            public int nextInt() {
+              int pos = iterator.nextSlot();
+              return pos == myMask + 1 ? 0 : myKeys[pos];
+            }
+
+            @Override
+            public void remove() {
+              iterator.remove();
+            }
+          };
+        }
+
+        @Override
+        public boolean contains(int value) {
+          return containsKey(value);
+        }
+
+        @Override
+        public boolean remove(int value) {
+          int pos = find(value);
+          if (pos < 0) {
+            return false;
+          }
+          removeAt(pos);
+          return true;
+        }
+
+        @Override
+        public int size() {
+          return mySize;
+        }
+
+        @Override
+        public void clear() {
+          IntObjectHashMap.this.clear();
+        }
+      };
+    }
+    return myKeySet;
+  }
+
+  @Nonnull
+  @Override
+  public Collection<V> values() {
+    if (myValueCollection == null) {
+      myValueCollection = new AbstractCollection<>() {
+        @Nonnull
+        @Override
+        public Iterator<V> iterator() {
+          SlotIterator iterator = new SlotIterator();
+          return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+              return iterator.hasNext();
+            }
+
+            @Override
+            public V next() {
+              return valueAt(iterator.nextSlot());
+            }
+
+            @Override
+            public void remove() {
+              iterator.remove();
+            }
+          };
+        }
+
+        @Override
+        public int size() {
+          return mySize;
+        }
+
+        @Override
+        public void clear() {
+          IntObjectHashMap.this.clear();
+        }
+      };
+    }
+    return myValueCollection;
+  }
+
+  @Nonnull
+  @Override
+  public Set<IntObjectEntry<V>> entrySet() {
+    if (myEntrySet == null) {
+      myEntrySet = new AbstractSet<>() {
+        @Nonnull
+        @Override
+        public Iterator<IntObjectEntry<V>> iterator() {
+          SlotIterator iterator = new SlotIterator();
+          return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+              return iterator.hasNext();
+            }
+
+            @Override
+            public IntObjectEntry<V> next() {
+              int pos = iterator.nextSlot();
+              return new Entry<>(pos == myMask + 1 ? 0 : myKeys[pos], valueAt(pos));
+            }
+
+            @Override
+            public void remove() {
+              iterator.remove();
+            }
+          };
+        }
+
+        @Override
+        public int size() {
+          return mySize;
+        }
+
+        @Override
+        public void clear() {
+          IntObjectHashMap.this.clear();
+        }
+      };
+    }
+    return myEntrySet;
+  }
+
+  /**
+   * Iterates occupied slots starting after a free one, so removal through the iterator doesn't skip or repeat entries.
+   */
+  private final class SlotIterator {
+    private boolean myZeroPending = myContainsZeroKey;
+    private final int myStart = findFreeSlot();
+    private int myPos = (myStart + 1) & myMask;
+    private int myRemaining = mySize;
+    private int myCurrent = -1;
+
+    boolean hasNext() {
+      return myRemaining > 0;
+    }
+
+    int nextSlot() {
+      if (myRemaining == 0) {
+        throw new NoSuchElementException();
+      }
+      myRemaining--;
+      if (myZeroPending) {
+        myZeroPending = false;
+        return myCurrent = myMask + 1;
+      }
+      while (myKeys[myPos] == 0) {
+        myPos = (myPos + 1) & myMask;
+      }
+      myCurrent = myPos;
+      myPos = (myPos + 1) & myMask;
+      return myCurrent;
+    }
+
+    void remove() {
+      if (myCurrent < 0) {
+        throw new IllegalStateException();
+      }
+      removeAt(myCurrent);
+      if (myCurrent != myMask + 1) {
+        myPos = myCurrent;
+      }
+      myCurrent = -1;
+    }
+  }
+
+  private record Entry<V>(int key, V value) implements IntObjectEntry<V> {
+    @Override
+    public int getKey() {
+      return key;
+    }
+
+    @Override
+    public V getValue() {
+      return value;
+    }
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder("{");
+    forEach((key, value) -> {
+      if (builder.length() > 1) {
+        builder.append(", ");
+      }
+      builder.append(key).append('=').append(value);
+    });
+    return builder.append('}').toString();
+  }
+}
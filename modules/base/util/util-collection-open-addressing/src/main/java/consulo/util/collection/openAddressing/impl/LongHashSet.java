@@ -0,0 +1,309 @@
+/*
+ * Copyright 2013-2026 consulo.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package consulo.util.collection.openAddressing.impl;
+
+import consulo.util.collection.primitive.longs.LongSet;
+import jakarta.annotation.Nonnull;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.function.LongConsumer;
+import java.util.function.LongPredicate;
+
+/**
+ * Linear probing long set. Value 0 marks free slots, so it's tracked by a flag.
+ */
+public final class LongHashSet implements LongSet {
+  private long[] myKeys;
+  private int myMask;
+  private int myMaxFill;
+  private boolean myContainsZero;
+  private int mySize;
+
+  public LongHashSet() {
+    this(HashCommon.DEFAULT_EXPECTED_SIZE);
+  }
+
+  public LongHashSet(int expectedSize) {
+    allocate(HashCommon.arraySize(expectedSize, HashCommon.LOAD_FACTOR));
+  }
+
+  private void allocate(int capacity) {
+    myKeys = new long[capacity];
+    myMask = capacity - 1;
+    myMaxFill = HashCommon.maxFill(capacity, HashCommon.LOAD_FACTOR);
+  }
+
+  @Override
+  public boolean add(long value) {
+    if (value == 0) {
+      if (myContainsZero) {
+        return false;
+      }
+      myContainsZero = true;
+      mySize++;
+      return true;
+    }
+
+    long[] keys = myKeys;
+    int pos = HashCommon.mix(value) & myMask;
+    long current;
+    while ((current = keys[pos]) != 0) {
+      if (current == value) {
+        return false;
+      }
+      pos = (pos + 1) & myMask;
+    }
+    keys[pos] = value;
+    if (++mySize >= myMaxFill) {
+      rehash(HashCommon.arraySize(mySize + 1, HashCommon.LOAD_FACTOR));
+    }
+    return true;
+  }
+
+  @Override
+  public boolean contains(long value) {
+    if (value == 0) {
+      return myContainsZero;
+    }
+    long[] keys = myKeys;
+    int pos = HashCommon.mix(value) & myMask;
+    long current;
+    while ((current = keys[pos]) != 0) {
+      if (current == value) {
+        return true;
+      }
+      pos = (pos + 1) & myMask;
+    }
+    return false;
+  }
+
+  @Override
+  public boolean remove(long value) {
+    if (value == 0) {
+      if (!myContainsZero) {
+        return false;
+      }
+      myContainsZero = false;
+      mySize--;
+      return true;
+    }
+
+    long[] keys = myKeys;
+    int pos = HashCommon.mix(value) & myMask;
+    long current;
+    while ((current = keys[pos]) != 0) {
+      if (current == value) {
+        removeAt(pos);
+        return true;
+      }
+      pos = (pos + 1) & myMask;
+    }
+    return false;
+  }
+
+  private void removeAt(int pos) {
+    mySize--;
+    long[] keys = myKeys;
+    int last;
+    long current;
+    while (true) {
+      pos = ((last = pos) + 1) & myMask;
+      while (true) {
+        if ((current = keys[pos]) == 0) {
+          keys[last] = 0;
+          return;
+        }
+        if (HashCommon.canShiftBack(last, pos, HashCommon.mix(current) & myMask)) {
+          break;
+        }
+        pos = (pos + 1) & myMask;
+      }
+      keys[last] = current;
+    }
+  }
+
+  private int findFreeSlot() {
+    int start = 0;
+    while (myKeys[start] != 0) {
+      start++;
+    }
+    return start;
+  }
+
+  @Override
+  public void forEach(LongConsumer action) {
+    if (myContainsZero) {
+      action.accept(0);
+    }
+    long[] keys = myKeys;
+    for (int i = 0; i <= myMask; i++) {
+      if (keys[i] != 0) {
+        action.accept(keys[i]);
+      }
+    }
+  }
+
+  @Override
+  public boolean removeIf(@Nonnull LongPredicate filter) {
+    boolean removed = false;
+    if (myContainsZero && filter.test(0)) {
+      remove(0);
+      removed = true;
+    }
+
+    long[] keys = myKeys;
+    int start = findFreeSlot();
+    for (int pos = (start + 1) & myMask; pos != start; ) {
+      long key = keys[pos];
+      if (key != 0 && filter.test(key)) {
+        removeAt(pos);
+        removed = true;
+      }
+      else {
+        pos = (pos + 1) & myMask;
+      }
+    }
+    return removed;
+  }
+
+  @Override
+  public long[] toArray() {
+    long[] result = new long[mySize];
+    int index = 0;
+    if (myContainsZero) {
+      result[index++] = 0;
+    }
+    long[] keys = myKeys;
+    for (int i = 0; i <= myMask; i++) {
+      if (keys[i] != 0) {
+        result[index++] = keys[i];
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public int size() {
+    return mySize;
+  }
+
+  @Override
+  public void clear() {
+    if (mySize == 0) {
+      return;
+    }
+    Arrays.fill(myKeys, 0);
+    myContainsZero = false;
+    mySize = 0;
+  }
+
+  private void rehash(int capacity) {
+    long[] oldKeys = myKeys;
+    allocate(capacity);
+    long[] keys = myKeys;
+    for (long key : oldKeys) {
+      if (key != 0) {
+        int pos = HashCommon.mix(key) & myMask;
+        while (keys[pos] != 0) {
+          pos = (pos + 1) & myMask;
+        }
+        keys[pos] = key;
+      }
+    }
+  }
+
+  @Nonnull
+  @Override
+  public PrimitiveIterator.OfLong iterator() {
+    return new PrimitiveIterator.OfLong() {
+      private boolean myZeroPending = myContainsZero;
+      private final int myStart = findFreeSlot();
+      private int myPos = (myStart + 1) & myMask;
+      private int myRemaining = mySize;
+      private int myCurrent = -1;
+
+      @Override
+      public boolean hasNext() {
+        return myRemaining > 0;
+      }
+
+      @Override
+      public long nextLong() {
+        if (myRemaining == 0) {
+          throw new NoSuchElementException();
+        }
+        myRemaining--;
+        if (myZeroPending) {
+          myZeroPending = false;
+          myCurrent = myMask + 1;
+          return 0;
+        }
+        while (myKeys[myPos] == 0) {
+          myPos = (myPos + 1) & myMask;
+        }
+        myCurrent = myPos;
+        myPos = (myPos + 1) & myMask;
+        return myKeys[myCurrent];
+      }
+
+      @Override
+      public void remove() {
+        if (myCurrent < 0) {
+          throw new IllegalStateException();
+        }
+        if (myCurrent == myMask + 1) {
+          LongHashSet.this.remove(0);
+        }
+        else {
+          removeAt(myCurrent);
+          // an element shifted back into the current slot wasn't returned yet
+          myPos = myCurrent;
+        }
+        myCurrent = -1;
+      }
+    };
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) return true;
+    if (!(obj instanceof LongSet set) || set.size() != mySize) return false;
+    PrimitiveIterator.OfLong iterator = set.iterator();
+    while (iterator.hasNext()) {
+      if (!contains(iterator.nextLong())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public int hashCode() {
+    int hash = 0;
+    long[] keys = myKeys;
+    for (int i = 0; i <= myMask; i++) {
+      hash += (int)(keys[i] ^ (keys[i] >>> 32));
+    }
+    return hash;
+  }
+
+  @Override
+  public String toString() {
+    return Arrays.toString(toArray());
+  }
+}
@@ -0,0 +1,413 @@
+/*
+ * Copyright 2013-2026 consulo.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package consulo.util.collection.openAddressing.impl;
+
+import consulo.util.collection.HashingStrategy;
+import consulo.util.collection.primitive.ints.AbstractIntCollection;
+import consulo.util.collection.primitive.ints.IntCollection;
+import consulo.util.collection.primitive.objects.ObjIntPredicate;
+import consulo.util.collection.primitive.objects.ObjectIntMap;
+import jakarta.annotation.Nonnull;
+
+import java.util.*;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Linear probing object to int map with a custom {@link HashingStrategy}. Null marks free slots, so a null key is stored as a marker object.
+ * Missing keys are mapped to 0.
+ */
+public final class ObjectIntHashMap<K> implements ObjectIntMap<K> {
+  private static final Object NULL_KEY = new Object();
+
+  private final HashingStrategy<K> myStrategy;
+  private Object[] myKeys;
+  private int[] myValues;
+  private int myMask;
+  private int myMaxFill;
+  private int mySize;
+
+  private Set<K> myKeySet;
+  private IntCollection myValueCollection;
+  private Set<Entry<K>> myEntrySet;
+
+  public ObjectIntHashMap(@Nonnull HashingStrategy<K> strategy) {
+    this(HashCommon.DEFAULT_EXPECTED_SIZE, strategy);
+  }
+
+  public ObjectIntHashMap(int expectedSize, @Nonnull HashingStrategy<K> strategy) {
+    myStrategy = strategy;
+    allocate(HashCommon.arraySize(expectedSize, HashCommon.LOAD_FACTOR));
+  }
+
+  private void allocate(int capacity) {
+    myKeys = new Object[capacity];
+    myValues = new int[capacity];
+    myMask = capacity - 1;
+    myMaxFill = HashCommon.maxFill(capacity, HashCommon.LOAD_FACTOR);
+  }
+
+  @SuppressWarnings("unchecked")
+  private int slot(@Nonnull Object storedKey) {
+    return storedKey == NULL_KEY ? 0 : HashCommon.mix(myStrategy.hashCode((K)storedKey)) & myMask;
+  }
+
+  @SuppressWarnings("unchecked")
+  private boolean keyEquals(@Nonnull Object storedKey, K key) {
+    if (storedKey == NULL_KEY) return key == null;
+    return key != null && (storedKey == key || myStrategy.equals((K)storedKey, key));
+  }
+
+  @SuppressWarnings("unchecked")
+  private K keyAt(int pos) {
+    Object key = myKeys[pos];
+    return key == NULL_KEY ? null : (K)key;
+  }
+
+  private int find(K key) {
+    Object[] keys = myKeys;
+    int pos = key == null ? 0 : HashCommon.mix(myStrategy.hashCode(key)) & myMask;
+    Object current;
+    while ((current = keys[pos]) != null) {
+      if (keyEquals(current, key)) {
+        return pos;
+      }
+      pos = (pos + 1) & myMask;
+    }
+    return -1;
+  }
+
+  @Override
+  public int getInt(K key) {
+    int pos = find(key);
+    return pos < 0 ? 0 : myValues[pos];
+  }
+
+  @Override
+  public int getIntOrDefault(K key, int defaultValue) {
+    int pos = find(key);
+    return pos < 0 ? defaultValue : myValues[pos];
+  }
+
+  @Override
+  public void putInt(K key, int value) {
+    Object[] keys = myKeys;
+    int pos = key == null ? 0 : HashCommon.mix(myStrategy.hashCode(key)) & myMask;
+    Object current;
+    while ((current = keys[pos]) != null) {
+      if (keyEquals(current, key)) {
+        myValues[pos] = value;
+        return;
+      }
+      pos = (pos + 1) & myMask;
+    }
+    keys[pos] = key == null ? NULL_KEY : key;
+    myValues[pos] = value;
+    if (++mySize >= myMaxFill) {
+      rehash(HashCommon.arraySize(mySize + 1, HashCommon.LOAD_FACTOR));
+    }
+  }
+
+  @Override
+  public void putAll(@Nonnull ObjectIntMap<? extends K> map) {
+    map.forEach(this::putInt);
+  }
+
+  @Override
+  public boolean containsKey(K key) {
+    return find(key) >= 0;
+  }
+
+  @Override
+  public int remove(K key) {
+    int pos = find(key);
+    if (pos < 0) {
+      return 0;
+    }
+    int value = myValues[pos];
+    removeAt(pos);
+    return value;
+  }
+
+  private void removeAt(int pos) {
+    mySize--;
+    Object[] keys = myKeys;
+    int[] values = myValues;
+    int last;
+    Object current;
+    while (true) {
+      pos = ((last = pos) + 1) & myMask;
+      while (true) {
+        if ((current = keys[pos]) == null) {
+          keys[last] = null;
+          return;
+        }
+        if (HashCommon.canShiftBack(last, pos, slot(current))) {
+          break;
+        }
+        pos = (pos + 1) & myMask;
+      }
+      keys[last] = current;
+      values[last] = values[pos];
+    }
+  }
+
+  private int findFreeSlot() {
+    int start = 0;
+    while (myKeys[start] != null) {
+      start++;
+    }
+    return start;
+  }
+
+  @Override
+  public int size() {
+    return mySize;
+  }
+
+  @Override
+  public void clear() {
+    if (mySize == 0) {
+      return;
+    }
+    Arrays.fill(myKeys, null);
+    mySize = 0;
+  }
+
+  @Override
+  public void forEach(ObjIntConsumer<? super K> action) {
+    Object[] keys = myKeys;
+    for (int i = 0; i <= myMask; i++) {
+      if (keys[i] != null) {
+        action.accept(keyAt(i), myValues[i]);
+      }
+    }
+  }
+
+  @Override
+  public boolean removeIf(@Nonnull ObjIntPredicate<? super K> filter) {
+    boolean removed = false;
+    Object[] keys = myKeys;
+    int start = findFreeSlot();
+    for (int pos = (start + 1) & myMask; pos != start; ) {
+      if (keys[pos] != null && filter.test(keyAt(pos), myValues[pos])) {
+        removeAt(pos);
+        removed = true;
+      }
+      else {
+        pos = (pos + 1) & myMask;
+      }
+    }
+    return removed;
+  }
+
+  private void rehash(int capacity) {
+    Object[] oldKeys = myKeys;
+    int[] oldValues = myValues;
+    allocate(capacity);
+
+    Object[] keys = myKeys;
+    int[] values = myValues;
+    for (int i = 0; i < oldKeys.length; i++) {
+      Object key = oldKeys[i];
+      if (key != null) {
+        int pos = slot(key);
+        while (keys[pos] != null) {
+          pos = (pos + 1) & myMask;
+        }
+        keys[pos] = key;
+        values[pos] = oldValues[i];
+      }
+    }
+  }
+
+  @Override
+  public Set<K> keySet() {
+    if (myKeySet == null) {
+      myKeySet = new AbstractSet<>() {
+        @Nonnull
+        @Override
+        public Iterator<K> iterator() {
+          SlotIterator iterator = new SlotIterator();
+          return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+              return iterator.hasNext();
+            }
+
+            @Override
+            public K next() {
+              return keyAt(iterator.nextSlot());
+            }
+
+            @Override
+            public void remove() {
+              iterator.remove();
+            }
+          };
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean contains(Object o) {
+          return containsKey((K)o);
+        }
+
+        @Override
+        public int size() {
+          return mySize;
+        }
+
+        @Override
+        public void clear() {
+          ObjectIntHashMap.this.clear();
+        }
+      };
+    }
+    return myKeySet;
+  }
+
+  @Nonnull
+  @Override
+  public IntCollection values() {
+    if (myValueCollection == null) {
+      myValueCollection = new AbstractIntCollection() {
+        @Nonnull
+        @Override
+        public PrimitiveIterator.OfInt iterator() {
+          SlotIterator iterator = new SlotIterator();
+          return new PrimitiveIterator.OfInt() {
+            @Override
+            public boolean hasNext() {
+              return iterator.hasNext();
+            }
+
+            @Override
+            public int nextInt() {
+              return myValues[iterator.nextSlot()];
+            }
+
+            @Override
+            public void remove() {
+              iterator.remove();
+            }
+          };
+        }
+
+        @Override
+        public int size() {
+          return mySize;
+        }
+      };
+    }
+    return myValueCollection;
+  }
+
+  @Override
+  public Set<Entry<K>> entrySet() {
+    if (myEntrySet == null) {
+      myEntrySet = new AbstractSet<>() {
+        @Nonnull
+        @Override
+        public Iterator<Entry<K>> iterator() {
+          SlotIterator iterator = new SlotIterator();
+          return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+              return iterator.hasNext();
+            }
+
+            @Override
+            public Entry<K> next() {
+              int pos = iterator.nextSlot();
+              return new SimpleEntry<>(keyAt(pos), myValues[pos]);
+            }
+
+            @Override
+            public void remove() {
+              iterator.remove();
+            }
+          };
+        }
+
+        @Override
+        public int size() {
+          return mySize;
+        }
+      };
+    }
+    return myEntrySet;
+  }
+
+  /**
+   * Iterates occupied slots starting after a free one, so removal through the iterator doesn't skip or repeat entries.
+   */
+  private final class SlotIterator {
+    private final int myStart = findFreeSlot();
+    private int myPos = (myStart + 1) & myMask;
+    private int myRemaining = mySize;
+    private int myCurrent = -1;
+
+    boolean hasNext() {
+      return myRemaining > 0;
+    }
+
+    int nextSlot() {
+      if (myRemaining == 0) {
+        throw new NoSuchElementException();
+      }
+      myRemaining--;
+      while (myKeys[myPos] == null) {
+        myPos = (myPos + 1) & myMask;
+      }
+      myCurrent = myPos;
+      myPos = (myPos + 1) & myMask;
+      return myCurrent;
+    }
+
+    void remove() {
+      if (myCurrent < 0) {
+        throw new IllegalStateException();
+      }
+      removeAt(myCurrent);
+      myPos = myCurrent;
+      myCurrent = -1;
+    }
+  }
+
+  private record SimpleEntry<K>(K key, int value) implements Entry<K> {
+    @Override
+    public K getKey() {
+      return key;
+    }
+
+    @Override
+    public int getValue() {
+      return value;
+    }
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder("{");
+    forEach((key, value) -> {
+      if (builder.length() > 1) {
+        builder.append(", ");
+      }
+      builder.append(key).append('=').append(value);
+    });
+    return builder.append('}').toString();
+  }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2013-2026 consulo.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package consulo.util.collection.openAddressing.impl;
+
+import consulo.util.collection.HashingStrategy;
+import consulo.util.collection.impl.map.LinkedHashMap;
+import consulo.util.collection.impl.map.RefHashMap;
+import consulo.util.collection.impl.map.SoftHashMap;
+import consulo.util.collection.impl.map.WeakHashMap;
+import consulo.util.collection.primitive.impl.PrimitiveCollectionFactory;
+import consulo.util.collection.primitive.ints.IntIntMap;
+import consulo.util.collection.primitive.ints.IntObjectMap;
+import consulo.util.collection.primitive.ints.IntSet;
+import consulo.util.collection.primitive.longs.LongSet;
+import consulo.util.collection.primitive.objects.ObjectIntMap;
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+
+import java.util.*;
+
+/**
+ * Collection factory backed by linear probing tables without boxing. Object maps and sets with the canonical strategy are plain JDK collections.
+ * <p>
+ * Selected by {@code -Dconsulo.collection.factory=openAddressing}.
+ */
+public class OpenAddressingCollectionFactory extends PrimitiveCollectionFactory {
+  public static final String ID = "openAddressing";
+
+  @Nonnull
+  @Override
+  public String getId() {
+    return ID;
+  }
+
+  @Override
+  public int getPriority() {
+    // opt-in until it replaces trove as the default
+    return -1;
+  }
+
+  @Override
+  public <T> Set<T> newHashSetWithStrategy(int capacity, @Nullable Collection<? extends T> inner, HashingStrategy<T> strategy) {
+    Set<T> set;
+    if (strategy == HashingStrategy.canonical()) {
+      set = capacity == UNKNOWN_CAPACITY ? new HashSet<>() : new HashSet<>(capacity);
+    }
+    else {
+      set = Collections.newSetFromMap(new LinkedHashMap<>(capacity == UNKNOWN_CAPACITY ? 16 : capacity, 0.75f, strategy));
+    }
+    if (inner != null) {
+      set.addAll(inner);
+    }
+    return set;
+  }
+
+  @Override
+  public <K, V> Map<K, V> newHashMapWithStrategy(int capacity, float loadFactor, @Nullable Map<? extends K, ? extends V> inner, @Nonnull HashingStrategy<K> hashingStrategy) {
+    int initialCapacity = capacity == UNKNOWN_CAPACITY ? 16 : capacity;
+    Map<K, V> map;
+    if (hashingStrategy == HashingStrategy.canonical()) {
+      map = new HashMap<>(initialCapacity, loadFactor);
+    }
+    else {
+      map = new LinkedHashMap<>(initialCapacity, loadFactor, hashingStrategy);
+    }
+    if (inner != null) {
+      map.putAll(inner);
+    }
+    return map;
+  }
+
+  @Override
+  public <K, V> Map<K, V> newWeakHashMap(int initialCapacity, float loadFactor, @Nonnull HashingStrategy<? super K> strategy) {
+    return new WeakHashMap<K, V>(initialCapacity, loadFactor, strategy) {
+      @Override
+      protected SubMap<K, V> createSubMap(int initialCapacity, float loadFactor, HashingStrategy<? super K> strategy) {
+        return new RefSubHashMap<>(initialCapacity, loadFactor);
+      }
+    };
+  }
+
+  @Override
+  public <K, V> Map<K, V> newSoftHashMap(@Nonnull HashingStrategy<? super K> strategy) {
+    return new SoftHashMap<K, V>(strategy) {
+      @Override
+      protected SubMap<K, V> createSubMap(int initialCapacity, float loadFactor, HashingStrategy<? super K> strategy) {
+        return new RefSubHashMap<>(initialCapacity, loadFactor);
+      }
+    };
+  }
+
+  @Override
+  public void trimToSize(Map<?, ?> map) {
+  }
+
+  @Nonnull
+  @Override
+  public <V> IntObjectMap<V> newIntObjectHashMap(int capacity) {
+    return capacity == UNKNOWN_CAPACITY ? new IntObjectHashMap<>() : new IntObjectHashMap<>(capacity);
+  }
+
+  @Nonnull
+  @Override
+  public <K> ObjectIntMap<K> newObjectIntHashMap(int capacity, HashingStrategy<K> strategy) {
+    return capacity == UNKNOWN_CAPACITY ? new ObjectIntHashMap<>(strategy) : new ObjectIntHashMap<>(capacity, strategy);
+  }
+
+  @Override
+  public IntSet newIntHashSet(int capacity, int[] array) {
+    if (array != null) {
+      return new IntHashSet(array);
+    }
+    return capacity == UNKNOWN_CAPACITY ? new IntHashSet() : new IntHashSet(capacity);
+  }
+
+  @Override
+  public IntIntMap newIntIntHashMap(int capacity) {
+    return capacity == UNKNOWN_CAPACITY ? new IntIntHashMap() : new IntIntHashMap(capacity);
+  }
+
+  @Nonnull
+  @Override
+  public LongSet newLongHashSet(int capacity) {
+    return capacity == UNKNOWN_CAPACITY ? new LongHashSet() : new LongHashSet(capacity);
+  }
+
+  @Override
+  public void trimToSize(IntIntMap map) {
+    map.trimToSize();
+  }
+
+  /**
+   * Reference keys keep the hash of the referent and compare referents with the map strategy, so a plain hash map fits.
+   */
+  private static final class RefSubHashMap<K, V> extends HashMap<RefHashMap.Key<K>, V> implements RefHashMap.SubMap<K, V> {
+    RefSubHashMap(int initialCapacity, float loadFactor) {
+      super(initialCapacity, loadFactor);
+    }
+
+    @Override
+    public void compactIfNecessary() {
+    }
+  }
+}
@@ -0,0 +1,10 @@
+/**
+ * Open addressing collection backend, selected by -Dconsulo.collection.factory=openAddressing
+ */
+module consulo.util.collection.open.addressing {
+  requires static consulo.annotation;
+  requires transitive consulo.util.collection;
+  requires transitive consulo.util.collection.primitive;
+
+  provides consulo.util.collection.impl.CollectionFactory with consulo.util.collection.openAddressing.impl.OpenAddressingCollectionFactory;
+}
@@ -20,6 +20,7 @@ import java.util.Objects;
 import java.util.PrimitiveIterator;
 import java.util.Spliterator;
 import java.util.Spliterators;
+import java.util.function.IntPredicate;
 import java.util.stream.IntStream;
 import java.util.stream.StreamSupport;
 
@@ -65,6 +66,21 @@ public interface IntCollection extends IntIterable {
     return modified;
   }
   
+  /**
+   * @return true if any element was removed
+   */
+  default boolean removeIf(@Nonnull IntPredicate filter) {
+    boolean removed = false;
+    PrimitiveIterator.OfInt it = iterator();
+    while (it.hasNext()) {
+      if (filter.test(it.nextInt())) {
+        it.remove();
+        removed = true;
+      }
+    }
+    return removed;
+  }
+
   int[] toArray();
 
   int size();
@@ -49,5 +49,19 @@ public interface IntIntMap {
 
   void forEach(@Nonnull BiIntConsumer consumer);
 
+  /**
+   * @return true if any entry was removed
+   */
+  default boolean removeIf(@Nonnull BiIntPredicate filter) {
+    boolean removed = false;
+    for (int key : keys()) {
+      if (filter.test(key, getInt(key))) {
+        remove(key);
+        removed = true;
+      }
+    }
+    return removed;
+  }
+
   int[] keys();
 }
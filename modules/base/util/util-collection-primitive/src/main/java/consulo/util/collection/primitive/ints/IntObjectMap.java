@@ -80,6 +80,20 @@ public interface IntObjectMap<V> {
     }
   }
 
+  /**
+   * @return true if any entry was removed
+   */
+  default boolean removeIf(@Nonnull IntObjPredicate<? super V> filter) {
+    boolean removed = false;
+    for (int key : keys()) {
+      if (filter.test(key, get(key))) {
+        remove(key);
+        removed = true;
+      }
+    }
+    return removed;
+  }
+
   default V putIfAbsent(int key, V value) {
     V v = get(key);
     if (v == null) {
@@ -16,8 +16,10 @@
 package consulo.util.collection.primitive.longs;
 
 import jakarta.annotation.Nonnull;
+import java.util.PrimitiveIterator;
 import java.util.Spliterator;
 import java.util.Spliterators;
+import java.util.function.LongPredicate;
 import java.util.stream.LongStream;
 import java.util.stream.StreamSupport;
 
@@ -50,6 +52,21 @@ public interface LongCollection extends LongIterable {
 
   boolean contains(long value);
 
+  /**
+   * @return true if any element was removed
+   */
+  default boolean removeIf(@Nonnull LongPredicate filter) {
+    boolean removed = false;
+    PrimitiveIterator.OfLong it = iterator();
+    while (it.hasNext()) {
+      if (filter.test(it.nextLong())) {
+        it.remove();
+        removed = true;
+      }
+    }
+    return removed;
+  }
+
   long[] toArray();
 
   int size();
@@ -18,6 +18,8 @@ package consulo.util.collection.primitive.objects;
 import consulo.util.collection.primitive.ints.IntCollection;
 
 import jakarta.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
 import java.util.function.ObjIntConsumer;
 
@@ -53,6 +55,22 @@ public interface ObjectIntMap<K> {
 
   void forEach(ObjIntConsumer<? super K> action);
 
+  /**
+   * @return true if any entry was removed
+   */
+  default boolean removeIf(@Nonnull ObjIntPredicate<? super K> filter) {
+    List<K> toRemove = new ArrayList<>();
+    forEach((key, value) -> {
+      if (filter.test(key, value)) {
+        toRemove.add(key);
+      }
+    });
+    for (K key : toRemove) {
+      remove(key);
+    }
+    return !toRemove.isEmpty();
+  }
+
   boolean containsKey(K key);
 
   int remove(K key);
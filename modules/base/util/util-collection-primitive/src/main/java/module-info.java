@@ -17,7 +17,7 @@ module consulo.util.collection.primitive {
   exports consulo.util.collection.primitive.doubles;
   exports consulo.util.collection.primitive.objects;
 
-  exports consulo.util.collection.primitive.impl to consulo.util.collection.via.trove;
+  exports consulo.util.collection.primitive.impl to consulo.util.collection.via.trove, consulo.util.collection.open.addressing;
 
   uses PrimitiveCollectionFactory;
 }
\ No newline at end of file
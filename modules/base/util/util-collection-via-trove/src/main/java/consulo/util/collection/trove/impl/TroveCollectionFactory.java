@@ -41,6 +41,12 @@ import java.util.Set;
  * @since 07/02/2021
  */
 public class TroveCollectionFactory extends PrimitiveCollectionFactory {
+  @Nonnull
+  @Override
+  public String getId() {
+    return "trove";
+  }
+
   @Override
   public <T> Set<T> newHashSetWithStrategy(int capacity, @Nullable Collection<? extends T> inner, HashingStrategy<T> strategy) {
     if (inner != null) {
@@ -0,0 +1,270 @@
+/*
+ * Copyright 2013-2026 consulo.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package consulo.util.collection;
+
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+
+/**
+ * Int-keyed specialization of {@link ConcurrentLFUCache}, which doesn't box keys.
+ * <p>
+ * Entries are kept in a chained hash table. Readers traverse it without locking; all modifications happen under the policy lock.
+ * Chain links are never changed: removal and resize build new links, so a reader racing with them doesn't skip entries which stay cached.
+ */
+public class ConcurrentIntLFUCache<V> {
+  private final FrequencyAwarePolicy myPolicy;
+  // modified under the policy lock
+  private volatile AtomicReferenceArray<Link<V>> myTable;
+  private int mySize;
+  private List<IntNode<V>> myRemoved = new ArrayList<>();
+
+  private final LongAdder myHits = new LongAdder();
+  private final LongAdder myMisses = new LongAdder();
+
+  @SuppressWarnings("unchecked")
+  public ConcurrentIntLFUCache(long maximumWeight) {
+    myPolicy = new FrequencyAwarePolicy(maximumWeight, node -> {
+      IntNode<V> intNode = (IntNode<V>)node;
+      removeFromTable(intNode.myKey);
+      myRemoved.add(intNode);
+    });
+    myTable = new AtomicReferenceArray<>(16);
+  }
+
+  /**
+   * @return weight of the entry, must be non-negative. Called under the cache lock.
+   */
+  protected int weigh(int key, @Nonnull V value) {
+    return 1;
+  }
+
+  protected void onRemoval(int key, @Nonnull V value) {
+  }
+
+  @Nullable
+  public V get(int key) {
+    IntNode<V> node = find(myTable, key);
+    if (node == null) {
+      myMisses.increment();
+      return null;
+    }
+    myHits.increment();
+    myPolicy.recordRead(node);
+    return node.myValue;
+  }
+
+  public void put(int key, @Nonnull V value) {
+    myPolicy.myLock.lock();
+    try {
+      IntNode<V> node = find(myTable, key);
+      if (node != null) {
+        myRemoved.add(new IntNode<>(key, node.myValue));
+        node.myValue = value;
+        myPolicy.onUpdate(node, weigh(key, value));
+      }
+      else {
+        addToTable(node = new IntNode<>(key, value));
+        myPolicy.onAdd(node, weigh(key, value));
+      }
+    }
+    finally {
+      unlockAndNotify();
+    }
+  }
+
+  /**
+   * @return the value cached for the key, which is the given value if the key was not cached before
+   */
+  @Nonnull
+  public V cacheIfAbsent(int key, @Nonnull V value) {
+    IntNode<V> node = find(myTable, key);
+    if (node != null) {
+      myPolicy.recordRead(node);
+      return node.myValue;
+    }
+
+    myPolicy.myLock.lock();
+    try {
+      node = find(myTable, key);
+      if (node != null) {
+        return node.myValue;
+      }
+      addToTable(node = new IntNode<>(key, value));
+      myPolicy.onAdd(node, weigh(key, value));
+      return value;
+    }
+    finally {
+      unlockAndNotify();
+    }
+  }
+
+  /**
+   * The value is computed outside of the cache lock, so it may be computed by several threads simultaneously;
+   * only the first computed value is cached and returned to all of them.
+   */
+  @Nonnull
+  public V computeIfAbsent(int key, @Nonnull IntFunction<? extends V> valueFunction) {
+    V value = get(key);
+    return value != null ? value : cacheIfAbsent(key, valueFunction.apply(key));
+  }
+
+  public boolean remove(int key) {
+    myPolicy.myLock.lock();
+    try {
+      IntNode<V> node = removeFromTable(key);
+      if (node == null) {
+        return false;
+      }
+      myPolicy.onRemove(node);
+      myRemoved.add(node);
+      return true;
+    }
+    finally {
+      unlockAndNotify();
+    }
+  }
+
+  public void clear() {
+    myPolicy.myLock.lock();
+    try {
+      myPolicy.clear();
+    }
+    finally {
+      unlockAndNotify();
+    }
+  }
+
+  public int size() {
+    myPolicy.myLock.lock();
+    try {
+      return mySize;
+    }
+    finally {
+      myPolicy.myLock.unlock();
+    }
+  }
+
+  public long getHitCount() {
+    return myHits.sum();
+  }
+
+  public long getMissCount() {
+    return myMisses.sum();
+  }
+
+  public double getHitRate() {
+    long hits = getHitCount();
+    long total = hits + getMissCount();
+    return total == 0 ? 1.0 : (double)hits / total;
+  }
+
+  @Nullable
+  private static <V> IntNode<V> find(@Nonnull AtomicReferenceArray<Link<V>> table, int key) {
+    for (Link<V> link = table.get(indexFor(key, table.length())); link != null; link = link.myNext) {
+      if (link.myNode.myKey == key) {
+        return link.myNode;
+      }
+    }
+    return null;
+  }
+
+  private static int indexFor(int key, int length) {
+    return FrequencySketch.spread(key) & (length - 1);
+  }
+
+  // under the lock
+  private void addToTable(@Nonnull IntNode<V> node) {
+    AtomicReferenceArray<Link<V>> table = myTable;
+    if (mySize + 1 > table.length() * 3 / 4) {
+      table = resize(table);
+    }
+    int index = indexFor(node.myKey, table.length());
+    table.set(index, new Link<>(node, table.get(index)));
+    mySize++;
+  }
+
+  // under the lock
+  @Nullable
+  private IntNode<V> removeFromTable(int key) {
+    AtomicReferenceArray<Link<V>> table = myTable;
+    int index = indexFor(key, table.length());
+    Link<V> first = table.get(index);
+    for (Link<V> link = first; link != null; link = link.myNext) {
+      if (link.myNode.myKey == key) {
+        // links before the removed one are copied, readers standing on the old ones still see the whole old chain
+        Link<V> head = link.myNext;
+        for (Link<V> copied = first; copied != link; copied = copied.myNext) {
+          head = new Link<>(copied.myNode, head);
+        }
+        table.set(index, head);
+        mySize--;
+        return link.myNode;
+      }
+    }
+    return null;
+  }
+
+  @Nonnull
+  private AtomicReferenceArray<Link<V>> resize(@Nonnull AtomicReferenceArray<Link<V>> table) {
+    AtomicReferenceArray<Link<V>> newTable = new AtomicReferenceArray<>(table.length() * 2);
+    for (int i = 0; i < table.length(); i++) {
+      for (Link<V> link = table.get(i); link != null; link = link.myNext) {
+        int index = indexFor(link.myNode.myKey, newTable.length());
+        newTable.set(index, new Link<>(link.myNode, newTable.get(index)));
+      }
+    }
+    myTable = newTable;
+    return newTable;
+  }
+
+  private void unlockAndNotify() {
+    List<IntNode<V>> removed = myRemoved;
+    if (!removed.isEmpty()) {
+      myRemoved = new ArrayList<>();
+    }
+    myPolicy.myLock.unlock();
+    for (IntNode<V> node : removed) {
+      onRemoval(node.myKey, node.myValue);
+    }
+  }
+
+  private static final class IntNode<V> extends FrequencyAwarePolicy.Node {
+    final int myKey;
+    volatile V myValue;
+
+    IntNode(int key, @Nonnull V value) {
+      super(key);
+      myKey = key;
+      myValue = value;
+    }
+  }
+
+  private static final class Link<V> {
+    final IntNode<V> myNode;
+    final Link<V> myNext;
+
+    Link(@Nonnull IntNode<V> node, @Nullable Link<V> next) {
+      myNode = node;
+      myNext = next;
+    }
+  }
+}
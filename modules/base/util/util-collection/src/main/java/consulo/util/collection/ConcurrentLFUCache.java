@@ -0,0 +1,248 @@
+/*
+ * Copyright 2013-2026 consulo.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package consulo.util.collection;
+
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Thread-safe bounded cache with W-TinyLFU eviction, a concurrent replacement for {@link SLRUMap} and {@link SLRUCache}.
+ * <p>
+ * Reads don't take locks, writes are serialized. The cache keeps entries up to the maximum total weight,
+ * the weight of each entry is given by {@link #weigh}, which is 1 by default.
+ * {@link #onRemoval} is called outside of the cache lock for every entry which left the cache:
+ * evicted, replaced, removed or cleared.
+ *
+ * @see ConcurrentIntLFUCache
+ */
+public class ConcurrentLFUCache<K, V> {
+  private final ConcurrentMap<K, CacheNode<K, V>> myMap;
+  private final HashingStrategy<K> myHashingStrategy;
+  private final FrequencyAwarePolicy myPolicy;
+  // guarded by the policy lock
+  private List<CacheNode<K, V>> myRemoved = new ArrayList<>();
+
+  private final LongAdder myHits = new LongAdder();
+  private final LongAdder myMisses = new LongAdder();
+
+  public ConcurrentLFUCache(long maximumWeight) {
+    this(maximumWeight, HashingStrategy.canonical());
+  }
+
+  @SuppressWarnings("unchecked")
+  public ConcurrentLFUCache(long maximumWeight, @Nonnull HashingStrategy<K> hashingStrategy) {
+    myHashingStrategy = hashingStrategy;
+    myMap = hashingStrategy == HashingStrategy.canonical() ? Maps.newConcurrentHashMap() : Maps.newConcurrentHashMap(hashingStrategy);
+    myPolicy = new FrequencyAwarePolicy(maximumWeight, node -> {
+      CacheNode<K, V> cacheNode = (CacheNode<K, V>)node;
+      myMap.remove(cacheNode.myKey, cacheNode);
+      myRemoved.add(cacheNode);
+    });
+  }
+
+  /**
+   * @return weight of the entry, must be non-negative. Called under the cache lock.
+   */
+  protected int weigh(@Nonnull K key, @Nonnull V value) {
+    return 1;
+  }
+
+  protected void onRemoval(@Nonnull K key, @Nonnull V value) {
+  }
+
+  @Nullable
+  public V get(@Nonnull K key) {
+    CacheNode<K, V> node = myMap.get(key);
+    if (node == null) {
+      myMisses.increment();
+      return null;
+    }
+    myHits.increment();
+    myPolicy.recordRead(node);
+    return node.myValue;
+  }
+
+  public boolean containsKey(@Nonnull K key) {
+    return myMap.containsKey(key);
+  }
+
+  public void put(@Nonnull K key, @Nonnull V value) {
+    key = getStableKey(key);
+    myPolicy.myLock.lock();
+    try {
+      CacheNode<K, V> node = myMap.get(key);
+      if (node != null) {
+        // report the replaced value as removed
+        myRemoved.add(new CacheNode<>(node.myKey, node.myValue, node.myHash));
+        node.myValue = value;
+        myPolicy.onUpdate(node, weigh(key, value));
+      }
+      else {
+        node = new CacheNode<>(key, value, myHashingStrategy.hashCode(key));
+        myMap.put(key, node);
+        myPolicy.onAdd(node, weigh(key, value));
+      }
+    }
+    finally {
+      unlockAndNotify();
+    }
+  }
+
+  /**
+   * @return the value cached for the key, which is the given value if the key was not cached before
+   */
+  @Nonnull
+  public V cacheIfAbsent(@Nonnull K key, @Nonnull V value) {
+    CacheNode<K, V> node = myMap.get(key);
+    if (node != null) {
+      myPolicy.recordRead(node);
+      return node.myValue;
+    }
+
+    key = getStableKey(key);
+    myPolicy.myLock.lock();
+    try {
+      node = myMap.get(key);
+      if (node != null) {
+        return node.myValue;
+      }
+      node = new CacheNode<>(key, value, myHashingStrategy.hashCode(key));
+      myMap.put(key, node);
+      myPolicy.onAdd(node, weigh(key, value));
+      return value;
+    }
+    finally {
+      unlockAndNotify();
+    }
+  }
+
+  /**
+   * The value is computed outside of the cache lock, so it may be computed by several threads simultaneously;
+   * only the first computed value is cached and returned to all of them.
+   */
+  @Nonnull
+  public V computeIfAbsent(@Nonnull K key, @Nonnull Function<? super K, ? extends V> valueFunction) {
+    V value = get(key);
+    return value != null ? value : cacheIfAbsent(key, valueFunction.apply(key));
+  }
+
+  public boolean remove(@Nonnull K key) {
+    if (!myMap.containsKey(key)) {
+      return false;
+    }
+    myPolicy.myLock.lock();
+    try {
+      CacheNode<K, V> node = myMap.remove(key);
+      if (node == null) {
+        return false;
+      }
+      myPolicy.onRemove(node);
+      myRemoved.add(node);
+      return true;
+    }
+    finally {
+      unlockAndNotify();
+    }
+  }
+
+  public void clear() {
+    myPolicy.myLock.lock();
+    try {
+      myPolicy.clear();
+    }
+    finally {
+      unlockAndNotify();
+    }
+  }
+
+  /**
+   * Weakly consistent: keys added or removed concurrently may be missed.
+   */
+  public void iterateKeys(@Nonnull Consumer<? super K> keyConsumer) {
+    for (K key : myMap.keySet()) {
+      keyConsumer.accept(key);
+    }
+  }
+
+  public int size() {
+    return myMap.size();
+  }
+
+  public long getWeightedSize() {
+    myPolicy.myLock.lock();
+    try {
+      return myPolicy.getWeightedSize();
+    }
+    finally {
+      myPolicy.myLock.unlock();
+    }
+  }
+
+  public long getMaximumWeight() {
+    return myPolicy.getMaximumWeight();
+  }
+
+  public long getHitCount() {
+    return myHits.sum();
+  }
+
+  public long getMissCount() {
+    return myMisses.sum();
+  }
+
+  public double getHitRate() {
+    long hits = getHitCount();
+    long total = hits + getMissCount();
+    return total == 0 ? 1.0 : (double)hits / total;
+  }
+
+  private void unlockAndNotify() {
+    List<CacheNode<K, V>> removed = myRemoved;
+    if (!removed.isEmpty()) {
+      myRemoved = new ArrayList<>();
+    }
+    myPolicy.myLock.unlock();
+    for (CacheNode<K, V> node : removed) {
+      onRemoval(node.myKey, node.myValue);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private K getStableKey(@Nonnull K key) {
+    if (key instanceof ShareableKey) {
+      return (K)((ShareableKey)key).getStableCopy();
+    }
+    return key;
+  }
+
+  private static final class CacheNode<K, V> extends FrequencyAwarePolicy.Node {
+    final K myKey;
+    volatile V myValue;
+
+    CacheNode(@Nonnull K key, @Nonnull V value, int hash) {
+      super(hash);
+      myKey = key;
+      myValue = value;
+    }
+  }
+}
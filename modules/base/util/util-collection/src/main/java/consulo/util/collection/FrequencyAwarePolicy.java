@@ -0,0 +1,359 @@
+/*
+ * Copyright 2013-2026 consulo.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package consulo.util.collection;
+
+import jakarta.annotation.Nonnull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * W-TinyLFU eviction policy shared by {@link ConcurrentLFUCache} and {@link ConcurrentIntLFUCache}.
+ * <p>
+ * New entries are placed into a small LRU window. Entries leaving the window compete with the least recently used entry
+ * of the main segmented LRU, and the one estimated by the {@link FrequencySketch} to be used less often is evicted.
+ * Entries hit in the probation segment are promoted to the protected segment.
+ * <p>
+ * All structural changes happen under {@link #myLock}. Reads are recorded into lossy striped buffers without locking,
+ * and replayed into the policy when a buffer fills up or on the next write.
+ */
+final class FrequencyAwarePolicy {
+  static final byte WINDOW = 0;
+  static final byte PROBATION = 1;
+  static final byte PROTECTED = 2;
+  static final byte DEAD = 3;
+
+  private static final int READ_BUFFER_SIZE = 16;
+  private static final int READ_BUFFER_MASK = READ_BUFFER_SIZE - 1;
+  private static final int READ_BUFFER_DRAIN_THRESHOLD = READ_BUFFER_SIZE / 2;
+  private static final int READ_BUFFER_STRIPES = Math.min(64, Integer.highestOneBit(Runtime.getRuntime().availableProcessors()) * 2);
+
+  abstract static class Node {
+    final int myHash;
+    // guarded by the policy lock
+    int myWeight;
+    byte myQueue = WINDOW;
+    Node myPrev;
+    Node myNext;
+
+    Node(int hash) {
+      myHash = hash;
+    }
+
+    final boolean isAlive() {
+      return myQueue != DEAD;
+    }
+  }
+
+  final ReentrantLock myLock = new ReentrantLock();
+
+  private final long myMaximumWeight;
+  private final long myWindowMaximum;
+  private final long myProtectedMaximum;
+  private final FrequencySketch mySketch;
+  private final Consumer<Node> myEvictor;
+
+  private final NodeList myWindow = new NodeList();
+  private final NodeList myProbation = new NodeList();
+  private final NodeList myProtected = new NodeList();
+  private long myWindowWeight;
+  private long myProbationWeight;
+  private long myProtectedWeight;
+
+  private final ReadStripe[] myReadStripes = new ReadStripe[READ_BUFFER_STRIPES];
+
+  /**
+   * @param evictor removes the evicted node from the cache storage, called under the lock
+   */
+  FrequencyAwarePolicy(long maximumWeight, @Nonnull Consumer<Node> evictor) {
+    if (maximumWeight <= 0) {
+      throw new IllegalArgumentException("maximumWeight must be positive: " + maximumWeight);
+    }
+    myMaximumWeight = maximumWeight;
+    myWindowMaximum = Math.max(1, maximumWeight / 100);
+    myProtectedMaximum = (long)((maximumWeight - myWindowMaximum) * 0.8);
+    mySketch = new FrequencySketch(maximumWeight);
+    myEvictor = evictor;
+    for (int i = 0; i < myReadStripes.length; i++) {
+      myReadStripes[i] = new ReadStripe();
+    }
+  }
+
+  long getMaximumWeight() {
+    return myMaximumWeight;
+  }
+
+  long getWeightedSize() {
+    return myWindowWeight + myProbationWeight + myProtectedWeight;
+  }
+
+  /**
+   * Records the read without locking. The event may be dropped under contention, which only makes the policy less precise.
+   */
+  void recordRead(@Nonnull Node node) {
+    ReadStripe stripe = myReadStripes[FrequencySketch.spread(System.identityHashCode(Thread.currentThread())) & (myReadStripes.length - 1)];
+    if (stripe.offer(node) && myLock.tryLock()) {
+      try {
+        drainReads();
+      }
+      finally {
+        myLock.unlock();
+      }
+    }
+  }
+
+  // all methods below require the lock
+
+  void drainReads() {
+    for (ReadStripe stripe : myReadStripes) {
+      stripe.drain(this);
+    }
+  }
+
+  void onAdd(@Nonnull Node node, int weight) {
+    drainReads();
+    node.myWeight = weight;
+    node.myQueue = WINDOW;
+    myWindow.addLast(node);
+    myWindowWeight += weight;
+    mySketch.increment(node.myHash);
+    evict();
+  }
+
+  void onUpdate(@Nonnull Node node, int weight) {
+    drainReads();
+    if (!node.isAlive()) return;
+    int delta = weight - node.myWeight;
+    node.myWeight = weight;
+    switch (node.myQueue) {
+      case WINDOW -> myWindowWeight += delta;
+      case PROBATION -> myProbationWeight += delta;
+      case PROTECTED -> myProtectedWeight += delta;
+    }
+    onAccess(node);
+    evict();
+  }
+
+  void onRemove(@Nonnull Node node) {
+    if (node.isAlive()) {
+      unlink(node);
+    }
+  }
+
+  /**
+   * Unlinks all nodes and passes them to the evictor.
+   */
+  void clear() {
+    drainReads();
+    for (NodeList list : new NodeList[]{myWindow, myProbation, myProtected}) {
+      for (Node node = list.myHead; node != null; ) {
+        Node next = node.myNext;
+        unlink(node);
+        myEvictor.accept(node);
+        node = next;
+      }
+    }
+    mySketch.clear();
+  }
+
+  @Nonnull
+  List<Node> getNodes() {
+    List<Node> nodes = new ArrayList<>();
+    for (NodeList list : new NodeList[]{myProtected, myProbation, myWindow}) {
+      for (Node node = list.myHead; node != null; node = node.myNext) {
+        nodes.add(node);
+      }
+    }
+    return nodes;
+  }
+
+  private void onAccess(@Nonnull Node node) {
+    mySketch.increment(node.myHash);
+    switch (node.myQueue) {
+      case WINDOW -> myWindow.moveToLast(node);
+      case PROBATION -> {
+        myProbation.remove(node);
+        myProbationWeight -= node.myWeight;
+        node.myQueue = PROTECTED;
+        myProtected.addLast(node);
+        myProtectedWeight += node.myWeight;
+        demoteProtected();
+      }
+      case PROTECTED -> myProtected.moveToLast(node);
+    }
+  }
+
+  private void demoteProtected() {
+    while (myProtectedWeight > myProtectedMaximum) {
+      Node node = myProtected.myHead;
+      if (node == null) break;
+      myProtected.remove(node);
+      myProtectedWeight -= node.myWeight;
+      node.myQueue = PROBATION;
+      myProbation.addLast(node);
+      myProbationWeight += node.myWeight;
+    }
+  }
+
+  private void evict() {
+    // entries leaving the window become candidates at the tail of the probation segment
+    while (myWindowWeight > myWindowMaximum) {
+      Node node = myWindow.myHead;
+      if (node == null) break;
+      myWindow.remove(node);
+      myWindowWeight -= node.myWeight;
+      node.myQueue = PROBATION;
+      myProbation.addLast(node);
+      myProbationWeight += node.myWeight;
+    }
+
+    while (getWeightedSize() > myMaximumWeight) {
+      Node victim = myProbation.myHead;
+      Node candidate = myProbation.myTail;
+      if (victim == null) {
+        victim = myProtected.myHead != null ? myProtected.myHead : myWindow.myHead;
+        if (victim == null) break;
+        evictNode(victim);
+      }
+      else if (victim == candidate || candidate.myWeight > myMaximumWeight) {
+        evictNode(candidate);
+      }
+      else {
+        evictNode(admit(candidate, victim) ? victim : candidate);
+      }
+    }
+  }
+
+  private boolean admit(@Nonnull Node candidate, @Nonnull Node victim) {
+    int candidateFrequency = mySketch.frequency(candidate.myHash);
+    int victimFrequency = mySketch.frequency(victim.myHash);
+    if (candidateFrequency > victimFrequency) {
+      return true;
+    }
+    // admit a warm candidate occasionally, so colliding hashes can't keep a victim forever
+    return candidateFrequency >= 6 && (ThreadLocalRandom.current().nextInt() & 127) == 0;
+  }
+
+  private void evictNode(@Nonnull Node node) {
+    unlink(node);
+    myEvictor.accept(node);
+  }
+
+  private void unlink(@Nonnull Node node) {
+    switch (node.myQueue) {
+      case WINDOW -> {
+        myWindow.remove(node);
+        myWindowWeight -= node.myWeight;
+      }
+      case PROBATION -> {
+        myProbation.remove(node);
+        myProbationWeight -= node.myWeight;
+      }
+      case PROTECTED -> {
+        myProtected.remove(node);
+        myProtectedWeight -= node.myWeight;
+      }
+    }
+    node.myQueue = DEAD;
+  }
+
+  private static final class NodeList {
+    Node myHead;
+    Node myTail;
+
+    void addLast(@Nonnull Node node) {
+      node.myPrev = myTail;
+      node.myNext = null;
+      if (myTail == null) {
+        myHead = node;
+      }
+      else {
+        myTail.myNext = node;
+      }
+      myTail = node;
+    }
+
+    void remove(@Nonnull Node node) {
+      if (node.myPrev == null) {
+        myHead = node.myNext;
+      }
+      else {
+        node.myPrev.myNext = node.myNext;
+      }
+      if (node.myNext == null) {
+        myTail = node.myPrev;
+      }
+      else {
+        node.myNext.myPrev = node.myPrev;
+      }
+      node.myPrev = null;
+      node.myNext = null;
+    }
+
+    void moveToLast(@Nonnull Node node) {
+      if (myTail != node) {
+        remove(node);
+        addLast(node);
+      }
+    }
+  }
+
+  private static final class ReadStripe {
+    private final AtomicLong myWriteCounter = new AtomicLong();
+    // written only under the policy lock
+    private volatile long myReadCounter;
+    private final AtomicReferenceArray<Node> myBuffer = new AtomicReferenceArray<>(READ_BUFFER_SIZE);
+
+    /**
+     * @return true if the buffer should be drained
+     */
+    boolean offer(@Nonnull Node node) {
+      long tail = myWriteCounter.get();
+      long size = tail - myReadCounter;
+      if (size >= READ_BUFFER_SIZE) {
+        return true;
+      }
+      if (myWriteCounter.compareAndSet(tail, tail + 1)) {
+        myBuffer.lazySet((int)tail & READ_BUFFER_MASK, node);
+        return size + 1 >= READ_BUFFER_DRAIN_THRESHOLD;
+      }
+      return false;
+    }
+
+    void drain(@Nonnull FrequencyAwarePolicy policy) {
+      long head = myReadCounter;
+      long tail = myWriteCounter.get();
+      for (; head < tail; head++) {
+        int index = (int)head & READ_BUFFER_MASK;
+        Node node = myBuffer.get(index);
+        if (node == null) {
+          // the writer has reserved the slot but not filled it yet
+          break;
+        }
+        myBuffer.lazySet(index, null);
+        if (node.isAlive()) {
+          policy.onAccess(node);
+        }
+      }
+      myReadCounter = head;
+    }
+  }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2013-2026 consulo.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package consulo.util.collection;
+
+import java.util.Arrays;
+
+/**
+ * Count-Min sketch with 4-bit counters, estimating how often a hash was seen recently.
+ * After a number of increments proportional to the table size all counters are halved, so the history fades out.
+ * <p>
+ * Not thread-safe.
+ */
+final class FrequencySketch {
+  private static final long[] SEED = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+  private static final long RESET_MASK = 0x7777777777777777L;
+  private static final long ONE_MASK = 0x1111111111111111L;
+  private static final int MAX_TABLE_SIZE = 1 << 24;
+
+  private final long[] myTable;
+  private final int myTableMask;
+  private final int mySampleSize;
+  private int mySize;
+
+  FrequencySketch(long expectedSize) {
+    int size = (int)Math.min(Math.max(expectedSize, 8), MAX_TABLE_SIZE);
+    int tableSize = Integer.highestOneBit(size - 1) << 1;
+    myTable = new long[tableSize];
+    myTableMask = tableSize - 1;
+    mySampleSize = 10 * tableSize;
+  }
+
+  /**
+   * @return estimated frequency, in range [0, 15]
+   */
+  int frequency(int hash) {
+    int start = (spread(hash) & 3) << 2;
+    int frequency = Integer.MAX_VALUE;
+    for (int i = 0; i < 4; i++) {
+      int index = indexOf(hash, i);
+      int count = (int)((myTable[index] >>> ((start + i) << 2)) & 0xfL);
+      frequency = Math.min(frequency, count);
+    }
+    return frequency;
+  }
+
+  void increment(int hash) {
+    int start = (spread(hash) & 3) << 2;
+    boolean added = false;
+    for (int i = 0; i < 4; i++) {
+      added |= incrementAt(indexOf(hash, i), start + i);
+    }
+    if (added && ++mySize == mySampleSize) {
+      reset();
+    }
+  }
+
+  void clear() {
+    Arrays.fill(myTable, 0);
+    mySize = 0;
+  }
+
+  private boolean incrementAt(int index, int counter) {
+    int offset = counter << 2;
+    long mask = 0xfL << offset;
+    if ((myTable[index] & mask) != mask) {
+      myTable[index] += 1L << offset;
+      return true;
+    }
+    return false;
+  }
+
+  private void reset() {
+    int odd = 0;
+    for (int i = 0; i < myTable.length; i++) {
+      odd += Long.bitCount(myTable[i] & ONE_MASK);
+      myTable[i] = (myTable[i] >>> 1) & RESET_MASK;
+    }
+    mySize = (mySize - (odd >>> 2)) >>> 1;
+  }
+
+  private int indexOf(int hash, int i) {
+    long h = (hash + SEED[i]) * SEED[i];
+    h += h >>> 32;
+    return (int)h & myTableMask;
+  }
+
+  static int spread(int x) {
+    x = ((x >>> 16) ^ x) * 0x45d9f3b;
+    x = ((x >>> 16) ^ x) * 0x45d9f3b;
+    return (x >>> 16) ^ x;
+  }
+}
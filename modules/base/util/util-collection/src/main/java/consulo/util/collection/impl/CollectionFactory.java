@@ -26,16 +26,51 @@ import java.util.*;
  * @since 07/02/2021
  */
 public abstract class CollectionFactory {
+  /**
+   * Id or class name of the factory to use. If not set, the factory with the highest {@link #getPriority()} wins
+   */
+  public static final String FACTORY_PROPERTY = "consulo.collection.factory";
+
   private static CollectionFactory ourFactory;
 
   public static CollectionFactory get() {
     if (ourFactory == null) {
-      Optional<CollectionFactory> first = ServiceLoader.load(CollectionFactory.class, CollectionFactory.class.getClassLoader()).findFirst();
-      ourFactory = first.get();
+      ourFactory = select(ServiceLoader.load(CollectionFactory.class, CollectionFactory.class.getClassLoader()), System.getProperty(FACTORY_PROPERTY));
     }
     return Objects.requireNonNull(ourFactory);
   }
 
+  @Nonnull
+  private static CollectionFactory select(@Nonnull Iterable<CollectionFactory> factories, @Nullable String requested) {
+    CollectionFactory best = null;
+    for (CollectionFactory factory : factories) {
+      if (requested != null && (requested.equals(factory.getId()) || requested.equals(factory.getClass().getName()))) {
+        return factory;
+      }
+
+      if (best == null || factory.getPriority() > best.getPriority()) {
+        best = factory;
+      }
+    }
+
+    if (best == null) {
+      throw new IllegalStateException("No collection factory found");
+    }
+    return best;
+  }
+
+  /**
+   * @return id used for selection via {@link #FACTORY_PROPERTY}
+   */
+  @Nonnull
+  public String getId() {
+    return getClass().getName();
+  }
+
+  public int getPriority() {
+    return 0;
+  }
+
   public static final int UNKNOWN_CAPACITY = -1;
 
   public abstract <T> Set<T> newHashSetWithStrategy(int capacity, @Nullable Collection<? extends T> inner, HashingStrategy<T> strategy);
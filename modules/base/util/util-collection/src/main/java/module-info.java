@@ -9,6 +9,7 @@ module consulo.util.collection {
 
   exports consulo.util.collection.impl.map to
           consulo.util.collection.via.trove,
+          consulo.util.collection.open.addressing,
           consulo.util.collection.primitive,
           consulo.desktop.awt.ide.impl,
           consulo.language.impl,
@@ -16,7 +17,7 @@ module consulo.util.collection {
           consulo.ide.impl;
 
   exports consulo.util.collection.impl.set to consulo.util.collection.primitive;
-  exports consulo.util.collection.impl to consulo.util.collection.primitive, consulo.util.collection.via.trove;
+  exports consulo.util.collection.impl to consulo.util.collection.primitive, consulo.util.collection.via.trove, consulo.util.collection.open.addressing;
 
   uses consulo.util.collection.impl.CollectionFactory;
 }
\ No newline at end of file
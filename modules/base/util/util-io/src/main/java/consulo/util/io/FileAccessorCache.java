@@ -15,8 +15,8 @@
  */
 package consulo.util.io;
 
+import consulo.util.collection.ConcurrentLFUCache;
 import consulo.util.collection.HashingStrategy;
-import consulo.util.collection.SLRUMap;
 
 import jakarta.annotation.Nonnull;
 import java.io.IOException;
@@ -25,15 +25,15 @@ import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 
 public abstract class FileAccessorCache<K, T> implements HashingStrategy<K> {
-  /*@GuardedBy("myCacheLock")*/ private final SLRUMap<K, Handle<T>> myCache;
+  private final ConcurrentLFUCache<K, Handle<T>> myCache;
   /*@GuardedBy("myCacheLock")*/ private final List<T> myElementsToBeDisposed = new ArrayList<T>();
   private final Object myCacheLock = new Object();
   private final Object myUpdateLock = new Object();
 
   public FileAccessorCache(int protectedQueueSize, int probationalQueueSize) {
-    myCache = new SLRUMap<K, Handle<T>>(protectedQueueSize, probationalQueueSize, this) {
+    myCache = new ConcurrentLFUCache<K, Handle<T>>(protectedQueueSize + probationalQueueSize, this) {
       @Override
-      protected final void onDropFromCache(K key, Handle<T> value) {
+      protected final void onRemoval(K key, Handle<T> value) {
         value.release();
       }
     };
@@ -73,9 +73,7 @@ public abstract class FileAccessorCache<K, T> implements HashingStrategy<K> {
       //}
       cached.allocate();
 
-      synchronized (myCacheLock) {
-        myCache.put(key, cached);
-      }
+      myCache.put(key, cached);
 
       disposeInvalidAccessors();
       return cached;
@@ -113,20 +111,18 @@ public abstract class FileAccessorCache<K, T> implements HashingStrategy<K> {
   }
 
   public Handle<T> getIfCached(K key) {
-    synchronized (myCacheLock) {
+    while (true) {
       final Handle<T> value = myCache.get(key);
-      if (value != null) {
-        value.allocate();
+      if (value == null || value.tryAllocate()) {
+        return value;
       }
-      return value;
+      // the handle has been evicted and released concurrently, so it's not in the cache anymore
     }
   }
 
   public boolean remove(K key) {
     try {
-      synchronized (myCacheLock) {
-        return myCache.remove(key);
-      }
+      return myCache.remove(key);
     }
     finally {
       synchronized (myUpdateLock) {
@@ -137,9 +133,7 @@ public abstract class FileAccessorCache<K, T> implements HashingStrategy<K> {
 
   public void clear() {
     try {
-      synchronized (myCacheLock) {
-        myCache.clear();
-      }
+      myCache.clear();
     }
     finally {
       synchronized (myUpdateLock) {
@@ -172,6 +166,14 @@ public abstract class FileAccessorCache<K, T> implements HashingStrategy<K> {
       myRefCount.incrementAndGet();
     }
 
+    private boolean tryAllocate() {
+      while (true) {
+        int count = myRefCount.get();
+        if (count == 0) return false;
+        if (myRefCount.compareAndSet(count, count + 1)) return true;
+      }
+    }
+
     public final void release() {
       if (myRefCount.decrementAndGet() == 0) {
         synchronized (myOwner.myCacheLock) {
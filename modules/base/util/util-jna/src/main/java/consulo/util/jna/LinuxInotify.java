@@ -0,0 +1,198 @@
+/*
+ * Copyright 2013-2026 consulo.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package consulo.util.jna;
+
+import com.sun.jna.Library;
+import com.sun.jna.Memory;
+import com.sun.jna.Native;
+import com.sun.jna.NativeLong;
+import com.sun.jna.Pointer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+/**
+ * Thin wrapper over Linux inotify(7) API.
+ * <p>
+ * Watches may be added and removed from any thread, while events must be read by a single thread.
+ */
+public final class LinuxInotify implements Closeable {
+  public static final int IN_MODIFY = 0x00000002;
+  public static final int IN_ATTRIB = 0x00000004;
+  public static final int IN_CLOSE_WRITE = 0x00000008;
+  public static final int IN_MOVED_FROM = 0x00000040;
+  public static final int IN_MOVED_TO = 0x00000080;
+  public static final int IN_CREATE = 0x00000100;
+  public static final int IN_DELETE = 0x00000200;
+  public static final int IN_DELETE_SELF = 0x00000400;
+  public static final int IN_MOVE_SELF = 0x00000800;
+  public static final int IN_UNMOUNT = 0x00002000;
+  public static final int IN_Q_OVERFLOW = 0x00004000;
+  public static final int IN_IGNORED = 0x00008000;
+  public static final int IN_ONLYDIR = 0x01000000;
+  public static final int IN_DONT_FOLLOW = 0x02000000;
+  public static final int IN_EXCL_UNLINK = 0x04000000;
+  public static final int IN_ISDIR = 0x40000000;
+
+  public static final int ENOENT = 2;
+  public static final int EACCES = 13;
+  public static final int ENOTDIR = 20;
+  public static final int ENOSPC = 28;
+
+  private static final int IN_CLOEXEC = 0x00080000;
+  private static final int POLLIN = 0x0001;
+  private static final int EINTR = 4;
+  private static final int EVENT_HEADER_SIZE = 16;
+  private static final int BUFFER_SIZE = 256 * 1024;
+
+  private interface LibC extends Library {
+    int inotify_init1(int flags);
+
+    int inotify_add_watch(int fd, String path, int mask);
+
+    int inotify_rm_watch(int fd, int wd);
+
+    int poll(Pointer fds, NativeLong nfds, int timeout);
+
+    NativeLong read(int fd, Pointer buf, NativeLong count);
+
+    int close(int fd);
+  }
+
+  public interface EventConsumer {
+    /**
+     * @param wd   watch descriptor, -1 for {@link #IN_Q_OVERFLOW}
+     * @param name name of the child the event is about, or empty string if it is about the watched path itself
+     */
+    void consume(int wd, int mask, int cookie, String name);
+  }
+
+  private static volatile LibC ourLibC;
+
+  private final LibC myLibC;
+  private final int myFd;
+  private final Memory myBuffer = new Memory(BUFFER_SIZE);
+  private final Memory myPollFd = new Memory(8);
+  private final Charset myCharset;
+  private volatile boolean myClosed;
+
+  private LinuxInotify(LibC libC, int fd, Charset charset) {
+    myLibC = libC;
+    myFd = fd;
+    myCharset = charset;
+    myPollFd.setInt(0, fd);
+    myPollFd.setShort(4, (short)POLLIN);
+  }
+
+  /**
+   * @param charset charset of file names, usually the platform one
+   */
+  public static LinuxInotify create(Charset charset) throws IOException {
+    LibC libC = getLibC();
+    int fd = libC.inotify_init1(IN_CLOEXEC);
+    if (fd < 0) {
+      throw new IOException("inotify_init1 failed, errno=" + Native.getLastError());
+    }
+    return new LinuxInotify(libC, fd, charset);
+  }
+
+  private static LibC getLibC() {
+    LibC libC = ourLibC;
+    if (libC == null) {
+      synchronized (LinuxInotify.class) {
+        libC = ourLibC;
+        if (libC == null) {
+          ourLibC = libC = Native.load("c", LibC.class);
+        }
+      }
+    }
+    return libC;
+  }
+
+  /**
+   * @return watch descriptor, or negated errno if the watch can't be added (e.g. {@code -ENOSPC} when watch limit is reached)
+   */
+  public int addWatch(String path, int mask) {
+    int wd = myLibC.inotify_add_watch(myFd, path, mask);
+    return wd >= 0 ? wd : -Native.getLastError();
+  }
+
+  public void removeWatch(int wd) {
+    myLibC.inotify_rm_watch(myFd, wd);
+  }
+
+  /**
+   * @return true if events are available for reading
+   */
+  public boolean poll(int timeoutMs) throws IOException {
+    if (myClosed) return false;
+    myPollFd.setShort(6, (short)0);
+    int result = myLibC.poll(myPollFd, new NativeLong(1), timeoutMs);
+    if (result < 0) {
+      int errno = Native.getLastError();
+      if (errno == EINTR) return false;
+      throw new IOException("poll failed, errno=" + errno);
+    }
+    return result > 0 && (myPollFd.getShort(6) & POLLIN) != 0;
+  }
+
+  /**
+   * Reads events which are available now, blocks if there are none.
+   *
+   * @return number of read events
+   */
+  public int readEvents(EventConsumer consumer) throws IOException {
+    long read = myLibC.read(myFd, myBuffer, new NativeLong(BUFFER_SIZE)).longValue();
+    if (read < 0) {
+      int errno = Native.getLastError();
+      if (errno == EINTR) return 0;
+      throw new IOException("read failed, errno=" + errno);
+    }
+
+    int count = 0;
+    long offset = 0;
+    while (offset + EVENT_HEADER_SIZE <= read) {
+      int wd = myBuffer.getInt(offset);
+      int mask = myBuffer.getInt(offset + 4);
+      int cookie = myBuffer.getInt(offset + 8);
+      int length = myBuffer.getInt(offset + 12);
+      String name = "";
+      if (length > 0) {
+        byte[] bytes = myBuffer.getByteArray(offset + EVENT_HEADER_SIZE, length);
+        int end = 0;
+        while (end < length && bytes[end] != 0) end++;
+        name = new String(bytes, 0, end, myCharset);
+      }
+      consumer.consume(wd, mask, cookie, name);
+      count++;
+      offset += EVENT_HEADER_SIZE + length;
+    }
+    return count;
+  }
+
+  public boolean isClosed() {
+    return myClosed;
+  }
+
+  @Override
+  public void close() {
+    if (!myClosed) {
+      myClosed = true;
+      myLibC.close(myFd);
+    }
+  }
+}
@@ -18,7 +18,7 @@ package consulo.versionControlSystem.change;
 import consulo.application.ApplicationManager;
 import consulo.application.util.function.Throwable2Computable;
 import consulo.project.Project;
-import consulo.util.collection.SLRUMap;
+import consulo.util.collection.ConcurrentLFUCache;
 import consulo.util.io.CharsetToolkit;
 import consulo.util.lang.Pair;
 import consulo.util.lang.StringUtil;
@@ -49,47 +49,40 @@ import java.util.Set;
  *         Time: 6:53 PM
  */
 public class ContentRevisionCache {
+  // guards myCounter and its consistency with myCurrentRevisionsCache
   private final Object myLock;
-  private final SLRUMap<Key, SoftReference<byte[]>> myCache;
-  private final SLRUMap<CurrentKey, VcsRevisionNumber> myCurrentRevisionsCache;
-  private final SLRUMap<Pair<FilePath, VcsRevisionNumber>, Object> myCustom;
+  private final ConcurrentLFUCache<Key, SoftReference<byte[]>> myCache;
+  private final ConcurrentLFUCache<CurrentKey, VcsRevisionNumber> myCurrentRevisionsCache;
+  private final ConcurrentLFUCache<Pair<FilePath, VcsRevisionNumber>, Object> myCustom;
   private long myCounter;
 
   public ContentRevisionCache() {
     myLock = new Object();
-    myCache = new SLRUMap<>(100, 50);
-    myCurrentRevisionsCache = new SLRUMap<>(200, 50);
-    myCustom = new SLRUMap<>(30, 30);
+    myCache = new ConcurrentLFUCache<>(150);
+    myCurrentRevisionsCache = new ConcurrentLFUCache<>(250);
+    myCustom = new ConcurrentLFUCache<>(60);
     myCounter = 0;
   }
 
   private void put(FilePath path, VcsRevisionNumber number, @Nonnull VcsKey vcsKey, @Nonnull UniqueType type, @Nullable final byte[] bytes) {
     if (bytes == null) return;
-    synchronized (myLock) {
-      myCache.put(new Key(path, number, vcsKey, type), new SoftReference<>(bytes));
-    }
+    myCache.put(new Key(path, number, vcsKey, type), new SoftReference<>(bytes));
   }
 
   @Nullable
   public String get(FilePath path, VcsRevisionNumber number, @Nonnull VcsKey vcsKey, @Nonnull UniqueType type) {
-    synchronized (myLock) {
-      final byte[] bytes = getBytes(path, number, vcsKey, type);
-      if (bytes == null) return null;
-      return bytesToString(path, bytes);
-    }
+    final byte[] bytes = getBytes(path, number, vcsKey, type);
+    if (bytes == null) return null;
+    return bytesToString(path, bytes);
   }
 
   public void putCustom(FilePath path, VcsRevisionNumber number, final Object o) {
-    synchronized (myLock) {
-      myCustom.put(Pair.create(path, number), o);
-    }
+    myCustom.put(Pair.create(path, number), o);
   }
 
   @Nullable
   public Object getCustom(FilePath path, VcsRevisionNumber number) {
-    synchronized (myLock) {
-      return myCustom.get(Pair.create(path, number));
-    }
+    return myCustom.get(Pair.create(path, number));
   }
 
   public void clearAllCurrent() {
@@ -194,10 +187,8 @@ public class ContentRevisionCache {
 
   @Nullable
   public byte[] getBytes(FilePath path, VcsRevisionNumber number, @Nonnull VcsKey vcsKey, @Nonnull UniqueType type) {
-    synchronized (myLock) {
-      final SoftReference<byte[]> reference = myCache.get(new Key(path, number, vcsKey, type));
-      return SoftReference.dereference(reference);
-    }
+    final SoftReference<byte[]> reference = myCache.get(new Key(path, number, vcsKey, type));
+    return SoftReference.dereference(reference);
   }
 
   private boolean putCurrent(FilePath path, VcsRevisionNumber number, @Nonnull VcsKey vcsKey, final long counter) {
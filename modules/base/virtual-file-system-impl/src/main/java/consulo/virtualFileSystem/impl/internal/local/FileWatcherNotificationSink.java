@@ -28,6 +28,12 @@ import java.util.function.Consumer;
 public interface FileWatcherNotificationSink {
   void notifyManualWatchRoots(@Nonnull Collection<String> roots);
 
+  /**
+   * Reports roots which can't be watched in addition to the ones passed to {@link #notifyManualWatchRoots} for the current watch roots,
+   * e.g. directories created after the watch roots were set.
+   */
+  void notifyManualWatchRootsAdded(@Nonnull Collection<String> roots);
+
   void notifyMapping(@Nonnull Collection<? extends Pair<String, String>> mapping);
 
   void notifyDirtyPath(@Nonnull String path);
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2013-2026 consulo.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Browser side of the viewport protocol of the web editor (see WebEditorViewport): the text area shows a window of document lines,
+ * requests other lines when scrolled to the window edge, applies document changes of the server and sends local edits as replaced ranges.
+ * <p/>
+ * At most one local edit is in flight: text typed meanwhile is sent as one edit once the server acknowledges the previous one.
+ * Highlights are kept, but a text area can't paint them.
+ */
+
+// lines of a window and the distance to its edge which makes the window move
+const WINDOW_LINES = 300;
+const MARGIN_LINES = 50;
+
+function countNewLines(text) {
+  let count = 0;
+  for (let i = text.indexOf('\n'); i >= 0; i = text.indexOf('\n', i + 1)) {
+    count++;
+  }
+  return count;
+}
+
+function replace(text, offset, removedLength, insertedText) {
+  return text.substring(0, offset) + insertedText + text.substring(offset + removedLength);
+}
+
+/**
+ * @return the range of {@code before} replaced in {@code after}, or null if they are equal
+ */
+function diff(before, after) {
+  if (before === after) {
+    return null;
+  }
+  let prefix = 0;
+  const max = Math.min(before.length, after.length);
+  while (prefix < max && before.charCodeAt(prefix) === after.charCodeAt(prefix)) {
+    prefix++;
+  }
+  let suffix = 0;
+  while (suffix < max - prefix && before.charCodeAt(before.length - 1 - suffix) === after.charCodeAt(after.length - 1 - suffix)) {
+    suffix++;
+  }
+  return {
+    offset: prefix,
+    removedLength: before.length - prefix - suffix,
+    insertedText: after.substring(prefix, after.length - suffix)
+  };
+}
+
+function install(editor) {
+  const area = () => editor.inputElement;
+  const state = {
+    version: 0,
+    lineCount: 0,
+    startLine: 0,
+    startOffset: 0,
+    // text of the window the server has, with the edit in flight applied once acknowledged
+    text: '',
+    inFlight: null,
+    requested: false,
+    highlights: new Map()
+  };
+  editor.$viewport = state;
+
+  const lineHeight = () => {
+    const lines = countNewLines(state.text) + 1;
+    return Math.max(1, area().scrollHeight / lines);
+  };
+
+  const requestLines = startLine => {
+    state.requested = true;
+    editor.$server.requestLines(startLine, startLine + WINDOW_LINES);
+  };
+
+  const sendEdit = () => {
+    if (state.inFlight !== null || state.requested) {
+      return;
+    }
+    const edit = diff(state.text, area().value);
+    if (edit !== null) {
+      state.inFlight = edit;
+      editor.$server.applyChange(state.version, state.startOffset + edit.offset, edit.removedLength, edit.insertedText);
+    }
+  };
+
+  editor.setLines = chunk => {
+    const firstVisibleLine = state.text.length > 0 ? state.startLine + Math.floor(area().scrollTop / lineHeight()) : chunk.startLine;
+    state.version = chunk.documentVersion;
+    state.lineCount = chunk.lineCount;
+    state.startLine = chunk.startLine;
+    state.startOffset = chunk.startOffset;
+    state.text = chunk.lines.join('\n');
+    state.inFlight = null;
+    state.requested = false;
+    state.highlights.clear();
+    chunk.highlights.forEach(highlight => state.highlights.set(highlight.id, highlight));
+
+    area().value = state.text;
+    area().scrollTop = Math.max(0, firstVisibleLine - state.startLine) * lineHeight();
+  };
+
+  editor.applyChange = (documentVersion, change) => {
+    state.version = documentVersion;
+    const inFlight = state.inFlight;
+    if (inFlight !== null && inFlight.removedLength === change.removedLength && inFlight.insertedText === change.insertedText) {
+      // acknowledgement of the local edit, its offset may be rebased on changes made by others
+      const offset = change.offset - state.startOffset;
+      const removed = state.text.substr(offset, change.removedLength);
+      state.text = replace(state.text, offset, change.removedLength, change.insertedText);
+      state.lineCount += countNewLines(change.insertedText) - countNewLines(removed);
+      state.inFlight = null;
+      sendEdit();
+      return;
+    }
+
+    const offset = change.offset - state.startOffset;
+    if (offset > state.text.length) {
+      return;
+    }
+    if (offset < 0 || offset + change.removedLength > state.text.length) {
+      // lines before the window changed, their count isn't known here
+      requestLines(state.startLine);
+      return;
+    }
+
+    // the local text has edits the server doesn't have yet, the change is applied to both if they don't overlap
+    const local = diff(state.text, area().value);
+    const removed = state.text.substr(offset, change.removedLength);
+    state.text = replace(state.text, offset, change.removedLength, change.insertedText);
+    state.lineCount += countNewLines(change.insertedText) - countNewLines(removed);
+    if (local === null) {
+      moveText(offset, change.removedLength, change.insertedText, 0);
+    }
+    else if (offset + change.removedLength <= local.offset) {
+      moveText(offset, change.removedLength, change.insertedText, 0);
+    }
+    else if (offset >= local.offset + local.removedLength) {
+      moveText(offset, change.removedLength, change.insertedText, local.insertedText.length - local.removedLength);
+    }
+    else {
+      requestLines(state.startLine);
+    }
+  };
+
+  const moveText = (offset, removedLength, insertedText, delta) => {
+    const element = area();
+    const start = element.selectionStart;
+    const end = element.selectionEnd;
+    const shift = position => position <= offset + delta ? position : Math.max(offset + delta + insertedText.length, position + insertedText.length - removedLength);
+    element.value = replace(element.value, offset + delta, removedLength, insertedText);
+    element.setSelectionRange(shift(start), shift(end));
+  };
+
+  editor.updateHighlights = (documentVersion, added, removed) => {
+    removed.forEach(id => state.highlights.delete(id));
+    added.forEach(highlight => state.highlights.set(highlight.id, highlight));
+  };
+
+  if (!editor.$viewportListeners) {
+    editor.$viewportListeners = true;
+    editor.addEventListener('input', () => editor.$viewport.sendEdit());
+    area().addEventListener('scroll', () => editor.$viewport.onScroll());
+  }
+
+  state.sendEdit = sendEdit;
+  state.onScroll = () => {
+    if (state.requested || state.inFlight !== null || area().value !== state.text) {
+      return;
+    }
+    const element = area();
+    const margin = MARGIN_LINES * lineHeight();
+    const endLine = state.startLine + countNewLines(state.text) + 1;
+    const nearTop = element.scrollTop < margin && state.startLine > 0;
+    const nearBottom = element.scrollTop + element.clientHeight > element.scrollHeight - margin && endLine < state.lineCount;
+    if (nearTop || nearBottom) {
+      const firstVisibleLine = state.startLine + Math.floor(element.scrollTop / lineHeight());
+      requestLines(Math.max(0, firstVisibleLine - WINDOW_LINES / 2));
+    }
+  };
+
+  requestLines(0);
+}
+
+window.Consulo = window.Consulo || {};
+window.Consulo.installEditorViewport = install;
@@ -15,8 +15,12 @@
  */
 package consulo.web.internal.ui.editor;
 
+import com.vaadin.flow.component.ClientCallable;
+import com.vaadin.flow.component.UI;
+import com.vaadin.flow.component.dependency.JsModule;
 import com.vaadin.flow.component.textfield.TextArea;
 import consulo.annotation.access.RequiredReadAction;
+import consulo.application.Application;
 import consulo.codeEditor.*;
 import consulo.codeEditor.impl.*;
 import consulo.codeEditor.markup.RangeHighlighter;
@@ -44,12 +48,63 @@ import java.awt.event.MouseEvent;
  * @since 2019-02-18
  */
 public class WebEditorImpl extends CodeEditorBase {
+  /**
+   * Gets only the lines it shows from the {@link WebEditorViewport}, the browser side of the protocol is {@code editor/editor-viewport.js}.
+   */
   // TODO text area is hack
+  @JsModule("./editor/editor-viewport.js")
   public static class Vaadin extends TextArea implements ComponentHolder, FromVaadinComponentWrapper {
     private consulo.ui.Component myComponent;
+    private WebEditorViewport myViewport;
 
     public Vaadin(String text) {
       super(text);
+
+      addAttachListener(event -> getElement().executeJs("window.Consulo.installEditorViewport(this)"));
+      addDetachListener(event -> {
+        WebEditorViewport viewport = myViewport;
+        if (viewport != null) {
+          Application.get().invokeLater(() -> viewport.setClient(null));
+        }
+      });
+    }
+
+    void setViewport(@Nonnull WebEditorViewport viewport) {
+      myViewport = viewport;
+    }
+
+    /**
+     * See {@link WebEditorViewport#requestLines}, the first request makes the element the client of the viewport.
+     */
+    @ClientCallable
+    public void requestLines(int startLine, int endLine) {
+      WebEditorViewport viewport = myViewport;
+      UI ui = getUI().orElse(null);
+      if (viewport == null || ui == null) {
+        return;
+      }
+      Application.get().invokeLater(() -> {
+        if (viewport.getClient() == null) {
+          viewport.setClient(new WebEditorViewportClient(ui, getElement()));
+        }
+        viewport.requestLines(startLine, endLine);
+      });
+    }
+
+    /**
+     * See {@link WebEditorViewport#applyClientChange}.
+     */
+    @ClientCallable
+    public void applyChange(int baseDocumentVersion, int offset, int removedLength, String insertedText) {
+      WebEditorViewport viewport = myViewport;
+      if (viewport == null) {
+        return;
+      }
+      Application.get().invokeLater(() -> {
+        if (viewport.getClient() != null) {
+          viewport.applyClientChange(baseDocumentVersion, offset, removedLength, insertedText);
+        }
+      });
     }
 
     @Nullable
@@ -102,8 +157,8 @@ public class WebEditorImpl extends CodeEditorBase {
     myEditorComponent = new EditorComponent();
 
     Vaadin vaadin = myEditorComponent.toVaadinComponent();
+    vaadin.setViewport(myView.getViewport());
     vaadin.setSizeFull();
-    vaadin.setValue(myDocument.getText());
 
 //    vaadin.addMouseDownListener(this::runMousePressedCommand);
 //
@@ -172,6 +227,8 @@ public class WebEditorImpl extends CodeEditorBase {
                                       boolean remove) {
     if (myDocument.isInBulkUpdate()) return; // bulkUpdateFinished() will repaint anything
 
+    myView.getViewport().onHighlighterChanged(highlighter, remove);
+
 //    Vaadin vaadin = myEditorComponent.toVaadinComponent();
 //
 //    Integer annId = highlighter.getUserData(ANNOTATION_ID);
@@ -271,6 +328,7 @@ public class WebEditorImpl extends CodeEditorBase {
   @Override
   protected void bulkUpdateFinished() {
     myView.reset();
+    myView.getViewport().syncHighlights();
 
     super.bulkUpdateFinished();
   }
@@ -30,11 +30,19 @@ import jakarta.annotation.Nonnull;
  */
 public class WebEditorView implements Disposable  {
   private final LogicalPositionCache myLogicalPositionCache;
+  private final WebEditorViewport myViewport;
 
   public WebEditorView(CodeEditorBase editor) {
     myLogicalPositionCache = new LogicalPositionCache(editor, () -> EditorUtil.getTabSize(editor));
+    myViewport = new WebEditorViewport(editor);
 
     Disposer.register(this, myLogicalPositionCache);
+    Disposer.register(this, myViewport);
+  }
+
+  @Nonnull
+  public WebEditorViewport getViewport() {
+    return myViewport;
   }
 
   @Nonnull
@@ -0,0 +1,489 @@
+/*
+ * Copyright 2013-2026 consulo.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package consulo.web.internal.ui.editor;
+
+import consulo.application.Application;
+import consulo.application.util.function.Processor;
+import consulo.codeEditor.impl.CodeEditorBase;
+import consulo.codeEditor.markup.RangeHighlighter;
+import consulo.codeEditor.markup.RangeHighlighterEx;
+import consulo.colorScheme.TextAttributes;
+import consulo.disposer.Disposable;
+import consulo.document.Document;
+import consulo.document.event.DocumentEvent;
+import consulo.document.event.DocumentListener;
+import consulo.language.editor.WriteCommandAction;
+import consulo.util.lang.StringUtil;
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * Server side of the viewport protocol of the web editor: the client requests the lines it shows, gets their text and the highlights
+ * overlapping them, and then only deltas: document changes as replaced ranges and highlights of the viewport added or removed.
+ * So traffic depends on the viewport size and the size of edits, not on the document size, see {@code WebEditorViewportTest}.
+ * <p/>
+ * Client edits are made on top of a document version and are rebased on the changes the client didn't see yet.
+ * <p/>
+ * Not thread-safe, used from EDT.
+ */
+public class WebEditorViewport implements Disposable {
+  /**
+   * Receiver of the protocol messages, see {@link WebEditorViewportClient}.
+   */
+  public interface Client {
+    void setLines(@Nonnull LinesChunk chunk);
+
+    /**
+     * Every document change, including the ones made by the client itself: these acknowledge its edits.
+     */
+    void applyChange(int documentVersion, @Nonnull TextChange change);
+
+    /**
+     * Highlights of the viewport changed: some were added or modified, removed ones are given by {@link Highlight#myId}.
+     */
+    void updateHighlights(int documentVersion, @Nonnull List<Highlight> added, @Nonnull List<Integer> removed);
+  }
+
+  /**
+   * Editor services the viewport needs besides the document.
+   */
+  interface Host {
+    /**
+     * Processes highlighters of the editor and document markup overlapping the range.
+     */
+    void processHighlighters(int startOffset, int endOffset, @Nonnull Processor<? super RangeHighlighterEx> processor);
+
+    void runWriteCommand(@Nonnull Runnable runnable);
+
+    void invokeLater(@Nonnull Runnable runnable, @Nonnull BooleanSupplier expired);
+  }
+
+  public static final class TextChange {
+    public final int myOffset;
+    public final int myRemovedLength;
+    @Nonnull
+    public final String myInsertedText;
+
+    public TextChange(int offset, int removedLength, @Nonnull String insertedText) {
+      myOffset = offset;
+      myRemovedLength = removedLength;
+      myInsertedText = insertedText;
+    }
+  }
+
+  public static final class Highlight {
+    // stable while the highlighter lives, used to remove it
+    public final int myId;
+    public final int myStartOffset;
+    public final int myEndOffset;
+    @Nonnull
+    public final TextAttributes myAttributes;
+
+    private Highlight(int id, int startOffset, int endOffset, @Nonnull TextAttributes attributes) {
+      myId = id;
+      myStartOffset = startOffset;
+      myEndOffset = endOffset;
+      myAttributes = attributes;
+    }
+  }
+
+  public static final class LinesChunk {
+    public final int myDocumentVersion;
+    public final int myLineCount;
+    public final int myStartLine;
+    public final int myStartOffset;
+    @Nonnull
+    public final List<String> myLines;
+    // highlights of the chunk the client doesn't have yet
+    @Nonnull
+    public final List<Highlight> myHighlights;
+
+    private LinesChunk(int documentVersion, int lineCount, int startLine, int startOffset, @Nonnull List<String> lines, @Nonnull List<Highlight> highlights) {
+      myDocumentVersion = documentVersion;
+      myLineCount = lineCount;
+      myStartLine = startLine;
+      myStartOffset = startOffset;
+      myLines = lines;
+      myHighlights = highlights;
+    }
+  }
+
+  // client edits older than the history can't be rebased, the client is resynchronized instead
+  private static final int MAX_HISTORY = 1000;
+
+  // approximate sizes of the message fields besides text
+  private static final int CHANGE_BYTES = 12;
+  private static final int HIGHLIGHT_BYTES = 24;
+  private static final int REMOVED_HIGHLIGHT_BYTES = 4;
+
+  private final Document myDocument;
+  private final Host myHost;
+  @Nullable
+  private Client myClient;
+
+  private int myDocumentVersion;
+  private final ArrayDeque<Change> myHistory = new ArrayDeque<>();
+
+  private int myStartLine;
+  // exclusive
+  private int myEndLine;
+
+  private final Map<RangeHighlighter, Integer> mySentHighlights = new IdentityHashMap<>();
+  private int myNextHighlightId;
+  // highlight updates are sent in one batch after the current event or before the next message
+  private final List<Highlight> myAddedHighlights = new ArrayList<>();
+  private final List<Integer> myRemovedHighlights = new ArrayList<>();
+  private boolean myFlushScheduled;
+
+  private long mySentBytes;
+
+  public WebEditorViewport(@Nonnull CodeEditorBase editor) {
+    this(editor.getDocument(), new Host() {
+      @Override
+      public void processHighlighters(int startOffset, int endOffset, @Nonnull Processor<? super RangeHighlighterEx> processor) {
+        editor.getMarkupModel().processRangeHighlightersOverlappingWith(startOffset, endOffset, processor);
+        editor.getFilteredDocumentMarkupModel().processRangeHighlightersOverlappingWith(startOffset, endOffset, processor);
+      }
+
+      @Override
+      public void runWriteCommand(@Nonnull Runnable runnable) {
+        WriteCommandAction.runWriteCommandAction(editor.getProject(), runnable);
+      }
+
+      @Override
+      public void invokeLater(@Nonnull Runnable runnable, @Nonnull BooleanSupplier expired) {
+        Application.get().invokeLater(runnable, expired);
+      }
+    });
+  }
+
+  WebEditorViewport(@Nonnull Document document, @Nonnull Host host) {
+    myDocument = document;
+    myHost = host;
+    myDocument.addDocumentListener(new DocumentListener() {
+      @Override
+      public void documentChanged(@Nonnull DocumentEvent event) {
+        onDocumentChanged(event);
+      }
+    }, this);
+  }
+
+  @Nullable
+  public Client getClient() {
+    return myClient;
+  }
+
+  /**
+   * The client gets nothing until it {@link #requestLines requests} its viewport.
+   */
+  public void setClient(@Nullable Client client) {
+    myClient = client;
+    mySentHighlights.clear();
+    myAddedHighlights.clear();
+    myRemovedHighlights.clear();
+    myStartLine = myEndLine = 0;
+  }
+
+  public int getDocumentVersion() {
+    return myDocumentVersion;
+  }
+
+  /**
+   * @return approximate size of all messages sent to the client
+   */
+  public long getSentBytes() {
+    return mySentBytes;
+  }
+
+  /**
+   * @param endLine exclusive
+   */
+  public void requestLines(int startLine, int endLine) {
+    int lineCount = myDocument.getLineCount();
+    myStartLine = Math.max(0, Math.min(startLine, lineCount));
+    myEndLine = Math.max(myStartLine, Math.min(endLine, lineCount));
+    if (myClient == null) {
+      return;
+    }
+    flushHighlights();
+
+    CharSequence text = myDocument.getImmutableCharSequence();
+    List<String> lines = new ArrayList<>(myEndLine - myStartLine);
+    for (int line = myStartLine; line < myEndLine; line++) {
+      String lineText = text.subSequence(myDocument.getLineStartOffset(line), myDocument.getLineEndOffset(line)).toString();
+      lines.add(lineText);
+      mySentBytes += byteCount(lineText);
+    }
+
+    // highlights of the lines go with them, the ones which left the viewport are removed by the next batch
+    removeHighlightsOutsideViewport();
+    List<Highlight> highlights = new ArrayList<>();
+    processViewportHighlighters(highlighter -> {
+      Highlight highlight = createHighlight(highlighter);
+      if (highlight != null) {
+        highlights.add(highlight);
+      }
+    });
+    mySentBytes += CHANGE_BYTES + HIGHLIGHT_BYTES * highlights.size();
+    myClient.setLines(new LinesChunk(myDocumentVersion, lineCount, myStartLine, getViewportStartOffset(), lines, highlights));
+
+    flushHighlights();
+  }
+
+  /**
+   * Applies an edit of the client made on top of the given document version.
+   *
+   * @return false if the edit is too old to be rebased, it's dropped and the client gets the viewport of the current version
+   */
+  public boolean applyClientChange(int baseDocumentVersion, int offset, int removedLength, @Nonnull String insertedText) {
+    if (baseDocumentVersion > myDocumentVersion || myDocumentVersion - baseDocumentVersion > myHistory.size()) {
+      requestLines(myStartLine, myEndLine);
+      return false;
+    }
+
+    // a server change inside the removed range splits it: its text stays, the edit removes the text around it
+    List<Range> ranges = new ArrayList<>(1);
+    ranges.add(new Range(offset, offset + removedLength));
+    for (Change applied : myHistory) {
+      if (applied.myVersion > baseDocumentVersion) {
+        List<Range> rebased = new ArrayList<>(ranges.size() + 1);
+        for (Range range : ranges) {
+          range.rebase(applied, rebased);
+        }
+        ranges = rebased;
+      }
+    }
+
+    List<Range> result = ranges;
+    int textLength = myDocument.getTextLength();
+    myHost.runWriteCommand(() -> {
+      // from the end, so the offsets of the ranges before stay valid
+      for (int i = result.size() - 1; i >= 0; i--) {
+        Range range = result.get(i);
+        int startOffset = Math.max(0, Math.min(range.myStart, textLength));
+        int endOffset = Math.max(startOffset, Math.min(range.myEnd, textLength));
+        String text = i == 0 ? insertedText : "";
+        if (startOffset != endOffset || !text.isEmpty()) {
+          myDocument.replaceString(startOffset, endOffset, text);
+        }
+      }
+    });
+    return true;
+  }
+
+  void onHighlighterChanged(@Nonnull RangeHighlighter highlighter, boolean remove) {
+    if (myClient == null || myStartLine == myEndLine) {
+      return;
+    }
+    Integer id = mySentHighlights.remove(highlighter);
+    if (id != null) {
+      myRemovedHighlights.add(id);
+    }
+    // changed attributes are sent as a new highlight
+    if (!remove && overlapsViewport(highlighter)) {
+      Highlight highlight = createHighlight(highlighter);
+      if (highlight != null) {
+        myAddedHighlights.add(highlight);
+      }
+    }
+    scheduleFlush();
+  }
+
+  /**
+   * Sends highlights entering the viewport and drops the ones which left it or were removed unnoticed, e.g. during bulk update.
+   */
+  void syncHighlights() {
+    if (myClient == null || myStartLine == myEndLine) {
+      return;
+    }
+    removeHighlightsOutsideViewport();
+    processViewportHighlighters(highlighter -> {
+      Highlight highlight = createHighlight(highlighter);
+      if (highlight != null) {
+        myAddedHighlights.add(highlight);
+      }
+    });
+    flushHighlights();
+  }
+
+  private void removeHighlightsOutsideViewport() {
+    for (Iterator<Map.Entry<RangeHighlighter, Integer>> iterator = mySentHighlights.entrySet().iterator(); iterator.hasNext(); ) {
+      Map.Entry<RangeHighlighter, Integer> entry = iterator.next();
+      RangeHighlighter highlighter = entry.getKey();
+      if (!highlighter.isValid() || !overlapsViewport(highlighter)) {
+        iterator.remove();
+        myRemovedHighlights.add(entry.getValue());
+      }
+    }
+  }
+
+  /**
+   * Highlighters of the viewport the client doesn't have yet.
+   */
+  private void processViewportHighlighters(@Nonnull Consumer<RangeHighlighter> consumer) {
+    if (myStartLine == myEndLine) {
+      return;
+    }
+    Processor<RangeHighlighterEx> processor = highlighter -> {
+      if (!mySentHighlights.containsKey(highlighter)) {
+        consumer.accept(highlighter);
+      }
+      return true;
+    };
+    int startOffset = getViewportStartOffset();
+    int endOffset = getViewportEndOffset();
+    myHost.processHighlighters(startOffset, endOffset, processor);
+  }
+
+  @Nullable
+  private Highlight createHighlight(@Nonnull RangeHighlighter highlighter) {
+    TextAttributes attributes = highlighter.getTextAttributes();
+    if (attributes == null) {
+      return null;
+    }
+    int id = myNextHighlightId++;
+    mySentHighlights.put(highlighter, id);
+    return new Highlight(id, highlighter.getStartOffset(), highlighter.getEndOffset(), attributes);
+  }
+
+  private void scheduleFlush() {
+    if (myFlushScheduled) {
+      return;
+    }
+    myFlushScheduled = true;
+    myHost.invokeLater(this::flushHighlights, () -> myClient == null);
+  }
+
+  private void flushHighlights() {
+    myFlushScheduled = false;
+    if (myClient == null || myAddedHighlights.isEmpty() && myRemovedHighlights.isEmpty()) {
+      return;
+    }
+    List<Highlight> added = new ArrayList<>(myAddedHighlights);
+    List<Integer> removed = new ArrayList<>(myRemovedHighlights);
+    myAddedHighlights.clear();
+    myRemovedHighlights.clear();
+    mySentBytes += HIGHLIGHT_BYTES * added.size() + REMOVED_HIGHLIGHT_BYTES * removed.size();
+    myClient.updateHighlights(myDocumentVersion, added, removed);
+  }
+
+  private void onDocumentChanged(@Nonnull DocumentEvent event) {
+    // pending highlights are offsets of the previous version
+    flushHighlights();
+
+    myDocumentVersion++;
+    myHistory.addLast(new Change(myDocumentVersion, event.getOffset(), event.getOldLength(), event.getNewLength()));
+    if (myHistory.size() > MAX_HISTORY) {
+      myHistory.removeFirst();
+    }
+
+    // keep the viewport on the same lines the client has
+    int lineDelta = StringUtil.countNewLines(event.getNewFragment()) - StringUtil.countNewLines(event.getOldFragment());
+    if (lineDelta != 0 && myStartLine != myEndLine) {
+      int changeLine = myDocument.getLineNumber(event.getOffset());
+      if (changeLine < myStartLine) {
+        myStartLine = Math.max(changeLine, myStartLine + lineDelta);
+      }
+      if (changeLine < myEndLine) {
+        myEndLine = Math.max(myStartLine, myEndLine + lineDelta);
+      }
+      myEndLine = Math.min(myEndLine, myDocument.getLineCount());
+    }
+
+    if (myClient != null) {
+      String inserted = event.getNewFragment().toString();
+      myClient.applyChange(myDocumentVersion, new TextChange(event.getOffset(), event.getOldLength(), inserted));
+      mySentBytes += CHANGE_BYTES + byteCount(inserted);
+    }
+  }
+
+  private boolean overlapsViewport(@Nonnull RangeHighlighter highlighter) {
+    return myStartLine != myEndLine &&
+           highlighter.getStartOffset() <= getViewportEndOffset() &&
+           highlighter.getEndOffset() >= getViewportStartOffset();
+  }
+
+  private int getViewportStartOffset() {
+    return myStartLine < myDocument.getLineCount() ? myDocument.getLineStartOffset(myStartLine) : myDocument.getTextLength();
+  }
+
+  private int getViewportEndOffset() {
+    return myEndLine > 0 ? myDocument.getLineEndOffset(myEndLine - 1) : 0;
+  }
+
+  private static int byteCount(@Nonnull CharSequence text) {
+    return text.toString().getBytes(StandardCharsets.UTF_8).length;
+  }
+
+  @Override
+  public void dispose() {
+    setClient(null);
+  }
+
+  private static final class Change {
+    private final int myVersion;
+    private final int myOffset;
+    private final int myRemovedLength;
+    private final int myInsertedLength;
+
+    private Change(int version, int offset, int removedLength, int insertedLength) {
+      myVersion = version;
+      myOffset = offset;
+      myRemovedLength = removedLength;
+      myInsertedLength = insertedLength;
+    }
+  }
+
+  /**
+   * Range removed by a client edit, in offsets of the document version it's rebased to.
+   */
+  private static final class Range {
+    private final int myStart;
+    // exclusive
+    private final int myEnd;
+
+    private Range(int start, int end) {
+      myStart = start;
+      myEnd = end;
+    }
+
+    private void rebase(@Nonnull Change applied, @Nonnull List<Range> result) {
+      int appliedEnd = applied.myOffset + applied.myRemovedLength;
+      int delta = applied.myInsertedLength - applied.myRemovedLength;
+      if (appliedEnd <= myStart) {
+        result.add(new Range(myStart + delta, myEnd + delta));
+      }
+      else if (applied.myOffset >= myEnd) {
+        result.add(this);
+      }
+      else {
+        // overlapping ranges: the text of the applied change stays, the edit removes the rest of its range before and after it
+        if (applied.myOffset > myStart) {
+          result.add(new Range(myStart, applied.myOffset));
+        }
+        int afterStart = applied.myOffset + applied.myInsertedLength;
+        if (appliedEnd < myEnd || applied.myOffset <= myStart) {
+          result.add(new Range(afterStart, afterStart + Math.max(0, myEnd - appliedEnd)));
+        }
+      }
+    }
+  }
+}
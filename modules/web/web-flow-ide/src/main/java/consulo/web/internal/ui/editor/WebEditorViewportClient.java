@@ -0,0 +1,117 @@
+/*
+ * Copyright 2013-2026 consulo.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package consulo.web.internal.ui.editor;
+
+import com.vaadin.flow.component.UI;
+import com.vaadin.flow.dom.Element;
+import consulo.colorScheme.TextAttributes;
+import consulo.ui.color.ColorValue;
+import consulo.ui.color.RGBColor;
+import elemental.json.Json;
+import elemental.json.JsonArray;
+import elemental.json.JsonObject;
+import elemental.json.JsonValue;
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Sends the viewport protocol messages to the editor element in the browser: functions of the element installed by
+ * {@code editor/editor-viewport.js} have names and arguments of {@link WebEditorViewport.Client}, objects are passed as JSON with field
+ * names without the {@code my} prefix. The element answers with {@link WebEditorImpl.Vaadin#requestLines} and
+ * {@link WebEditorImpl.Vaadin#applyChange}.
+ * <p/>
+ * Messages may be sent from any thread, they are queued to the UI in order.
+ */
+class WebEditorViewportClient implements WebEditorViewport.Client {
+  private final UI myUI;
+  private final Element myElement;
+
+  WebEditorViewportClient(@Nonnull UI ui, @Nonnull Element element) {
+    myUI = ui;
+    myElement = element;
+  }
+
+  @Override
+  public void setLines(@Nonnull WebEditorViewport.LinesChunk chunk) {
+    JsonObject object = Json.createObject();
+    object.put("documentVersion", chunk.myDocumentVersion);
+    object.put("lineCount", chunk.myLineCount);
+    object.put("startLine", chunk.myStartLine);
+    object.put("startOffset", chunk.myStartOffset);
+    JsonArray lines = Json.createArray();
+    for (String line : chunk.myLines) {
+      lines.set(lines.length(), line);
+    }
+    object.put("lines", lines);
+    object.put("highlights", toJson(chunk.myHighlights));
+    call("setLines", object);
+  }
+
+  @Override
+  public void applyChange(int documentVersion, @Nonnull WebEditorViewport.TextChange change) {
+    JsonObject object = Json.createObject();
+    object.put("offset", change.myOffset);
+    object.put("removedLength", change.myRemovedLength);
+    object.put("insertedText", change.myInsertedText);
+    call("applyChange", documentVersion, object);
+  }
+
+  @Override
+  public void updateHighlights(int documentVersion, @Nonnull List<WebEditorViewport.Highlight> added, @Nonnull List<Integer> removed) {
+    JsonArray removedIds = Json.createArray();
+    for (int id : removed) {
+      removedIds.set(removedIds.length(), id);
+    }
+    call("updateHighlights", documentVersion, toJson(added), removedIds);
+  }
+
+  private void call(@Nonnull String function, @Nonnull Serializable... arguments) {
+    myUI.access(() -> myElement.callJsFunction(function, arguments));
+  }
+
+  @Nonnull
+  private static JsonArray toJson(@Nonnull List<WebEditorViewport.Highlight> highlights) {
+    JsonArray array = Json.createArray();
+    for (WebEditorViewport.Highlight highlight : highlights) {
+      TextAttributes attributes = highlight.myAttributes;
+      JsonObject object = Json.createObject();
+      object.put("id", highlight.myId);
+      object.put("startOffset", highlight.myStartOffset);
+      object.put("endOffset", highlight.myEndOffset);
+      object.put("foreground", toJson(attributes.getForegroundColor()));
+      object.put("background", toJson(attributes.getBackgroundColor()));
+      object.put("fontType", attributes.getFontType());
+      array.set(array.length(), object);
+    }
+    return array;
+  }
+
+  @Nonnull
+  private static JsonValue toJson(@Nullable ColorValue color) {
+    if (color == null) {
+      return Json.createNull();
+    }
+    RGBColor rgb = color.toRGB();
+    JsonObject object = Json.createObject();
+    object.put("red", rgb.getRed());
+    object.put("green", rgb.getGreen());
+    object.put("blue", rgb.getBlue());
+    return object;
+  }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2013-2026 consulo.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package consulo.web.internal.ui.editor;
+
+import consulo.application.util.function.Processor;
+import consulo.codeEditor.markup.RangeHighlighterEx;
+import consulo.disposer.Disposer;
+import consulo.document.impl.DocumentImpl;
+import jakarta.annotation.Nonnull;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Headless measurement of the viewport protocol traffic: bytes sent to the client per keystroke mustn't depend on the document size.
+ */
+public class WebEditorViewportTest {
+  private static final int VIEWPORT_LINES = 50;
+  private static final int KEYSTROKES = 200;
+
+  private static class HeadlessHost implements WebEditorViewport.Host {
+    @Override
+    public void processHighlighters(int startOffset, int endOffset, @Nonnull Processor<? super RangeHighlighterEx> processor) {
+    }
+
+    @Override
+    public void runWriteCommand(@Nonnull Runnable runnable) {
+      runnable.run();
+    }
+
+    @Override
+    public void invokeLater(@Nonnull Runnable runnable, @Nonnull BooleanSupplier expired) {
+      if (!expired.getAsBoolean()) {
+        runnable.run();
+      }
+    }
+  }
+
+  private static class RecordingClient implements WebEditorViewport.Client {
+    private final List<WebEditorViewport.LinesChunk> myChunks = new ArrayList<>();
+    private final List<WebEditorViewport.TextChange> myChanges = new ArrayList<>();
+    private int myDocumentVersion;
+
+    @Override
+    public void setLines(@Nonnull WebEditorViewport.LinesChunk chunk) {
+      myChunks.add(chunk);
+      myDocumentVersion = chunk.myDocumentVersion;
+    }
+
+    @Override
+    public void applyChange(int documentVersion, @Nonnull WebEditorViewport.TextChange change) {
+      myChanges.add(change);
+      myDocumentVersion = documentVersion;
+    }
+
+    @Override
+    public void updateHighlights(int documentVersion, @Nonnull List<WebEditorViewport.Highlight> added, @Nonnull List<Integer> removed) {
+    }
+  }
+
+  @Test
+  public void testKeystrokeTrafficDoesNotDependOnDocumentSize() {
+    long smallDocument = measureBytesPerKeystroke(1_000);
+    long hugeDocument = measureBytesPerKeystroke(100_000);
+
+    Assertions.assertEquals(smallDocument, hugeDocument);
+    Assertions.assertTrue(hugeDocument < 32, "bytes per keystroke: " + hugeDocument);
+  }
+
+  @Test
+  public void testViewportTrafficDoesNotDependOnDocumentSize() {
+    Assertions.assertEquals(measureViewportBytes(1_000), measureViewportBytes(100_000));
+  }
+
+  @Test
+  public void testClientEditIsRebasedOnUnseenChanges() {
+    DocumentImpl document = new DocumentImpl("first\nsecond\n", true);
+    WebEditorViewport viewport = new WebEditorViewport(document, new HeadlessHost());
+    try {
+      RecordingClient client = new RecordingClient();
+      viewport.setClient(client);
+      viewport.requestLines(0, VIEWPORT_LINES);
+      int seenVersion = client.myDocumentVersion;
+
+      document.insertString(0, "zero\n");
+      Assertions.assertTrue(viewport.applyClientChange(seenVersion, "first\n".length(), 0, "2nd "));
+
+      Assertions.assertEquals("zero\nfirst\n2nd second\n", document.getText());
+    }
+    finally {
+      Disposer.dispose(viewport);
+    }
+  }
+
+  private static long measureBytesPerKeystroke(int lineCount) {
+    DocumentImpl document = new DocumentImpl(createText(lineCount), true);
+    WebEditorViewport viewport = new WebEditorViewport(document, new HeadlessHost());
+    try {
+      RecordingClient client = new RecordingClient();
+      viewport.setClient(client);
+      viewport.requestLines(lineCount / 2, lineCount / 2 + VIEWPORT_LINES);
+
+      long before = viewport.getSentBytes();
+      int offset = document.getLineStartOffset(lineCount / 2 + 1);
+      for (int i = 0; i < KEYSTROKES; i++) {
+        Assertions.assertTrue(viewport.applyClientChange(client.myDocumentVersion, offset + i, 0, "x"));
+      }
+      Assertions.assertEquals(KEYSTROKES, client.myChanges.size());
+      return (viewport.getSentBytes() - before) / KEYSTROKES;
+    }
+    finally {
+      Disposer.dispose(viewport);
+    }
+  }
+
+  private static long measureViewportBytes(int lineCount) {
+    DocumentImpl document = new DocumentImpl(createText(lineCount), true);
+    WebEditorViewport viewport = new WebEditorViewport(document, new HeadlessHost());
+    try {
+      viewport.setClient(new RecordingClient());
+      viewport.requestLines(0, VIEWPORT_LINES);
+      return viewport.getSentBytes();
+    }
+    finally {
+      Disposer.dispose(viewport);
+    }
+  }
+
+  @Nonnull
+  private static String createText(int lineCount) {
+    StringBuilder text = new StringBuilder();
+    for (int i = 0; i < lineCount; i++) {
+      text.append("    int value = compute(argument, 42);\n");
+    }
+    return text.toString();
+  }
+}